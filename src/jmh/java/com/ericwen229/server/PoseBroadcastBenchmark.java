@@ -0,0 +1,88 @@
+package com.ericwen229.server;
+
+import com.ericwen229.server.message.BinaryCodec;
+import com.ericwen229.server.message.response.PoseMsgModel;
+import com.ericwen229.tf.Transform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the work done by the navigation channel for each pose received: moving the pose
+ * into the map frame, building the pose message and encoding it in each wire format.
+ *
+ * <p>Run with {@code mvn -P jmh compile exec:exec -Djmh.args="PoseBroadcastBenchmark"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseBroadcastBenchmark {
+
+	/**
+	 * Pose in odometry frame, as received.
+	 */
+	private Transform pose;
+
+	/**
+	 * Transform from odometry frame to map frame.
+	 */
+	private Transform toMap;
+
+	/**
+	 * Pose message as broadcast.
+	 */
+	private PoseMsgModel message;
+
+	@Setup
+	public void setup() {
+		pose = new Transform(3.25, -1.5, 0.0, 0.0, 0.0, Math.sin(0.4), Math.cos(0.4));
+		toMap = new Transform(0.75, 0.25, 0.0, 0.0, 0.0, Math.sin(0.05), Math.cos(0.05));
+		message = toMessage(toMap.compose(pose));
+	}
+
+	@Benchmark
+	public PoseMsgModel toMapFrame() {
+		return toMessage(toMap.compose(pose));
+	}
+
+	@Benchmark
+	public String json() {
+		return ChannelWebSocketServer.encodeJson(message);
+	}
+
+	@Benchmark
+	public ByteBuffer binary() {
+		return BinaryCodec.encodeResponse(message);
+	}
+
+	@Benchmark
+	public String toMapFrameAndJson() {
+		return ChannelWebSocketServer.encodeJson(toMessage(toMap.compose(pose)));
+	}
+
+	/**
+	 * Build pose message on a 20 m x 20 m map with origin at its center, through the
+	 * navigation channel.
+	 *
+	 * @param pose pose in map frame
+	 * @return pose message
+	 */
+	private static PoseMsgModel toMessage(Transform pose) {
+		return NavigationChannel.toPoseMessage(
+				pose.tx, pose.ty, NavigationChannel.yawToAngle(pose.yaw()), -10.0, -10.0, 20.0, 20.0);
+	}
+
+}
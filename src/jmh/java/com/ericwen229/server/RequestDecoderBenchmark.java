@@ -0,0 +1,107 @@
+package com.ericwen229.server;
+
+import com.ericwen229.server.message.request.ControlMsgModel;
+import com.ericwen229.server.message.request.NavigationGoalMsgModel;
+import com.ericwen229.server.message.request.PoseEstimateMsgModel;
+import com.ericwen229.server.message.request.PoseHistoryQueryMsgModel;
+import com.ericwen229.server.message.request.RequestMsgModel;
+import com.ericwen229.server.message.request.WaypointMissionMsgModel;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.typeadapters.RuntimeTypeAdapterFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single pass request decoder with gson runtime type dispatch.
+ *
+ * <p>Run with {@code mvn -P jmh compile exec:exec -Djmh.args="RequestDecoderBenchmark"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestDecoderBenchmark {
+
+	/**
+	 * Sample requests, keyed by name.
+	 */
+	private static final Map<String, String> requests = new LinkedHashMap<>();
+
+	static {
+		requests.put("control", "{\"type\":\"control\",\"linear\":0.5,\"angular\":-0.25}");
+		requests.put("navigation_goal", "{\"type\":\"navigation_goal\",\"x\":0.4213,\"y\":0.7781,\"angle\":0.125}");
+		requests.put("pose_history_query", "{\"type\":\"pose_history_query\",\"from\":-600,\"to\":0,\"maxPoints\":500}");
+		requests.put("waypoint_mission", "{\"type\":\"waypoint_mission\",\"waypoints\":"
+				+ "[{\"x\":0.1,\"y\":0.2,\"angle\":0.0},{\"x\":0.3,\"y\":0.4,\"angle\":0.5}]}");
+	}
+
+	/**
+	 * Name of request decoded.
+	 */
+	@Param({"control", "navigation_goal", "pose_history_query", "waypoint_mission"})
+	public String request;
+
+	/**
+	 * Request decoded.
+	 */
+	private String text;
+
+	/**
+	 * Decoder under test.
+	 */
+	private RequestDecoder decoder;
+
+	/**
+	 * Gson object dispatching on type field, as used before the single pass decoder.
+	 */
+	private Gson gson;
+
+	@Setup
+	public void setup() {
+		text = requests.get(request);
+
+		Map<String, Class<? extends RequestMsgModel>> requestTypes = new LinkedHashMap<>();
+		requestTypes.put(ControlMsgModel.typeFieldValue, ControlMsgModel.class);
+		requestTypes.put(PoseEstimateMsgModel.typeFieldValue, PoseEstimateMsgModel.class);
+		requestTypes.put(NavigationGoalMsgModel.typeFieldValue, NavigationGoalMsgModel.class);
+		requestTypes.put(WaypointMissionMsgModel.typeFieldValue, WaypointMissionMsgModel.class);
+		requestTypes.put(PoseHistoryQueryMsgModel.typeFieldValue, PoseHistoryQueryMsgModel.class);
+		decoder = new RequestDecoder(requestTypes);
+
+		RuntimeTypeAdapterFactory<RequestMsgModel> requestRuntimeTypeAdapterFactory
+				= RuntimeTypeAdapterFactory.of(RequestMsgModel.class, RequestMsgModel.typeFieldName);
+		for (Map.Entry<String, Class<? extends RequestMsgModel>> entry : requestTypes.entrySet()) {
+			requestRuntimeTypeAdapterFactory.registerSubtype(entry.getValue(), entry.getKey());
+		}
+		gson = new GsonBuilder()
+				.registerTypeAdapterFactory(requestRuntimeTypeAdapterFactory)
+				.create();
+	}
+
+	@Benchmark
+	public RequestMsgModel decoder() {
+		return decoder.decode(text);
+	}
+
+	@Benchmark
+	public RequestMsgModel gsonRuntimeTypeAdapter() {
+		return gson.fromJson(text, RequestMsgModel.class);
+	}
+
+}
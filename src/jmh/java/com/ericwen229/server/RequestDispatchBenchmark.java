@@ -0,0 +1,194 @@
+package com.ericwen229.server;
+
+import com.ericwen229.server.message.request.ControlMsgModel;
+import com.ericwen229.server.message.request.NavigationGoalMsgModel;
+import com.ericwen229.server.message.request.PoseEstimateMsgModel;
+import com.ericwen229.server.message.request.PoseHistoryQueryMsgModel;
+import com.ericwen229.server.message.request.RequestMsgModel;
+import com.ericwen229.server.message.request.WaypointMissionMsgModel;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.typeadapters.RuntimeTypeAdapterFactory;
+import org.java_websocket.WebSocket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding and routing of a recorded session of requests (teleoperation with a
+ * few navigation requests, see {@code recorded-requests.jsonl}), sent one by one or as a
+ * single batch. Each operation handles the whole session.
+ *
+ * <p>Run with {@code mvn -P jmh compile exec:exec -Djmh.args="RequestDispatchBenchmark"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestDispatchBenchmark {
+
+	/**
+	 * Requests of recorded session, in json.
+	 */
+	private List<String> requests;
+
+	/**
+	 * Requests of recorded session as a single batch.
+	 */
+	private String batch;
+
+	/**
+	 * Server routing requests, never started.
+	 */
+	private ChannelServer server;
+
+	/**
+	 * Decoder of server's request types.
+	 */
+	private RequestDecoder decoder;
+
+	/**
+	 * Gson object dispatching on type field.
+	 */
+	private Gson gson;
+
+	/**
+	 * Connection requests come from.
+	 */
+	private WebSocket webSocket;
+
+	@Setup
+	public void setup() throws IOException {
+		requests = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				RequestDispatchBenchmark.class.getResourceAsStream("recorded-requests.jsonl"),
+				StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.trim().isEmpty()) {
+					requests.add(line);
+				}
+			}
+		}
+		batch = "[" + String.join(",", requests) + "]";
+
+		server = new ChannelServer(
+				"benchmark",
+				new InetSocketAddress(0),
+				null,
+				null,
+				new BenchmarkChannel("control", ControlMsgModel.typeFieldValue, ControlMsgModel.class),
+				new BenchmarkChannel("navigation", PoseEstimateMsgModel.typeFieldValue, PoseEstimateMsgModel.class)
+						.with(NavigationGoalMsgModel.typeFieldValue, NavigationGoalMsgModel.class)
+						.with(WaypointMissionMsgModel.typeFieldValue, WaypointMissionMsgModel.class)
+						.with(PoseHistoryQueryMsgModel.typeFieldValue, PoseHistoryQueryMsgModel.class));
+		Map<String, Class<? extends RequestMsgModel>> requestTypes = new LinkedHashMap<>();
+		requestTypes.put(ControlMsgModel.typeFieldValue, ControlMsgModel.class);
+		requestTypes.put(PoseEstimateMsgModel.typeFieldValue, PoseEstimateMsgModel.class);
+		requestTypes.put(NavigationGoalMsgModel.typeFieldValue, NavigationGoalMsgModel.class);
+		requestTypes.put(WaypointMissionMsgModel.typeFieldValue, WaypointMissionMsgModel.class);
+		requestTypes.put(PoseHistoryQueryMsgModel.typeFieldValue, PoseHistoryQueryMsgModel.class);
+		decoder = new RequestDecoder(requestTypes);
+
+		RuntimeTypeAdapterFactory<RequestMsgModel> requestRuntimeTypeAdapterFactory
+				= RuntimeTypeAdapterFactory.of(RequestMsgModel.class, RequestMsgModel.typeFieldName);
+		for (Map.Entry<String, Class<? extends RequestMsgModel>> entry : requestTypes.entrySet()) {
+			requestRuntimeTypeAdapterFactory.registerSubtype(entry.getValue(), entry.getKey());
+		}
+		gson = new GsonBuilder()
+				.registerTypeAdapterFactory(requestRuntimeTypeAdapterFactory)
+				.create();
+
+		// routing only needs a connection to name, nothing is sent
+		webSocket = (WebSocket) Proxy.newProxyInstance(
+				WebSocket.class.getClassLoader(), new Class<?>[]{WebSocket.class}, (proxy, method, args) -> null);
+	}
+
+	@Benchmark
+	public void decoder() {
+		for (String request : requests) {
+			RequestMsgModel decoded = decoder.decode(request);
+			server.route(webSocket, decoded).handleRequest(webSocket, decoded);
+		}
+	}
+
+	@Benchmark
+	public void gsonRuntimeTypeAdapter() {
+		for (String request : requests) {
+			RequestMsgModel decoded = gson.fromJson(request, RequestMsgModel.class);
+			server.route(webSocket, decoded).handleRequest(webSocket, decoded);
+		}
+	}
+
+	@Benchmark
+	public void batch() {
+		for (JsonElement element : RequestDecoder.splitBatch(batch)) {
+			RequestMsgModel decoded = decoder.decode(element);
+			server.route(webSocket, decoded).handleRequest(webSocket, decoded);
+		}
+	}
+
+	/**
+	 * Channel consuming requests of given types without side effects.
+	 */
+	private static class BenchmarkChannel extends Channel {
+
+		/**
+		 * Number of requests handled, kept so that handling isn't optimized away.
+		 */
+		private long handled = 0;
+
+		/**
+		 * Create channel handling a request type.
+		 *
+		 * @param name name of channel
+		 * @param typeFieldValue value of type field
+		 * @param requestType class of request
+		 */
+		private BenchmarkChannel(String name, String typeFieldValue, Class<? extends RequestMsgModel> requestType) {
+			super(name);
+			registerRequestType(typeFieldValue, requestType);
+		}
+
+		/**
+		 * Handle another request type.
+		 *
+		 * @param typeFieldValue value of type field
+		 * @param requestType class of request
+		 * @return this channel
+		 */
+		private BenchmarkChannel with(String typeFieldValue, Class<? extends RequestMsgModel> requestType) {
+			registerRequestType(typeFieldValue, requestType);
+			return this;
+		}
+
+		@Override
+		public void handleRequest(WebSocket webSocket, RequestMsgModel request) {
+			handled++;
+		}
+
+	}
+
+}
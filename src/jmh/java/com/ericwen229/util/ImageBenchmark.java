@@ -0,0 +1,106 @@
+package com.ericwen229.util;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ros.node.NodeConfiguration;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the video path: conversion of ROS image messages, jpeg encoding, and the whole
+ * frame as the video channel builds it, on synthetic bgr8 images.
+ *
+ * <p>Run with {@code mvn -P jmh compile exec:exec -Djmh.args="ImageBenchmark"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageBenchmark {
+
+	/**
+	 * Size of image, as width x height.
+	 */
+	@Param({"320x240", "640x480", "1920x1080"})
+	public String size;
+
+	/**
+	 * Synthetic image message.
+	 */
+	private sensor_msgs.Image message;
+
+	/**
+	 * Image converted from message, for the jpeg benchmark.
+	 */
+	private BufferedImage image;
+
+	@Setup
+	public void setup() {
+		String[] dimensions = size.split("x");
+		int width = Integer.parseInt(dimensions[0]);
+		int height = Integer.parseInt(dimensions[1]);
+
+		message = NodeConfiguration.newPrivate().getTopicMessageFactory().newFromType(sensor_msgs.Image._TYPE);
+		message.setWidth(width);
+		message.setHeight(height);
+		message.setEncoding("bgr8");
+		message.setStep(width * 3);
+		message.setData(ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN, syntheticPixels(width, height)));
+		image = Image.imageMessageToBufferdImage(message);
+	}
+
+	@Benchmark
+	public BufferedImage imageMessageToBufferedImage() {
+		return Image.imageMessageToBufferdImage(message);
+	}
+
+	@Benchmark
+	public byte[] jpeg() {
+		return Image.bufferedImageToJpeg(image, 0.75f);
+	}
+
+	@Benchmark
+	public String videoFrame() {
+		BufferedImage converted = Image.imageMessageToBufferdImage(message);
+		return Base64.getEncoder().encodeToString(Image.bufferedImageToJpeg(converted, 0.75f));
+	}
+
+	/**
+	 * Make pixels looking enough like a camera frame for jpeg to do real work: smooth
+	 * gradients with some noise.
+	 *
+	 * @param width width of image
+	 * @param height height of image
+	 * @return pixels in bgr8
+	 */
+	private static byte[] syntheticPixels(int width, int height) {
+		Random random = new Random(42);
+		byte[] pixels = new byte[width * height * 3];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int index = (y * width + x) * 3;
+				pixels[index] = (byte) (x * 255 / width + random.nextInt(16));
+				pixels[index + 1] = (byte) (y * 255 / height + random.nextInt(16));
+				pixels[index + 2] = (byte) ((x + y) * 127 / (width + height) + random.nextInt(16));
+			}
+		}
+		return pixels;
+	}
+
+}
@@ -0,0 +1,274 @@
+package com.ericwen229.loadtest;
+
+import geometry_msgs.PoseWithCovarianceStamped;
+import geometry_msgs.Twist;
+import lombok.NonNull;
+import nav_msgs.MapMetaData;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.ros.namespace.GraphName;
+import org.ros.node.AbstractNodeMain;
+import org.ros.node.ConnectedNode;
+import org.ros.node.Node;
+import org.ros.node.topic.Publisher;
+import org.ros.node.topic.Subscriber;
+
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ROS node standing in for a robot: publishes camera frames, map metadata and poses in the
+ * map frame, and listens to teleoperation commands.
+ *
+ * <p>The x coordinate of each pose and the linear speed of each command carry a sequence
+ * number (see {@link SequenceClock}), so that latency through RoverOS can be measured.
+ */
+public class FakeRobot extends AbstractNodeMain {
+
+	/**
+	 * Resolution of map, in meters per cell.
+	 */
+	private static final float mapResolution = 0.05f;
+
+	/**
+	 * Width and height of map, in cells.
+	 */
+	private static final int mapSize = 2000;
+
+	/**
+	 * Width of camera frames.
+	 */
+	private final int imageWidth;
+
+	/**
+	 * Height of camera frames.
+	 */
+	private final int imageHeight;
+
+	/**
+	 * Camera frames published per second.
+	 */
+	private final double frameRate;
+
+	/**
+	 * Poses published per second.
+	 */
+	private final double poseRate;
+
+	/**
+	 * Clock of poses published.
+	 */
+	private final SequenceClock poseClock;
+
+	/**
+	 * Clock of commands sent by clients.
+	 */
+	private final SequenceClock controlClock;
+
+	/**
+	 * Latency from a client sending a command to its publish by RoverOS.
+	 */
+	private final LatencyRecorder controlLatency;
+
+	/**
+	 * Pixels of camera frames, in bgr8.
+	 */
+	private final byte[] pixels;
+
+	/**
+	 * Sequence number of last command received.
+	 */
+	private int lastControlSequence = -1;
+
+	/**
+	 * Number of camera frames published.
+	 */
+	private final AtomicLong framesPublished = new AtomicLong();
+
+	/**
+	 * Number of poses published.
+	 */
+	private final AtomicLong posesPublished = new AtomicLong();
+
+	/**
+	 * Future completed once node is publishing.
+	 */
+	private final CompletableFuture<Void> readyFuture = new CompletableFuture<>();
+
+	/**
+	 * Create robot.
+	 *
+	 * @param imageWidth width of camera frames
+	 * @param imageHeight height of camera frames
+	 * @param frameRate camera frames published per second
+	 * @param poseRate poses published per second
+	 * @param poseClock clock of poses published
+	 * @param controlClock clock of commands sent by clients
+	 * @param controlLatency recorder of command latency
+	 */
+	public FakeRobot(int imageWidth, int imageHeight, double frameRate, double poseRate,
+					 @NonNull SequenceClock poseClock, @NonNull SequenceClock controlClock,
+					 @NonNull LatencyRecorder controlLatency) {
+		this.imageWidth = imageWidth;
+		this.imageHeight = imageHeight;
+		this.frameRate = frameRate;
+		this.poseRate = poseRate;
+		this.poseClock = poseClock;
+		this.controlClock = controlClock;
+		this.controlLatency = controlLatency;
+		this.pixels = syntheticPixels(imageWidth, imageHeight);
+	}
+
+	/**
+	 * Get future completed once node is publishing.
+	 *
+	 * @return future
+	 */
+	public CompletableFuture<Void> whenReady() {
+		return readyFuture;
+	}
+
+	/**
+	 * Get number of camera frames published.
+	 *
+	 * @return number of frames
+	 */
+	public long getFramesPublished() {
+		return framesPublished.get();
+	}
+
+	/**
+	 * Get number of poses published.
+	 *
+	 * @return number of poses
+	 */
+	public long getPosesPublished() {
+		return posesPublished.get();
+	}
+
+	@Override
+	public GraphName getDefaultNodeName() {
+		return GraphName.of("roveros_loadtest_robot");
+	}
+
+	@Override
+	public void onStart(ConnectedNode connectedNode) {
+		Publisher<MapMetaData> mapMetaDataPublisher = connectedNode.newPublisher("/map_metadata", MapMetaData._TYPE);
+		mapMetaDataPublisher.setLatchMode(true);
+		MapMetaData mapMetaData = mapMetaDataPublisher.newMessage();
+		mapMetaData.setResolution(mapResolution);
+		mapMetaData.setWidth(mapSize);
+		mapMetaData.setHeight(mapSize);
+		mapMetaData.getOrigin().getOrientation().setW(1.0);
+		mapMetaDataPublisher.publish(mapMetaData);
+
+		Publisher<sensor_msgs.Image> imagePublisher =
+				connectedNode.newPublisher("/camera/rgb/image_color", sensor_msgs.Image._TYPE);
+		Publisher<PoseWithCovarianceStamped> posePublisher =
+				connectedNode.newPublisher("/amcl_pose", PoseWithCovarianceStamped._TYPE);
+		Subscriber<Twist> controlSubscriber =
+				connectedNode.newSubscriber("/cmd_vel_mux/input/teleop", Twist._TYPE);
+		controlSubscriber.addMessageListener(this::handleControl);
+
+		if (frameRate > 0) {
+			connectedNode.getScheduledExecutorService().scheduleAtFixedRate(
+					() -> publishFrame(connectedNode, imagePublisher),
+					0,
+					(long) (1e9 / frameRate),
+					TimeUnit.NANOSECONDS);
+		}
+		if (poseRate > 0) {
+			connectedNode.getScheduledExecutorService().scheduleAtFixedRate(
+					() -> publishPose(connectedNode, posePublisher),
+					0,
+					(long) (1e9 / poseRate),
+					TimeUnit.NANOSECONDS);
+		}
+		readyFuture.complete(null);
+	}
+
+	@Override
+	public void onError(Node node, Throwable throwable) {
+		readyFuture.completeExceptionally(throwable);
+	}
+
+	/**
+	 * Publish a camera frame.
+	 *
+	 * @param node node publishing
+	 * @param publisher publisher of frames
+	 */
+	private void publishFrame(ConnectedNode node, Publisher<sensor_msgs.Image> publisher) {
+		sensor_msgs.Image msg = publisher.newMessage();
+		msg.getHeader().setStamp(node.getCurrentTime());
+		msg.getHeader().setFrameId("camera_rgb_optical_frame");
+		msg.setWidth(imageWidth);
+		msg.setHeight(imageHeight);
+		msg.setEncoding("bgr8");
+		msg.setStep(imageWidth * 3);
+		msg.setData(ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN, pixels));
+		publisher.publish(msg);
+		framesPublished.incrementAndGet();
+	}
+
+	/**
+	 * Publish a pose in map frame, carrying a sequence number in its x coordinate.
+	 *
+	 * @param node node publishing
+	 * @param publisher publisher of poses
+	 */
+	private void publishPose(ConnectedNode node, Publisher<PoseWithCovarianceStamped> publisher) {
+		PoseWithCovarianceStamped msg = publisher.newMessage();
+		msg.getHeader().setStamp(node.getCurrentTime());
+		msg.getHeader().setFrameId("map");
+		double mapLength = (double) mapResolution * mapSize;
+		msg.getPose().getPose().getPosition().setX(SequenceClock.encode(poseClock.send()) * mapLength);
+		msg.getPose().getPose().getPosition().setY(mapLength / 2.0);
+		msg.getPose().getPose().getOrientation().setW(1.0);
+		publisher.publish(msg);
+		posesPublished.incrementAndGet();
+	}
+
+	/**
+	 * Record latency of a command the first time RoverOS publishes it. RoverOS republishes
+	 * the latest command periodically, later publishes are ignored.
+	 *
+	 * @param msg command published by RoverOS
+	 */
+	private void handleControl(Twist msg) {
+		int sequence = SequenceClock.decode(msg.getLinear().getX());
+		if (sequence == lastControlSequence) {
+			return;
+		}
+		lastControlSequence = sequence;
+		long latency = controlClock.elapsedSince(sequence);
+		if (latency >= 0) {
+			controlLatency.record(latency);
+		}
+	}
+
+	/**
+	 * Make pixels looking enough like a camera frame for jpeg to do real work: smooth
+	 * gradients with some noise.
+	 *
+	 * @param width width of image
+	 * @param height height of image
+	 * @return pixels in bgr8
+	 */
+	private static byte[] syntheticPixels(int width, int height) {
+		Random random = new Random(42);
+		byte[] pixels = new byte[width * height * 3];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int index = (y * width + x) * 3;
+				pixels[index] = (byte) (x * 255 / width + random.nextInt(16));
+				pixels[index + 1] = (byte) (y * 255 / height + random.nextInt(16));
+				pixels[index + 2] = (byte) ((x + y) * 127 / (width + height) + random.nextInt(16));
+			}
+		}
+		return pixels;
+	}
+
+}
@@ -0,0 +1,112 @@
+package com.ericwen229.loadtest;
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Recorder of latencies, keeping every sample so that exact percentiles can be reported.
+ * Samples are only kept while recording.
+ */
+public class LatencyRecorder {
+
+	/**
+	 * Samples in nanoseconds, the first {@code count} being valid.
+	 */
+	private long[] samples = new long[1 << 16];
+
+	/**
+	 * Number of samples recorded.
+	 */
+	private int count = 0;
+
+	/**
+	 * Whether samples are kept.
+	 */
+	private volatile boolean recording = false;
+
+	/**
+	 * Drop samples recorded so far and keep those recorded from now on.
+	 */
+	public synchronized void start() {
+		count = 0;
+		recording = true;
+	}
+
+	/**
+	 * Stop keeping samples.
+	 */
+	public void stop() {
+		recording = false;
+	}
+
+	/**
+	 * Record a sample.
+	 *
+	 * @param nanos latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (!recording) {
+			return;
+		}
+		synchronized (this) {
+			if (count == samples.length) {
+				samples = Arrays.copyOf(samples, samples.length * 2);
+			}
+			samples[count++] = nanos;
+		}
+	}
+
+	/**
+	 * Record time elapsed since a point in time.
+	 *
+	 * @param startNanos point in time, from {@link System#nanoTime()}
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Get number of samples recorded.
+	 *
+	 * @return number of samples
+	 */
+	public synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * Summarize samples recorded.
+	 *
+	 * @param label label of summary
+	 * @return count, p50, p99, p999 and maximum in milliseconds
+	 */
+	public synchronized String summarize(@NonNull String label) {
+		if (count == 0) {
+			return String.format("%-24s no samples", label);
+		}
+		long[] sorted = Arrays.copyOf(samples, count);
+		Arrays.sort(sorted);
+		return String.format(
+				"%-24s n=%-8d p50=%8.3f ms  p99=%8.3f ms  p999=%8.3f ms  max=%8.3f ms",
+				label,
+				count,
+				percentile(sorted, 0.5) / 1e6,
+				percentile(sorted, 0.99) / 1e6,
+				percentile(sorted, 0.999) / 1e6,
+				sorted[sorted.length - 1] / 1e6);
+	}
+
+	/**
+	 * Get percentile of sorted samples, by nearest rank.
+	 *
+	 * @param sorted samples in ascending order, not empty
+	 * @param quantile quantile between 0 and 1
+	 * @return sample at quantile
+	 */
+	private static long percentile(long[] sorted, double quantile) {
+		int rank = (int) Math.ceil(quantile * sorted.length);
+		return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+	}
+
+}
@@ -0,0 +1,338 @@
+package com.ericwen229.loadtest;
+
+import com.ericwen229.ApplicationMain;
+import com.ericwen229.server.ControlChannel;
+import com.ericwen229.server.NavigationChannel;
+import com.ericwen229.server.VideoChannel;
+import org.ros.RosCore;
+import org.ros.node.DefaultNodeMainExecutor;
+import org.ros.node.NodeConfiguration;
+import org.ros.node.NodeMainExecutor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test of RoverOS, run in a single JVM: an in-process ROS master, a fake
+ * robot publishing camera frames, map metadata and poses, RoverOS itself as started by
+ * {@link ApplicationMain}, and simulated clients viewing video and poses or teleoperating
+ * the robot. Reports throughput, latency percentiles and memory once done.
+ *
+ * <p>Options are given as {@code --name=value}: viewers, controllers, duration and warmup
+ * (in seconds), image (width x height), fps, poseRate, controlRate, requestExecutor, and
+ * replay with replaySpeed to replay recorded topics (see {@code TopicRecorder}) in a loop
+ * instead of publishing camera frames and poses from the fake robot.
+ *
+ * <p>Run with {@code mvn -P loadtest compile exec:exec -Dloadtest.args="--viewers=20"}.
+ */
+public class LoadTest {
+
+	/**
+	 * Default value of each option.
+	 */
+	private static final Map<String, String> defaultOptions = new HashMap<>();
+
+	static {
+		defaultOptions.put("viewers", "10");
+		defaultOptions.put("controllers", "2");
+		defaultOptions.put("duration", "30");
+		defaultOptions.put("warmup", "5");
+		defaultOptions.put("image", "640x480");
+		defaultOptions.put("fps", "15");
+		defaultOptions.put("poseRate", "20");
+		defaultOptions.put("controlRate", "10");
+		defaultOptions.put("requestExecutor", "virtual");
+		defaultOptions.put("replay", "");
+		defaultOptions.put("replaySpeed", "1");
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = parseOptions(args);
+		int viewers = Integer.parseInt(options.get("viewers"));
+		int controllers = Integer.parseInt(options.get("controllers"));
+		long durationSeconds = Long.parseLong(options.get("duration"));
+		long warmupSeconds = Long.parseLong(options.get("warmup"));
+		String[] image = options.get("image").split("x");
+		boolean replay = !options.get("replay").isEmpty();
+		double frameRate = replay ? 0 : Double.parseDouble(options.get("fps"));
+		double poseRate = replay ? 0 : Double.parseDouble(options.get("poseRate"));
+		double controlRate = Double.parseDouble(options.get("controlRate"));
+
+		// start ROS master
+		RosCore rosCore = RosCore.newPrivate();
+		rosCore.start();
+		if (!rosCore.awaitStart(30, TimeUnit.SECONDS)) {
+			throw new RuntimeException("RoverOS load test ROS master didn't start");
+		}
+		URI masterURI = rosCore.getUri();
+
+		// start fake robot
+		SequenceClock poseClock = new SequenceClock();
+		SequenceClock controlClock = new SequenceClock();
+		LatencyRecorder poseLatency = new LatencyRecorder();
+		LatencyRecorder controlLatency = new LatencyRecorder();
+		LatencyRecorder frameGap = new LatencyRecorder();
+		FakeRobot robot = new FakeRobot(
+				Integer.parseInt(image[0]),
+				Integer.parseInt(image[1]),
+				frameRate,
+				poseRate,
+				poseClock,
+				controlClock,
+				controlLatency);
+		NodeMainExecutor nodeExecutor = DefaultNodeMainExecutor.newDefault();
+		nodeExecutor.execute(robot, NodeConfiguration.newPrivate(masterURI));
+		robot.whenReady().get(30, TimeUnit.SECONDS);
+
+		// start RoverOS, returning once its servers are started
+		int port = freePort();
+		ApplicationMain.main(new String[]{writeProperties(masterURI, port, options)});
+
+		// connect clients
+		URI serverURI = URI.create("ws://127.0.0.1:" + port);
+		List<SimulatedClient> viewerClients = new ArrayList<>();
+		for (int i = 0; i < viewers; i++) {
+			viewerClients.add(connect(new SimulatedClient(
+					serverURI,
+					Arrays.asList(VideoChannel.channelName, NavigationChannel.poseChannelName),
+					poseClock,
+					poseLatency,
+					frameGap)));
+		}
+		List<SimulatedClient> controllerClients = new ArrayList<>();
+		ScheduledExecutorService controlExecutor = Executors.newSingleThreadScheduledExecutor();
+		for (int i = 0; i < controllers; i++) {
+			SimulatedClient client = connect(new SimulatedClient(
+					serverURI,
+					Collections.singletonList(ControlChannel.channelName),
+					poseClock,
+					poseLatency,
+					frameGap));
+			controllerClients.add(client);
+			if (controlRate > 0) {
+				controlExecutor.scheduleAtFixedRate(
+						() -> client.sendControl(controlClock),
+						(long) (i * 1e9 / controlRate / controllers),
+						(long) (1e9 / controlRate),
+						TimeUnit.NANOSECONDS);
+			}
+		}
+
+		// warm up, then measure
+		Thread.sleep(warmupSeconds * 1000);
+		for (SimulatedClient client : viewerClients) {
+			client.resetCounters();
+		}
+		poseLatency.start();
+		controlLatency.start();
+		frameGap.start();
+		long framesPublishedBefore = robot.getFramesPublished();
+		long posesPublishedBefore = robot.getPosesPublished();
+		long[] gcBefore = gcTotals();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			pool.resetPeakUsage();
+		}
+		long startNanos = System.nanoTime();
+
+		Thread.sleep(durationSeconds * 1000);
+
+		double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+		poseLatency.stop();
+		controlLatency.stop();
+		frameGap.stop();
+		long[] gcAfter = gcTotals();
+
+		// report
+		long messages = 0;
+		long bytes = 0;
+		long minFrames = Long.MAX_VALUE;
+		long totalFrames = 0;
+		for (SimulatedClient client : viewerClients) {
+			messages += client.getMessagesReceived();
+			bytes += client.getBytesReceived();
+			minFrames = Math.min(minFrames, client.getFramesReceived());
+			totalFrames += client.getFramesReceived();
+		}
+		StringBuilder report = new StringBuilder();
+		report.append(String.format(
+				"RoverOS load test: %d viewers, %d controllers, %s image at %s fps, %s poses/s, %.1f s%n",
+				viewers,
+				controllers,
+				options.get("image"),
+				options.get("fps"),
+				options.get("poseRate"),
+				elapsedSeconds));
+		report.append(String.format(
+				"%-24s frames %.1f/s  poses %.1f/s%n",
+				"published by robot",
+				(robot.getFramesPublished() - framesPublishedBefore) / elapsedSeconds,
+				(robot.getPosesPublished() - posesPublishedBefore) / elapsedSeconds));
+		report.append(String.format(
+				"%-24s %.1f msg/s  %.2f MB/s%n",
+				"received by viewers",
+				messages / elapsedSeconds,
+				bytes / elapsedSeconds / 1e6));
+		if (viewers > 0) {
+			report.append(String.format(
+					"%-24s avg %.1f/s  min %.1f/s%n",
+					"frames per viewer",
+					totalFrames / elapsedSeconds / viewers,
+					minFrames / elapsedSeconds));
+		}
+		report.append(poseLatency.summarize("pose latency")).append(System.lineSeparator());
+		report.append(controlLatency.summarize("control latency")).append(System.lineSeparator());
+		report.append(frameGap.summarize("video frame gap")).append(System.lineSeparator());
+		report.append(String.format(
+				"%-24s heap used %.1f MB  peak %.1f MB  gc %d collections, %d ms%n",
+				"memory",
+				ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1e6,
+				peakHeapUsed() / 1e6,
+				gcAfter[0] - gcBefore[0],
+				gcAfter[1] - gcBefore[1]));
+		System.out.print(report);
+
+		for (SimulatedClient client : viewerClients) {
+			client.closeBlocking();
+		}
+		for (SimulatedClient client : controllerClients) {
+			client.closeBlocking();
+		}
+		controlExecutor.shutdownNow();
+		nodeExecutor.shutdown();
+		rosCore.shutdown();
+		System.exit(0);
+	}
+
+	/**
+	 * Parse options given as {@code --name=value}.
+	 *
+	 * @param args command line arguments
+	 * @return value of each option, defaults included
+	 * @throws RuntimeException if an argument isn't a known option
+	 */
+	private static Map<String, String> parseOptions(String[] args) {
+		Map<String, String> options = new HashMap<>(defaultOptions);
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			String name = separator < 0 ? arg : arg.substring(0, separator);
+			if (!name.startsWith("--") || separator < 0 || !defaultOptions.containsKey(name.substring(2))) {
+				throw new RuntimeException(String.format(
+						"Unknown load test option %s, expecting --name=value with name among %s",
+						arg,
+						defaultOptions.keySet()));
+			}
+			options.put(name.substring(2), arg.substring(separator + 1));
+		}
+		return options;
+	}
+
+	/**
+	 * Write RoverOS configuration for the load test to a temporary file.
+	 *
+	 * @param masterURI uri of ROS master
+	 * @param port port of multiplex server
+	 * @param options options of load test
+	 * @return path of file
+	 * @throws IOException if file can't be written
+	 */
+	private static String writeProperties(URI masterURI, int port, Map<String, String> options) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("host", "127.0.0.1");
+		properties.setProperty("masterURI", masterURI.toString());
+		properties.setProperty("serverMode", "multiplex");
+		properties.setProperty("multiplexServerPort", Integer.toString(port));
+		properties.setProperty("requestExecutor", options.get("requestExecutor"));
+		properties.setProperty("mapFrame", "map");
+		properties.setProperty("metricsPort", "0");
+		properties.setProperty("compressionStatsInterval", "0");
+		properties.setProperty("requestExecutorStatsInterval", "0");
+		properties.setProperty("topicRegistryStatsInterval", "0");
+		if (!options.get("replay").isEmpty()) {
+			properties.setProperty("replayFile", options.get("replay"));
+			properties.setProperty("replaySpeed", options.get("replaySpeed"));
+			properties.setProperty("replayLoops", "0");
+		}
+
+		File file = File.createTempFile("roveros-loadtest", ".properties");
+		file.deleteOnExit();
+		try (OutputStream out = new FileOutputStream(file)) {
+			properties.store(out, "RoverOS load test");
+		}
+		return file.getPath();
+	}
+
+	/**
+	 * Connect client, waiting for the connection to open.
+	 *
+	 * @param client client
+	 * @return client connected
+	 * @throws InterruptedException if interrupted while connecting
+	 * @throws RuntimeException if connection can't be opened
+	 */
+	private static SimulatedClient connect(SimulatedClient client) throws InterruptedException {
+		if (!client.connectBlocking(10, TimeUnit.SECONDS)) {
+			throw new RuntimeException("RoverOS load test client can't connect to " + client.getURI());
+		}
+		return client;
+	}
+
+	/**
+	 * Find a free local port.
+	 *
+	 * @return port
+	 * @throws IOException if no port can be bound
+	 */
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	/**
+	 * Get collections and collection time of all garbage collectors.
+	 *
+	 * @return number of collections and collection time in milliseconds
+	 */
+	private static long[] gcTotals() {
+		long[] totals = new long[2];
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			totals[0] += Math.max(0, collector.getCollectionCount());
+			totals[1] += Math.max(0, collector.getCollectionTime());
+		}
+		return totals;
+	}
+
+	/**
+	 * Get peak usage of heap since peaks were reset, summed over heap pools.
+	 *
+	 * @return peak usage in bytes
+	 */
+	private static long peakHeapUsed() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.ericwen229.loadtest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Clock of messages whose sequence number survives the trip through RoverOS, encoded as a
+ * value between 0 and 1 (such as a pose coordinate or a speed). Send time of each sequence
+ * number is kept so that the receiving side can compute latency, both sides living in the
+ * same JVM.
+ */
+public class SequenceClock {
+
+	/**
+	 * Number of sequence numbers before they wrap around.
+	 */
+	private static final int period = 100000;
+
+	/**
+	 * Next sequence number.
+	 */
+	private final AtomicInteger nextSequence = new AtomicInteger();
+
+	/**
+	 * Send time of each sequence number, in nanoseconds.
+	 */
+	private final AtomicLongArray sendNanos = new AtomicLongArray(period);
+
+	/**
+	 * Take next sequence number and mark it sent now.
+	 *
+	 * @return sequence number
+	 */
+	public int send() {
+		int sequence = Math.floorMod(nextSequence.getAndIncrement(), period);
+		sendNanos.set(sequence, System.nanoTime());
+		return sequence;
+	}
+
+	/**
+	 * Get time elapsed since a sequence number was sent.
+	 *
+	 * @param sequence sequence number
+	 * @return elapsed time in nanoseconds, or -1 if sequence number was never sent
+	 */
+	public long elapsedSince(int sequence) {
+		long sent = sendNanos.get(sequence);
+		return sent == 0 ? -1 : System.nanoTime() - sent;
+	}
+
+	/**
+	 * Encode sequence number as a value between 0 and 1.
+	 *
+	 * @param sequence sequence number
+	 * @return encoded value
+	 */
+	public static double encode(int sequence) {
+		return (double) sequence / period;
+	}
+
+	/**
+	 * Decode sequence number from a value encoded by {@link #encode(int)}.
+	 *
+	 * @param value encoded value
+	 * @return sequence number
+	 */
+	public static int decode(double value) {
+		return Math.floorMod((int) Math.round(value * period), period);
+	}
+
+}
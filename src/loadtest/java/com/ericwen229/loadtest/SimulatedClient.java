@@ -0,0 +1,192 @@
+package com.ericwen229.loadtest;
+
+import com.ericwen229.server.ControlChannel;
+import com.ericwen229.server.NavigationChannel;
+import com.ericwen229.server.VideoChannel;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import lombok.NonNull;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Client of the multiplex server speaking json, either viewing video and poses or
+ * teleoperating the robot.
+ */
+public class SimulatedClient extends WebSocketClient {
+
+	/**
+	 * Prefix of messages of video channel.
+	 */
+	private static final String videoPrefix = "{\"channel\":\"" + VideoChannel.channelName + "\"";
+
+	/**
+	 * Prefix of messages of pose channel.
+	 */
+	private static final String posePrefix = "{\"channel\":\"" + NavigationChannel.poseChannelName + "\"";
+
+	/**
+	 * Channels subscribed once connected.
+	 */
+	private final List<String> channels;
+
+	/**
+	 * Clock of poses published by robot.
+	 */
+	private final SequenceClock poseClock;
+
+	/**
+	 * Latency from robot publishing a pose to this client receiving it.
+	 */
+	private final LatencyRecorder poseLatency;
+
+	/**
+	 * Time between two video frames received.
+	 */
+	private final LatencyRecorder frameGap;
+
+	/**
+	 * Time last video frame was received, 0 before the first one.
+	 */
+	private long lastFrameNanos = 0;
+
+	/**
+	 * Number of messages received.
+	 */
+	private final AtomicLong messagesReceived = new AtomicLong();
+
+	/**
+	 * Number of bytes received.
+	 */
+	private final AtomicLong bytesReceived = new AtomicLong();
+
+	/**
+	 * Number of video frames received.
+	 */
+	private final AtomicLong framesReceived = new AtomicLong();
+
+	/**
+	 * Create client, not connected yet.
+	 *
+	 * @param serverURI uri of multiplex server
+	 * @param channels channels subscribed once connected
+	 * @param poseClock clock of poses published by robot
+	 * @param poseLatency recorder of pose latency, shared by clients
+	 * @param frameGap recorder of time between video frames, shared by clients
+	 */
+	public SimulatedClient(@NonNull URI serverURI, @NonNull List<String> channels, @NonNull SequenceClock poseClock,
+						   @NonNull LatencyRecorder poseLatency, @NonNull LatencyRecorder frameGap) {
+		super(serverURI);
+		this.channels = channels;
+		this.poseClock = poseClock;
+		this.poseLatency = poseLatency;
+		this.frameGap = frameGap;
+	}
+
+	/**
+	 * Send a teleoperation command whose linear speed carries a sequence number.
+	 *
+	 * @param controlClock clock of commands sent by clients
+	 */
+	public void sendControl(@NonNull SequenceClock controlClock) {
+		if (!isOpen()) {
+			return;
+		}
+		send(String.format(
+				"{\"type\":\"control\",\"channel\":\"%s\",\"linear\":%s,\"angular\":0}",
+				ControlChannel.channelName,
+				Double.toString(SequenceClock.encode(controlClock.send()))));
+	}
+
+	/**
+	 * Get number of messages received.
+	 *
+	 * @return number of messages
+	 */
+	public long getMessagesReceived() {
+		return messagesReceived.get();
+	}
+
+	/**
+	 * Get number of bytes received.
+	 *
+	 * @return number of bytes
+	 */
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	/**
+	 * Get number of video frames received.
+	 *
+	 * @return number of frames
+	 */
+	public long getFramesReceived() {
+		return framesReceived.get();
+	}
+
+	/**
+	 * Reset counters, at start of measurement.
+	 */
+	public void resetCounters() {
+		messagesReceived.set(0);
+		bytesReceived.set(0);
+		framesReceived.set(0);
+	}
+
+	@Override
+	public void onOpen(ServerHandshake handshake) {
+		StringBuilder request = new StringBuilder("{\"type\":\"subscribe\",\"channels\":[");
+		for (int i = 0; i < channels.size(); i++) {
+			request.append(i == 0 ? "\"" : ",\"").append(channels.get(i)).append('"');
+		}
+		send(request.append("]}").toString());
+	}
+
+	@Override
+	public void onMessage(String message) {
+		long now = System.nanoTime();
+		messagesReceived.incrementAndGet();
+		bytesReceived.addAndGet(message.length());
+		if (message.startsWith(videoPrefix)) {
+			framesReceived.incrementAndGet();
+			if (lastFrameNanos != 0) {
+				frameGap.record(now - lastFrameNanos);
+			}
+			lastFrameNanos = now;
+		}
+		else if (message.startsWith(posePrefix)) {
+			JsonObject pose = new JsonParser().parse(message).getAsJsonObject();
+			long latency = poseClock.elapsedSince(SequenceClock.decode(pose.get("x").getAsDouble()));
+			if (latency >= 0) {
+				poseLatency.record(latency);
+			}
+		}
+	}
+
+	@Override
+	public void onMessage(ByteBuffer bytes) {
+		messagesReceived.incrementAndGet();
+		bytesReceived.addAndGet(bytes.remaining());
+	}
+
+	@Override
+	public void onClose(int code, String reason, boolean remote) {
+		if (remote) {
+			Logger.getGlobal().warning(
+					String.format("RoverOS load test client closed by server: %d %s", code, reason));
+		}
+	}
+
+	@Override
+	public void onError(Exception e) {
+		Logger.getGlobal().warning(String.format("RoverOS load test client error: %s", e));
+	}
+
+}
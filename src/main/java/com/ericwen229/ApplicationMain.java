@@ -1,14 +1,51 @@
 package com.ericwen229;
 
+import com.ericwen229.metrics.MetricsRegistry;
+import com.ericwen229.metrics.MetricsServer;
 import com.ericwen229.node.RoverOSNode;
-import com.ericwen229.server.ControlServer;
-import com.ericwen229.server.NavigationServer;
-import com.ericwen229.server.VideoServer;
-import com.ericwen229.util.PropertiesChecked;
+import com.ericwen229.node.TopicRecorder;
+import com.ericwen229.node.TopicReplayer;
+import com.ericwen229.server.BridgeChannel;
+import com.ericwen229.server.Channel;
+import com.ericwen229.server.ChannelServer;
+import com.ericwen229.server.ChannelWebSocketServer;
+import com.ericwen229.server.ClientLatency;
+import com.ericwen229.server.ControlChannel;
+import com.ericwen229.server.MultiplexServer;
+import com.ericwen229.server.NavigationChannel;
+import com.ericwen229.server.PerMessageDeflateExtension;
+import com.ericwen229.server.PointCloudChannel;
+import com.ericwen229.server.RelayClient;
+import com.ericwen229.server.RequestExecutor;
+import com.ericwen229.server.SharedMemoryRing;
+import com.ericwen229.server.VideoChannel;
+import com.ericwen229.tf.TransformCache;
+import com.ericwen229.tf.TransformListener;
+import com.ericwen229.util.Config;
+import com.ericwen229.util.ConfigAdmin;
+import com.ericwen229.util.LogSite;
+import com.ericwen229.util.PoseHistory;
+import com.ericwen229.util.StartupTimer;
+import com.google.gson.Gson;
 import org.ros.namespace.GraphName;
+import org.java_websocket.extensions.IExtension;
 
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
 
 /**
  * This class is the main entry of RoverOS application.
@@ -21,30 +58,565 @@ public class ApplicationMain {
 			System.exit(-1);
 		}
 
+		// a failed startup would otherwise leave ROS and HTTP threads running, serving nothing
+		List<Runnable> stopActions = new ArrayList<>();
+		try {
+			start(args[0], stopActions);
+		}
+		catch (RuntimeException e) {
+			Logger.getGlobal().severe(String.format("RoverOS startup failed: %s", e.getMessage()));
+			for (int i = stopActions.size() - 1; i >= 0; i--) {
+				try {
+					stopActions.get(i).run();
+				}
+				catch (RuntimeException stopException) {
+					Logger.getGlobal().warning(String.format("RoverOS cannot stop: %s", stopException));
+				}
+			}
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Start RoverOS.
+	 *
+	 * @param propertiesFile path of properties file
+	 * @param stopActions list to which actions stopping what was started are added, in order
+	 * @throws RuntimeException if startup fails
+	 */
+	private static void start(final String propertiesFile, final List<Runnable> stopActions) {
+		StartupTimer startupTimer = new StartupTimer();
+
 		// read configuration
-		PropertiesChecked properties = new PropertiesChecked(args[0]);
-		String host = properties.getPropertyChecked("host");
-		URI masterURI = URI.create(properties.getPropertyChecked("masterURI"));
-
-		// create and run ROS node
-		RoverOSNode node = RoverOSNode.newPublicNode(GraphName.of("roveros"), host, masterURI);
-		node.run();
-		while (!node.ready()) {}
-
-		// create and start navigation server
-		int navigationServerPort = Integer.parseInt(properties.getPropertyChecked("navigationServerPort"));
-		NavigationServer navigationServer = new NavigationServer(node, new InetSocketAddress(navigationServerPort));
-		navigationServer.start();
-
-		// create and start video server
-		int videoServerPort = Integer.parseInt(properties.getPropertyChecked("videoServerPort"));
-		VideoServer videoServer = new VideoServer(node, new InetSocketAddress(videoServerPort));
-		videoServer.start();
-
-		// create and start control server
-		int controlServerPort = Integer.parseInt(properties.getPropertyChecked("controlServerPort"));
-		ControlServer controlServer = new ControlServer(node, new InetSocketAddress(controlServerPort));
-		controlServer.start();
+		Config config = new Config(propertiesFile);
+		long startupTimeout = config.getLong("startupTimeout", 60);
+
+		// rate limit messages logged on hot paths
+		config.tunableInt("logRateLimit", 5, 1, 1000000, LogSite::setMaxPerWindow);
+		config.tunableInt("logRateWindow", 10, 1, 86400, seconds -> LogSite.setWindowMillis(seconds * 1000L));
+
+		// relay channels of an upstream RoverOS instance rather than ROS topics, if configured
+		String relayUpstream = config.getString("relayUpstream", "");
+		RelayClient relayClient = null;
+		if (!relayUpstream.isEmpty()) {
+			relayClient = new RelayClient(
+					URI.create(relayUpstream),
+					new HashSet<>(splitList(config.getString("relayChannels", ""))));
+			relayClient.start();
+			stopActions.add(relayClient::stop);
+		}
+
+		// create and run ROS nodes, which register at master while the rest is set up: a single
+		// node outside of any namespace, or a node per robot of a fleet in its namespace
+		List<String> robotNames = splitList(config.getString("robots", ""));
+		List<RoverOSNode> nodes = new ArrayList<>();
+		if (relayClient != null) {
+			// relays have no ROS node
+			if (!robotNames.isEmpty()) {
+				Logger.getGlobal().warning("RoverOS relays channels of upstream, ignoring robots");
+			}
+		}
+		else if (robotNames.isEmpty()) {
+			String host = config.getStringChecked("host");
+			URI masterURI = URI.create(config.getStringChecked("masterURI"));
+			nodes.add(RoverOSNode.newPublicNode(GraphName.of("roveros"), host, masterURI));
+		}
+		else {
+			String host = config.getStringChecked("host");
+			URI masterURI = URI.create(config.getStringChecked("masterURI"));
+			Set<GraphName> globalTopics = new HashSet<>();
+			for (String topic : splitList(config.getString("robotGlobalTopics", "/tf, /tf_static"))) {
+				globalTopics.add(GraphName.of(topic).toGlobal());
+			}
+			for (String robotName : robotNames) {
+				GraphName namespace = GraphName.of(config.getString("robot." + robotName + ".namespace", robotName));
+				RoverOSNode node = RoverOSNode.newPublicNode(GraphName.of("roveros"), namespace, host, masterURI);
+				node.setGlobalTopics(globalTopics);
+				nodes.add(node);
+			}
+		}
+		for (RoverOSNode node : nodes) {
+			node.run();
+		}
+		if (!nodes.isEmpty()) {
+			stopActions.add(RoverOSNode::shutdownAll);
+		}
+
+		// record messages received on subscribed topics, of all nodes to the same file
+		String recordFile = config.getString("recordFile", "");
+		if (!recordFile.isEmpty()) {
+			long recordMaxSize = config.getLong("recordMaxSize", 1024);
+			TopicRecorder recorder = new TopicRecorder(Paths.get(recordFile), recordMaxSize * 1024 * 1024);
+			for (RoverOSNode node : nodes) {
+				node.setRecorder(recorder);
+			}
+			Runtime.getRuntime().addShutdownHook(new Thread(recorder::close));
+		}
+
+		// serve metrics, including those of startup
+		MetricsRegistry metrics = MetricsRegistry.getGlobal();
+		startupTimer.registerMetrics(metrics);
+		for (RoverOSNode node : nodes) {
+			node.registerMetrics(metrics);
+		}
+		int metricsPort = config.getInt("metricsPort", 2339);
+		MetricsServer metricsServer = null;
+		if (metricsPort > 0) {
+			String metricsHost = config.getString("metricsHost", "127.0.0.1");
+			metricsServer = new MetricsServer(new InetSocketAddress(metricsHost, metricsPort), metrics);
+			metricsServer.start();
+			stopActions.add(metricsServer::stop);
+		}
+
+		// create compression extension shared by servers
+		boolean compressionEnabled = config.getBoolean("compressionEnabled", true);
+		int compressionLevel = config.getInt("compressionLevel", 6);
+		int compressionMinSize = config.getInt("compressionMinSize", 256);
+		long compressionStatsInterval = config.getLong("compressionStatsInterval", 60);
+		IExtension compression = null;
+		if (compressionEnabled) {
+			PerMessageDeflateExtension.Stats compressionStats = new PerMessageDeflateExtension.Stats();
+			compression = new PerMessageDeflateExtension(compressionLevel, compressionMinSize, compressionStats);
+			compressionStats.registerMetrics(metrics);
+			if (compressionStatsInterval > 0) {
+				logPeriodically("compression", compressionStats::toString, compressionStatsInterval * 1000);
+			}
+		}
+
+		// create request executor shared by servers
+		String requestExecutorMode = config.getString("requestExecutor", "virtual");
+		int requestExecutorThreads = config.getInt(
+				"requestExecutorThreads", Runtime.getRuntime().availableProcessors());
+		long requestExecutorStatsInterval = config.getLong("requestExecutorStatsInterval", 60);
+		RequestExecutor requestExecutor;
+		if (requestExecutorMode.equals("virtual")) {
+			requestExecutor = RequestExecutor.newVirtualThreadExecutor(requestExecutorThreads);
+		}
+		else if (requestExecutorMode.equals("pool")) {
+			requestExecutor = RequestExecutor.newPoolExecutor(requestExecutorThreads);
+		}
+		else if (requestExecutorMode.equals("inline")) {
+			requestExecutor = null;
+		}
+		else {
+			throw new RuntimeException("Unknown request executor: " + requestExecutorMode);
+		}
+		if (requestExecutor != null) {
+			requestExecutor.registerMetrics(metrics);
+		}
+		if (requestExecutor != null && requestExecutorStatsInterval > 0) {
+			logPeriodically("request executor", requestExecutor::toString, requestExecutorStatsInterval * 1000);
+		}
+		startupTimer.endPhase("server setup");
+
+		// wait for ROS nodes, needed by channels
+		List<CompletableFuture<Void>> nodeReadies = new ArrayList<>();
+		for (RoverOSNode node : nodes) {
+			nodeReadies.add(node.whenReady());
+		}
+		await(CompletableFuture.allOf(nodeReadies.toArray(new CompletableFuture[0])), startupTimeout, "ROS node registration");
+		startupTimer.endPhase("ROS node registration");
+		if (relayClient != null) {
+			await(relayClient.whenChannelsReady(), startupTimeout, "upstream channel list");
+			startupTimer.endPhase("upstream channel list");
+		}
+		long topicRegistryStatsInterval = config.getLong("topicRegistryStatsInterval", 300);
+		if (topicRegistryStatsInterval > 0 && !nodes.isEmpty()) {
+			logPeriodically("topic registry", () -> {
+				List<String> stats = new ArrayList<>();
+				for (RoverOSNode node : nodes) {
+					stats.add(nodes.size() == 1 ? node.getRegistryStats()
+							: String.format("%s: %s", node.getNamespace(), node.getRegistryStats()));
+				}
+				return String.join("; ", stats);
+			}, topicRegistryStatsInterval * 1000);
+		}
+
+		// create channels of each robot
+		List<String> bridgeNames = splitList(config.getString("bridgeChannels", ""));
+		List<Robot> robots = new ArrayList<>();
+		int transformHistorySize = config.getInt("transformHistorySize", 256);
+		Map<List<GraphName>, TransformCache> transformCaches = new HashMap<>();
+		for (int i = 0; i < nodes.size(); i++) {
+			// robots sharing transform topics (the default in a fleet) share a transform cache
+			RoverOSNode node = nodes.get(i);
+			List<GraphName> transformTopics = Arrays.asList(
+					node.resolve(GraphName.of("/tf")), node.resolve(GraphName.of("/tf_static")));
+			TransformCache transformCache = transformCaches.computeIfAbsent(transformTopics, k -> {
+				TransformCache cache = new TransformCache(transformHistorySize);
+				new TransformListener(node, cache);
+				return cache;
+			});
+			String robotName = robotNames.isEmpty() ? null : robotNames.get(i);
+			robots.add(new Robot(node, robotName, config, bridgeNames, transformCache));
+		}
+
+		// share latest frames and poses with consumers on the same machine, if configured
+		String sharedMemoryDir = config.getString("sharedMemoryDir", "");
+		if (!sharedMemoryDir.isEmpty()) {
+			if (relayClient != null) {
+				Logger.getGlobal().warning("RoverOS relays don't share channels in memory, ignoring sharedMemoryDir");
+			}
+			int slotCount = config.getInt("sharedMemorySlots", 4);
+			int slotLength = config.getInt("sharedMemorySlotSize", 1024) * 1024;
+			boolean sharedMemoryAlwaysWrite = config.getBoolean("sharedMemoryAlwaysWrite", false);
+			for (Robot robot : robots) {
+				for (Channel channel : Arrays.asList(robot.videoChannel, robot.navigationChannel.getPoseChannel())) {
+					SharedMemoryRing ring = new SharedMemoryRing(
+							Paths.get(sharedMemoryDir, channel.getName() + ".ring"),
+							channel.getName(),
+							slotCount,
+							slotLength,
+							sharedMemoryAlwaysWrite);
+					channel.addSink(ring::write, ring::hasReaders);
+				}
+			}
+		}
+
+		// apply tunable settings to channels of all robots
+		config.tunable("videoJpegQuality", 0.75, 0, 1, quality -> {
+			for (Robot robot : robots) {
+				robot.videoChannel.setJpegQuality(quality);
+			}
+		});
+		config.tunable("videoMaxRate", 0, 0, 1000, rate -> {
+			for (Robot robot : robots) {
+				robot.videoChannel.setMaxRate(rate);
+			}
+		});
+		config.tunable("controlRate", 10, 0.1, 1000, rate -> {
+			for (Robot robot : robots) {
+				robot.controlChannel.setPublishRate(rate);
+			}
+		});
+		config.tunable("controlLinearScale", 1, 0, 10, scale -> {
+			for (Robot robot : robots) {
+				robot.controlChannel.setLinearScale(scale);
+			}
+		});
+		config.tunable("controlAngularScale", 1, 0, 10, scale -> {
+			for (Robot robot : robots) {
+				robot.controlChannel.setAngularScale(scale);
+			}
+		});
+		config.tunable("pointCloudMaxRate", 5, 0.01, 1000, rate -> {
+			for (Robot robot : robots) {
+				robot.pointCloudChannel.setMaxRate(rate);
+			}
+		});
+		config.tunableInt("pointCloudPointBudget", 20000, 1, 10000000, budget -> {
+			for (Robot robot : robots) {
+				robot.pointCloudChannel.setPointBudget(budget);
+			}
+		});
+		for (int i = 0; i < bridgeNames.size(); i++) {
+			final int bridgeIndex = i;
+			config.tunable("bridge." + bridgeNames.get(i) + ".maxRate", 0, 0, 1000000, rate -> {
+				for (Robot robot : robots) {
+					robot.bridgeChannels.get(bridgeIndex).setMaxRate(rate);
+				}
+			});
+		}
+		startupTimer.endPhase("channel setup");
+
+		// create servers
+		List<ChannelWebSocketServer> servers = new ArrayList<>();
+		String serverMode = config.getString("serverMode", "multiplex");
+		if (serverMode.equals("multiplex")) {
+			// all channels of all robots, or relayed channels, over a single port
+			int multiplexServerPort = config.getIntChecked("multiplexServerPort");
+			List<Channel> channels = new ArrayList<>();
+			for (Robot robot : robots) {
+				channels.addAll(robot.getChannels());
+			}
+			if (relayClient != null) {
+				channels.addAll(relayClient.getChannels());
+			}
+			servers.add(new MultiplexServer(
+					new InetSocketAddress(multiplexServerPort),
+					compression,
+					requestExecutor,
+					channels.toArray(new Channel[0])));
+		}
+		else if (serverMode.equals("legacy")) {
+			// one port per server
+			if (robots.size() != 1) {
+				throw new RuntimeException("RoverOS serves a fleet of robots or relays in multiplex mode only");
+			}
+			Robot robot = robots.get(0);
+			if (!robot.bridgeChannels.isEmpty()) {
+				Logger.getGlobal().warning("RoverOS bridged topics are only served in multiplex mode");
+			}
+			int navigationServerPort = config.getIntChecked("navigationServerPort");
+			servers.add(new ChannelServer(
+					"navigation",
+					new InetSocketAddress(navigationServerPort),
+					compression,
+					requestExecutor,
+					robot.navigationChannel,
+					robot.navigationChannel.getPoseChannel()));
+
+			int videoServerPort = config.getIntChecked("videoServerPort");
+			servers.add(new ChannelServer(
+					"video",
+					new InetSocketAddress(videoServerPort),
+					compression,
+					requestExecutor,
+					robot.videoChannel));
+
+			int controlServerPort = config.getIntChecked("controlServerPort");
+			servers.add(new ChannelServer(
+					"control",
+					new InetSocketAddress(controlServerPort),
+					compression,
+					requestExecutor,
+					robot.controlChannel));
+
+			int pointCloudServerPort = config.getIntChecked("pointCloudServerPort");
+			servers.add(new ChannelServer(
+					"point cloud",
+					new InetSocketAddress(pointCloudServerPort),
+					compression,
+					requestExecutor,
+					robot.pointCloudChannel));
+		}
+		else {
+			throw new RuntimeException("Unknown server mode: " + serverMode);
+		}
+
+		// ping clients to measure round trip time, and report latency of clients with metrics
+		config.tunableInt("clientPingInterval", 5, 0, 3600, seconds -> {
+			for (ChannelWebSocketServer server : servers) {
+				server.setPingInterval(seconds * 1000L);
+			}
+		});
+		if (metricsServer != null) {
+			Gson gson = new Gson();
+			metricsServer.serve("/clients", "application/json; charset=utf-8", () -> {
+				List<ClientLatency.Report> reports = new ArrayList<>();
+				for (ChannelWebSocketServer server : servers) {
+					reports.addAll(server.reportClientLatencies());
+				}
+				return gson.toJson(reports);
+			});
+		}
+
+		// apply tunable settings changed in properties file or through admin endpoint
+		if (config.getBoolean("configWatch", true)) {
+			config.watch();
+		}
+		String adminToken = config.getString("adminToken", "");
+		if (!adminToken.isEmpty()) {
+			if (metricsServer != null) {
+				metricsServer.route("/config", new ConfigAdmin(config, adminToken));
+			}
+			else {
+				Logger.getGlobal().warning("RoverOS admin endpoint disabled: metrics server is off");
+			}
+		}
+
+		// start servers in parallel
+		List<CompletableFuture<Void>> serverStarts = new ArrayList<>();
+		List<CompletableFuture<Void>> firstConnections = new ArrayList<>();
+		for (ChannelWebSocketServer server : servers) {
+			serverStarts.add(server.whenStarted());
+			firstConnections.add(server.whenFirstConnection());
+			server.start();
+			stopActions.add(() -> {
+				try {
+					server.stop(1000);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		await(CompletableFuture.allOf(serverStarts.toArray(new CompletableFuture[0])), startupTimeout, "server start");
+		startupTimer.endPhase("server start");
+		CompletableFuture.anyOf(firstConnections.toArray(new CompletableFuture[0]))
+				.thenRun(() -> startupTimer.logEvent("first client accepted"));
+
+		// replay recorded messages into channels
+		String replayFile = config.getString("replayFile", "");
+		if (!replayFile.isEmpty()) {
+			double replaySpeed = config.getDouble("replaySpeed", 1);
+			int replayLoops = config.getInt("replayLoops", 1);
+			new TopicReplayer(nodes, Paths.get(replayFile), replaySpeed, replayLoops).start();
+		}
+	}
+
+	/**
+	 * Wait for a startup step to complete.
+	 *
+	 * @param future future of step
+	 * @param timeoutSeconds maximum time to wait, 0 to wait forever
+	 * @param step description of step used in errors
+	 */
+	private static void await(final CompletableFuture<?> future, final long timeoutSeconds, final String step) {
+		try {
+			if (timeoutSeconds > 0) {
+				future.get(timeoutSeconds, TimeUnit.SECONDS);
+			}
+			else {
+				future.get();
+			}
+		} catch (TimeoutException e) {
+			throw new RuntimeException(String.format("RoverOS %s timed out after %d s", step, timeoutSeconds));
+		} catch (ExecutionException e) {
+			throw new RuntimeException(String.format("RoverOS %s failed: %s", step, e.getCause()), e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(String.format("RoverOS %s interrupted", step));
+		}
+	}
+
+	/**
+	 * Log statistics periodically from a daemon thread.
+	 *
+	 * @param label label of statistics in logs
+	 * @param stats supplier of statistics
+	 * @param intervalMillis interval between two adjacent logs
+	 */
+	private static void logPeriodically(final String label, final Supplier<String> stats, final long intervalMillis) {
+		Thread thread = new Thread(() -> {
+			while (!Thread.currentThread().isInterrupted()) {
+				try {
+					Thread.sleep(intervalMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					continue;
+				}
+				Logger.getGlobal().info(String.format("RoverOS %s: %s", label, stats.get()));
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Split a comma-separated list of properties file.
+	 *
+	 * @param list comma-separated list
+	 * @return elements trimmed, empty ones left out
+	 */
+	private static List<String> splitList(final String list) {
+		List<String> elements = new ArrayList<>();
+		for (String element : list.split(",")) {
+			element = element.trim();
+			if (!element.isEmpty()) {
+				elements.add(element);
+			}
+		}
+		return elements;
+	}
+
+	/**
+	 * Channels of a robot, using the ROS node of the robot.
+	 */
+	private static class Robot {
+
+		/**
+		 * Navigation channel.
+		 */
+		private final NavigationChannel navigationChannel;
+
+		/**
+		 * Video channel.
+		 */
+		private final VideoChannel videoChannel;
+
+		/**
+		 * Control channel.
+		 */
+		private final ControlChannel controlChannel;
+
+		/**
+		 * Point cloud channel.
+		 */
+		private final PointCloudChannel pointCloudChannel;
+
+		/**
+		 * Channels bridging configured topics, in order of configuration.
+		 */
+		private final List<BridgeChannel> bridgeChannels = new ArrayList<>();
+
+		/**
+		 * Create channels of a robot.
+		 *
+		 * @param node ROS node of robot, registered at master
+		 * @param robotName name of robot of a fleet, or null for a single robot
+		 * @param config configuration
+		 * @param bridgeNames names of channels bridging topics
+		 * @param transformCache cache of transforms published on the transform topics of robot
+		 */
+		private Robot(final RoverOSNode node, final String robotName, final Config config,
+					  final List<String> bridgeNames, final TransformCache transformCache) {
+			// create navigation channel
+			double waypointArrivalTolerance = config.getDouble("waypointArrivalTolerance", 0.3);
+			int poseHistoryCapacity = config.getInt("poseHistoryCapacity", 36000);
+			String poseHistorySpillFile = config.getString("poseHistorySpillFile", "");
+			if (!node.getNamespace().isRoot() && !poseHistorySpillFile.isEmpty()) {
+				// a spill file per robot of a fleet
+				poseHistorySpillFile += "." + node.getNamespace().toRelative();
+			}
+			int poseHistorySpillCapacity = config.getInt("poseHistorySpillCapacity", 864000);
+			PoseHistory poseHistory = new PoseHistory(
+					poseHistoryCapacity,
+					poseHistorySpillFile.isEmpty() ? null : Paths.get(poseHistorySpillFile),
+					poseHistorySpillCapacity);
+			Runtime.getRuntime().addShutdownHook(new Thread(poseHistory::flush));
+			String mapFrame = config.getString("mapFrame", "map");
+			if (robotName != null) {
+				mapFrame = config.getString("robot." + robotName + ".mapFrame", mapFrame);
+			}
+			navigationChannel = new NavigationChannel(
+					node,
+					waypointArrivalTolerance,
+					poseHistory,
+					transformCache,
+					mapFrame);
+
+			// create video and control channels
+			videoChannel = new VideoChannel(node);
+			controlChannel = new ControlChannel(node);
+
+			// create point cloud channel
+			float pointCloudLeafSize = (float) config.getDouble("pointCloudLeafSize", 0.05);
+			pointCloudChannel = new PointCloudChannel(
+					node,
+					pointCloudLeafSize,
+					config.getDouble("pointCloudMaxRate", 5),
+					config.getInt("pointCloudPointBudget", 20000));
+
+			// create channels bridging configured topics
+			for (String bridgeName : bridgeNames) {
+				String prefix = "bridge." + bridgeName + ".";
+				bridgeChannels.add(new BridgeChannel(
+						node,
+						bridgeName,
+						GraphName.of(config.getStringChecked(prefix + "topic")),
+						config.getStringChecked(prefix + "type"),
+						config.getString(prefix + "direction", BridgeChannel.subscribeDirection),
+						config.getDouble(prefix + "maxRate", 0)));
+			}
+		}
+
+		/**
+		 * Get channels of robot, as served by multiplex server.
+		 *
+		 * @return channels
+		 */
+		private List<Channel> getChannels() {
+			List<Channel> channels = new ArrayList<>(Arrays.asList(
+					controlChannel,
+					navigationChannel,
+					navigationChannel.getPoseChannel(),
+					videoChannel,
+					pointCloudChannel));
+			channels.addAll(bridgeChannels);
+			return channels;
+		}
+
 	}
 
 }
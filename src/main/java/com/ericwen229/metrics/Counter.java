@@ -0,0 +1,45 @@
+package com.ericwen229.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter, a value that only goes up. Increments from many threads don't contend.
+ */
+public class Counter implements MetricsRegistry.Sample {
+
+	/**
+	 * Value of counter.
+	 */
+	private final LongAdder value = new LongAdder();
+
+	/**
+	 * Add one to counter.
+	 */
+	public void increment() {
+		value.increment();
+	}
+
+	/**
+	 * Add to counter.
+	 *
+	 * @param amount amount added, not negative
+	 */
+	public void add(long amount) {
+		value.add(amount);
+	}
+
+	/**
+	 * Get value of counter.
+	 *
+	 * @return value
+	 */
+	public long get() {
+		return value.sum();
+	}
+
+	@Override
+	public void write(StringBuilder out, String name, String labels) {
+		out.append(name).append(labels).append(' ').append(get()).append('\n');
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.ericwen229.metrics;
+
+import lombok.NonNull;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of observations over fixed buckets, such as latencies in seconds.
+ *
+ * <p>Each observation adds one to a single bucket found by a scan of the bucket bounds,
+ * so that recording allocates nothing and doesn't contend. Buckets are only made
+ * cumulative when written out.
+ */
+public class Histogram implements MetricsRegistry.Sample {
+
+	/**
+	 * Upper bounds (in seconds) of buckets suited to latencies, from 100 microseconds to
+	 * 2.5 seconds.
+	 */
+	public static final double[] latencyBuckets = {
+			0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 2.5};
+
+	/**
+	 * Upper bounds of buckets, in increasing order.
+	 */
+	private final double[] bounds;
+
+	/**
+	 * Number of observations in each bucket, the last one for observations above all bounds.
+	 */
+	private final LongAdder[] counts;
+
+	/**
+	 * Sum of observations.
+	 */
+	private final DoubleAdder sum = new DoubleAdder();
+
+	/**
+	 * Create histogram over given buckets.
+	 *
+	 * @param bounds upper bounds of buckets, in increasing order
+	 */
+	public Histogram(@NonNull double[] bounds) {
+		for (int i = 1; i < bounds.length; i++) {
+			if (bounds[i] <= bounds[i - 1]) {
+				throw new RuntimeException("Histogram bucket bounds not increasing");
+			}
+		}
+		this.bounds = bounds.clone();
+		this.counts = new LongAdder[bounds.length + 1];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Record an observation.
+	 *
+	 * @param value value observed
+	 */
+	public void observe(double value) {
+		int i = 0;
+		while (i < bounds.length && value > bounds[i]) {
+			i++;
+		}
+		counts[i].increment();
+		sum.add(value);
+	}
+
+	/**
+	 * Record a duration, in seconds.
+	 *
+	 * @param nanos duration in nanoseconds
+	 */
+	public void observeNanos(long nanos) {
+		observe(nanos / 1e9);
+	}
+
+	/**
+	 * Record time elapsed since a given time, in seconds.
+	 *
+	 * @param startNanos start time from {@link System#nanoTime()}
+	 */
+	public void observeSince(long startNanos) {
+		observeNanos(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Get number of observations.
+	 *
+	 * @return number of observations
+	 */
+	public long getCount() {
+		long count = 0;
+		for (LongAdder bucket : counts) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+
+	@Override
+	public void write(StringBuilder out, String name, String labels) {
+		long cumulative = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulative += counts[i].sum();
+			String bound = i < bounds.length ? MetricsRegistry.formatValue(bounds[i]) : "+Inf";
+			out.append(name).append("_bucket")
+					.append(MetricsRegistry.withLabel(labels, "le", bound))
+					.append(' ').append(cumulative).append('\n');
+		}
+		out.append(name).append("_sum").append(labels).append(' ')
+				.append(MetricsRegistry.formatValue(sum.sum())).append('\n');
+		out.append(name).append("_count").append(labels).append(' ').append(cumulative).append('\n');
+	}
+
+}
@@ -0,0 +1,373 @@
+package com.ericwen229.metrics;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * This class keeps metrics of RoverOS (counters, gauges and histograms) and writes them out
+ * in Prometheus text format.
+ *
+ * <p>Metrics are grouped in families sharing a name, and told apart by their labels, given
+ * as alternating label names and values. Asking twice for a metric of the same name and
+ * labels returns the same metric, so metrics can be looked up where they are recorded
+ * and kept in fields. Gauges read their value only when metrics are written out.
+ */
+public class MetricsRegistry {
+
+	/**
+	 * Registry shared by the whole application.
+	 */
+	private static final MetricsRegistry global = new MetricsRegistry();
+
+	/**
+	 * Valid metric and label names.
+	 */
+	private static final Pattern namePattern = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+	/**
+	 * Metric families, keyed by name.
+	 */
+	private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Get registry shared by the whole application.
+	 *
+	 * @return registry
+	 */
+	public static MetricsRegistry getGlobal() {
+		return global;
+	}
+
+	/**
+	 * Get counter, creating it if it doesn't exist yet.
+	 *
+	 * @param name name of metric
+	 * @param help description of metric
+	 * @param labels alternating label names and values
+	 * @return counter
+	 */
+	public Counter counter(@NonNull String name, @NonNull String help, String... labels) {
+		return (Counter) family(name, help, "counter").samples
+				.computeIfAbsent(formatLabels(labels), k -> new Counter());
+	}
+
+	/**
+	 * Register a counter whose value is read from elsewhere, such as an existing statistic.
+	 * Replaces a counter of the same name and labels.
+	 *
+	 * @param name name of metric
+	 * @param help description of metric
+	 * @param value supplier of value
+	 * @param labels alternating label names and values
+	 */
+	public void counter(@NonNull String name, @NonNull String help, @NonNull DoubleSupplier value,
+						String... labels) {
+		family(name, help, "counter").samples.put(formatLabels(labels), supplied(value));
+	}
+
+	/**
+	 * Register a gauge, a value read when metrics are written out. Replaces a gauge of the
+	 * same name and labels.
+	 *
+	 * @param name name of metric
+	 * @param help description of metric
+	 * @param value supplier of value
+	 * @param labels alternating label names and values
+	 */
+	public void gauge(@NonNull String name, @NonNull String help, @NonNull DoubleSupplier value,
+					  String... labels) {
+		family(name, help, "gauge").samples.put(formatLabels(labels), supplied(value));
+	}
+
+	/**
+	 * Register gauges whose set of label values changes over time, such as one per
+	 * connection. Replaces gauges of the same name.
+	 *
+	 * @param name name of metric
+	 * @param help description of metric
+	 * @param labelName name of label telling gauges apart
+	 * @param values supplier of values, keyed by label value
+	 */
+	public void gauges(@NonNull String name, @NonNull String help, @NonNull String labelName,
+					   @NonNull Supplier<Map<String, ? extends Number>> values) {
+		dynamic(name, help, "gauge", labelName, values);
+	}
+
+	/**
+	 * Register counters whose set of label values changes over time, such as one per
+	 * topic, read from elsewhere. Replaces counters of the same name.
+	 *
+	 * @param name name of metric
+	 * @param help description of metric
+	 * @param labelName name of label telling counters apart
+	 * @param values supplier of values, keyed by label value
+	 */
+	public void counters(@NonNull String name, @NonNull String help, @NonNull String labelName,
+						 @NonNull Supplier<Map<String, ? extends Number>> values) {
+		dynamic(name, help, "counter", labelName, values);
+	}
+
+	/**
+	 * Register samples whose set of label values changes over time.
+	 *
+	 * @param name name of metric
+	 * @param help description of metric
+	 * @param type type of metric
+	 * @param labelName name of label telling samples apart
+	 * @param values supplier of values, keyed by label value
+	 */
+	private void dynamic(@NonNull String name, @NonNull String help, @NonNull String type,
+						 @NonNull String labelName, @NonNull Supplier<Map<String, ? extends Number>> values) {
+		checkName(labelName);
+		family(name, help, type).dynamicSamples = (out, metricName) -> {
+			for (Map.Entry<String, ? extends Number> entry : values.get().entrySet()) {
+				out.append(metricName)
+						.append(formatLabels(labelName, entry.getKey()))
+						.append(' ')
+						.append(formatValue(entry.getValue().doubleValue()))
+						.append('\n');
+			}
+		};
+	}
+
+	/**
+	 * Get histogram, creating it if it doesn't exist yet.
+	 *
+	 * @param name name of metric
+	 * @param help description of metric
+	 * @param bounds upper bounds of buckets, in increasing order, used if histogram is created
+	 * @param labels alternating label names and values
+	 * @return histogram
+	 */
+	public Histogram histogram(@NonNull String name, @NonNull String help, @NonNull double[] bounds,
+							   String... labels) {
+		return (Histogram) family(name, help, "histogram").samples
+				.computeIfAbsent(formatLabels(labels), k -> new Histogram(bounds));
+	}
+
+	/**
+	 * Write out all metrics in Prometheus text format.
+	 *
+	 * @return metrics
+	 */
+	public String scrape() {
+		StringBuilder out = new StringBuilder(4096);
+		for (Family family : families.values()) {
+			out.append("# HELP ").append(family.name).append(' ').append(escapeHelp(family.help)).append('\n');
+			out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+			for (Map.Entry<String, Sample> sample : family.samples.entrySet()) {
+				sample.getValue().write(out, family.name, sample.getKey());
+			}
+			DynamicSamples dynamicSamples = family.dynamicSamples;
+			if (dynamicSamples != null) {
+				dynamicSamples.write(out, family.name);
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Get family of metrics, creating it if it doesn't exist yet.
+	 *
+	 * @param name name of metrics
+	 * @param help description of metrics
+	 * @param type Prometheus type of metrics
+	 * @return family
+	 */
+	private Family family(@NonNull String name, @NonNull String help, @NonNull String type) {
+		Family family = families.computeIfAbsent(name, k -> {
+			checkName(k);
+			return new Family(k, help, type);
+		});
+		if (!family.type.equals(type)) {
+			throw new RuntimeException(
+					String.format("Metric %s already registered as %s, not %s", name, family.type, type));
+		}
+		return family;
+	}
+
+	/**
+	 * Make sample of a value read from elsewhere.
+	 *
+	 * @param value supplier of value
+	 * @return sample
+	 */
+	private static Sample supplied(@NonNull DoubleSupplier value) {
+		return (out, name, labels) ->
+				out.append(name).append(labels).append(' ').append(formatValue(value.getAsDouble())).append('\n');
+	}
+
+	/**
+	 * Check metric or label name.
+	 *
+	 * @param name name
+	 */
+	private static void checkName(@NonNull String name) {
+		if (!namePattern.matcher(name).matches()) {
+			throw new RuntimeException("Invalid metric or label name: " + name);
+		}
+	}
+
+	/**
+	 * Format labels, as written after a metric name.
+	 *
+	 * @param labels alternating label names and values
+	 * @return labels in braces, or empty string if none
+	 */
+	static String formatLabels(String... labels) {
+		if (labels.length % 2 != 0) {
+			throw new RuntimeException("Labels not in name and value pairs");
+		}
+		if (labels.length == 0) {
+			return "";
+		}
+		List<String> pairs = new ArrayList<>(labels.length / 2);
+		for (int i = 0; i < labels.length; i += 2) {
+			checkName(labels[i]);
+			pairs.add(labels[i] + "=\"" + escapeLabelValue(labels[i + 1]) + "\"");
+		}
+		return "{" + String.join(",", pairs) + "}";
+	}
+
+	/**
+	 * Add a label to formatted labels.
+	 *
+	 * @param labels labels in braces, or empty string if none
+	 * @param name name of label added
+	 * @param value value of label added
+	 * @return labels in braces
+	 */
+	static String withLabel(@NonNull String labels, @NonNull String name, @NonNull String value) {
+		String label = name + "=\"" + escapeLabelValue(value) + "\"";
+		if (labels.isEmpty()) {
+			return "{" + label + "}";
+		}
+		return labels.substring(0, labels.length() - 1) + "," + label + "}";
+	}
+
+	/**
+	 * Format value of a sample.
+	 *
+	 * @param value value
+	 * @return value as Prometheus reads it
+	 */
+	static String formatValue(double value) {
+		if (Double.isNaN(value)) {
+			return "NaN";
+		}
+		if (Double.isInfinite(value)) {
+			return value > 0 ? "+Inf" : "-Inf";
+		}
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	/**
+	 * Escape label value.
+	 *
+	 * @param value label value
+	 * @return escaped label value
+	 */
+	private static String escapeLabelValue(String value) {
+		if (value == null) {
+			return "";
+		}
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * Escape help text.
+	 *
+	 * @param help help text
+	 * @return escaped help text
+	 */
+	private static String escapeHelp(@NonNull String help) {
+		return help.replace("\\", "\\\\").replace("\n", "\\n");
+	}
+
+	/**
+	 * Sample of a metric family, written out on its own lines.
+	 */
+	interface Sample {
+
+		/**
+		 * Write sample out.
+		 *
+		 * @param out output
+		 * @param name name of metric
+		 * @param labels labels in braces, or empty string if none
+		 */
+		void write(StringBuilder out, String name, String labels);
+
+	}
+
+	/**
+	 * Samples of a metric family whose labels are only known when written out.
+	 */
+	private interface DynamicSamples {
+
+		/**
+		 * Write samples out.
+		 *
+		 * @param out output
+		 * @param name name of metric
+		 */
+		void write(StringBuilder out, String name);
+
+	}
+
+	/**
+	 * Metrics sharing a name.
+	 */
+	private static class Family {
+
+		/**
+		 * Name of metrics.
+		 */
+		private final String name;
+
+		/**
+		 * Description of metrics.
+		 */
+		private final String help;
+
+		/**
+		 * Prometheus type of metrics.
+		 */
+		private final String type;
+
+		/**
+		 * Samples keyed by formatted labels.
+		 */
+		private final Map<String, Sample> samples = new ConcurrentSkipListMap<>();
+
+		/**
+		 * Samples whose labels are only known when written out, or null if none.
+		 */
+		private volatile DynamicSamples dynamicSamples = null;
+
+		/**
+		 * Create family.
+		 *
+		 * @param name name of metrics
+		 * @param help description of metrics
+		 * @param type Prometheus type of metrics
+		 */
+		private Family(@NonNull String name, @NonNull String help, @NonNull String type) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+
+	}
+
+}
@@ -0,0 +1,125 @@
+package com.ericwen229.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * This class serves metrics of a registry over HTTP at {@code /metrics}, in Prometheus text
+ * format, from a single daemon thread. Other read-only reports, such as latency of clients,
+ * can be served at paths of their own, and other handlers, such as the admin endpoint,
+ * routed to it.
+ */
+public class MetricsServer {
+
+	/**
+	 * Content type of Prometheus text format.
+	 */
+	private static final String metricsContentType = "text/plain; version=0.0.4; charset=utf-8";
+
+	/**
+	 * HTTP server.
+	 */
+	private final HttpServer server;
+
+	/**
+	 * Create server, bound to address but not started yet.
+	 *
+	 * @param address address to which server will listen
+	 * @param registry registry served
+	 */
+	public MetricsServer(@NonNull InetSocketAddress address, @NonNull MetricsRegistry registry) {
+		try {
+			this.server = HttpServer.create(address, 0);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(String.format("Cannot bind metrics server to %s: %s", address, e));
+		}
+		serve("/metrics", metricsContentType, registry::scrape);
+		server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "roveros-metrics");
+			thread.setDaemon(true);
+			return thread;
+		}));
+	}
+
+	/**
+	 * Start serving metrics.
+	 */
+	public void start() {
+		server.start();
+		Logger.getGlobal().info(
+				String.format("RoverOS metrics server starting at %s", server.getAddress()));
+	}
+
+	/**
+	 * Stop serving, such as when startup fails.
+	 */
+	public void stop() {
+		server.stop(0);
+	}
+
+	/**
+	 * Serve a report at a path, generated on each request.
+	 *
+	 * @param path path of report
+	 * @param contentType content type of report
+	 * @param report supplier of report
+	 */
+	public void serve(@NonNull String path, @NonNull String contentType, @NonNull Supplier<String> report) {
+		route(path, exchange -> handle(exchange, contentType, report));
+	}
+
+	/**
+	 * Route requests at a path to a handler, run on the thread of server.
+	 *
+	 * @param path path of handler
+	 * @param handler handler
+	 */
+	public void route(@NonNull String path, @NonNull HttpHandler handler) {
+		server.createContext(path, handler);
+	}
+
+	/**
+	 * Handle request for a report.
+	 *
+	 * @param exchange request and response
+	 * @param contentType content type of report
+	 * @param report supplier of report
+	 * @throws IOException if response can't be sent
+	 */
+	private static void handle(@NonNull HttpExchange exchange, @NonNull String contentType,
+							   @NonNull Supplier<String> report) throws IOException {
+		try {
+			String method = exchange.getRequestMethod();
+			if (!method.equals("GET") && !method.equals("HEAD")) {
+				exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] body = report.get().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+			if (method.equals("HEAD")) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+}
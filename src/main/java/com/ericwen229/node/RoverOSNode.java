@@ -1,46 +1,201 @@
 package com.ericwen229.node;
 
+import com.ericwen229.metrics.MetricsRegistry;
+import com.ericwen229.util.LogSite;
 import lombok.NonNull;
 import org.ros.internal.message.Message;
+import org.ros.message.MessageListener;
 import org.ros.message.Time;
 import org.ros.namespace.GraphName;
 import org.ros.node.*;
 import org.ros.node.topic.Publisher;
+import org.ros.node.topic.PublisherListener;
 import org.ros.node.topic.Subscriber;
+import org.ros.node.topic.SubscriberListener;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This class implements an ROS node. Most of its functionality is quite basic, except that
  * it provides methods of creating publishers/subscribers.
+ *
+ * <p>Publishers and subscribers are kept in a registry and shared per topic: asking twice
+ * for the same topic returns the same publisher or subscriber, which is only shut down
+ * once every user has released it.
+ *
+ * <p>Once registered, the node watches the master. When the master goes away, publishing
+ * fails with a clear error instead of silently going nowhere. When the node shuts down
+ * or the master restarts (telling by its run ID), the node registers again with backoff,
+ * and publishers and subscribers handed out are rebound to the new node, keeping their
+ * message listeners, so their users carry on unaware.
+ *
+ * <p>Messages received by subscribers can be recorded (see {@link TopicRecorder}) and
+ * replayed into the same message listeners (see {@link TopicReplayer}).
+ *
+ * <p>A node can live in the namespace of a robot, so that a process serves a fleet of
+ * robots with a node each: the node is named and its topics are resolved in the namespace,
+ * except for topics shared by the fleet, such as {@code /tf}. Nodes share the executor of
+ * rosjava and a single thread watching the master.
  */
 public class RoverOSNode implements NodeMain {
 
     /**
-     * Name of the ROS node.
+     * Name of the ROS node, in its namespace.
      */
     private final GraphName nodeName;
 
+    /**
+     * Namespace of the ROS node and its topics, root for none.
+     */
+    private final GraphName namespace;
+
+    /**
+     * Topics left out of namespace.
+     */
+    private volatile Set<GraphName> globalTopics = Collections.emptySet();
+
     /**
      * Configuration of the ROS node (host address, URI of master, accessibility, etc.).
      */
     private final NodeConfiguration nodeConfig;
 
+    /**
+     * URI of master.
+     */
+    private final URI masterURI;
+
+    /**
+     * Interval between two checks of master.
+     */
+    private static final long masterCheckIntervalMillis = 2000;
+
+    /**
+     * Delay before first attempt to register again, doubled after each failed attempt.
+     */
+    private static final long minRegisterBackoffMillis = 1000;
+
+    /**
+     * Maximum delay between two attempts to register again.
+     */
+    private static final long maxRegisterBackoffMillis = 30000;
+
     /**
      * Executor of the ROS node (shared among all instances).
      */
     private static final NodeMainExecutor nodeExecutor = DefaultNodeMainExecutor.newDefault();
 
+    /**
+     * Thread watching the master for all instances.
+     */
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "roveros-master-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Instances whose metrics are registered, sharing the gauges of messages received.
+     */
+    private static final List<RoverOSNode> metricNodes = new CopyOnWriteArrayList<>();
+
+    /**
+     * Log of errors of the ROS node.
+     */
+    private static final LogSite nodeErrorLog = LogSite.of(
+            "node.error", Level.SEVERE, "RoverOS node %s error: %s");
+
+    /**
+     * Log of attempts to register again, repeated while the master is away.
+     */
+    private static final LogSite registerAgainLog = LogSite.of(
+            "node.registerAgain",
+            Level.INFO,
+            "RoverOS node %s registering again at ROS master %s (next attempt in %d ms)");
+
+    /**
+     * Log of failed attempts to register again.
+     */
+    private static final LogSite registerAgainFailedLog = LogSite.of(
+            "node.registerAgainFailed", Level.WARNING, "RoverOS node %s failed to register again: %s");
+
     /**
      * Node that has connected to master (as the factory of publishers and subscribers).
      */
-    private ConnectedNode connectedNode = null;
+    private volatile ConnectedNode connectedNode = null;
+
+    /**
+     * Future completed once the node has registered at the master, renewed when the node
+     * shuts down.
+     */
+    private volatile CompletableFuture<Void> readyFuture = new CompletableFuture<>();
+
+    /**
+     * True once the node has registered at the master for the first time.
+     */
+    private volatile boolean registeredOnce = false;
+
+    /**
+     * True while the master answers the node.
+     */
+    private volatile boolean masterAvailable = false;
+
+    /**
+     * Run ID of master last answering the node, or null. Only used by watchdog.
+     */
+    private String masterRunId = null;
+
+    /**
+     * Delay before next attempt to register again. Only used by watchdog.
+     */
+    private long registerBackoffMillis = minRegisterBackoffMillis;
+
+    /**
+     * Time of next attempt to register again, from {@link System#nanoTime()}. Only used by
+     * watchdog.
+     */
+    private long nextRegisterNanos = System.nanoTime();
 
     /**
-     * Mutex of connected node.
+     * Topic type names (value of static field _TYPE), keyed by type object.
      */
-    private final Object connectedNodeMutex = new Object();
+    private static final Map<Class<?>, String> topicTypeStrs = new ConcurrentHashMap<>();
+
+    /**
+     * True on a thread while it delivers replayed messages, which are not recorded again.
+     */
+    private static final ThreadLocal<Boolean> isReplaying = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * Publishers created, keyed by topic name.
+     */
+    private final Map<GraphName, Registration<Publisher<?>>> publishers = new ConcurrentHashMap<>();
+
+    /**
+     * Subscribers created, keyed by topic name.
+     */
+    private final Map<GraphName, Registration<Subscriber<?>>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * Recorder of messages received on subscribed topics, null when not recording.
+     */
+    private volatile TopicRecorder recorder = null;
 
     /**
      * Create an ROS node that is publicly accessible.
@@ -51,7 +206,21 @@ public class RoverOSNode implements NodeMain {
      * @return newly created public node
      */
     public static RoverOSNode newPublicNode(GraphName nodeName, @NonNull String host, @NonNull URI masterURI) {
-        return new RoverOSNode(nodeName, host, masterURI, false);
+        return new RoverOSNode(nodeName, GraphName.root(), host, masterURI, false);
+    }
+
+    /**
+     * Create an ROS node that is publicly accessible, in the namespace of a robot.
+     *
+     * @param nodeName name of node, relative to namespace
+     * @param namespace namespace of node and its topics, such as {@code /turtle1}
+     * @param host host address of node
+     * @param masterURI URI of master
+     * @return newly created public node
+     */
+    public static RoverOSNode newPublicNode(@NonNull GraphName nodeName, @NonNull GraphName namespace,
+                                            @NonNull String host, @NonNull URI masterURI) {
+        return new RoverOSNode(nodeName, namespace, host, masterURI, false);
     }
 
     /**
@@ -62,19 +231,23 @@ public class RoverOSNode implements NodeMain {
      * @return newly created private node
      */
     public static RoverOSNode newPrivateNode(@NonNull GraphName nodeName, @NonNull URI masterURI) {
-        return new RoverOSNode(nodeName, null, masterURI, true);
+        return new RoverOSNode(nodeName, GraphName.root(), null, masterURI, true);
     }
 
     /**
      * Construct an ROS node (public or private).
      *
      * @param nodeName name of node
+     * @param namespace namespace of node and its topics
      * @param host host address of node
      * @param masterURI URI of master
      * @param isLocalhostOnly true if the node is only locally accessible
      */
-    private RoverOSNode(@NonNull GraphName nodeName, String host, URI masterURI, boolean isLocalhostOnly) {
-        this.nodeName = nodeName;
+    private RoverOSNode(@NonNull GraphName nodeName, @NonNull GraphName namespace, String host, URI masterURI,
+                        boolean isLocalhostOnly) {
+        this.namespace = namespace.toGlobal();
+        this.nodeName = this.namespace.join(nodeName);
+        this.masterURI = masterURI;
         if (!isLocalhostOnly) {
             this.nodeConfig = NodeConfiguration.newPublic(host, masterURI);
         }
@@ -88,6 +261,56 @@ public class RoverOSNode implements NodeMain {
      */
     public void run() {
         nodeExecutor.execute(this, nodeConfig);
+        watchdog.scheduleWithFixedDelay(() -> {
+            // an exception would cancel later checks
+            try {
+                checkMaster();
+            }
+            catch (RuntimeException e) {
+                nodeErrorLog.log(nodeName, e);
+            }
+        }, masterCheckIntervalMillis, masterCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Shut down all ROS nodes and the executor of rosjava, whose threads would otherwise keep
+     * the process alive, such as when startup fails.
+     */
+    public static void shutdownAll() {
+        watchdog.shutdownNow();
+        nodeExecutor.shutdown();
+    }
+
+    /**
+     * Get namespace of the ROS node and its topics.
+     *
+     * @return namespace, root for none
+     */
+    public GraphName getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Leave topics out of namespace, such as topics shared by a fleet of robots. Applies to
+     * publishers and subscribers created afterwards.
+     *
+     * @param topicNames global names of topics
+     */
+    public void setGlobalTopics(@NonNull Set<GraphName> topicNames) {
+        this.globalTopics = Collections.unmodifiableSet(new HashSet<>(topicNames));
+    }
+
+    /**
+     * Resolve name of topic in namespace of the ROS node.
+     *
+     * @param topicName name of topic, relative or global
+     * @return global name of topic
+     */
+    public GraphName resolve(@NonNull GraphName topicName) {
+        if (namespace.isRoot() || globalTopics.contains(topicName.toGlobal())) {
+            return topicName.toGlobal();
+        }
+        return namespace.join(topicName.toRelative());
     }
 
     /**
@@ -96,45 +319,249 @@ public class RoverOSNode implements NodeMain {
      * @return true if node has successfully registered at the master
      */
     public boolean ready() {
-        synchronized (connectedNodeMutex) {
-            return this.connectedNode != null;
-        }
+        return this.connectedNode != null;
+    }
+
+    /**
+     * Check whether the ROS node is registered at a master answering it. Messages published
+     * while it isn't are rejected.
+     *
+     * @return true if master is available
+     */
+    public boolean isMasterAvailable() {
+        return this.connectedNode != null && masterAvailable;
+    }
+
+    /**
+     * Get a future completed once the ROS node has successfully registered at the master.
+     * The future fails if the node shuts down or fails before registering for the first
+     * time. Later, while the node registers again, it waits for the new registration.
+     *
+     * @return future of registration
+     */
+    public CompletableFuture<Void> whenReady() {
+        return readyFuture.thenApply(v -> v);
     }
 
     /**
-     * Create a publisher on topic.
+     * Get a publisher on topic, resolved in namespace, creating it if no publisher exists on
+     * topic yet. Each call must be matched by a call to {@link #releasePublisher(Publisher)} once the publisher
+     * is no longer used.
      *
      * @param topicName name of topic
      * @param topicTypeObject type object of topic
      * @param <T> type of topic
-     * @return newly created publisher
+     * @return publisher
      */
+    @SuppressWarnings("unchecked")
     public <T extends Message> Publisher<T>
     publishOnTopic(@NonNull GraphName topicName, @NonNull Class<T> topicTypeObject) {
-        if (!ready()) {
-            throw new RuntimeException("RoverOSNode not ready yet");
-        }
-        synchronized (connectedNodeMutex) {
-            return connectedNode.newPublisher(topicName, topicTypeObjectToTopicTypeStr(topicTypeObject));
-        }
+        final ConnectedNode node = getConnectedNode();
+        final String topicTypeStr = topicTypeObjectToTopicTypeStr(topicTypeObject);
+        Registration<Publisher<?>> registration = publishers.compute(resolve(topicName), (name, existing) -> {
+            if (existing == null) {
+                return new Registration<Publisher<?>>(Publisher.class, name, topicTypeStr, node);
+            }
+            existing.retain(topicTypeStr, name);
+            return existing;
+        });
+        return (Publisher<T>) registration.topicObject;
     }
 
     /**
-     * Create a subscriber on topic.
+     * Get a subscriber on topic, resolved in namespace, creating it if no subscriber exists
+     * on topic yet. Each call must be matched by a call to {@link #releaseSubscriber(Subscriber)} once the
+     * subscriber is no longer used.
      *
      * @param topicName name of topic
      * @param topicTypeObject type object of topic
      * @param <T> type of topic
-     * @return newly created subscriber
+     * @return subscriber
      */
+    @SuppressWarnings("unchecked")
     public <T extends Message> Subscriber<T>
     subscribeToTopic(@NonNull GraphName topicName, @NonNull Class<T> topicTypeObject) {
-        if (!ready()) {
-            throw new RuntimeException("RoverOSNode not ready yet");
+        final ConnectedNode node = getConnectedNode();
+        final String topicTypeStr = topicTypeObjectToTopicTypeStr(topicTypeObject);
+        Registration<Subscriber<?>> registration = subscribers.compute(resolve(topicName), (name, existing) -> {
+            if (existing == null) {
+                Registration<Subscriber<?>> created
+                        = new Registration<Subscriber<?>>(Subscriber.class, name, topicTypeStr, node);
+                ((Subscriber<T>) created.topicObject).addMessageListener(message -> {
+                    created.messageCount.increment();
+                    TopicRecorder topicRecorder = recorder;
+                    if (topicRecorder != null && !isReplaying.get()) {
+                        topicRecorder.record(name, topicTypeStr, message);
+                    }
+                });
+                return created;
+            }
+            existing.retain(topicTypeStr, name);
+            return existing;
+        });
+        return (Subscriber<T>) registration.topicObject;
+    }
+
+    /**
+     * Create a message, such as an element of an array of messages, outside of a publisher.
+     *
+     * @param topicTypeObject type object of message
+     * @param <T> type of message
+     * @return newly created message
+     */
+    public <T extends Message> T newMessage(@NonNull Class<T> topicTypeObject) {
+        return getConnectedNode().getTopicMessageFactory().newFromType(topicTypeObjectToTopicTypeStr(topicTypeObject));
+    }
+
+    /**
+     * Release a publisher obtained from {@link #publishOnTopic(GraphName, Class)}. The
+     * publisher is shut down once all its users have released it.
+     *
+     * @param publisher publisher
+     */
+    public void releasePublisher(@NonNull Publisher<?> publisher) {
+        Registration<Publisher<?>> registration = release(publishers, publisher.getTopicName(), publisher);
+        if (registration != null) {
+            publisher.shutdown();
+        }
+    }
+
+    /**
+     * Release a subscriber obtained from {@link #subscribeToTopic(GraphName, Class)}. Users
+     * should remove their message listeners first. The subscriber is shut down once all its
+     * users have released it.
+     *
+     * @param subscriber subscriber
+     */
+    public void releaseSubscriber(@NonNull Subscriber<?> subscriber) {
+        Registration<Subscriber<?>> registration = release(subscribers, subscriber.getTopicName(), subscriber);
+        if (registration != null) {
+            subscriber.shutdown();
+        }
+    }
+
+    /**
+     * Record messages received on subscribed topics, from now on.
+     *
+     * @param recorder recorder, or null to stop recording
+     */
+    public void setRecorder(TopicRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Deliver a message to the message listeners of the subscriber on topic, as if it had
+     * been received from the topic. Used to replay recorded messages, which are counted as
+     * received but not recorded again.
+     *
+     * @param topicName global name of topic
+     * @param topicTypeStr type name of message
+     * @param message message
+     * @return true if delivered, false if there is no subscriber of that type on topic
+     */
+    public boolean deliver(@NonNull GraphName topicName, @NonNull String topicTypeStr, @NonNull Object message) {
+        Registration<Subscriber<?>> registration = subscribers.get(topicName);
+        if (registration == null || !registration.topicTypeStr.equals(topicTypeStr)) {
+            return false;
+        }
+        isReplaying.set(true);
+        try {
+            registration.deliver(message);
+        }
+        finally {
+            isReplaying.set(false);
+        }
+        return true;
+    }
+
+    /**
+     * Get number of publishers in registry.
+     *
+     * @return number of publishers
+     */
+    public int getPublisherCount() {
+        return publishers.size();
+    }
+
+    /**
+     * Get number of subscribers in registry.
+     *
+     * @return number of subscribers
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Register state of node and of its registry as metrics, labelled with the node name if
+     * it lives in a namespace. Messages received are counted per topic, summed over all
+     * nodes registered.
+     *
+     * @param metrics registry of metrics
+     */
+    public void registerMetrics(@NonNull MetricsRegistry metrics) {
+        String[] labels = namespace.isRoot() ? new String[0] : new String[]{"node", nodeName.toString()};
+        metrics.gauge("roveros_ros_master_available", "Whether ROS master answers the node (1) or not (0)",
+                () -> isMasterAvailable() ? 1 : 0, labels);
+        metrics.gauge("roveros_ros_publishers", "Publishers in registry", this::getPublisherCount, labels);
+        metrics.gauge("roveros_ros_subscribers", "Subscribers in registry", this::getSubscriberCount, labels);
+        metricNodes.add(this);
+        if (metricNodes.size() > 1) {
+            // counter of messages received already registered by the first node
+            return;
+        }
+        metrics.counters("roveros_ros_messages_received_total", "Messages received per subscribed topic", "topic",
+                () -> {
+                    Map<String, Long> counts = new TreeMap<>();
+                    for (RoverOSNode node : metricNodes) {
+                        for (Map.Entry<String, Long> entry : node.getMessagesReceived().entrySet()) {
+                            // topics shared by a fleet, such as /tf, may be subscribed by several nodes
+                            counts.merge(entry.getKey(), entry.getValue(), Long::sum);
+                        }
+                    }
+                    return counts;
+                });
+    }
+
+    /**
+     * Get number of messages received per subscribed topic.
+     *
+     * @return number of messages keyed by topic name
+     */
+    public Map<String, Long> getMessagesReceived() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<GraphName, Registration<Subscriber<?>>> entry : subscribers.entrySet()) {
+            counts.put(entry.getKey().toString(), entry.getValue().messageCount.sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Describe registry: for each topic, its type, number of users and connections or
+     * messages received.
+     *
+     * @return description of registry
+     */
+    public String getRegistryStats() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%d publishers, %d subscribers", publishers.size(), subscribers.size()));
+        for (Map.Entry<GraphName, Registration<Publisher<?>>> entry : publishers.entrySet()) {
+            builder.append(String.format(
+                    "; publisher %s (%s): %d users, %d subscribers connected",
+                    entry.getKey(),
+                    entry.getValue().topicTypeStr,
+                    entry.getValue().refCount,
+                    ((Publisher<?>) entry.getValue().topicObject).getNumberOfSubscribers()));
         }
-        synchronized (connectedNodeMutex) {
-            return connectedNode.newSubscriber(topicName, topicTypeObjectToTopicTypeStr(topicTypeObject));
+        for (Map.Entry<GraphName, Registration<Subscriber<?>>> entry : subscribers.entrySet()) {
+            builder.append(String.format(
+                    "; subscriber %s (%s): %d users, %d messages received",
+                    entry.getKey(),
+                    entry.getValue().topicTypeStr,
+                    entry.getValue().refCount,
+                    entry.getValue().messageCount.sum()));
         }
+        return builder.toString();
     }
 
     // ========================
@@ -150,18 +577,27 @@ public class RoverOSNode implements NodeMain {
     public void onStart(ConnectedNode connectedNode) {
         Logger.getGlobal().info(
                 String.format("RoverOS node %s starting", nodeName));
-        synchronized (connectedNodeMutex) {
-            this.connectedNode = connectedNode;
+        this.connectedNode = connectedNode;
+        this.masterAvailable = true;
+        if (registeredOnce) {
+            // registered again: move publishers and subscribers handed out to the new node
+            for (Registration<Publisher<?>> registration : publishers.values()) {
+                registration.bind(connectedNode);
+            }
+            for (Registration<Subscriber<?>> registration : subscribers.values()) {
+                registration.bind(connectedNode);
+            }
         }
+        registeredOnce = true;
+        readyFuture.complete(null);
     }
 
     @Override
     public void onShutdown(Node node) {
         Logger.getGlobal().info(
                 String.format("RoverOS node %s shutting down", nodeName));
-        synchronized (connectedNodeMutex) {
-            this.connectedNode = null;
-        }
+        // publishers and subscribers are kept, to be rebound once the node registers again
+        disconnect(node, new RuntimeException(String.format("RoverOS node %s shut down", nodeName)));
     }
 
     @Override
@@ -172,11 +608,8 @@ public class RoverOSNode implements NodeMain {
 
     @Override
     public void onError(Node node, Throwable throwable) {
-        Logger.getGlobal().severe(
-                String.format("RoverOS node %s error: %s", nodeName, throwable.getClass()));
-        synchronized (connectedNodeMutex) {
-            this.connectedNode = null;
-        }
+        nodeErrorLog.log(nodeName, throwable.getClass());
+        disconnect(node, throwable);
     }
 
     // =====
@@ -184,12 +617,149 @@ public class RoverOSNode implements NodeMain {
     // =====
 
     /**
-     * Retrieve value of the static field _TYPE using reflection.
+     * Get node connected to master.
+     *
+     * @return connected node
+     */
+    private ConnectedNode getConnectedNode() {
+        ConnectedNode node = this.connectedNode;
+        if (node == null) {
+            throw new RuntimeException("RoverOSNode not registered at ROS master");
+        }
+        return node;
+    }
+
+    /**
+     * Forget node stopped, unless it was already replaced by a new one. Future of
+     * registration fails if node never registered, or is replaced with a new one for the
+     * next registration otherwise.
+     *
+     * @param node node stopped
+     * @param cause reason node stopped
+     */
+    private synchronized void disconnect(@NonNull Node node, @NonNull Throwable cause) {
+        if (!registeredOnce) {
+            this.connectedNode = null;
+            readyFuture.completeExceptionally(cause);
+            return;
+        }
+        if (node != this.connectedNode) {
+            return;
+        }
+        this.connectedNode = null;
+        if (readyFuture.isDone()) {
+            readyFuture = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * Check master once the node has registered, and register again when the node is gone
+     * or the master restarted. Runs periodically on the watchdog thread.
+     */
+    private void checkMaster() {
+        if (!registeredOnce) {
+            // first registration is waited for by users of whenReady
+            return;
+        }
+
+        ConnectedNode node = this.connectedNode;
+        String runId = node == null ? null : readMasterRunId(node);
+        if (runId != null && (masterRunId == null || runId.equals(masterRunId))) {
+            if (!masterAvailable) {
+                Logger.getGlobal().info(
+                        String.format("RoverOS node %s reached ROS master at %s again", nodeName, masterURI));
+            }
+            masterRunId = runId;
+            masterAvailable = true;
+            registerBackoffMillis = minRegisterBackoffMillis;
+            return;
+        }
+
+        if (masterAvailable) {
+            Logger.getGlobal().warning(
+                    String.format("RoverOS node %s lost ROS master at %s", nodeName, masterURI));
+            masterAvailable = false;
+        }
+        // master down with node still there: wait for it to come back
+        if (node != null && runId == null) {
+            return;
+        }
+        // node gone, or master restarted and no longer knows node: register again
+        if (System.nanoTime() - nextRegisterNanos < 0) {
+            return;
+        }
+        registerAgainLog.log(nodeName, masterURI, registerBackoffMillis);
+        masterRunId = null;
+        nextRegisterNanos = System.nanoTime() + registerBackoffMillis * 1000000;
+        registerBackoffMillis = Math.min(registerBackoffMillis * 2, maxRegisterBackoffMillis);
+        try {
+            nodeExecutor.shutdownNodeMain(this);
+            nodeExecutor.execute(this, nodeConfig);
+        }
+        catch (RuntimeException e) {
+            registerAgainFailedLog.log(nodeName, e);
+        }
+    }
+
+    /**
+     * Read run ID of master, which changes each time master restarts.
+     *
+     * @param node node connected to master
+     * @return run ID, or null if master doesn't answer
+     */
+    private static String readMasterRunId(@NonNull ConnectedNode node) {
+        try {
+            return node.getParameterTree().getString("/run_id", "");
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Release a publisher or subscriber of registry.
+     *
+     * @param registry registry
+     * @param topicName name of topic
+     * @param topicObject publisher or subscriber
+     * @param <T> type of publisher or subscriber
+     * @return registration removed from registry if this was the last user, or null
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Registration<T> release(@NonNull Map<GraphName, Registration<T>> registry,
+                                               @NonNull GraphName topicName, @NonNull Object topicObject) {
+        final Registration<T>[] removed = new Registration[1];
+        registry.computeIfPresent(topicName, (name, existing) -> {
+            if (existing.topicObject != topicObject) {
+                return existing;
+            }
+            existing.refCount--;
+            if (existing.refCount > 0) {
+                return existing;
+            }
+            removed[0] = existing;
+            return null;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Retrieve value of the static field _TYPE, using reflection on first use of a type.
      *
      * @param topicTypeObject type object of topic
      * @return value of the static field _TYPE
      */
-    private String topicTypeObjectToTopicTypeStr(@NonNull Class topicTypeObject) {
+    private static String topicTypeObjectToTopicTypeStr(@NonNull Class<?> topicTypeObject) {
+        return topicTypeStrs.computeIfAbsent(topicTypeObject, RoverOSNode::readTopicTypeStr);
+    }
+
+    /**
+     * Read value of the static field _TYPE using reflection.
+     *
+     * @param topicTypeObject type object of topic
+     * @return value of the static field _TYPE
+     */
+    private static String readTopicTypeStr(@NonNull Class<?> topicTypeObject) {
         try {
             return (String)topicTypeObject.getField("_TYPE").get(null);
         }
@@ -211,4 +781,307 @@ public class RoverOSNode implements NodeMain {
     public Time getCurrentTime() {
         return nodeConfig.getTimeProvider().getCurrentTime();
     }
+
+    /**
+     * Publisher or subscriber of registry, shared by its users.
+     *
+     * <p>Users are handed a wrapper delegating to the publisher or subscriber itself, so that
+     * it can be rebound to a new node after the node registers again. The wrapper remembers
+     * message listeners added through it to add them again on rebinding, and rejects
+     * publishing while the master is unavailable.
+     *
+     * @param <T> type of publisher or subscriber
+     */
+    private class Registration<T> {
+
+        /**
+         * Wrapper handed to users.
+         */
+        private final T topicObject;
+
+        /**
+         * Type of wrapper, {@link Publisher} or {@link Subscriber}.
+         */
+        private final Class<?> topicObjectType;
+
+        /**
+         * Name of topic.
+         */
+        private final GraphName topicName;
+
+        /**
+         * Type name of topic.
+         */
+        private final String topicTypeStr;
+
+        /**
+         * Publisher or subscriber of node currently bound.
+         */
+        private volatile Object target;
+
+        /**
+         * Node currently bound.
+         */
+        private volatile ConnectedNode boundNode;
+
+        /**
+         * Message listeners added through wrapper, with their queue limit or null for default.
+         */
+        private final Map<MessageListener<?>, Integer> messageListeners
+                = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        /**
+         * Number of users. Only changed inside registry updates.
+         */
+        private volatile int refCount = 1;
+
+        /**
+         * Number of messages received, for subscribers.
+         */
+        private final LongAdder messageCount = new LongAdder();
+
+        /**
+         * Create registration with a single user, bound to node.
+         *
+         * @param topicObjectType {@link Publisher} or {@link Subscriber}
+         * @param topicName name of topic
+         * @param topicTypeStr type name of topic
+         * @param node node to bind
+         */
+        @SuppressWarnings("unchecked")
+        private Registration(@NonNull Class<?> topicObjectType, @NonNull GraphName topicName,
+                             @NonNull String topicTypeStr, @NonNull ConnectedNode node) {
+            this.topicObjectType = topicObjectType;
+            this.topicName = topicName;
+            this.topicTypeStr = topicTypeStr;
+            bind(node);
+            this.topicObject = (T) (topicObjectType == Publisher.class ? new BoundPublisher() : new BoundSubscriber());
+        }
+
+        /**
+         * Add a user.
+         *
+         * @param topicTypeStr type name of topic asked by user
+         * @param topicName name of topic
+         */
+        private void retain(@NonNull String topicTypeStr, @NonNull GraphName topicName) {
+            if (!this.topicTypeStr.equals(topicTypeStr)) {
+                throw new RuntimeException(
+                        String.format(
+                                "Topic %s already registered with type %s, not %s",
+                                topicName,
+                                this.topicTypeStr,
+                                topicTypeStr));
+            }
+            refCount++;
+        }
+
+        /**
+         * Create publisher or subscriber on node, unless already bound to it, and make wrapper
+         * use it. Message listeners are added to a new subscriber.
+         *
+         * @param node node to bind
+         */
+        @SuppressWarnings("unchecked")
+        private synchronized void bind(@NonNull ConnectedNode node) {
+            if (node == boundNode) {
+                return;
+            }
+            if (topicObjectType == Publisher.class) {
+                target = node.newPublisher(topicName, topicTypeStr);
+            }
+            else {
+                Subscriber<Object> subscriber = node.newSubscriber(topicName, topicTypeStr);
+                List<Map.Entry<MessageListener<?>, Integer>> listeners;
+                synchronized (messageListeners) {
+                    listeners = new ArrayList<>(messageListeners.entrySet());
+                }
+                for (Map.Entry<MessageListener<?>, Integer> listener : listeners) {
+                    if (listener.getValue() == null) {
+                        subscriber.addMessageListener((MessageListener<Object>) listener.getKey());
+                    }
+                    else {
+                        subscriber.addMessageListener((MessageListener<Object>) listener.getKey(), listener.getValue());
+                    }
+                }
+                target = subscriber;
+            }
+            boundNode = node;
+        }
+
+        /**
+         * Call message listeners added through wrapper with a message.
+         *
+         * @param message message
+         */
+        @SuppressWarnings("unchecked")
+        private void deliver(@NonNull Object message) {
+            List<MessageListener<?>> listeners;
+            synchronized (messageListeners) {
+                listeners = new ArrayList<>(messageListeners.keySet());
+            }
+            for (MessageListener<?> listener : listeners) {
+                ((MessageListener<Object>) listener).onNewMessage(message);
+            }
+        }
+
+        /**
+         * Publisher handed to users, delegating to the publisher currently bound.
+         */
+        private class BoundPublisher implements Publisher<Object> {
+
+            /**
+             * Get publisher currently bound.
+             *
+             * @return publisher
+             */
+            @SuppressWarnings("unchecked")
+            private Publisher<Object> target() {
+                return (Publisher<Object>) target;
+            }
+
+            @Override
+            public void setLatchMode(boolean enabled) {
+                target().setLatchMode(enabled);
+            }
+
+            @Override
+            public boolean getLatchMode() {
+                return target().getLatchMode();
+            }
+
+            @Override
+            public Object newMessage() {
+                return target().newMessage();
+            }
+
+            @Override
+            public void publish(Object message) {
+                if (!isMasterAvailable()) {
+                    throw new RuntimeException(
+                            String.format("ROS master unavailable, not publishing on %s", topicName));
+                }
+                target().publish(message);
+            }
+
+            @Override
+            public boolean hasSubscribers() {
+                return target().hasSubscribers();
+            }
+
+            @Override
+            public int getNumberOfSubscribers() {
+                return target().getNumberOfSubscribers();
+            }
+
+            @Override
+            public void shutdown(long timeout, TimeUnit unit) {
+                target().shutdown(timeout, unit);
+            }
+
+            @Override
+            public void shutdown() {
+                target().shutdown();
+            }
+
+            @Override
+            public void addListener(PublisherListener<Object> listener) {
+                target().addListener(listener);
+            }
+
+            @Override
+            public GraphName getTopicName() {
+                return target().getTopicName();
+            }
+
+            @Override
+            public String getTopicMessageType() {
+                return target().getTopicMessageType();
+            }
+
+            @Override
+            public String toString() {
+                return String.format("Publisher on %s", topicName);
+            }
+
+        }
+
+        /**
+         * Subscriber handed to users, delegating to the subscriber currently bound.
+         */
+        private class BoundSubscriber implements Subscriber<Object> {
+
+            /**
+             * Get subscriber currently bound.
+             *
+             * @return subscriber
+             */
+            @SuppressWarnings("unchecked")
+            private Subscriber<Object> target() {
+                return (Subscriber<Object>) target;
+            }
+
+            @Override
+            public void addMessageListener(MessageListener<Object> messageListener, int limit) {
+                messageListeners.put(messageListener, limit);
+                target().addMessageListener(messageListener, limit);
+            }
+
+            @Override
+            public void addMessageListener(MessageListener<Object> messageListener) {
+                messageListeners.put(messageListener, null);
+                target().addMessageListener(messageListener);
+            }
+
+            @Override
+            public boolean removeMessageListener(MessageListener<Object> messageListener) {
+                messageListeners.remove(messageListener);
+                return target().removeMessageListener(messageListener);
+            }
+
+            @Override
+            public void removeAllMessageListeners() {
+                messageListeners.clear();
+                target().removeAllMessageListeners();
+            }
+
+            @Override
+            public void shutdown(long timeout, TimeUnit unit) {
+                target().shutdown(timeout, unit);
+            }
+
+            @Override
+            public void shutdown() {
+                target().shutdown();
+            }
+
+            @Override
+            public void addSubscriberListener(SubscriberListener<Object> listener) {
+                target().addSubscriberListener(listener);
+            }
+
+            @Override
+            public boolean getLatchMode() {
+                return target().getLatchMode();
+            }
+
+            @Override
+            public GraphName getTopicName() {
+                return target().getTopicName();
+            }
+
+            @Override
+            public String getTopicMessageType() {
+                return target().getTopicMessageType();
+            }
+
+            @Override
+            public String toString() {
+                return String.format("Subscriber on %s", topicName);
+            }
+
+        }
+
+    }
+
 }
@@ -0,0 +1,305 @@
+package com.ericwen229.node;
+
+import lombok.NonNull;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.ros.message.MessageSerializationFactory;
+import org.ros.message.MessageSerializer;
+import org.ros.namespace.GraphName;
+import org.ros.node.NodeConfiguration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Recorder of messages received on subscribed topics, serialized as on the wire, into an
+ * append-only memory-mapped log to be replayed by {@link TopicReplayer}.
+ *
+ * <p>Log layout (little endian): int32 magic and int64 wall-clock time recording started
+ * (in milliseconds), followed by records. A record is a uint8 kind followed by its fields:
+ * a topic record (kind 1) is a uint16 topic ID, then name and type as uint16 byte length
+ * followed by UTF-8 bytes; a message record (kind 2) is a uint16 topic ID, an int64 time
+ * received (in nanoseconds since recording started), then the serialized message as int32
+ * byte length followed by bytes. A zero kind ends the log. The kind of a record is written
+ * last, so that a log cut short by a crash ends at the last complete record.
+ */
+public class TopicRecorder {
+
+	/**
+	 * Identifies a topic log.
+	 */
+	static final int magic = 0x52544c31;
+
+	/**
+	 * Length of log header in bytes.
+	 */
+	static final int headerLength = 12;
+
+	/**
+	 * Kind of record ending the log.
+	 */
+	static final byte endKind = 0;
+
+	/**
+	 * Kind of record naming a topic.
+	 */
+	static final byte topicKind = 1;
+
+	/**
+	 * Kind of record holding a message.
+	 */
+	static final byte messageKind = 2;
+
+	/**
+	 * Length of file region mapped at once.
+	 */
+	private static final int regionLength = 64 * 1024 * 1024;
+
+	/**
+	 * Maximum length of log, limited by replay mapping the whole log at once.
+	 */
+	public static final long maxLogLength = Integer.MAX_VALUE;
+
+	/**
+	 * Path of log.
+	 */
+	private final Path path;
+
+	/**
+	 * Maximum length of log in bytes, messages beyond being dropped.
+	 */
+	private final long maxLength;
+
+	/**
+	 * Channel of log file, kept open to map further regions.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Region of file currently written.
+	 */
+	private MappedByteBuffer region;
+
+	/**
+	 * Position of region in file.
+	 */
+	private long regionStart = 0;
+
+	/**
+	 * Position in file of next record.
+	 */
+	private long position;
+
+	/**
+	 * Time recording started, from {@link System#nanoTime()}.
+	 */
+	private final long startNanos = System.nanoTime();
+
+	/**
+	 * ID of each topic recorded, keyed by topic name.
+	 */
+	private final Map<GraphName, Integer> topicIds = new HashMap<>();
+
+	/**
+	 * Serializer of each message type recorded, keyed by type name.
+	 */
+	private final Map<String, MessageSerializer<Object>> serializers = new HashMap<>();
+
+	/**
+	 * Factory of serializers.
+	 */
+	private final MessageSerializationFactory serializationFactory =
+			NodeConfiguration.newPrivate().getMessageSerializationFactory();
+
+	/**
+	 * Buffer messages are serialized into, reused.
+	 */
+	private final ChannelBuffer serialized = ChannelBuffers.dynamicBuffer(ByteOrder.LITTLE_ENDIAN, 64 * 1024);
+
+	/**
+	 * Number of messages recorded.
+	 */
+	private long messageCount = 0;
+
+	/**
+	 * True once log reached its maximum length.
+	 */
+	private boolean full = false;
+
+	/**
+	 * True once closed.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Create log, replacing any existing file.
+	 *
+	 * @param path path of log
+	 * @param maxLength maximum length of log in bytes, at most {@link #maxLogLength}
+	 */
+	public TopicRecorder(@NonNull Path path, long maxLength) {
+		if (maxLength < headerLength || maxLength > maxLogLength) {
+			throw new RuntimeException("Invalid topic log maximum length: " + maxLength);
+		}
+		this.path = path;
+		this.maxLength = maxLength;
+		try {
+			channel = FileChannel.open(path,
+					StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			region = map(0, headerLength);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(String.format("Cannot map topic log %s: %s", path, e));
+		}
+		region.putInt(magic);
+		region.putLong(System.currentTimeMillis());
+		position = headerLength;
+		Logger.getGlobal().info(String.format("RoverOS recording topics to %s", path));
+	}
+
+	/**
+	 * Record a message received on a topic. Messages received once the log is full or
+	 * closed are dropped.
+	 *
+	 * @param topicName name of topic
+	 * @param topicTypeStr type name of topic
+	 * @param message message received
+	 */
+	public void record(@NonNull GraphName topicName, @NonNull String topicTypeStr, @NonNull Object message) {
+		long nanos = System.nanoTime() - startNanos;
+		synchronized (this) {
+			if (closed || full) {
+				return;
+			}
+			Integer topicId = topicIds.get(topicName);
+			if (topicId == null) {
+				topicId = topicIds.size();
+				byte[] name = topicName.toString().getBytes(StandardCharsets.UTF_8);
+				byte[] type = topicTypeStr.getBytes(StandardCharsets.UTF_8);
+				if (!reserve(1 + 2 + 2 + name.length + 2 + type.length)) {
+					return;
+				}
+				region.putShort(topicId.shortValue());
+				region.putShort((short) name.length);
+				region.put(name);
+				region.putShort((short) type.length);
+				region.put(type);
+				commit(topicKind);
+				topicIds.put(topicName, topicId);
+			}
+
+			serialized.clear();
+			serializers.computeIfAbsent(topicTypeStr, serializationFactory::newMessageSerializer)
+					.serialize(message, serialized);
+			ByteBuffer bytes = serialized.toByteBuffer();
+			if (!reserve(1 + 2 + 8 + 4 + bytes.remaining())) {
+				return;
+			}
+			region.putShort(topicId.shortValue());
+			region.putLong(nanos);
+			region.putInt(bytes.remaining());
+			region.put(bytes);
+			commit(messageKind);
+			messageCount++;
+		}
+	}
+
+	/**
+	 * Get number of messages recorded.
+	 *
+	 * @return number of messages
+	 */
+	public synchronized long getMessageCount() {
+		return messageCount;
+	}
+
+	/**
+	 * Stop recording and cut log to its content.
+	 */
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			region.force();
+			channel.truncate(position);
+			channel.close();
+		}
+		catch (IOException e) {
+			Logger.getGlobal().warning(String.format("RoverOS cannot close topic log %s: %s", path, e));
+			return;
+		}
+		Logger.getGlobal().info(
+				String.format("RoverOS recorded %d messages (%d bytes) to %s", messageCount, position, path));
+	}
+
+	/**
+	 * Make room for a record and move to its fields, past its kind. Maps the next region of
+	 * the file if the record doesn't fit in the current one.
+	 *
+	 * @param length length of record, kind included
+	 * @return true if record fits in log, false if log is full
+	 */
+	private boolean reserve(int length) {
+		if (position + length + 1 > maxLength) {
+			full = true;
+			Logger.getGlobal().warning(
+					String.format("RoverOS topic log %s full at %d bytes. Dropping messages.", path, position));
+			return false;
+		}
+		// one more byte for the zero kind ending the log
+		if (position + length + 1 > regionStart + region.capacity()) {
+			try {
+				region = map(position, Math.max(regionLength, length + 1));
+			}
+			catch (IOException e) {
+				full = true;
+				Logger.getGlobal().warning(
+						String.format("RoverOS cannot extend topic log %s: %s. Dropping messages.", path, e));
+				return false;
+			}
+			regionStart = position;
+		}
+		region.position((int) (position - regionStart) + 1);
+		return true;
+	}
+
+	/**
+	 * Complete record whose fields were written, writing its kind.
+	 *
+	 * @param kind kind of record
+	 */
+	private void commit(byte kind) {
+		int end = region.position();
+		region.put((int) (position - regionStart), kind);
+		position = regionStart + end;
+	}
+
+	/**
+	 * Map region of file, extending file if needed.
+	 *
+	 * @param start position of region
+	 * @param length length of region
+	 * @return region mapped
+	 * @throws IOException if region can't be mapped
+	 */
+	private MappedByteBuffer map(long start, long length) throws IOException {
+		MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(length, maxLength - start));
+		mapped.order(ByteOrder.LITTLE_ENDIAN);
+		return mapped;
+	}
+
+}
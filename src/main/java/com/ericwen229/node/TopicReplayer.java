@@ -0,0 +1,252 @@
+package com.ericwen229.node;
+
+import lombok.NonNull;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.ros.message.MessageDeserializer;
+import org.ros.message.MessageSerializationFactory;
+import org.ros.namespace.GraphName;
+import org.ros.node.NodeConfiguration;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Replayer of a log written by {@link TopicRecorder}, delivering its messages to the
+ * message listeners of the nodes' subscribers as if they had been received from their
+ * topics. Messages are delivered in order from a single thread, with their recorded
+ * timing scaled by a speed factor, or as fast as possible. With a fleet of robots, each
+ * node only receives the messages of its own topics.
+ */
+public class TopicReplayer {
+
+	/**
+	 * Nodes whose subscribers receive messages.
+	 */
+	private final List<RoverOSNode> nodes;
+
+	/**
+	 * Path of log.
+	 */
+	private final Path path;
+
+	/**
+	 * Speed factor relative to recorded timing, 0 for as fast as possible.
+	 */
+	private final double speed;
+
+	/**
+	 * Number of times log is replayed, 0 for forever.
+	 */
+	private final int loops;
+
+	/**
+	 * Mapped content of log.
+	 */
+	private final MappedByteBuffer log;
+
+	/**
+	 * Factory of deserializers.
+	 */
+	private final MessageSerializationFactory serializationFactory =
+			NodeConfiguration.newPrivate().getMessageSerializationFactory();
+
+	/**
+	 * Future completed once replay is done.
+	 */
+	private final CompletableFuture<Void> doneFuture = new CompletableFuture<>();
+
+	/**
+	 * Create replayer of log.
+	 *
+	 * @param nodes nodes whose subscribers receive messages
+	 * @param path path of log
+	 * @param speed speed factor relative to recorded timing (2 replays twice as fast), 0 for
+	 *              as fast as possible
+	 * @param loops number of times log is replayed, 0 for forever
+	 */
+	public TopicReplayer(@NonNull List<RoverOSNode> nodes, @NonNull Path path, double speed, int loops) {
+		if (speed < 0 || loops < 0) {
+			throw new RuntimeException(String.format("Invalid replay speed %s or loops %d", speed, loops));
+		}
+		this.nodes = new ArrayList<>(nodes);
+		this.path = path;
+		this.speed = speed;
+		this.loops = loops;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > TopicRecorder.maxLogLength) {
+				throw new RuntimeException(String.format("Topic log %s too large to replay", path));
+			}
+			log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		catch (IOException e) {
+			throw new RuntimeException(String.format("Cannot map topic log %s: %s", path, e));
+		}
+		log.order(ByteOrder.LITTLE_ENDIAN);
+		if (log.limit() < TopicRecorder.headerLength || log.getInt(0) != TopicRecorder.magic) {
+			throw new RuntimeException(String.format("%s is not a topic log", path));
+		}
+	}
+
+	/**
+	 * Start replaying from a daemon thread.
+	 */
+	public void start() {
+		Thread thread = new Thread(this::replay, "roveros-replay");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Get a future completed once replay is done. The future fails if replay fails.
+	 *
+	 * @return future of replay
+	 */
+	public CompletableFuture<Void> whenDone() {
+		return doneFuture.thenApply(v -> v);
+	}
+
+	/**
+	 * Replay log the given number of times.
+	 */
+	private void replay() {
+		Logger.getGlobal().info(
+				String.format(
+						"RoverOS replaying %s at %s",
+						path,
+						speed == 0 ? "full speed" : speed + "x"));
+		try {
+			for (int loop = 1; loops == 0 || loop <= loops; loop++) {
+				if (Thread.currentThread().isInterrupted()) {
+					break;
+				}
+				long start = System.nanoTime();
+				long delivered = replayOnce();
+				Logger.getGlobal().info(
+						String.format(
+								"RoverOS replay of %s: %d messages in %d ms (loop %d)",
+								path,
+								delivered,
+								(System.nanoTime() - start) / 1000000,
+								loop));
+			}
+			doneFuture.complete(null);
+		}
+		catch (RuntimeException e) {
+			Logger.getGlobal().warning(String.format("RoverOS replay of %s failed: %s", path, e));
+			doneFuture.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Replay log once.
+	 *
+	 * @return number of messages delivered
+	 */
+	private long replayOnce() {
+		ByteBuffer buffer = log.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		buffer.position(TopicRecorder.headerLength);
+		List<GraphName> topicNames = new ArrayList<>();
+		List<String> topicTypes = new ArrayList<>();
+		Map<String, MessageDeserializer<Object>> deserializers = new HashMap<>();
+		Set<GraphName> undelivered = new HashSet<>();
+		long startNanos = System.nanoTime();
+		long firstNanos = -1;
+		long delivered = 0;
+		try {
+			while (buffer.hasRemaining()) {
+				byte kind = buffer.get();
+				if (kind == TopicRecorder.endKind) {
+					break;
+				}
+				else if (kind == TopicRecorder.topicKind) {
+					int topicId = buffer.getShort() & 0xffff;
+					if (topicId != topicNames.size()) {
+						throw new RuntimeException(String.format("Topic log %s corrupted at %d", path, buffer.position()));
+					}
+					topicNames.add(GraphName.of(readString(buffer)));
+					topicTypes.add(readString(buffer));
+					continue;
+				}
+				else if (kind != TopicRecorder.messageKind) {
+					throw new RuntimeException(String.format("Topic log %s corrupted at %d", path, buffer.position()));
+				}
+
+				int topicId = buffer.getShort() & 0xffff;
+				long nanos = buffer.getLong();
+				int length = buffer.getInt();
+				if (topicId >= topicNames.size() || length < 0 || length > buffer.remaining()) {
+					throw new RuntimeException(String.format("Topic log %s corrupted at %d", path, buffer.position()));
+				}
+				ByteBuffer serialized = buffer.slice();
+				serialized.limit(length);
+				buffer.position(buffer.position() + length);
+
+				if (firstNanos < 0) {
+					firstNanos = nanos;
+				}
+				if (speed > 0) {
+					long dueNanos = startNanos + (long) ((nanos - firstNanos) / speed);
+					for (long wait = dueNanos - System.nanoTime(); wait > 0; wait = dueNanos - System.nanoTime()) {
+						LockSupport.parkNanos(wait);
+						if (Thread.currentThread().isInterrupted()) {
+							return delivered;
+						}
+					}
+				}
+
+				String topicType = topicTypes.get(topicId);
+				Object message = deserializers.computeIfAbsent(topicType, serializationFactory::newMessageDeserializer)
+						.deserialize(ChannelBuffers.wrappedBuffer(serialized.order(ByteOrder.LITTLE_ENDIAN)));
+				GraphName topicName = topicNames.get(topicId);
+				boolean anyDelivered = false;
+				for (RoverOSNode node : nodes) {
+					anyDelivered |= node.deliver(topicName, topicType, message);
+				}
+				if (anyDelivered) {
+					delivered++;
+				}
+				else if (undelivered.add(topicName)) {
+					Logger.getGlobal().warning(
+							String.format(
+									"RoverOS replay of %s: no subscriber on %s (%s). Dropping its messages.",
+									path,
+									topicName,
+									topicType));
+				}
+			}
+		}
+		catch (BufferUnderflowException e) {
+			// log cut short, replay what is complete
+		}
+		return delivered;
+	}
+
+	/**
+	 * Read a string as uint16 byte length followed by UTF-8 bytes.
+	 *
+	 * @param buffer buffer positioned at string
+	 * @return string
+	 */
+	private static String readString(@NonNull ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xffff];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,211 @@
+package com.ericwen229.server;
+
+import com.ericwen229.node.RoverOSNode;
+import com.ericwen229.server.message.request.RequestMsgModel;
+import com.ericwen229.server.message.request.TopicPublishMsgModel;
+import com.ericwen229.server.message.response.TopicMsgModel;
+import com.ericwen229.util.LogSite;
+import com.ericwen229.util.MessageCodec;
+import lombok.NonNull;
+import org.java_websocket.WebSocket;
+import org.ros.internal.message.Message;
+import org.ros.namespace.GraphName;
+import org.ros.node.topic.Publisher;
+import org.ros.node.topic.Subscriber;
+
+import java.util.function.Function;
+import java.util.logging.Level;
+
+/**
+ * This class implements a channel bridging a ROS topic of any message type, configured
+ * rather than written for the topic.
+ *
+ * <p>Depending on its direction, the channel broadcasts messages of the topic to its
+ * subscribers, publishes messages sent by its subscribers on the topic, or both. Messages
+ * are converted to and from json by a {@link MessageCodec} of the message type. In both
+ * directions, messages arriving faster than the maximum rate are dropped.
+ */
+public class BridgeChannel extends Channel {
+
+	/**
+	 * Direction: messages of topic are sent to clients.
+	 */
+	public static final String subscribeDirection = "subscribe";
+
+	/**
+	 * Direction: messages of clients are published on topic.
+	 */
+	public static final String publishDirection = "publish";
+
+	/**
+	 * Direction: both subscribe and publish.
+	 */
+	public static final String bothDirection = "both";
+
+	/**
+	 * Log of messages of clients that can't be read.
+	 */
+	private static final LogSite invalidMessageLog = LogSite.of(
+			"bridge.invalidMessage",
+			Level.WARNING,
+			"RoverOS %s channel invalid message: %s. Dropping message from %s.");
+
+	/**
+	 * Name of ROS topic.
+	 */
+	private final GraphName topicName;
+
+	/**
+	 * Codec of message type of topic.
+	 */
+	private final MessageCodec codec;
+
+	/**
+	 * Factory of messages nested in messages published.
+	 */
+	private final Function<Class<?>, Object> messageFactory;
+
+	/**
+	 * Publisher on topic, or null if clients can't publish.
+	 */
+	private final Publisher<Message> publisher;
+
+	/**
+	 * Minimum interval between two adjacent messages in each direction, or 0 for none.
+	 */
+	private volatile long minIntervalNanos;
+
+	/**
+	 * Time at which the last message was broadcast.
+	 */
+	private long lastBroadcastNanos;
+
+	/**
+	 * Time at which the last message was published.
+	 */
+	private long lastPublishNanos;
+
+	/**
+	 * Construct channel bridging a topic.
+	 *
+	 * @param node ROS node used by RoverOS
+	 * @param name name of channel, qualified with robot of node
+	 * @param topicName name of ROS topic, resolved in namespace of node
+	 * @param typeName ROS message type of topic, such as sensor_msgs/BatteryState
+	 * @param direction subscribe, publish or both
+	 * @param maxRate maximum number of messages per second in each direction, or 0 for no limit
+	 */
+	public BridgeChannel(@NonNull RoverOSNode node, @NonNull String name, @NonNull GraphName topicName,
+						 @NonNull String typeName, @NonNull String direction, double maxRate) {
+		super(qualifiedName(node, name));
+		if (!direction.equals(subscribeDirection) && !direction.equals(publishDirection)
+				&& !direction.equals(bothDirection)) {
+			throw new RuntimeException(String.format("Invalid direction %s of bridged topic %s", direction, topicName));
+		}
+		this.topicName = topicName;
+		setMaxRate(maxRate);
+		this.lastBroadcastNanos = System.nanoTime() - minIntervalNanos;
+		this.lastPublishNanos = lastBroadcastNanos;
+
+		// build codec at startup rather than on first message
+		Class<? extends Message> messageType = MessageCodec.messageTypeOf(typeName);
+		this.codec = MessageCodec.of(messageType);
+		this.messageFactory = type -> node.newMessage(type.asSubclass(Message.class));
+
+		if (!direction.equals(publishDirection)) {
+			Subscriber<? extends Message> subscriber = node.subscribeToTopic(topicName, messageType);
+			subscriber.addMessageListener(this::topicMessageHandler);
+		}
+		if (!direction.equals(subscribeDirection)) {
+			registerRequestType(TopicPublishMsgModel.typeFieldValue, TopicPublishMsgModel.class);
+			this.publisher = publishOnTopic(node, topicName, messageType);
+		}
+		else {
+			this.publisher = null;
+		}
+	}
+
+	/**
+	 * Set maximum number of messages per second in each direction.
+	 *
+	 * @param maxRate maximum rate, or 0 for no limit
+	 */
+	public void setMaxRate(double maxRate) {
+		if (maxRate < 0.0) {
+			throw new RuntimeException(String.format("Invalid rate %f of bridged topic %s", maxRate, topicName));
+		}
+		minIntervalNanos = maxRate > 0.0 ? (long) (1e9 / maxRate) : 0;
+	}
+
+	@Override
+	public void handleRequest(@NonNull WebSocket webSocket, @NonNull RequestMsgModel request) {
+		if (publisher != null && request.getClass().equals(TopicPublishMsgModel.class)) {
+			doPublish(webSocket, (TopicPublishMsgModel) request);
+		}
+		else {
+			super.handleRequest(webSocket, request);
+		}
+	}
+
+	/**
+	 * Create publisher on topic, typed for messages of any type.
+	 *
+	 * @param node ROS node used by RoverOS
+	 * @param topicName name of topic
+	 * @param messageType message type of topic
+	 * @return publisher
+	 */
+	@SuppressWarnings("unchecked")
+	private static Publisher<Message> publishOnTopic(@NonNull RoverOSNode node, @NonNull GraphName topicName,
+													 @NonNull Class<? extends Message> messageType) {
+		return (Publisher<Message>) node.publishOnTopic(topicName, messageType);
+	}
+
+	/**
+	 * Callback invoked when message of topic received.
+	 *
+	 * @param message received message
+	 */
+	private void topicMessageHandler(@NonNull Object message) {
+		long now = System.nanoTime();
+		if (!hasSubscribers() || now - lastBroadcastNanos < minIntervalNanos) {
+			return;
+		}
+		lastBroadcastNanos = now;
+
+		TopicMsgModel msg = new TopicMsgModel();
+		msg.topic = topicName.toString();
+		msg.message = codec.toJson(message);
+		broadcast(msg);
+	}
+
+	/**
+	 * Publish message of client on topic.
+	 *
+	 * @param webSocket connection to client
+	 * @param request publish request
+	 */
+	private void doPublish(@NonNull WebSocket webSocket, @NonNull TopicPublishMsgModel request) {
+		synchronized (this) {
+			long now = System.nanoTime();
+			if (now - lastPublishNanos < minIntervalNanos) {
+				return;
+			}
+			lastPublishNanos = now;
+		}
+		if (request.message == null) {
+			return;
+		}
+
+		Message message = publisher.newMessage();
+		try {
+			codec.read(request.message, message, messageFactory);
+		}
+		catch (RuntimeException e) {
+			invalidMessageLog.log(getName(), e.getMessage(), webSocket.getRemoteSocketAddress());
+			return;
+		}
+		publisher.publish(message);
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.ericwen229.server;
+
+import com.ericwen229.metrics.Histogram;
+import com.ericwen229.metrics.MetricsRegistry;
+import com.ericwen229.server.message.response.StampedMsgModel;
+import lombok.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of messages of a channel relaying ROS messages, split into the time from capture
+ * (by the ROS header stamp) to RoverOS receiving the message, and the time from receiving
+ * it to sending it to clients. Both are kept as moving averages, the first one also as a
+ * histogram.
+ *
+ * <p>Capture stamps come from the clock of the robot, so the first part is only meaningful
+ * with clocks in sync. Messages without stamp, or stamped after they were received, are
+ * left out of it.
+ */
+public class CaptureLatency {
+
+	/**
+	 * Weight of the latest sample in moving averages.
+	 */
+	private static final double smoothing = 0.125;
+
+	/**
+	 * Time from capture to receiving message.
+	 */
+	private final Histogram captureToReceive;
+
+	/**
+	 * Moving average of time from capture to receiving message, in seconds, or -1 if unknown.
+	 */
+	private double smoothedCaptureToReceive = -1;
+
+	/**
+	 * Moving average of time from receiving message to sending it, in seconds, or -1 if unknown.
+	 */
+	private double smoothedReceiveToSend = -1;
+
+	/**
+	 * Create latency of a channel.
+	 *
+	 * @param channelName name of channel
+	 */
+	public CaptureLatency(@NonNull String channelName) {
+		this.captureToReceive = MetricsRegistry.getGlobal().histogram(
+				"roveros_capture_to_receive_seconds",
+				"Time from capture of a ROS message, by its stamp, to RoverOS receiving it",
+				Histogram.latencyBuckets,
+				"channel", channelName);
+	}
+
+	/**
+	 * Set send time of a message about to be sent, and account for its latency.
+	 *
+	 * @param message message, with its capture stamp set
+	 * @param receivedNanos time ROS message was received, from {@link System#nanoTime()}
+	 */
+	public void send(@NonNull StampedMsgModel message, long receivedNanos) {
+		long now = System.currentTimeMillis();
+		double receiveToSend = (System.nanoTime() - receivedNanos) / 1e9;
+		message.sent = now / 1000.0;
+		double captureToReceive = message.sent - receiveToSend - message.stamp;
+		boolean stamped = message.stamp > 0 && captureToReceive >= 0;
+		if (stamped) {
+			this.captureToReceive.observe(captureToReceive);
+		}
+		synchronized (this) {
+			smoothedReceiveToSend = smooth(smoothedReceiveToSend, receiveToSend);
+			if (stamped) {
+				smoothedCaptureToReceive = smooth(smoothedCaptureToReceive, captureToReceive);
+			}
+		}
+	}
+
+	/**
+	 * Get moving average of time from capture to receiving message.
+	 *
+	 * @return time in milliseconds, or -1 if unknown
+	 */
+	public synchronized double getCaptureToReceiveMillis() {
+		return toMillis(smoothedCaptureToReceive);
+	}
+
+	/**
+	 * Get moving average of time from receiving message to sending it.
+	 *
+	 * @return time in milliseconds, or -1 if unknown
+	 */
+	public synchronized double getReceiveToSendMillis() {
+		return toMillis(smoothedReceiveToSend);
+	}
+
+	/**
+	 * Update moving average with a sample.
+	 *
+	 * @param average moving average, or -1 if no sample yet
+	 * @param sample sample
+	 * @return moving average updated
+	 */
+	static double smooth(double average, double sample) {
+		return average < 0 ? sample : average + smoothing * (sample - average);
+	}
+
+	/**
+	 * Convert seconds to milliseconds, keeping -1 for unknown.
+	 *
+	 * @param seconds time in seconds, or -1
+	 * @return time in milliseconds, or -1
+	 */
+	static double toMillis(double seconds) {
+		return seconds < 0 ? -1 : seconds * TimeUnit.SECONDS.toMillis(1);
+	}
+
+}
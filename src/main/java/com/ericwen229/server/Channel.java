@@ -0,0 +1,411 @@
+package com.ericwen229.server;
+
+import com.ericwen229.node.RoverOSNode;
+import com.ericwen229.server.message.request.RequestMsgModel;
+import com.ericwen229.server.message.response.ResponseMsgModel;
+import com.ericwen229.server.message.response.StampedMsgModel;
+import com.ericwen229.util.LogSite;
+import lombok.NonNull;
+import org.java_websocket.WebSocket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * This class implements a channel, a named stream of messages between RoverOS and clients.
+ *
+ * <p>A channel broadcasts messages to its subscribers and handles the request types it
+ * registers. Clients subscribe through endpoints, which decide how messages are encoded
+ * and framed on the wire. Subscribers are grouped by endpoint so that a message is
+ * encoded once per endpoint rather than once per client. Local sinks, such as shared
+ * memory rings, receive every message broadcast as well.
+ */
+public class Channel {
+
+	/**
+	 * Log of requests of a type not handled.
+	 */
+	private static final LogSite unhandledRequestLog = LogSite.of(
+			"channel.unhandledRequest",
+			Level.WARNING,
+			"RoverOS %s channel unhandled request type: %s. Dropping request from %s.");
+
+	/**
+	 * Name of channel.
+	 */
+	private final String name;
+
+	/**
+	 * Request types handled by channel, keyed by value of type field.
+	 */
+	private final Map<String, Class<? extends RequestMsgModel>> requestTypes = new LinkedHashMap<>();
+
+	/**
+	 * Subscribers grouped by endpoint they subscribed through.
+	 */
+	private final Map<ChannelEndpoint, Set<WebSocket>> subscribers = new ConcurrentHashMap<>();
+
+	/**
+	 * Endpoint each subscriber subscribed through.
+	 */
+	private final Map<WebSocket, ChannelEndpoint> subscriberEndpoints = new ConcurrentHashMap<>();
+
+	/**
+	 * Local sinks receiving messages broadcast while active.
+	 */
+	private final List<Sink> sinks = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Latency of messages relaying ROS messages, created once the first one is broadcast.
+	 */
+	private volatile CaptureLatency captureLatency = null;
+
+	/**
+	 * Create channel with given name.
+	 *
+	 * @param name name of channel
+	 */
+	public Channel(@NonNull String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Qualify name of a channel with the robot whose node it uses, as
+	 * {@code <robot>/<name>}, when serving a fleet of robots. Names of channels using a
+	 * node outside of any namespace are left as they are.
+	 *
+	 * @param node ROS node used by channel
+	 * @param name name of channel
+	 * @return qualified name of channel
+	 */
+	public static String qualifiedName(@NonNull RoverOSNode node, @NonNull String name) {
+		if (node.getNamespace().isRoot()) {
+			return name;
+		}
+		return node.getNamespace().toRelative() + "/" + name;
+	}
+
+	/**
+	 * Get name of channel.
+	 *
+	 * @return name of channel
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get request types handled by channel.
+	 *
+	 * @return request types keyed by value of type field
+	 */
+	public Map<String, Class<? extends RequestMsgModel>> getRequestTypes() {
+		return Collections.unmodifiableMap(requestTypes);
+	}
+
+	/**
+	 * Handle a request from a subscriber.
+	 *
+	 * @param webSocket connection to client
+	 * @param request request of a type registered by channel
+	 */
+	public void handleRequest(@NonNull WebSocket webSocket, @NonNull RequestMsgModel request) {
+		unhandledRequestLog.log(name, request.getClass(), webSocket.getRemoteSocketAddress());
+	}
+
+	/**
+	 * Handle requests of a batch from a subscriber, in order, stopping at the first one that
+	 * can't be handled. Channels override this to coalesce requests superseded by later ones
+	 * of the same batch.
+	 *
+	 * @param webSocket connection to client
+	 * @param requests requests of types registered by channel
+	 * @throws BatchRequestException if a request can't be handled, naming the request
+	 */
+	public void handleBatch(@NonNull WebSocket webSocket, @NonNull List<RequestMsgModel> requests) {
+		for (RequestMsgModel request : requests) {
+			try {
+				handleRequest(webSocket, request);
+			}
+			catch (RuntimeException e) {
+				throw new BatchRequestException(request, e);
+			}
+		}
+	}
+
+	/**
+	 * Subscribe client to channel.
+	 *
+	 * @param endpoint endpoint client is connected to
+	 * @param webSocket connection to client
+	 */
+	public void subscribe(@NonNull ChannelEndpoint endpoint, @NonNull WebSocket webSocket) {
+		if (subscriberEndpoints.putIfAbsent(webSocket, endpoint) != null) {
+			return;
+		}
+		subscribers.computeIfAbsent(endpoint, k -> ConcurrentHashMap.newKeySet()).add(webSocket);
+		onSubscribe(webSocket);
+	}
+
+	/**
+	 * Unsubscribe client from channel. Does nothing if client isn't subscribed.
+	 *
+	 * @param webSocket connection to client
+	 */
+	public void unsubscribe(@NonNull WebSocket webSocket) {
+		ChannelEndpoint endpoint = subscriberEndpoints.remove(webSocket);
+		if (endpoint != null) {
+			subscribers.get(endpoint).remove(webSocket);
+			onUnsubscribe(webSocket);
+		}
+	}
+
+	/**
+	 * Check whether client is subscribed to channel.
+	 *
+	 * @param webSocket connection to client
+	 * @return true if subscribed
+	 */
+	public boolean isSubscribed(@NonNull WebSocket webSocket) {
+		return subscriberEndpoints.containsKey(webSocket);
+	}
+
+	/**
+	 * Add a local sink receiving messages broadcast, on the broadcasting thread, while it is
+	 * active. A channel with an active sink counts as subscribed, so that it keeps producing
+	 * messages.
+	 *
+	 * @param sink sink
+	 * @param isActive tells whether sink is active, such as while it has readers
+	 */
+	public void addSink(@NonNull Consumer<ResponseMsgModel> sink, @NonNull BooleanSupplier isActive) {
+		sinks.add(new Sink(sink, isActive));
+	}
+
+	/**
+	 * Check whether channel has any subscriber.
+	 *
+	 * @return true if at least one client is subscribed, or a sink is active
+	 */
+	public boolean hasSubscribers() {
+		if (!subscriberEndpoints.isEmpty()) {
+			return true;
+		}
+		for (Sink sink : sinks) {
+			if (sink.isActive.getAsBoolean()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Broadcast message to all subscribers.
+	 *
+	 * @param message message
+	 */
+	public void broadcast(@NonNull ResponseMsgModel message) {
+		for (Sink sink : sinks) {
+			if (sink.isActive.getAsBoolean()) {
+				sink.consumer.accept(message);
+			}
+		}
+		for (Map.Entry<ChannelEndpoint, Set<WebSocket>> entry : subscribers.entrySet()) {
+			if (!entry.getValue().isEmpty()) {
+				entry.getKey().deliver(this, message, entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Broadcast message relaying a ROS message to all subscribers, setting its send time and
+	 * accounting for its latency.
+	 *
+	 * @param message message, with its capture stamp set
+	 * @param receivedNanos time ROS message was received, from {@link System#nanoTime()}
+	 */
+	public void broadcast(@NonNull StampedMsgModel message, long receivedNanos) {
+		CaptureLatency latency = captureLatency;
+		if (latency == null) {
+			synchronized (this) {
+				if (captureLatency == null) {
+					captureLatency = new CaptureLatency(name);
+				}
+				latency = captureLatency;
+			}
+		}
+		latency.send(message, receivedNanos);
+		broadcast((ResponseMsgModel) message);
+	}
+
+	/**
+	 * Get latency of messages relaying ROS messages.
+	 *
+	 * @return latency, or null if channel broadcast none yet
+	 */
+	public CaptureLatency getCaptureLatency() {
+		return captureLatency;
+	}
+
+	/**
+	 * Broadcast raw binary data to all subscribers.
+	 *
+	 * @param data raw data
+	 */
+	public void broadcast(@NonNull ByteBuffer data) {
+		for (Map.Entry<ChannelEndpoint, Set<WebSocket>> entry : subscribers.entrySet()) {
+			if (!entry.getValue().isEmpty()) {
+				entry.getKey().deliver(this, data.duplicate(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Send message to a single subscriber. Does nothing if client isn't subscribed.
+	 *
+	 * @param webSocket connection to client
+	 * @param message message
+	 */
+	public void send(@NonNull WebSocket webSocket, @NonNull ResponseMsgModel message) {
+		ChannelEndpoint endpoint = subscriberEndpoints.get(webSocket);
+		if (endpoint != null) {
+			endpoint.deliver(this, message, Collections.singleton(webSocket));
+		}
+	}
+
+	/**
+	 * Send raw binary data to a single subscriber. Does nothing if client isn't subscribed.
+	 *
+	 * @param webSocket connection to client
+	 * @param data raw data
+	 */
+	public void send(@NonNull WebSocket webSocket, @NonNull ByteBuffer data) {
+		ChannelEndpoint endpoint = subscriberEndpoints.get(webSocket);
+		if (endpoint != null) {
+			endpoint.deliver(this, data.duplicate(), Collections.singleton(webSocket));
+		}
+	}
+
+	/**
+	 * Register a request type handled by channel.
+	 *
+	 * @param typeFieldValue value of type field
+	 * @param requestType class of request
+	 */
+	protected void registerRequestType(@NonNull String typeFieldValue,
+									   @NonNull Class<? extends RequestMsgModel> requestType) {
+		requestTypes.put(typeFieldValue, requestType);
+	}
+
+	/**
+	 * Drop all requests of a type but the last one, keeping the order of the others.
+	 *
+	 * @param requests requests
+	 * @param requestType type of requests coalesced
+	 * @return requests coalesced
+	 */
+	protected static List<RequestMsgModel> keepLast(@NonNull List<RequestMsgModel> requests,
+													@NonNull Class<? extends RequestMsgModel> requestType) {
+		int last = -1;
+		for (int i = 0; i < requests.size(); i++) {
+			if (requests.get(i).getClass().equals(requestType)) {
+				last = i;
+			}
+		}
+		List<RequestMsgModel> coalesced = new ArrayList<>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			if (i == last || !requests.get(i).getClass().equals(requestType)) {
+				coalesced.add(requests.get(i));
+			}
+		}
+		return coalesced;
+	}
+
+	/**
+	 * Callback invoked when a client subscribes.
+	 *
+	 * @param webSocket connection to client
+	 */
+	protected void onSubscribe(@NonNull WebSocket webSocket) {
+	}
+
+	/**
+	 * Callback invoked when a client unsubscribes, or disconnects while subscribed.
+	 *
+	 * @param webSocket connection to client
+	 */
+	protected void onUnsubscribe(@NonNull WebSocket webSocket) {
+	}
+
+	/**
+	 * Local sink together with the check of whether it is active.
+	 */
+	private static class Sink {
+
+		/**
+		 * Sink receiving messages.
+		 */
+		private final Consumer<ResponseMsgModel> consumer;
+
+		/**
+		 * Tells whether sink is active.
+		 */
+		private final BooleanSupplier isActive;
+
+		/**
+		 * Create sink.
+		 *
+		 * @param consumer sink receiving messages
+		 * @param isActive tells whether sink is active
+		 */
+		private Sink(@NonNull Consumer<ResponseMsgModel> consumer, @NonNull BooleanSupplier isActive) {
+			this.consumer = consumer;
+			this.isActive = isActive;
+		}
+
+	}
+
+	/**
+	 * Thrown when a request of a batch can't be handled. Requests of the batch after it
+	 * were not handled.
+	 */
+	public static class BatchRequestException extends RuntimeException {
+
+		/**
+		 * Request that can't be handled.
+		 */
+		private final RequestMsgModel request;
+
+		/**
+		 * Create exception.
+		 *
+		 * @param request request that can't be handled
+		 * @param cause reason request can't be handled
+		 */
+		public BatchRequestException(@NonNull RequestMsgModel request, @NonNull RuntimeException cause) {
+			super(cause.getMessage(), cause);
+			this.request = request;
+		}
+
+		/**
+		 * Get request that can't be handled.
+		 *
+		 * @return request
+		 */
+		public RequestMsgModel getRequest() {
+			return request;
+		}
+
+	}
+
+}
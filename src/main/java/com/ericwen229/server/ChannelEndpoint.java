@@ -0,0 +1,33 @@
+package com.ericwen229.server;
+
+import com.ericwen229.server.message.response.ResponseMsgModel;
+import org.java_websocket.WebSocket;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * Endpoint through which clients subscribe to channels. Each endpoint decides how messages
+ * of a channel are encoded and framed on the wire.
+ */
+public interface ChannelEndpoint {
+
+	/**
+	 * Deliver message of a channel to clients.
+	 *
+	 * @param channel channel message belongs to
+	 * @param message message
+	 * @param clients connections to clients subscribed through this endpoint
+	 */
+	void deliver(Channel channel, ResponseMsgModel message, Collection<WebSocket> clients);
+
+	/**
+	 * Deliver raw binary data of a channel to clients.
+	 *
+	 * @param channel channel data belongs to
+	 * @param data raw data
+	 * @param clients connections to clients subscribed through this endpoint
+	 */
+	void deliver(Channel channel, ByteBuffer data, Collection<WebSocket> clients);
+
+}
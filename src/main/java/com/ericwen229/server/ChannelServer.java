@@ -0,0 +1,98 @@
+package com.ericwen229.server;
+
+import com.ericwen229.server.message.request.RequestMsgModel;
+import lombok.NonNull;
+import org.java_websocket.WebSocket;
+import org.java_websocket.extensions.IExtension;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class implements a websocket server dedicated to a fixed set of channels.
+ *
+ * <p>Every client is subscribed to all channels of the server as soon as it connects,
+ * and messages are sent without channel information. Requests are dispatched to channels
+ * by type. This is the legacy layout with one port per server.
+ */
+public class ChannelServer extends ChannelWebSocketServer {
+
+	/**
+	 * Channels served.
+	 */
+	private final List<Channel> channels;
+
+	/**
+	 * Channel handling each request type.
+	 */
+	private final Map<Class<? extends RequestMsgModel>, Channel> requestChannels = new HashMap<>();
+
+	/**
+	 * Create server serving given channels.
+	 *
+	 * @param name name of server used in logs
+	 * @param address address to which server will listen
+	 * @param compression compression extension offered to clients, or null for none
+	 * @param requestExecutor executor handling requests, or null to handle them on websocket threads
+	 * @param channels channels served
+	 */
+	public ChannelServer(@NonNull String name, @NonNull InetSocketAddress address, IExtension compression,
+						 RequestExecutor requestExecutor, @NonNull Channel... channels) {
+		super(name, address, collectRequestTypes(channels), compression, requestExecutor);
+		this.channels = Arrays.asList(channels);
+		for (Channel channel : channels) {
+			for (Class<? extends RequestMsgModel> requestType : channel.getRequestTypes().values()) {
+				requestChannels.put(requestType, channel);
+			}
+		}
+	}
+
+	@Override
+	protected Collection<Channel> getChannels() {
+		return channels;
+	}
+
+	@Override
+	protected void onConnect(@NonNull WebSocket webSocket) {
+		ChannelEndpoint endpoint = endpointOf(webSocket);
+		for (Channel channel : channels) {
+			channel.subscribe(endpoint, webSocket);
+		}
+	}
+
+	@Override
+	protected void onDisconnect(@NonNull WebSocket webSocket) {
+		for (Channel channel : channels) {
+			channel.unsubscribe(webSocket);
+		}
+	}
+
+	@Override
+	protected Channel route(@NonNull WebSocket webSocket, @NonNull RequestMsgModel request) {
+		Channel channel = requestChannels.get(request.getClass());
+		if (channel == null) {
+			throw new RuntimeException("Unhandled request type: " + request.getClass().getSimpleName());
+		}
+		return channel;
+	}
+
+	/**
+	 * Collect request types handled by channels.
+	 *
+	 * @param channels channels
+	 * @return request types keyed by value of type field
+	 */
+	private static Map<String, Class<? extends RequestMsgModel>> collectRequestTypes(@NonNull Channel... channels) {
+		Map<String, Class<? extends RequestMsgModel>> requestTypes = new LinkedHashMap<>();
+		for (Channel channel : channels) {
+			requestTypes.putAll(channel.getRequestTypes());
+		}
+		return requestTypes;
+	}
+
+}
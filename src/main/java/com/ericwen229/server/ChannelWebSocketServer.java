@@ -0,0 +1,882 @@
+package com.ericwen229.server;
+
+import com.ericwen229.metrics.Counter;
+import com.ericwen229.metrics.Histogram;
+import com.ericwen229.metrics.MetricsRegistry;
+import com.ericwen229.server.message.BinaryCodec;
+import com.ericwen229.server.message.request.RequestMsgModel;
+import com.ericwen229.server.message.response.BatchResultMsgModel;
+import com.ericwen229.server.message.response.ImageMsgModel;
+import com.ericwen229.server.message.response.ResponseMsgModel;
+import com.ericwen229.util.LogSite;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import lombok.NonNull;
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.PingFrame;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class implements the parts shared by websocket servers serving channels: wire
+ * format negotiation, request decoding and message encoding.
+ *
+ * <p>Clients asking for the binary subprotocol in their handshake exchange messages in
+ * the binary protocol (see {@link BinaryCodec}); other clients exchange json. Requests
+ * in both formats are decoded into the same message models and dispatched alike, and
+ * each message is encoded once per format.
+ *
+ * <p>A client may also send a batch of requests in a single message. Requests of a batch
+ * are applied in order, consecutive ones to the same channel being handed to it together,
+ * and requests that can't be handled are reported back to the client in a batch result
+ * message.
+ *
+ * <p>Requests are decoded and handled on a request executor when one is given, in order
+ * per client, or on websocket threads otherwise.
+ *
+ * <p>Servers may be given a compression extension, which is offered to clients during
+ * handshake. Clients not asking for it are served uncompressed.
+ *
+ * <p>Servers ping their clients periodically to measure round trip time per connection
+ * (see {@link ClientLatency}), which completes the latency of channels relaying ROS
+ * messages into a breakdown per client.
+ */
+public abstract class ChannelWebSocketServer extends WebSocketServer {
+
+	/**
+	 * Websocket subprotocol selecting the binary protocol.
+	 */
+	public static final String binaryProtocol = "roveros.binary.v1";
+
+	/**
+	 * Gson object used for message serialize.
+	 */
+	private static final Gson gson = new Gson();
+
+	/**
+	 * Interval between two checks of ping interval while pings are off.
+	 */
+	private static final long pingOffCheckMillis = 1000;
+
+	/**
+	 * Time spent encoding messages in json, shared by servers.
+	 */
+	private static final Histogram jsonEncodeTime = MetricsRegistry.getGlobal().histogram(
+			"roveros_encode_seconds", "Time spent encoding a message", Histogram.latencyBuckets, "format", "json");
+
+	/**
+	 * Time spent encoding messages in binary protocol, shared by servers.
+	 */
+	private static final Histogram binaryEncodeTime = MetricsRegistry.getGlobal().histogram(
+			"roveros_encode_seconds", "Time spent encoding a message", Histogram.latencyBuckets, "format", "binary");
+
+	/**
+	 * Latency of client connections of all servers.
+	 */
+	private static final Map<WebSocket, ClientLatency> clientLatencies = new ConcurrentHashMap<>();
+
+	static {
+		MetricsRegistry.getGlobal().gauges(
+				"roveros_client_rtt_smoothed_seconds",
+				"Moving average of round trip time per client connection",
+				"client",
+				ChannelWebSocketServer::getSmoothedRtts);
+	}
+
+	/**
+	 * Log of connections opened.
+	 */
+	private static final LogSite connectionOpenedLog = LogSite.of(
+			"server.connectionOpened", Level.INFO, "RoverOS %s server established %s connection to %s");
+
+	/**
+	 * Log of connections closed.
+	 */
+	private static final LogSite connectionClosedLog = LogSite.of(
+			"server.connectionClosed", Level.INFO, "RoverOS %s server closing connection to %s");
+
+	/**
+	 * Log of exceptions of server or connections.
+	 */
+	private static final LogSite exceptionLog = LogSite.of(
+			"server.exception", Level.SEVERE, "RoverOS %s server exception: %s");
+
+	/**
+	 * Log of connections dropped after an exception.
+	 */
+	private static final LogSite connectionDroppedLog = LogSite.of(
+			"server.connectionDropped", Level.WARNING, "RoverOS %s server about to drop connection to %s");
+
+	/**
+	 * Log of json requests that can't be decoded.
+	 */
+	private static final LogSite invalidRequestLog = LogSite.of(
+			"server.invalidRequest", Level.WARNING, "RoverOS %s server invalid request. Dropping request %s from %s");
+
+	/**
+	 * Log of binary requests that can't be decoded.
+	 */
+	private static final LogSite invalidBinaryRequestLog = LogSite.of(
+			"server.invalidBinaryRequest", Level.WARNING,
+			"RoverOS %s server invalid binary request: %s. Dropping request from %s");
+
+	/**
+	 * Log of requests that can't be routed or handled.
+	 */
+	private static final LogSite droppedRequestLog = LogSite.of(
+			"server.droppedRequest", Level.WARNING, "RoverOS %s server %s. Dropping request from %s.");
+
+	/**
+	 * Log of batches that can't be decoded.
+	 */
+	private static final LogSite invalidBatchLog = LogSite.of(
+			"server.invalidBatch", Level.WARNING, "RoverOS %s server invalid batch. Dropping batch from %s");
+
+	/**
+	 * Name of server used in logs.
+	 */
+	private final String name;
+
+	/**
+	 * Object used to decode json requests.
+	 */
+	private final RequestDecoder requestDecoder;
+
+	/**
+	 * Executor handling requests, or null to handle them on websocket threads.
+	 */
+	private final RequestExecutor requestExecutor;
+
+	/**
+	 * Number of json messages received from clients.
+	 */
+	private final Counter jsonMessagesReceived;
+
+	/**
+	 * Number of binary messages received from clients.
+	 */
+	private final Counter binaryMessagesReceived;
+
+	/**
+	 * Number of json messages sent to clients, counted once per client.
+	 */
+	private final Counter jsonMessagesSent;
+
+	/**
+	 * Number of binary messages sent to clients, counted once per client.
+	 */
+	private final Counter binaryMessagesSent;
+
+	/**
+	 * Round trip time of pings to clients.
+	 */
+	private final Histogram rttTime;
+
+	/**
+	 * Interval between two pings of each client, 0 for none.
+	 */
+	private volatile long pingIntervalMillis = 5000;
+
+	/**
+	 * Endpoint of clients using json.
+	 */
+	private final ChannelEndpoint jsonEndpoint = new JsonEndpoint();
+
+	/**
+	 * Endpoint of clients using binary protocol.
+	 */
+	private final ChannelEndpoint binaryEndpoint = new BinaryEndpoint();
+
+	/**
+	 * Future completed once server listens, or failed if it can't.
+	 */
+	private final CompletableFuture<Void> startFuture = new CompletableFuture<>();
+
+	/**
+	 * Future completed once server accepted its first client.
+	 */
+	private final CompletableFuture<Void> firstConnectionFuture = new CompletableFuture<>();
+
+	/**
+	 * Create server.
+	 *
+	 * @param name name of server used in logs
+	 * @param address address to which server will listen
+	 * @param requestTypes request types accepted, keyed by value of type field
+	 * @param compression compression extension offered to clients, or null for none
+	 * @param requestExecutor executor handling requests, or null to handle them on websocket threads
+	 */
+	protected ChannelWebSocketServer(@NonNull String name, @NonNull InetSocketAddress address,
+									 @NonNull Map<String, Class<? extends RequestMsgModel>> requestTypes,
+									 IExtension compression, RequestExecutor requestExecutor) {
+		super(address, Collections.<Draft>singletonList(new Draft_6455(
+				compression == null ? Collections.<IExtension>emptyList() : Collections.singletonList(compression),
+				Arrays.<IProtocol>asList(new Protocol(binaryProtocol), new Protocol("")))));
+		this.name = name;
+		this.requestDecoder = new RequestDecoder(requestTypes);
+		this.requestExecutor = requestExecutor;
+		MetricsRegistry metrics = MetricsRegistry.getGlobal();
+		String receivedHelp = "Messages received from clients";
+		String sentHelp = "Messages sent to clients";
+		this.jsonMessagesReceived = metrics.counter(
+				"roveros_messages_received_total", receivedHelp, "server", name, "format", "json");
+		this.binaryMessagesReceived = metrics.counter(
+				"roveros_messages_received_total", receivedHelp, "server", name, "format", "binary");
+		this.jsonMessagesSent = metrics.counter(
+				"roveros_messages_sent_total", sentHelp, "server", name, "format", "json");
+		this.binaryMessagesSent = metrics.counter(
+				"roveros_messages_sent_total", sentHelp, "server", name, "format", "binary");
+		this.rttTime = metrics.histogram(
+				"roveros_client_rtt_seconds", "Round trip time of pings to clients", Histogram.latencyBuckets,
+				"server", name);
+	}
+
+	@Override
+	public void onStart() {
+		Logger.getGlobal().info(
+				String.format("RoverOS %s server starting at %s", name, getAddress()));
+		Thread pinger = new Thread(this::pingClients, "roveros-ping-" + name);
+		pinger.setDaemon(true);
+		pinger.start();
+		startFuture.complete(null);
+	}
+
+	@Override
+	public void onOpen(WebSocket webSocket, ClientHandshake clientHandshake) {
+		String format = isBinary(webSocket) ? "binary" : "json";
+		connectionOpenedLog.log(name, format, webSocket.getRemoteSocketAddress());
+		clientLatencies.put(webSocket, new ClientLatency(name, String.valueOf(webSocket.getRemoteSocketAddress()), format));
+		firstConnectionFuture.complete(null);
+		onConnect(webSocket);
+	}
+
+	@Override
+	public void onClose(WebSocket webSocket, int i, String s, boolean b) {
+		connectionClosedLog.log(name, webSocket.getRemoteSocketAddress());
+		clientLatencies.remove(webSocket);
+		// after requests of client still queued, which may subscribe it again
+		if (requestExecutor == null) {
+			onDisconnect(webSocket);
+		}
+		else {
+			requestExecutor.executeLast(webSocket, () -> onDisconnect(webSocket));
+		}
+	}
+
+	@Override
+	public void onMessage(WebSocket webSocket, String s) {
+		jsonMessagesReceived.increment();
+		execute(webSocket, () -> handleText(webSocket, s));
+	}
+
+	@Override
+	public void onMessage(WebSocket webSocket, ByteBuffer data) {
+		// payload buffer belongs to this message only, so it can be read later
+		binaryMessagesReceived.increment();
+		execute(webSocket, () -> handleBinary(webSocket, data));
+	}
+
+	@Override
+	public void onError(WebSocket webSocket, Exception e) {
+		exceptionLog.log(name, e.getClass().getName());
+		if (webSocket == null) {
+			// error of server itself, such as failing to bind before starting
+			startFuture.completeExceptionally(e);
+		}
+		else {
+			connectionDroppedLog.log(name, webSocket.getRemoteSocketAddress());
+			webSocket.close();
+		}
+	}
+
+	@Override
+	public void onWebsocketPong(WebSocket webSocket, Framedata framedata) {
+		super.onWebsocketPong(webSocket, framedata);
+		ClientLatency latency = clientLatencies.get(webSocket);
+		if (latency == null) {
+			return;
+		}
+		double rtt = latency.pong(framedata.getPayloadData());
+		if (rtt >= 0) {
+			rttTime.observe(rtt);
+		}
+	}
+
+	/**
+	 * Set interval between two pings of each client, measuring round trip time. Takes
+	 * effect from the next ping on.
+	 *
+	 * @param pingIntervalMillis interval in milliseconds, 0 for no pings
+	 */
+	public void setPingInterval(long pingIntervalMillis) {
+		if (pingIntervalMillis < 0) {
+			throw new RuntimeException("Invalid ping interval: " + pingIntervalMillis);
+		}
+		this.pingIntervalMillis = pingIntervalMillis;
+	}
+
+	/**
+	 * Report latency of clients connected, broken down for each channel they are
+	 * subscribed to whose messages relay ROS messages.
+	 *
+	 * @return reports, one per client
+	 */
+	public List<ClientLatency.Report> reportClientLatencies() {
+		List<ClientLatency.Report> reports = new ArrayList<>();
+		for (WebSocket webSocket : getConnections()) {
+			ClientLatency latency = clientLatencies.get(webSocket);
+			if (latency == null) {
+				continue;
+			}
+			List<Channel> subscribed = new ArrayList<>();
+			for (Channel channel : getChannels()) {
+				if (channel.isSubscribed(webSocket)) {
+					subscribed.add(channel);
+				}
+			}
+			reports.add(latency.report(subscribed));
+		}
+		return reports;
+	}
+
+	/**
+	 * Get a future completed once server listens. {@link #start()} returns before that,
+	 * so that several servers can start in parallel.
+	 *
+	 * @return future of start
+	 */
+	public CompletableFuture<Void> whenStarted() {
+		return startFuture.thenApply(v -> v);
+	}
+
+	/**
+	 * Get a future completed once server accepted its first client.
+	 *
+	 * @return future of first connection
+	 */
+	public CompletableFuture<Void> whenFirstConnection() {
+		return firstConnectionFuture.thenApply(v -> v);
+	}
+
+	/**
+	 * Check whether client negotiated binary protocol.
+	 *
+	 * @param webSocket connection to client
+	 * @return true if client uses binary protocol, false if it uses json
+	 */
+	protected static boolean isBinary(@NonNull WebSocket webSocket) {
+		Draft draft = webSocket.getDraft();
+		if (!(draft instanceof Draft_6455)) {
+			return false;
+		}
+		IProtocol protocol = ((Draft_6455) draft).getProtocol();
+		return protocol != null && binaryProtocol.equals(protocol.getProvidedProtocol());
+	}
+
+	/**
+	 * Get endpoint matching wire format of client, through which it subscribes to channels.
+	 *
+	 * @param webSocket connection to client
+	 * @return endpoint
+	 */
+	protected ChannelEndpoint endpointOf(@NonNull WebSocket webSocket) {
+		return isBinary(webSocket) ? binaryEndpoint : jsonEndpoint;
+	}
+
+	/**
+	 * Encode message in json. Images are Base64 encoded here, so that channels with binary
+	 * subscribers only never pay for it.
+	 *
+	 * @param message message
+	 * @return encoded message
+	 */
+	protected static String encodeJson(@NonNull ResponseMsgModel message) {
+		if (message instanceof ImageMsgModel) {
+			((ImageMsgModel) message).fillBase64();
+		}
+		return gson.toJson(message);
+	}
+
+	/**
+	 * Send message not belonging to a channel to a client, in its wire format.
+	 *
+	 * @param webSocket connection to client
+	 * @param message message
+	 */
+	protected void sendToClient(@NonNull WebSocket webSocket, @NonNull ResponseMsgModel message) {
+		if (isBinary(webSocket)) {
+			webSocket.send(frameBinary(null, BinaryCodec.encodeResponse(message)));
+			binaryMessagesSent.increment();
+		}
+		else {
+			webSocket.send(frameText(null, encodeJson(message)));
+			jsonMessagesSent.increment();
+		}
+	}
+
+	/**
+	 * Get channels served.
+	 *
+	 * @return channels
+	 */
+	protected abstract Collection<Channel> getChannels();
+
+	/**
+	 * Callback invoked when a client connects.
+	 *
+	 * @param webSocket connection to client
+	 */
+	protected abstract void onConnect(@NonNull WebSocket webSocket);
+
+	/**
+	 * Callback invoked when a client disconnects.
+	 *
+	 * @param webSocket connection to client
+	 */
+	protected abstract void onDisconnect(@NonNull WebSocket webSocket);
+
+	/**
+	 * Find channel handling a decoded request. Requests handled by server itself, such as
+	 * subscriptions, are handled here.
+	 *
+	 * @param webSocket connection to client
+	 * @param request request
+	 * @return channel handling request, or null if request was handled by server
+	 * @throws RuntimeException if request can't be handled, with the reason
+	 */
+	protected abstract Channel route(@NonNull WebSocket webSocket, @NonNull RequestMsgModel request);
+
+	/**
+	 * Check whether a request is handled by server itself when routed, rather than by a
+	 * channel.
+	 *
+	 * @param request request
+	 * @return true if {@link #route} handles request
+	 */
+	protected boolean isHandledByServer(@NonNull RequestMsgModel request) {
+		return false;
+	}
+
+	/**
+	 * Read channel a binary request is sent to, leaving the request from its type ID on.
+	 *
+	 * @param data binary request
+	 * @return name of channel, or null if request names none
+	 */
+	protected String readChannel(@NonNull ByteBuffer data) {
+		return null;
+	}
+
+	/**
+	 * Frame text message of a channel.
+	 *
+	 * @param channel channel message belongs to, or null if it belongs to none
+	 * @param text message
+	 * @return framed message
+	 */
+	protected String frameText(Channel channel, @NonNull String text) {
+		return text;
+	}
+
+	/**
+	 * Frame binary message of a channel.
+	 *
+	 * @param channel channel message belongs to, or null if it belongs to none
+	 * @param data message
+	 * @return framed message
+	 */
+	protected ByteBuffer frameBinary(Channel channel, @NonNull ByteBuffer data) {
+		return data;
+	}
+
+	/**
+	 * Ping clients periodically. Runs on a daemon thread once server started, checking
+	 * again once in a while when pings are off.
+	 */
+	private void pingClients() {
+		while (!Thread.currentThread().isInterrupted()) {
+			long interval = pingIntervalMillis;
+			try {
+				Thread.sleep(interval > 0 ? interval : pingOffCheckMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				continue;
+			}
+			if (interval == 0 || pingIntervalMillis == 0) {
+				continue;
+			}
+			for (WebSocket webSocket : getConnections()) {
+				ClientLatency latency = clientLatencies.get(webSocket);
+				if (latency == null || !webSocket.isOpen()) {
+					continue;
+				}
+				PingFrame ping = new PingFrame();
+				ping.setPayload(latency.ping());
+				try {
+					webSocket.sendFrame(ping);
+				}
+				catch (RuntimeException e) {
+					// connection closed in between
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get moving average of round trip time of clients connected to any server.
+	 *
+	 * @return round trip times in seconds, keyed by address of client
+	 */
+	private static Map<String, Double> getSmoothedRtts() {
+		Map<String, Double> rtts = new HashMap<>();
+		for (ClientLatency latency : clientLatencies.values()) {
+			double rtt = latency.getSmoothedRtt();
+			if (rtt >= 0) {
+				rtts.put(latency.getClient(), rtt);
+			}
+		}
+		return rtts;
+	}
+
+	/**
+	 * Run task on request executor, or right away if there is none.
+	 *
+	 * @param webSocket connection task belongs to
+	 * @param task task
+	 */
+	private void execute(@NonNull WebSocket webSocket, @NonNull Runnable task) {
+		if (requestExecutor == null) {
+			task.run();
+		}
+		else {
+			requestExecutor.execute(webSocket, task);
+		}
+	}
+
+	/**
+	 * Decode and dispatch json message.
+	 *
+	 * @param webSocket connection to client
+	 * @param s message
+	 */
+	private void handleText(@NonNull WebSocket webSocket, @NonNull String s) {
+		if (RequestDecoder.isBatch(s)) {
+			onBatch(webSocket, s);
+			return;
+		}
+		RequestMsgModel request;
+		try {
+			request = requestDecoder.decode(s);
+		}
+		catch (JsonParseException e) {
+			invalidRequestLog.log(name, s, webSocket.getRemoteSocketAddress());
+			return;
+		}
+		dispatch(webSocket, request);
+	}
+
+	/**
+	 * Decode and dispatch binary message.
+	 *
+	 * @param webSocket connection to client
+	 * @param data message
+	 */
+	private void handleBinary(@NonNull WebSocket webSocket, @NonNull ByteBuffer data) {
+		RequestMsgModel request;
+		try {
+			String channel = readChannel(data);
+			if (BinaryCodec.isBatch(data)) {
+				onBatch(webSocket, BinaryCodec.splitBatch(data));
+				return;
+			}
+			request = decodeBinary(channel, data);
+		}
+		catch (RuntimeException e) {
+			invalidBinaryRequestLog.log(name, e.getMessage(), webSocket.getRemoteSocketAddress());
+			return;
+		}
+		dispatch(webSocket, request);
+	}
+
+	/**
+	 * Dispatch a decoded request to the channel handling it. A request that can't be handled
+	 * is reported back to client as a batch of one request.
+	 *
+	 * @param webSocket connection to client
+	 * @param request request
+	 */
+	private void dispatch(@NonNull WebSocket webSocket, @NonNull RequestMsgModel request) {
+		try {
+			Channel channel = route(webSocket, request);
+			if (channel != null) {
+				channel.handleRequest(webSocket, request);
+			}
+		}
+		catch (RuntimeException e) {
+			// unroutable request, or one the channel can't carry out (say, with ROS master down)
+			droppedRequestLog.log(name, e.getMessage(), webSocket.getRemoteSocketAddress());
+			BatchResultMsgModel result = new BatchResultMsgModel();
+			result.requestCount = 1;
+			result.addError(0, e.getMessage());
+			sendToClient(webSocket, result);
+		}
+	}
+
+	/**
+	 * Handle json batch of requests.
+	 *
+	 * @param webSocket connection to client
+	 * @param text batch in json
+	 */
+	private void onBatch(@NonNull WebSocket webSocket, @NonNull String text) {
+		List<JsonElement> elements;
+		try {
+			elements = RequestDecoder.splitBatch(text);
+		}
+		catch (JsonParseException e) {
+			invalidBatchLog.log(name, webSocket.getRemoteSocketAddress());
+			return;
+		}
+		BatchResultMsgModel result = new BatchResultMsgModel();
+		List<RequestMsgModel> requests = new ArrayList<>(elements.size());
+		for (int i = 0; i < elements.size(); i++) {
+			try {
+				requests.add(requestDecoder.decode(elements.get(i)));
+			}
+			catch (JsonParseException e) {
+				requests.add(null);
+				result.addError(i, "Invalid request");
+			}
+		}
+		dispatchBatch(webSocket, requests, result);
+	}
+
+	/**
+	 * Handle binary batch of requests.
+	 *
+	 * @param webSocket connection to client
+	 * @param items requests, each framed as if sent on its own
+	 */
+	private void onBatch(@NonNull WebSocket webSocket, @NonNull List<ByteBuffer> items) {
+		BatchResultMsgModel result = new BatchResultMsgModel();
+		List<RequestMsgModel> requests = new ArrayList<>(items.size());
+		for (int i = 0; i < items.size(); i++) {
+			try {
+				ByteBuffer item = items.get(i);
+				requests.add(decodeBinary(readChannel(item), item));
+			}
+			catch (RuntimeException e) {
+				requests.add(null);
+				result.addError(i, e.getMessage());
+			}
+		}
+		dispatchBatch(webSocket, requests, result);
+	}
+
+	/**
+	 * Decode binary request.
+	 *
+	 * @param channel name of channel request is sent to, or null if request names none
+	 * @param data request, from the type ID on
+	 * @return decoded request
+	 * @throws RuntimeException if request is invalid
+	 */
+	private static RequestMsgModel decodeBinary(String channel, @NonNull ByteBuffer data) {
+		RequestMsgModel request = BinaryCodec.decodeRequest(data);
+		request.channel = channel;
+		return request;
+	}
+
+	/**
+	 * Dispatch decoded requests of a batch. Requests are routed and applied in order, each
+	 * run of consecutive requests to the same channel being handed to it together, so that
+	 * the channel may coalesce them. Requests that can't be handled are reported back to
+	 * client.
+	 *
+	 * @param webSocket connection to client
+	 * @param requests requests, null for ones that failed to decode
+	 * @param result result of batch, holding errors so far
+	 */
+	private void dispatchBatch(@NonNull WebSocket webSocket, @NonNull List<RequestMsgModel> requests,
+							   @NonNull BatchResultMsgModel result) {
+		Channel runChannel = null;
+		List<RequestMsgModel> runRequests = new ArrayList<>();
+		List<Integer> runIndices = new ArrayList<>();
+		for (int i = 0; i < requests.size(); i++) {
+			RequestMsgModel request = requests.get(i);
+			if (request == null) {
+				continue;
+			}
+			if (runChannel != null && isHandledByServer(request)) {
+				// routing applies such requests right away, so the run before goes first
+				handleRun(webSocket, runChannel, runRequests, runIndices, result);
+				runChannel = null;
+			}
+			Channel channel;
+			try {
+				channel = route(webSocket, request);
+			}
+			catch (RuntimeException e) {
+				result.addError(i, e.getMessage());
+				continue;
+			}
+			if (channel == null) {
+				continue;
+			}
+			if (channel != runChannel) {
+				if (runChannel != null) {
+					handleRun(webSocket, runChannel, runRequests, runIndices, result);
+				}
+				runChannel = channel;
+			}
+			runRequests.add(request);
+			runIndices.add(i);
+		}
+		if (runChannel != null) {
+			handleRun(webSocket, runChannel, runRequests, runIndices, result);
+		}
+
+		if (!result.errors.isEmpty()) {
+			result.errors.sort(Comparator.comparingInt(error -> error.index));
+			result.requestCount = requests.size();
+			sendToClient(webSocket, result);
+		}
+	}
+
+	/**
+	 * Hand a run of consecutive requests of a batch to their channel, then clear the run.
+	 * Once a request can't be handled, the channel is handed the requests after it again.
+	 *
+	 * @param webSocket connection to client
+	 * @param channel channel handling requests
+	 * @param requests requests of run
+	 * @param indices index in batch of each request of run
+	 * @param result result of batch
+	 */
+	private void handleRun(@NonNull WebSocket webSocket, @NonNull Channel channel,
+						   @NonNull List<RequestMsgModel> requests, @NonNull List<Integer> indices,
+						   @NonNull BatchResultMsgModel result) {
+		int start = 0;
+		while (start < requests.size()) {
+			try {
+				channel.handleBatch(webSocket, requests.subList(start, requests.size()));
+				break;
+			}
+			catch (Channel.BatchRequestException e) {
+				int failed = indexOf(requests, e.getRequest(), start);
+				if (failed < 0) {
+					reportRun(indices, start, e.getMessage(), result);
+					break;
+				}
+				result.addError(indices.get(failed), e.getMessage());
+				start = failed + 1;
+			}
+			catch (RuntimeException e) {
+				// channel can't tell which request failed, so the rest of them are reported
+				reportRun(indices, start, e.getMessage(), result);
+				break;
+			}
+		}
+		requests.clear();
+		indices.clear();
+	}
+
+	/**
+	 * Find a request in a run by identity.
+	 *
+	 * @param requests requests of run
+	 * @param request request to find
+	 * @param from position to search from
+	 * @return position of request, or -1 if it isn't found
+	 */
+	private static int indexOf(@NonNull List<RequestMsgModel> requests, @NonNull RequestMsgModel request, int from) {
+		for (int i = from; i < requests.size(); i++) {
+			if (requests.get(i) == request) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Report requests of a run from a position on as dropped.
+	 *
+	 * @param indices index in batch of each request of run
+	 * @param from position in run to report from
+	 * @param error reason requests were dropped
+	 * @param result result of batch
+	 */
+	private static void reportRun(@NonNull List<Integer> indices, int from, String error,
+								  @NonNull BatchResultMsgModel result) {
+		for (int i = from; i < indices.size(); i++) {
+			result.addError(indices.get(i), error);
+		}
+	}
+
+	/**
+	 * Endpoint encoding messages in json. Raw binary data is sent as is.
+	 */
+	private class JsonEndpoint implements ChannelEndpoint {
+
+		@Override
+		public void deliver(Channel channel, ResponseMsgModel message, Collection<WebSocket> clients) {
+			long start = System.nanoTime();
+			String text = encodeJson(message);
+			jsonEncodeTime.observeSince(start);
+			broadcast(frameText(channel, text), clients);
+			jsonMessagesSent.add(clients.size());
+		}
+
+		@Override
+		public void deliver(Channel channel, ByteBuffer data, Collection<WebSocket> clients) {
+			broadcast(frameBinary(channel, data), clients);
+			binaryMessagesSent.add(clients.size());
+		}
+
+	}
+
+	/**
+	 * Endpoint encoding messages in binary protocol.
+	 */
+	private class BinaryEndpoint implements ChannelEndpoint {
+
+		@Override
+		public void deliver(Channel channel, ResponseMsgModel message, Collection<WebSocket> clients) {
+			long start = System.nanoTime();
+			ByteBuffer data = BinaryCodec.encodeResponse(message);
+			binaryEncodeTime.observeSince(start);
+			broadcast(frameBinary(channel, data), clients);
+			binaryMessagesSent.add(clients.size());
+		}
+
+		@Override
+		public void deliver(Channel channel, ByteBuffer data, Collection<WebSocket> clients) {
+			broadcast(frameBinary(channel, BinaryCodec.encodeRaw(data)), clients);
+			binaryMessagesSent.add(clients.size());
+		}
+
+	}
+
+}
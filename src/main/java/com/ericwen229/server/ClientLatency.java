@@ -0,0 +1,246 @@
+package com.ericwen229.server;
+
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Latency of a client connection, measured by websocket pings: each ping carries the time
+ * it was sent, echoed back by the pong of the client. Only the latest ping is waited for,
+ * so pongs of older pings, or pongs the client sent on its own, are ignored.
+ */
+public class ClientLatency {
+
+	/**
+	 * Length of ping payload in bytes.
+	 */
+	private static final int pingLength = 8;
+
+	/**
+	 * Name of server client is connected to.
+	 */
+	private final String server;
+
+	/**
+	 * Address of client.
+	 */
+	private final String client;
+
+	/**
+	 * Wire format of client.
+	 */
+	private final String format;
+
+	/**
+	 * Time latest ping was sent, from {@link System#nanoTime()}, or 0 if none is waited for.
+	 */
+	private long pingNanos = 0;
+
+	/**
+	 * Latest round trip time, in seconds, or -1 if unknown.
+	 */
+	private double rtt = -1;
+
+	/**
+	 * Moving average of round trip time, in seconds, or -1 if unknown.
+	 */
+	private double smoothedRtt = -1;
+
+	/**
+	 * Minimum round trip time, in seconds, or -1 if unknown.
+	 */
+	private double minRtt = -1;
+
+	/**
+	 * Number of pongs received.
+	 */
+	private long pongCount = 0;
+
+	/**
+	 * Create latency of a connection.
+	 *
+	 * @param server name of server client is connected to
+	 * @param client address of client
+	 * @param format wire format of client
+	 */
+	public ClientLatency(@NonNull String server, @NonNull String client, @NonNull String format) {
+		this.server = server;
+		this.client = client;
+		this.format = format;
+	}
+
+	/**
+	 * Get address of client.
+	 *
+	 * @return address of client
+	 */
+	public String getClient() {
+		return client;
+	}
+
+	/**
+	 * Start a ping, giving up waiting for the previous one.
+	 *
+	 * @return payload of ping
+	 */
+	public synchronized ByteBuffer ping() {
+		long now = System.nanoTime();
+		// 0 stands for no ping waited for
+		pingNanos = now == 0 ? 1 : now;
+		ByteBuffer payload = ByteBuffer.allocate(pingLength);
+		payload.putLong(pingNanos);
+		payload.flip();
+		return payload;
+	}
+
+	/**
+	 * Handle a pong of client.
+	 *
+	 * @param payload payload of pong
+	 * @return round trip time in seconds, or -1 if pong doesn't answer the latest ping
+	 */
+	public synchronized double pong(ByteBuffer payload) {
+		if (pingNanos == 0 || payload == null || payload.remaining() != pingLength
+				|| payload.getLong(payload.position()) != pingNanos) {
+			return -1;
+		}
+		rtt = (System.nanoTime() - pingNanos) / 1e9;
+		pingNanos = 0;
+		smoothedRtt = CaptureLatency.smooth(smoothedRtt, rtt);
+		minRtt = minRtt < 0 ? rtt : Math.min(minRtt, rtt);
+		pongCount++;
+		return rtt;
+	}
+
+	/**
+	 * Get moving average of round trip time.
+	 *
+	 * @return time in seconds, or -1 if unknown
+	 */
+	public synchronized double getSmoothedRtt() {
+		return smoothedRtt;
+	}
+
+	/**
+	 * Report latency of client, broken down for each channel it is subscribed to whose
+	 * messages relay ROS messages.
+	 *
+	 * @param channels channels client is subscribed to
+	 * @return report
+	 */
+	public synchronized Report report(@NonNull List<Channel> channels) {
+		Report report = new Report();
+		report.server = server;
+		report.client = client;
+		report.format = format;
+		report.rttMillis = CaptureLatency.toMillis(rtt);
+		report.smoothedRttMillis = CaptureLatency.toMillis(smoothedRtt);
+		report.minRttMillis = CaptureLatency.toMillis(minRtt);
+		report.pongCount = pongCount;
+		report.channels = new ArrayList<>();
+		for (Channel channel : channels) {
+			CaptureLatency latency = channel.getCaptureLatency();
+			if (latency == null) {
+				continue;
+			}
+			ChannelReport channelReport = new ChannelReport();
+			channelReport.channel = channel.getName();
+			channelReport.captureToReceiveMillis = latency.getCaptureToReceiveMillis();
+			channelReport.receiveToSendMillis = latency.getReceiveToSendMillis();
+			channelReport.networkMillis = smoothedRtt < 0 ? -1 : report.smoothedRttMillis / 2;
+			if (channelReport.captureToReceiveMillis >= 0
+					&& channelReport.receiveToSendMillis >= 0
+					&& channelReport.networkMillis >= 0) {
+				channelReport.totalMillis = channelReport.captureToReceiveMillis
+						+ channelReport.receiveToSendMillis
+						+ channelReport.networkMillis;
+			}
+			report.channels.add(channelReport);
+		}
+		return report;
+	}
+
+	/**
+	 * Latency of a client, serialized in json by the admin query. Times are in milliseconds,
+	 * -1 if unknown.
+	 */
+	public static class Report {
+
+		/**
+		 * Name of server client is connected to.
+		 */
+		public String server;
+
+		/**
+		 * Address of client.
+		 */
+		public String client;
+
+		/**
+		 * Wire format of client.
+		 */
+		public String format;
+
+		/**
+		 * Latest round trip time.
+		 */
+		public double rttMillis;
+
+		/**
+		 * Moving average of round trip time.
+		 */
+		public double smoothedRttMillis;
+
+		/**
+		 * Minimum round trip time.
+		 */
+		public double minRttMillis;
+
+		/**
+		 * Number of pongs received.
+		 */
+		public long pongCount;
+
+		/**
+		 * Latency of channels relaying ROS messages.
+		 */
+		public List<ChannelReport> channels;
+
+	}
+
+	/**
+	 * Latency of messages of a channel to a client, from capture to reaching the client.
+	 */
+	public static class ChannelReport {
+
+		/**
+		 * Name of channel.
+		 */
+		public String channel;
+
+		/**
+		 * From capture to RoverOS receiving message (camera or sensor, and ROS transport).
+		 */
+		public double captureToReceiveMillis;
+
+		/**
+		 * From RoverOS receiving message to sending it (processing and encoding).
+		 */
+		public double receiveToSendMillis;
+
+		/**
+		 * From RoverOS sending message to client receiving it, estimated as half the
+		 * round trip time.
+		 */
+		public double networkMillis;
+
+		/**
+		 * Sum of the above, -1 if any is unknown.
+		 */
+		public double totalMillis = -1;
+
+	}
+
+}
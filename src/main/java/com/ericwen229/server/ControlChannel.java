@@ -0,0 +1,266 @@
+package com.ericwen229.server;
+
+import com.ericwen229.metrics.Histogram;
+import com.ericwen229.metrics.MetricsRegistry;
+import com.ericwen229.node.RoverOSNode;
+import com.ericwen229.server.message.request.ControlMsgModel;
+import com.ericwen229.server.message.request.RequestMsgModel;
+import geometry_msgs.Twist;
+import lombok.NonNull;
+import org.java_websocket.WebSocket;
+import org.ros.namespace.GraphName;
+import org.ros.node.topic.Publisher;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class implements a channel used for controlling Turtlebot.
+ *
+ * <p>Turtlebot control message consists of two parts: linear speed and angular speed.
+ * Control messages are published while the channel has at least one subscriber, from a
+ * thread shared by the control channels of all robots.
+ */
+public class ControlChannel extends Channel {
+
+	/**
+	 * Name of channel.
+	 */
+	public static final String channelName = "control";
+
+	/**
+	 * Thread publishing control messages of all control channels.
+	 */
+	private static final ScheduledExecutorService publishScheduler =
+			Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "roveros-control");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	/**
+	 * Object that fires control messages at a constant rate.
+	 */
+	private final ControlMsgPublisher msgPublisher;
+
+	/**
+	 * Construct channel with given ROS node.
+	 *
+	 * @param node ROS node used by RoverOS
+	 */
+	public ControlChannel(@NonNull RoverOSNode node) {
+		super(qualifiedName(node, channelName));
+		registerRequestType(ControlMsgModel.typeFieldValue, ControlMsgModel.class);
+		msgPublisher = new ControlMsgPublisher(node, 100);
+	}
+
+	@Override
+	public void handleRequest(@NonNull WebSocket webSocket, @NonNull RequestMsgModel request) {
+		if (request.getClass().equals(ControlMsgModel.class)) {
+			doControl((ControlMsgModel) request);
+		}
+		else {
+			super.handleRequest(webSocket, request);
+		}
+	}
+
+	@Override
+	public void handleBatch(@NonNull WebSocket webSocket, @NonNull List<RequestMsgModel> requests) {
+		// speeds are set only once per batch, from the last control request
+		super.handleBatch(webSocket, keepLast(requests, ControlMsgModel.class));
+	}
+
+	/**
+	 * Set rate at which control messages are published.
+	 *
+	 * @param rate number of messages per second
+	 */
+	public void setPublishRate(double rate) {
+		if (!(rate > 0.0)) {
+			throw new RuntimeException(String.format("Invalid control rate %f", rate));
+		}
+		msgPublisher.setIntervalMillis(Math.max(1, Math.round(1000 / rate)));
+	}
+
+	/**
+	 * Set linear speed scale factor, multiplied with linear speed of control requests.
+	 *
+	 * @param value linear speed scale factor
+	 */
+	public void setLinearScale(double value) {
+		msgPublisher.setLinearScale(value);
+	}
+
+	/**
+	 * Set angular speed scale factor, multiplied with angular speed of control requests.
+	 *
+	 * @param value angular speed scale factor
+	 */
+	public void setAngularScale(double value) {
+		msgPublisher.setAngularScale(value);
+	}
+
+	/**
+	 * Analyze control request and set linear and angular speed accordingly.
+	 *
+	 * @param request control request
+	 */
+	private void doControl(@NonNull ControlMsgModel request) {
+		msgPublisher.setLinear(request.linear);
+		msgPublisher.setAngular(request.angular);
+	}
+
+	/**
+	 * This class implements publisher that publish control message to Turtlebot control topic
+	 * at a constant rate.
+	 */
+	private class ControlMsgPublisher {
+
+		/**
+		 * Linear speed (forward or backward).
+		 */
+		private double linear = 0.0;
+
+		/**
+		 * Angular speed (left or right).
+		 */
+		private double angular = 0.0;
+
+		/**
+		 * Linear speed scale factor. Will be multiplied with linear speed to produce final linear speed.
+		 */
+		private double linearScale = 1.0;
+
+		/**
+		 * Angular speed scale factor. Will be multiplied with angular speed to produce final angular speed.
+		 */
+		private double angularScale = 1.0;
+
+		/**
+		 * Interval between two adjacent publishes.
+		 */
+		private volatile long intervalMillis;
+
+		/**
+		 * ROS node used by RoverOS.
+		 */
+		private final RoverOSNode node;
+
+		/**
+		 * Publisher of control topic.
+		 */
+		private final Publisher<Twist> publisher;
+
+		/**
+		 * Deviation of interval between two publishes from the intended interval.
+		 */
+		private final Histogram publishJitter;
+
+		/**
+		 * Time of last publish, or 0 if the previous turn didn't publish. Only used by
+		 * publishing thread.
+		 */
+		private long lastPublishNanos = 0;
+
+		/**
+		 * Construct publisher firing messages at given rate.
+		 *
+		 * @param intervalMillis interval between two adjacent publishes
+		 */
+		private ControlMsgPublisher(@NonNull RoverOSNode node, final long intervalMillis) {
+			this.intervalMillis = intervalMillis;
+			this.node = node;
+			this.publisher = node.publishOnTopic(GraphName.of("/cmd_vel_mux/input/teleop"), geometry_msgs.Twist.class);
+			this.publishJitter = MetricsRegistry.getGlobal().histogram(
+					"roveros_control_publish_jitter_seconds",
+					"Deviation of interval between two control publishes from the intended interval",
+					Histogram.latencyBuckets,
+					"channel", getName());
+			publishScheduler.execute(this::publish);
+		}
+
+		/**
+		 * Publish control message if needed, and schedule next publish. Runs on publishing
+		 * thread.
+		 */
+		private void publish() {
+			long interval = this.intervalMillis;
+			try {
+				// stale commands aren't worth keeping while ROS master is down
+				if (ControlChannel.this.hasSubscribers() && node.isMasterAvailable()) {
+					double linearValue, angularValue;
+					synchronized (this) {
+						linearValue = linear * linearScale;
+						angularValue = angular * angularScale;
+					}
+
+					geometry_msgs.Twist msg = publisher.newMessage();
+					msg.getLinear().setX(linearValue);
+					msg.getAngular().setZ(angularValue);
+					publisher.publish(msg);
+
+					long now = System.nanoTime();
+					if (lastPublishNanos != 0) {
+						publishJitter.observeNanos(Math.abs(now - lastPublishNanos - interval * 1000000));
+					}
+					lastPublishNanos = now;
+				}
+				else {
+					lastPublishNanos = 0;
+				}
+			}
+			finally {
+				publishScheduler.schedule(this::publish, interval, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		/**
+		 * Set interval between two adjacent publishes, from the next one on.
+		 *
+		 * @param value interval in milliseconds
+		 */
+		private void setIntervalMillis(long value) {
+			intervalMillis = value;
+		}
+
+		/**
+		 * Set linear speed.
+		 *
+		 * @param value linear speed value
+		 */
+		private synchronized void setLinear(double value) {
+			linear = value;
+		}
+
+		/**
+		 * Set angular speed.
+		 *
+		 * @param value angular speed value
+		 */
+		private synchronized void setAngular(double value) {
+			angular = value;
+		}
+
+		/**
+		 * Set linear speed scale factor.
+		 *
+		 * @param value linear speed scale factor value
+		 */
+		private synchronized void setLinearScale(double value) {
+			linearScale = value;
+		}
+
+		/**
+		 * Set angular speed scale factor.
+		 *
+		 * @param value angular speed scale factor value
+		 */
+		private synchronized void setAngularScale(double value) {
+			angularScale = value;
+		}
+
+	}
+
+}
@@ -0,0 +1,113 @@
+package com.ericwen229.server;
+
+import actionlib_msgs.GoalStatus;
+import actionlib_msgs.GoalStatusArray;
+import com.ericwen229.server.message.response.NavigationStatusMsgModel;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * This class keeps the latest state of each navigation goal reported by move_base and
+ * turns the periodic status arrays into state transitions.
+ *
+ * <p>move_base republishes the status of all recent goals at a constant rate whether or not
+ * anything changed. Only goals whose state differs from the previous report are passed on.
+ * Goals no longer reported are forgotten.
+ */
+class GoalStatusTracker {
+
+	/**
+	 * Names of goal states, indexed by state code.
+	 */
+	private static final String[] statusNames = {
+			"pending",
+			"active",
+			"preempted",
+			"succeeded",
+			"aborted",
+			"rejected",
+			"preempting",
+			"recalling",
+			"recalled",
+			"lost",
+	};
+
+	/**
+	 * Callback receiving state transitions.
+	 */
+	private final Consumer<NavigationStatusMsgModel> transitionListener;
+
+	/**
+	 * Latest state of each reported goal, in the order reported.
+	 */
+	private Map<String, NavigationStatusMsgModel> goals = new LinkedHashMap<>();
+
+	/**
+	 * Create tracker.
+	 *
+	 * @param transitionListener callback receiving state transitions
+	 */
+	GoalStatusTracker(@NonNull Consumer<NavigationStatusMsgModel> transitionListener) {
+		this.transitionListener = transitionListener;
+	}
+
+	/**
+	 * Callback invoked when move_base status is received.
+	 *
+	 * @param message status reported by move_base
+	 */
+	void handleStatus(@NonNull GoalStatusArray message) {
+		List<NavigationStatusMsgModel> transitions = new ArrayList<>();
+		synchronized (this) {
+			Map<String, NavigationStatusMsgModel> reported = new LinkedHashMap<>();
+			for (GoalStatus status : message.getStatusList()) {
+				String goalId = status.getGoalId().getId();
+				String statusName = statusName(status.getStatus());
+				NavigationStatusMsgModel previous = goals.get(goalId);
+				if (previous != null && previous.status.equals(statusName)) {
+					reported.put(goalId, previous);
+					continue;
+				}
+				NavigationStatusMsgModel msg = new NavigationStatusMsgModel();
+				msg.goalId = goalId;
+				msg.status = statusName;
+				msg.text = status.getText();
+				reported.put(goalId, msg);
+				transitions.add(msg);
+			}
+			goals = reported;
+		}
+
+		for (NavigationStatusMsgModel transition : transitions) {
+			transitionListener.accept(transition);
+		}
+	}
+
+	/**
+	 * Get latest state of each goal still reported by move_base.
+	 *
+	 * @return latest states
+	 */
+	synchronized List<NavigationStatusMsgModel> getLatestStatus() {
+		return new ArrayList<>(goals.values());
+	}
+
+	/**
+	 * Get name of goal state.
+	 *
+	 * @param status state code
+	 * @return name of state
+	 */
+	private static String statusName(byte status) {
+		if (status < 0 || status >= statusNames.length) {
+			return "unknown";
+		}
+		return statusNames[status];
+	}
+
+}
@@ -0,0 +1,238 @@
+package com.ericwen229.server;
+
+import actionlib_msgs.GoalStatus;
+import actionlib_msgs.GoalStatusArray;
+import com.ericwen229.server.message.response.MissionProgressMsgModel;
+import lombok.NonNull;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * This class sequences waypoint missions on the server side.
+ *
+ * <p>Only one mission runs at a time. The next waypoint is dispatched as soon as either
+ * move_base reports the current goal as succeeded or the robot's pose comes within the
+ * arrival tolerance of it, so clients don't have to drive the mission themselves.
+ * Waypoints are in map frame.
+ */
+class MissionSequencer {
+
+	/**
+	 * Publishes a navigation goal (map frame X, map frame Y, orientation angle).
+	 */
+	interface GoalDispatcher {
+
+		/**
+		 * Publish navigation goal.
+		 *
+		 * @param x map frame coordinate X
+		 * @param y map frame coordinate Y
+		 * @param angle orientation angle
+		 */
+		void dispatch(double x, double y, double angle);
+
+	}
+
+	/**
+	 * Object used to publish navigation goals.
+	 */
+	private final GoalDispatcher goalDispatcher;
+
+	/**
+	 * Callback receiving mission progress.
+	 */
+	private final Consumer<MissionProgressMsgModel> progressListener;
+
+	/**
+	 * Distance within which a waypoint counts as reached.
+	 */
+	private final double arrivalTolerance;
+
+	/**
+	 * Identifier of the latest mission.
+	 */
+	private long missionId = 0;
+
+	/**
+	 * Coordinates X of waypoints of running mission, or null if no mission is running.
+	 */
+	private double[] waypointX = null;
+
+	/**
+	 * Coordinates Y of waypoints of running mission.
+	 */
+	private double[] waypointY = null;
+
+	/**
+	 * Orientation angles of waypoints of running mission.
+	 */
+	private double[] waypointAngle = null;
+
+	/**
+	 * Index of waypoint being navigated to.
+	 */
+	private int current = 0;
+
+	/**
+	 * Goal IDs in the latest move_base status.
+	 */
+	private Set<String> knownGoalIds = new HashSet<>();
+
+	/**
+	 * Goal IDs in move_base status at the time the current waypoint was dispatched.
+	 */
+	private Set<String> goalIdsBeforeDispatch = new HashSet<>();
+
+	/**
+	 * Create sequencer.
+	 *
+	 * @param goalDispatcher object used to publish navigation goals
+	 * @param progressListener callback receiving mission progress
+	 * @param arrivalTolerance distance within which a waypoint counts as reached
+	 */
+	MissionSequencer(@NonNull GoalDispatcher goalDispatcher,
+					 @NonNull Consumer<MissionProgressMsgModel> progressListener,
+					 double arrivalTolerance) {
+		this.goalDispatcher = goalDispatcher;
+		this.progressListener = progressListener;
+		this.arrivalTolerance = arrivalTolerance;
+	}
+
+	/**
+	 * Start a new mission, cancelling the running one if any.
+	 *
+	 * @param x coordinates X of waypoints
+	 * @param y coordinates Y of waypoints
+	 * @param angle orientation angles of waypoints
+	 * @return identifier of the new mission
+	 */
+	synchronized long start(@NonNull double[] x, @NonNull double[] y, @NonNull double[] angle) {
+		if (x.length == 0 || x.length != y.length || x.length != angle.length) {
+			throw new RuntimeException("Invalid waypoints");
+		}
+		cancel();
+		missionId++;
+		waypointX = x;
+		waypointY = y;
+		waypointAngle = angle;
+		current = 0;
+		dispatchCurrent();
+		return missionId;
+	}
+
+	/**
+	 * Cancel the running mission if any.
+	 */
+	synchronized void cancel() {
+		if (waypointX != null) {
+			report(MissionProgressMsgModel.stateCancelled);
+			finish();
+		}
+	}
+
+	/**
+	 * Update robot's pose.
+	 *
+	 * @param x map frame coordinate X of robot
+	 * @param y map frame coordinate Y of robot
+	 */
+	synchronized void handlePose(double x, double y) {
+		if (waypointX == null) {
+			return;
+		}
+		double dx = x - waypointX[current];
+		double dy = y - waypointY[current];
+		if (dx * dx + dy * dy <= arrivalTolerance * arrivalTolerance) {
+			advance();
+		}
+	}
+
+	/**
+	 * Update move_base goal status.
+	 *
+	 * @param message status reported by move_base
+	 */
+	synchronized void handleStatus(@NonNull GoalStatusArray message) {
+		// the newest goal move_base didn't know of at dispatch time belongs to current waypoint
+		Set<String> goalIds = new HashSet<>();
+		GoalStatus currentStatus = null;
+		for (GoalStatus status : message.getStatusList()) {
+			String goalId = status.getGoalId().getId();
+			goalIds.add(goalId);
+			if (waypointX != null
+					&& !goalIdsBeforeDispatch.contains(goalId)
+					&& (currentStatus == null
+					|| status.getGoalId().getStamp().compareTo(currentStatus.getGoalId().getStamp()) > 0)) {
+				currentStatus = status;
+			}
+		}
+		knownGoalIds = goalIds;
+
+		if (currentStatus == null) {
+			return;
+		}
+		switch (currentStatus.getStatus()) {
+			case GoalStatus.SUCCEEDED:
+				advance();
+				break;
+			case GoalStatus.ABORTED:
+			case GoalStatus.REJECTED:
+			case GoalStatus.LOST:
+				report(MissionProgressMsgModel.stateAborted);
+				finish();
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Mark current waypoint as reached and move on to the next one.
+	 */
+	private void advance() {
+		report(MissionProgressMsgModel.stateReached);
+		if (current + 1 < waypointX.length) {
+			current++;
+			dispatchCurrent();
+		}
+		else {
+			report(MissionProgressMsgModel.stateCompleted);
+			finish();
+		}
+	}
+
+	/**
+	 * Publish current waypoint as navigation goal.
+	 */
+	private void dispatchCurrent() {
+		goalIdsBeforeDispatch = knownGoalIds;
+		goalDispatcher.dispatch(waypointX[current], waypointY[current], waypointAngle[current]);
+		report(MissionProgressMsgModel.stateDispatched);
+	}
+
+	/**
+	 * Forget the running mission.
+	 */
+	private void finish() {
+		waypointX = null;
+		waypointY = null;
+		waypointAngle = null;
+	}
+
+	/**
+	 * Report progress of running mission.
+	 *
+	 * @param state state of mission
+	 */
+	private void report(@NonNull String state) {
+		MissionProgressMsgModel msg = new MissionProgressMsgModel();
+		msg.missionId = missionId;
+		msg.waypointIndex = current;
+		msg.waypointCount = waypointX.length;
+		msg.state = state;
+		progressListener.accept(msg);
+	}
+
+}
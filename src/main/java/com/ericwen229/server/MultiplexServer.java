@@ -0,0 +1,265 @@
+package com.ericwen229.server;
+
+import com.ericwen229.server.message.BinaryCodec;
+import com.ericwen229.server.message.request.RequestMsgModel;
+import com.ericwen229.server.message.request.SubscribeMsgModel;
+import com.ericwen229.server.message.request.UnsubscribeMsgModel;
+import com.ericwen229.server.message.response.ChannelListMsgModel;
+import com.ericwen229.util.LogSite;
+import com.google.gson.Gson;
+import lombok.NonNull;
+import org.java_websocket.WebSocket;
+import org.java_websocket.extensions.IExtension;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * This class implements a websocket server multiplexing all channels over a single
+ * connection per client.
+ *
+ * <p>On connection, the server sends the list of channels. Clients then subscribe to and
+ * unsubscribe from channels by name, and only receive messages of subscribed channels.
+ * Requests name the channel they are sent to and are dispatched by it; a client must be
+ * subscribed to a channel to send requests to it.
+ *
+ * <p>Json messages carry the name of their channel in a channel field. Binary messages,
+ * in both directions, are prefixed with one byte holding the index of their channel in
+ * the channel list, or {@link #noChannel} for messages not belonging to a channel.
+ */
+public class MultiplexServer extends ChannelWebSocketServer {
+
+	/**
+	 * Channel index of binary messages not belonging to a channel.
+	 */
+	public static final int noChannel = 0xff;
+
+	/**
+	 * Gson object used for message serialize.
+	 */
+	private static final Gson gson = new Gson();
+
+	/**
+	 * Log of subscriptions to channels not served.
+	 */
+	private static final LogSite noChannelLog = LogSite.of(
+			"multiplex.noChannel",
+			Level.WARNING,
+			"RoverOS multiplex server no channel %s. Dropping subscription from %s.");
+
+	/**
+	 * Channels served, keyed by name.
+	 */
+	private final Map<String, Channel> channels = new LinkedHashMap<>();
+
+	/**
+	 * Names of channels in the channel list.
+	 */
+	private final String[] channelNames;
+
+	/**
+	 * Index of each channel in the channel list.
+	 */
+	private final Map<Channel, Byte> channelIndices = new HashMap<>();
+
+	/**
+	 * Text each json message of a channel starts with, keyed by channel.
+	 */
+	private final Map<Channel, String> channelPrefixes = new HashMap<>();
+
+	/**
+	 * Channel list sent to json clients on connection.
+	 */
+	private final String channelListText;
+
+	/**
+	 * Channel list sent to binary clients on connection.
+	 */
+	private final ByteBuffer channelListBinary;
+
+	/**
+	 * Create server serving given channels.
+	 *
+	 * @param address address to which server will listen
+	 * @param compression compression extension offered to clients, or null for none
+	 * @param requestExecutor executor handling requests, or null to handle them on websocket threads
+	 * @param channels channels served
+	 */
+	public MultiplexServer(@NonNull InetSocketAddress address, IExtension compression,
+						   RequestExecutor requestExecutor, @NonNull Channel... channels) {
+		super("multiplex", address, collectRequestTypes(channels), compression, requestExecutor);
+		channelNames = new String[channels.length];
+		for (int i = 0; i < channels.length; i++) {
+			Channel channel = channels[i];
+			if (this.channels.put(channel.getName(), channel) != null) {
+				throw new RuntimeException("Duplicate channel: " + channel.getName());
+			}
+			channelNames[i] = channel.getName();
+			channelIndices.put(channel, (byte) i);
+			channelPrefixes.put(channel, "{\"channel\":" + gson.toJson(channel.getName()));
+		}
+
+		ChannelListMsgModel msg = new ChannelListMsgModel();
+		msg.channels = channelNames.clone();
+		channelListText = encodeJson(msg);
+		channelListBinary = prefix((byte) noChannel, BinaryCodec.encodeResponse(msg));
+	}
+
+	@Override
+	protected Collection<Channel> getChannels() {
+		return channels.values();
+	}
+
+	@Override
+	protected void onConnect(@NonNull WebSocket webSocket) {
+		if (isBinary(webSocket)) {
+			webSocket.send(channelListBinary.duplicate());
+		}
+		else {
+			webSocket.send(channelListText);
+		}
+	}
+
+	@Override
+	protected void onDisconnect(@NonNull WebSocket webSocket) {
+		for (Channel channel : channels.values()) {
+			channel.unsubscribe(webSocket);
+		}
+	}
+
+	@Override
+	protected Channel route(@NonNull WebSocket webSocket, @NonNull RequestMsgModel request) {
+		if (request.getClass().equals(SubscribeMsgModel.class)) {
+			doSubscribe(webSocket, ((SubscribeMsgModel) request).channels);
+			return null;
+		}
+		else if (request.getClass().equals(UnsubscribeMsgModel.class)) {
+			doUnsubscribe(webSocket, ((UnsubscribeMsgModel) request).channels);
+			return null;
+		}
+
+		Channel channel = request.channel == null ? null : channels.get(request.channel);
+		if (channel == null || !channel.getRequestTypes().containsValue(request.getClass())) {
+			throw new RuntimeException(
+					String.format(
+							"No channel %s for request type %s",
+							request.channel,
+							request.getClass().getSimpleName()));
+		}
+		else if (!channel.isSubscribed(webSocket)) {
+			throw new RuntimeException("Not subscribed to channel " + request.channel);
+		}
+		return channel;
+	}
+
+	@Override
+	protected boolean isHandledByServer(@NonNull RequestMsgModel request) {
+		return request.getClass().equals(SubscribeMsgModel.class) || request.getClass().equals(UnsubscribeMsgModel.class);
+	}
+
+	@Override
+	protected String readChannel(@NonNull ByteBuffer data) {
+		int index = data.get() & 0xff;
+		return index < channelNames.length ? channelNames[index] : null;
+	}
+
+	@Override
+	protected String frameText(Channel channel, @NonNull String text) {
+		if (channel == null) {
+			return text;
+		}
+		// splice channel field into message object
+		String prefix = channelPrefixes.get(channel);
+		return text.length() > 2 ? prefix + ',' + text.substring(1) : prefix + '}';
+	}
+
+	@Override
+	protected ByteBuffer frameBinary(Channel channel, @NonNull ByteBuffer data) {
+		return prefix(channel == null ? (byte) noChannel : channelIndices.get(channel), data);
+	}
+
+	/**
+	 * Subscribe client to channels.
+	 *
+	 * @param webSocket connection to client
+	 * @param names names of channels
+	 */
+	private void doSubscribe(@NonNull WebSocket webSocket, List<String> names) {
+		if (names == null) {
+			return;
+		}
+		for (String name : names) {
+			Channel channel = channels.get(name);
+			if (channel == null) {
+				noChannelLog.log(name, webSocket.getRemoteSocketAddress());
+				continue;
+			}
+			channel.subscribe(endpointOf(webSocket), webSocket);
+		}
+	}
+
+	/**
+	 * Unsubscribe client from channels.
+	 *
+	 * @param webSocket connection to client
+	 * @param names names of channels
+	 */
+	private void doUnsubscribe(@NonNull WebSocket webSocket, List<String> names) {
+		if (names == null) {
+			return;
+		}
+		for (String name : names) {
+			Channel channel = channels.get(name);
+			if (channel != null) {
+				channel.unsubscribe(webSocket);
+			}
+		}
+	}
+
+	/**
+	 * Prefix binary message with channel index.
+	 *
+	 * @param index channel index
+	 * @param data message
+	 * @return prefixed message
+	 */
+	private static ByteBuffer prefix(byte index, @NonNull ByteBuffer data) {
+		ByteBuffer prefixed = ByteBuffer.allocate(1 + data.remaining());
+		prefixed.put(index);
+		prefixed.put(data);
+		prefixed.flip();
+		return prefixed;
+	}
+
+	/**
+	 * Collect request types handled by channels, together with subscription requests.
+	 *
+	 * @param channels channels
+	 * @return request types keyed by value of type field
+	 */
+	private static Map<String, Class<? extends RequestMsgModel>> collectRequestTypes(@NonNull Channel... channels) {
+		if (channels.length >= noChannel) {
+			throw new RuntimeException("Too many channels: " + channels.length);
+		}
+		Map<String, Class<? extends RequestMsgModel>> requestTypes = new LinkedHashMap<>();
+		requestTypes.put(SubscribeMsgModel.typeFieldValue, SubscribeMsgModel.class);
+		requestTypes.put(UnsubscribeMsgModel.typeFieldValue, UnsubscribeMsgModel.class);
+		for (Channel channel : channels) {
+			for (Map.Entry<String, Class<? extends RequestMsgModel>> entry : channel.getRequestTypes().entrySet()) {
+				// channels may share a request type, told apart by channel field
+				Class<? extends RequestMsgModel> previous = requestTypes.put(entry.getKey(), entry.getValue());
+				if (previous != null && !previous.equals(entry.getValue())) {
+					throw new RuntimeException("Duplicate request type: " + entry.getKey());
+				}
+			}
+		}
+		return requestTypes;
+	}
+
+}
@@ -0,0 +1,605 @@
+package com.ericwen229.server;
+
+import actionlib_msgs.GoalStatusArray;
+import com.ericwen229.metrics.Histogram;
+import com.ericwen229.metrics.MetricsRegistry;
+import com.ericwen229.node.RoverOSNode;
+import com.ericwen229.server.message.request.NavigationGoalMsgModel;
+import com.ericwen229.server.message.request.PoseEstimateMsgModel;
+import com.ericwen229.server.message.request.PoseHistoryQueryMsgModel;
+import com.ericwen229.server.message.request.RequestMsgModel;
+import com.ericwen229.server.message.request.WaypointMissionMsgModel;
+import com.ericwen229.server.message.response.MissionProgressMsgModel;
+import com.ericwen229.server.message.response.NavigationStatusMsgModel;
+import com.ericwen229.server.message.response.PoseHistoryMsgModel;
+import com.ericwen229.server.message.response.PoseMsgModel;
+import com.ericwen229.tf.Transform;
+import com.ericwen229.tf.TransformCache;
+import com.ericwen229.util.LogSite;
+import com.ericwen229.util.PoseHistory;
+import geometry_msgs.Point;
+import geometry_msgs.PoseStamped;
+import geometry_msgs.PoseWithCovarianceStamped;
+import geometry_msgs.Quaternion;
+import lombok.NonNull;
+import nav_msgs.MapMetaData;
+import org.java_websocket.WebSocket;
+import org.ros.namespace.GraphName;
+import org.ros.node.topic.Publisher;
+import org.ros.node.topic.Subscriber;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class implements a channel used for navigating Turtlebot.
+ *
+ * <p>The channel expects two types of requests: pose estimation and navigation goal.
+ * Pose estimation (topic /initialpose) tells Turtlebot its approximate pose, which
+ * is required before navigating the bot. Navigation goal (topic /move_base_simple)
+ * tells Turtlebot where to go. The navigation functionality is implemented in amcl
+ * ROS package.
+ *
+ * <p>Also, the channel retrieves map meta data from ROS system (topic /map_metadata).
+ * Requests are translated using the map meta data before being published.
+ *
+ * <p>Waypoint missions are sequenced on the server: the next waypoint is sent as a
+ * navigation goal as soon as move_base (topic /move_base/status) or the pose reports
+ * arrival, and mission progress is broadcast to clients.
+ *
+ * <p>Navigation goal states are tracked as well, and only state transitions are
+ * broadcast. A newly subscribed client receives the latest state of each goal.
+ *
+ * <p>Poses are broadcast on a separate pose channel, and recorded in a pose history,
+ * which clients can query by time range.
+ *
+ * <p>Poses, goals and map metadata are in the configured map frame. Poses reported in
+ * another frame are transformed into it using the transform cache.
+ */
+public class NavigationChannel extends Channel {
+
+	/**
+	 * Name of channel.
+	 */
+	public static final String channelName = "navigation";
+
+	/**
+	 * Name of channel on which poses are broadcast.
+	 */
+	public static final String poseChannelName = "pose";
+
+	/**
+	 * Log of requests received before map metadata.
+	 */
+	private static final LogSite mapNotReadyLog = LogSite.of(
+			"navigation.mapNotReady",
+			Level.WARNING,
+			"RoverOS navigation channel map metadata not ready. Dropping request.");
+
+	/**
+	 * Log of poses received before map metadata.
+	 */
+	private static final LogSite poseMapNotReadyLog = LogSite.of(
+			"navigation.poseMapNotReady",
+			Level.WARNING,
+			"RoverOS navigation channel map metadata not ready. Dropping pose info.");
+
+	/**
+	 * Log of poses older than the newest recorded one, left out of pose history.
+	 */
+	private static final LogSite poseOutOfOrderLog = LogSite.of(
+			"navigation.poseOutOfOrder",
+			Level.WARNING,
+			"RoverOS navigation channel pose at %.3f s older than newest recorded pose. Not recording it.");
+
+	/**
+	 * Log of waypoint missions without waypoints.
+	 */
+	private static final LogSite emptyMissionLog = LogSite.of(
+			"navigation.emptyMission",
+			Level.WARNING,
+			"RoverOS navigation channel empty waypoint mission. Dropping request.");
+
+	/**
+	 * Log of poses in a frame that can't be transformed into the map frame.
+	 */
+	private static final LogSite noTransformLog = LogSite.of(
+			"navigation.noTransform",
+			Level.WARNING,
+			"RoverOS navigation channel no transform from %s to %s. Dropping pose info.");
+
+	/**
+	 * ROS node used by RoverOS
+	 */
+	private final RoverOSNode node;
+
+	/**
+	 * Channel on which poses are broadcast.
+	 */
+	private final Channel poseChannel;
+
+	/**
+	 * Time from receiving a pose message to broadcasting it.
+	 */
+	private final Histogram poseBroadcastLatency;
+
+	/**
+	 * This object encapsulates navigation functions.
+	 */
+	private final NavigationManager navigationManager;
+
+	/**
+	 * Create channel with given ROS node.
+	 *
+	 * @param node ROS node used by RoverOS
+	 * @param arrivalTolerance distance (in meters) within which a mission waypoint counts as reached
+	 * @param poseHistory history in which poses are recorded
+	 * @param transformCache cache used to transform poses into map frame
+	 * @param mapFrame frame of the map
+	 */
+	public NavigationChannel(@NonNull RoverOSNode node, double arrivalTolerance, @NonNull PoseHistory poseHistory,
+							 @NonNull TransformCache transformCache, @NonNull String mapFrame) {
+		super(qualifiedName(node, channelName));
+		this.node = node;
+		this.poseChannel = new Channel(qualifiedName(node, poseChannelName));
+		this.poseBroadcastLatency = MetricsRegistry.getGlobal().histogram(
+				"roveros_callback_to_broadcast_seconds",
+				"Time from receiving a ROS message to broadcasting it to clients",
+				Histogram.latencyBuckets,
+				"channel", poseChannel.getName());
+		registerRequestType(PoseEstimateMsgModel.typeFieldValue, PoseEstimateMsgModel.class);
+		registerRequestType(NavigationGoalMsgModel.typeFieldValue, NavigationGoalMsgModel.class);
+		registerRequestType(WaypointMissionMsgModel.typeFieldValue, WaypointMissionMsgModel.class);
+		registerRequestType(PoseHistoryQueryMsgModel.typeFieldValue, PoseHistoryQueryMsgModel.class);
+		this.navigationManager = new NavigationManager(node, arrivalTolerance, poseHistory, transformCache, mapFrame);
+	}
+
+	/**
+	 * Get channel on which poses are broadcast.
+	 *
+	 * @return pose channel
+	 */
+	public Channel getPoseChannel() {
+		return poseChannel;
+	}
+
+	@Override
+	public void handleRequest(@NonNull WebSocket webSocket, @NonNull RequestMsgModel request) {
+		if (request.getClass().equals(PoseEstimateMsgModel.class)) {
+			navigationManager.doPoseEstimate((PoseEstimateMsgModel) request);
+		}
+		else if (request.getClass().equals(NavigationGoalMsgModel.class)) {
+			navigationManager.doNavigationGoal((NavigationGoalMsgModel) request);
+		}
+		else if (request.getClass().equals(WaypointMissionMsgModel.class)) {
+			navigationManager.doWaypointMission((WaypointMissionMsgModel) request);
+		}
+		else if (request.getClass().equals(PoseHistoryQueryMsgModel.class)) {
+			navigationManager.doPoseHistoryQuery(webSocket, (PoseHistoryQueryMsgModel) request);
+		}
+		else {
+			super.handleRequest(webSocket, request);
+		}
+	}
+
+	@Override
+	public void handleBatch(@NonNull WebSocket webSocket, @NonNull List<RequestMsgModel> requests) {
+		// each pose estimate replaces the previous: publish only the last one of batch
+		super.handleBatch(webSocket, keepLast(requests, PoseEstimateMsgModel.class));
+	}
+
+	@Override
+	protected void onSubscribe(@NonNull WebSocket webSocket) {
+		navigationManager.sendLatestGoalStatus(webSocket);
+	}
+
+	/**
+	 * Build pose message from a pose in map frame. Position is given relative to the extent
+	 * of the map, from 0.0 to 1.0 along each axis.
+	 *
+	 * @param x x coordinate in map frame, in meters
+	 * @param y y coordinate in map frame, in meters
+	 * @param angle orientation angle (see {@link #yawToAngle})
+	 * @param originX x coordinate of map origin, in meters
+	 * @param originY y coordinate of map origin, in meters
+	 * @param mapWidth width of map, in meters
+	 * @param mapHeight height of map, in meters
+	 * @return pose message, without stamps
+	 */
+	static PoseMsgModel toPoseMessage(double x, double y, double angle,
+									  double originX, double originY, double mapWidth, double mapHeight) {
+		PoseMsgModel msg = new PoseMsgModel();
+		msg.x = (x - originX) / mapWidth;
+		msg.y = (y - originY) / mapHeight;
+		msg.angle = angle;
+		return msg;
+	}
+
+	/**
+	 * Translate yaw to orientation angle (0.0 to 1.0, counterclockwise from the x axis
+	 * of the map).
+	 *
+	 * @param yaw yaw angle in radians
+	 * @return orientation angle
+	 */
+	static double yawToAngle(double yaw) {
+		double angle = yaw / (2.0 * Math.PI);
+		return angle < 0.0 ? angle + 1.0 : angle;
+	}
+
+	/**
+	 * This class encapsulates navigation related functions, like map metadata management,
+	 * message publishing and pose monitoring.
+	 */
+	private class NavigationManager {
+
+		/**
+		 * Publisher used to publish estimated pose.
+		 */
+		private final Publisher<PoseWithCovarianceStamped> poseEstimatePublisher;
+
+		/**
+		 * Publisher used to publish navigation goal.
+		 */
+		private final Publisher<PoseStamped> navigationGoalPublisher;
+
+		/**
+		 * Subscriber used to retrieve map meta data.
+		 */
+		private final Subscriber<MapMetaData> mapMetaDataSubscriber;
+
+		/**
+		 * Subscriber used to retrieve real time pose.
+		 */
+		private final Subscriber<PoseWithCovarianceStamped> poseSubscriber;
+
+		/**
+		 * Subscriber used to retrieve navigation goal status.
+		 */
+		private final Subscriber<GoalStatusArray> goalStatusSubscriber;
+
+		/**
+		 * Object that sequences waypoint missions.
+		 */
+		private final MissionSequencer missionSequencer;
+
+		/**
+		 * Object that tracks navigation goal states.
+		 */
+		private final GoalStatusTracker goalStatusTracker;
+
+		/**
+		 * History in which poses (in map frame) are recorded.
+		 */
+		private final PoseHistory poseHistory;
+
+		/**
+		 * Cache used to transform poses into map frame.
+		 */
+		private final TransformCache transformCache;
+
+		/**
+		 * Frame of the map.
+		 */
+		private final String mapFrame;
+
+		/**
+		 * Mutex of accessing map meta data.
+		 */
+		private final Object mapMetaDataMutex = new Object();
+
+		/**
+		 * True if map meta data is received.
+		 */
+		private boolean isMapMetaDataLoaded = false;
+
+		/**
+		 * Width of map.
+		 */
+		private int mapWidth;
+
+		/**
+		 * Height of map.
+		 */
+		private int mapHeight;
+
+		/**
+		 * Coordinate X of origin of map.
+		 */
+		private double originX;
+
+		/**
+		 * Coordinate Y of origin of map.
+		 */
+		private double originY;
+
+		/**
+		 * Resolution of map.
+		 */
+		private double resolution;
+
+		/**
+		 * Default constructor that creates publishers & subscribers.
+		 *
+		 * @param arrivalTolerance distance within which a mission waypoint counts as reached
+		 * @param poseHistory history in which poses are recorded
+		 * @param transformCache cache used to transform poses into map frame
+		 * @param mapFrame frame of the map
+		 */
+		private NavigationManager(@NonNull RoverOSNode node, double arrivalTolerance, @NonNull PoseHistory poseHistory,
+								  @NonNull TransformCache transformCache, @NonNull String mapFrame) {
+			this.poseHistory = poseHistory;
+			this.transformCache = transformCache;
+			this.mapFrame = mapFrame;
+			poseEstimatePublisher = node.publishOnTopic(GraphName.of("/initialpose"), PoseWithCovarianceStamped.class);
+			navigationGoalPublisher = node.publishOnTopic(GraphName.of("/move_base_simple/goal"), PoseStamped.class);
+			mapMetaDataSubscriber = node.subscribeToTopic(GraphName.of("/map_metadata"), MapMetaData.class);
+			poseSubscriber = node.subscribeToTopic(GraphName.of("/amcl_pose"), PoseWithCovarianceStamped.class);
+			goalStatusSubscriber = node.subscribeToTopic(GraphName.of("/move_base/status"), GoalStatusArray.class);
+			missionSequencer = new MissionSequencer(
+					this::publishNavigationGoal,
+					this::handleMissionProgress,
+					arrivalTolerance);
+			goalStatusTracker = new GoalStatusTracker(this::handleGoalStatusTransition);
+
+			mapMetaDataSubscriber.addMessageListener(this::handleMapMetaData);
+			poseSubscriber.addMessageListener(this::handlePose);
+			goalStatusSubscriber.addMessageListener(missionSequencer::handleStatus);
+			goalStatusSubscriber.addMessageListener(goalStatusTracker::handleStatus);
+		}
+
+		/**
+		 * Analyze pose estimate request and publish a message to do pose estimate
+		 *
+		 * @param request pose estimate request
+		 */
+		private void doPoseEstimate(@NonNull PoseEstimateMsgModel request) {
+			synchronized (mapMetaDataMutex) {
+				if (!isMapMetaDataLoaded) {
+					mapNotReadyLog.log();
+					return;
+				}
+			}
+
+			PoseWithCovarianceStamped msg = poseEstimatePublisher.newMessage();
+			msg.getHeader().setStamp(node.getCurrentTime());
+			msg.getHeader().setFrameId(mapFrame);
+
+			Point position = msg.getPose().getPose().getPosition();
+			synchronized (mapMetaDataMutex) {
+				position.setX(originX + request.x * mapWidth * resolution);
+				position.setY(originY + request.y * mapHeight * resolution);
+			}
+
+			Quaternion orientation = msg.getPose().getPose().getOrientation();
+			double angleRad = request.angle * Math.PI;
+			orientation.setZ(Math.sin(angleRad));
+			orientation.setW(Math.cos(angleRad));
+
+			poseEstimatePublisher.publish(msg);
+		}
+
+		/**
+		 * Analyze navigation goal request and publish a message to specify navigation goal.
+		 *
+		 * @param request navigation goal request
+		 */
+		private void doNavigationGoal(@NonNull NavigationGoalMsgModel request) {
+			double x, y;
+			synchronized (mapMetaDataMutex) {
+				if (!isMapMetaDataLoaded) {
+					mapNotReadyLog.log();
+					return;
+				}
+				x = originX + request.x * mapWidth * resolution;
+				y = originY + request.y * mapHeight * resolution;
+			}
+
+			// the robot always follows the latest goal
+			missionSequencer.cancel();
+			publishNavigationGoal(x, y, request.angle);
+		}
+
+		/**
+		 * Analyze waypoint mission request and start sequencing its waypoints.
+		 *
+		 * @param request waypoint mission request
+		 */
+		private void doWaypointMission(@NonNull WaypointMissionMsgModel request) {
+			if (request.waypoints == null || request.waypoints.isEmpty()) {
+				emptyMissionLog.log();
+				return;
+			}
+
+			int waypointCount = request.waypoints.size();
+			double[] x = new double[waypointCount];
+			double[] y = new double[waypointCount];
+			double[] angle = new double[waypointCount];
+			synchronized (mapMetaDataMutex) {
+				if (!isMapMetaDataLoaded) {
+					mapNotReadyLog.log();
+					return;
+				}
+				for (int i = 0; i < waypointCount; i++) {
+					WaypointMissionMsgModel.Waypoint waypoint = request.waypoints.get(i);
+					x[i] = originX + waypoint.x * mapWidth * resolution;
+					y[i] = originY + waypoint.y * mapHeight * resolution;
+					angle[i] = waypoint.angle;
+				}
+			}
+
+			missionSequencer.start(x, y, angle);
+		}
+
+		/**
+		 * Analyze pose history query request and send matching poses back to client. Queries
+		 * are always answered, with no poses while map metadata isn't loaded, so that clients
+		 * and relays waiting for answers don't wait forever.
+		 *
+		 * @param webSocket connection to client
+		 * @param request pose history query request
+		 */
+		private void doPoseHistoryQuery(@NonNull WebSocket webSocket, @NonNull PoseHistoryQueryMsgModel request) {
+			long newestStamp = poseHistory.getNewestStamp();
+			long fromNanos = request.from > 0 ? (long) (request.from * 1e9) : newestStamp + (long) (request.from * 1e9);
+			long toNanos = request.to > 0 ? (long) (request.to * 1e9) : newestStamp + (long) (request.to * 1e9);
+			int maxPoints = request.maxPoints > 0 ? request.maxPoints : PoseHistoryQueryMsgModel.defaultMaxPoints;
+			PoseHistory.Range range = poseHistory.query(fromNanos, toNanos, maxPoints);
+
+			PoseHistoryMsgModel msg = new PoseHistoryMsgModel();
+			msg.id = request.id;
+			synchronized (mapMetaDataMutex) {
+				int size = isMapMetaDataLoaded ? range.stamps.length : 0;
+				msg.stamp = new double[size];
+				msg.x = new double[size];
+				msg.y = new double[size];
+				msg.angle = new double[size];
+				if (!isMapMetaDataLoaded) {
+					mapNotReadyLog.log();
+				}
+				for (int i = 0; i < size; i++) {
+					msg.stamp[i] = range.stamps[i] / 1e9;
+					msg.x[i] = (range.xs[i] - originX) / (resolution * mapWidth);
+					msg.y[i] = (range.ys[i] - originY) / (resolution * mapHeight);
+					msg.angle[i] = range.angles[i];
+				}
+			}
+			send(webSocket, msg);
+		}
+
+		/**
+		 * Publish a message to specify navigation goal.
+		 *
+		 * @param x map frame coordinate X
+		 * @param y map frame coordinate Y
+		 * @param angle orientation angle
+		 */
+		private void publishNavigationGoal(double x, double y, double angle) {
+			PoseStamped msg = navigationGoalPublisher.newMessage();
+			msg.getHeader().setStamp(node.getCurrentTime());
+			msg.getHeader().setFrameId(mapFrame);
+
+			Point position = msg.getPose().getPosition();
+			position.setX(x);
+			position.setY(y);
+
+			Quaternion orientation = msg.getPose().getOrientation();
+			double angleRad = angle * Math.PI;
+			orientation.setZ(Math.sin(angleRad));
+			orientation.setW(Math.cos(angleRad));
+
+			navigationGoalPublisher.publish(msg);
+		}
+
+		/**
+		 * Callback invoked when mission makes progress.
+		 *
+		 * @param progress mission progress
+		 */
+		private void handleMissionProgress(@NonNull MissionProgressMsgModel progress) {
+			broadcast(progress);
+		}
+
+		/**
+		 * Callback invoked when a navigation goal changes state.
+		 *
+		 * @param transition new state of goal
+		 */
+		private void handleGoalStatusTransition(@NonNull NavigationStatusMsgModel transition) {
+			broadcast(transition);
+		}
+
+		/**
+		 * Send latest state of each navigation goal to client.
+		 *
+		 * @param webSocket connection to client
+		 */
+		private void sendLatestGoalStatus(@NonNull WebSocket webSocket) {
+			for (NavigationStatusMsgModel status : goalStatusTracker.getLatestStatus()) {
+				send(webSocket, status);
+			}
+		}
+
+		/**
+		 * Callback invoked when map meta data is received.
+		 *
+		 * @param message received map meta data
+		 */
+		private void handleMapMetaData(@NonNull MapMetaData message) {
+			synchronized (mapMetaDataMutex) {
+				isMapMetaDataLoaded = true;
+				mapWidth = message.getWidth();
+				mapHeight = message.getHeight();
+				originX = message.getOrigin().getPosition().getX();
+				originY = message.getOrigin().getPosition().getY();
+				resolution = message.getResolution();
+				Logger.getGlobal().info(
+						String.format(
+								"RoverOS navigation channel map metadata in position: w%d h%d x%f y%f r%f",
+								mapWidth,
+								mapHeight,
+								originX,
+								originY,
+								resolution));
+			}
+		}
+
+		/**
+		 * Callback when pose is received.
+		 *
+		 * @param message received pose
+		 */
+		private void handlePose(@NonNull PoseWithCovarianceStamped message) {
+			long start = System.nanoTime();
+			long stampNanos = message.getHeader().getStamp().totalNsecs();
+			Transform pose = Transform.fromPose(message.getPose().getPose());
+			String frameId = message.getHeader().getFrameId();
+			if (!isMapFrame(frameId)) {
+				Transform toMap = transformCache.lookup(mapFrame, frameId, stampNanos);
+				if (toMap == null) {
+					noTransformLog.log(frameId, mapFrame);
+					return;
+				}
+				pose = toMap.compose(pose);
+			}
+			double angle = yawToAngle(pose.yaw());
+			if (!poseHistory.append(stampNanos, pose.tx, pose.ty, angle)) {
+				poseOutOfOrderLog.log(stampNanos / 1e9);
+			}
+
+			synchronized (mapMetaDataMutex) {
+				if (!isMapMetaDataLoaded) {
+					poseMapNotReadyLog.log();
+					return;
+				}
+			}
+
+			PoseMsgModel msg;
+			synchronized (mapMetaDataMutex) {
+				msg = toPoseMessage(
+						pose.tx, pose.ty, angle, originX, originY, resolution * mapWidth, resolution * mapHeight);
+			}
+			msg.stamp = stampNanos / 1e9;
+			poseChannel.broadcast(msg, start);
+			poseBroadcastLatency.observeSince(start);
+
+			missionSequencer.handlePose(pose.tx, pose.ty);
+		}
+
+		/**
+		 * Check whether frame is the map frame. An empty frame is taken as the map frame.
+		 *
+		 * @param frameId frame
+		 * @return true if frame is the map frame
+		 */
+		private boolean isMapFrame(String frameId) {
+			if (frameId == null || frameId.isEmpty()) {
+				return true;
+			}
+			String frame = frameId.startsWith("/") ? frameId.substring(1) : frameId;
+			return frame.equals(mapFrame);
+		}
+
+	}
+}
@@ -0,0 +1,409 @@
+package com.ericwen229.server;
+
+import com.ericwen229.metrics.MetricsRegistry;
+import lombok.NonNull;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.extensions.CompressionExtension;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.FramedataImpl1;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * WebSocket permessage-deflate extension (RFC 7692).
+ *
+ * <p>Only text messages (json) at least the minimum size are compressed. Binary messages,
+ * such as jpeg images and point clouds, are mostly incompressible and always sent as is.
+ * A message is also sent as is if compressing doesn't make it smaller.
+ *
+ * <p>Messages may be encoded concurrently and are not guaranteed to be written in the
+ * order they were encoded, so each message is compressed on its own and the server
+ * always negotiates server_no_context_takeover. This also makes a broadcast message,
+ * which is shared by all connections, safe to compress only once.
+ */
+public class PerMessageDeflateExtension extends CompressionExtension {
+
+	/**
+	 * Name of extension.
+	 */
+	private static final String extensionName = "permessage-deflate";
+
+	/**
+	 * Bytes appended by a sync flush, stripped from compressed messages.
+	 */
+	private static final byte[] tail = {0x00, 0x00, (byte) 0xff, (byte) 0xff};
+
+	/**
+	 * Maximum size of an inflated message.
+	 */
+	private static final int maxInflatedSize = 16 << 20;
+
+	/**
+	 * Compression level (0 to 9).
+	 */
+	private final int level;
+
+	/**
+	 * Minimum size of a message compressed, in bytes.
+	 */
+	private final int minSize;
+
+	/**
+	 * Statistics shared by all copies of extension.
+	 */
+	private final Stats stats;
+
+	/**
+	 * Compressor of outgoing messages, created on first use.
+	 */
+	private Deflater deflater = null;
+
+	/**
+	 * Decompressor of incoming messages, created on first use.
+	 */
+	private Inflater inflater = null;
+
+	/**
+	 * True while receiving fragments of a compressed message.
+	 */
+	private boolean isInflatingMessage = false;
+
+	/**
+	 * Create extension.
+	 *
+	 * @param level compression level (0 to 9)
+	 * @param minSize minimum size of a message compressed, in bytes
+	 * @param stats statistics to update
+	 */
+	public PerMessageDeflateExtension(int level, int minSize, @NonNull Stats stats) {
+		if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+			throw new RuntimeException("Invalid compression level: " + level);
+		}
+		this.level = level;
+		this.minSize = minSize;
+		this.stats = stats;
+	}
+
+	@Override
+	public synchronized void encodeFrame(Framedata inputFrame) {
+		// frames of a broadcast are shared: compress only once
+		if (!(inputFrame instanceof DataFrame)
+				|| inputFrame.getOpcode() != Framedata.Opcode.TEXT
+				|| !inputFrame.isFin()
+				|| inputFrame.isRSV1()) {
+			return;
+		}
+		ByteBuffer payload = inputFrame.getPayloadData();
+		int size = payload.remaining();
+		if (size < minSize) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		byte[] input = new byte[size];
+		payload.duplicate().get(input);
+		if (deflater == null) {
+			deflater = new Deflater(level, true);
+		}
+		deflater.reset();
+		deflater.setInput(input);
+		ByteArrayOutputStream output = new ByteArrayOutputStream(size / 2 + 16);
+		byte[] chunk = new byte[Math.min(size + 16, 8192)];
+		int length;
+		do {
+			length = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+			output.write(chunk, 0, length);
+		}
+		while (length == chunk.length);
+		byte[] compressed = output.toByteArray();
+		int compressedSize = endsWithTail(compressed) ? compressed.length - tail.length : compressed.length;
+		stats.deflateNanos.add(System.nanoTime() - start);
+
+		if (compressedSize >= size) {
+			stats.messagesSkipped.increment();
+			return;
+		}
+		((FramedataImpl1) inputFrame).setPayload(ByteBuffer.wrap(compressed, 0, compressedSize).slice());
+		((FramedataImpl1) inputFrame).setRSV1(true);
+		stats.messagesDeflated.increment();
+		stats.bytesBeforeDeflate.add(size);
+		stats.bytesAfterDeflate.add(compressedSize);
+	}
+
+	@Override
+	public synchronized void decodeFrame(Framedata inputFrame) throws InvalidDataException {
+		if (!(inputFrame instanceof DataFrame)) {
+			return;
+		}
+		boolean isFirst = inputFrame.getOpcode() != Framedata.Opcode.CONTINUOUS;
+		if (isFirst) {
+			isInflatingMessage = inputFrame.isRSV1();
+		}
+		else if (inputFrame.isRSV1()) {
+			throw new InvalidDataException(CloseFrame.PROTOCOL_ERROR, "RSV1 set on continuation frame");
+		}
+		if (!isInflatingMessage) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		ByteBuffer payload = inputFrame.getPayloadData();
+		byte[] input = new byte[payload.remaining() + (inputFrame.isFin() ? tail.length : 0)];
+		payload.duplicate().get(input, 0, payload.remaining());
+		if (inputFrame.isFin()) {
+			System.arraycopy(tail, 0, input, input.length - tail.length, tail.length);
+			isInflatingMessage = false;
+		}
+		if (inflater == null) {
+			inflater = new Inflater(true);
+		}
+		inflater.setInput(input);
+		ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 4);
+		byte[] chunk = new byte[8192];
+		try {
+			while (!inflater.needsInput()) {
+				int length = inflater.inflate(chunk);
+				if (length == 0 && (inflater.finished() || inflater.needsDictionary())) {
+					break;
+				}
+				output.write(chunk, 0, length);
+				if (output.size() > maxInflatedSize) {
+					throw new InvalidDataException(CloseFrame.TOOBIG, "Inflated message too large");
+				}
+			}
+		}
+		catch (DataFormatException e) {
+			throw new InvalidDataException(CloseFrame.PROTOCOL_ERROR, "Invalid compressed data");
+		}
+		((FramedataImpl1) inputFrame).setPayload(ByteBuffer.wrap(output.toByteArray()));
+		((FramedataImpl1) inputFrame).setRSV1(false);
+		stats.messagesInflated.increment();
+		stats.inflateNanos.add(System.nanoTime() - start);
+	}
+
+	@Override
+	public boolean acceptProvidedExtensionAsServer(String inputExtension) {
+		if (inputExtension == null) {
+			return false;
+		}
+		// accept the first offer whose parameters can be honored
+		for (String offer : inputExtension.split(",")) {
+			String[] parts = offer.split(";");
+			if (!parts[0].trim().equalsIgnoreCase(extensionName)) {
+				continue;
+			}
+			boolean isAcceptable = true;
+			for (int i = 1; i < parts.length; i++) {
+				String[] parameter = parts[i].trim().split("=", 2);
+				String name = parameter[0].trim();
+				String value = parameter.length > 1 ? parameter[1].trim().replace("\"", "") : null;
+				if (name.equals("server_max_window_bits")) {
+					// deflater window can't be made smaller than 15 bits
+					isAcceptable &= "15".equals(value);
+				}
+				else if (!name.equals("server_no_context_takeover")
+						&& !name.equals("client_no_context_takeover")
+						&& !name.equals("client_max_window_bits")) {
+					isAcceptable = false;
+				}
+			}
+			if (isAcceptable) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean acceptProvidedExtensionAsClient(String inputExtension) {
+		return false;
+	}
+
+	@Override
+	public String getProvidedExtensionAsServer() {
+		return extensionName + "; server_no_context_takeover";
+	}
+
+	@Override
+	public String getProvidedExtensionAsClient() {
+		return "";
+	}
+
+	@Override
+	public IExtension copyInstance() {
+		return new PerMessageDeflateExtension(level, minSize, stats);
+	}
+
+	@Override
+	public synchronized void reset() {
+		isInflatingMessage = false;
+		if (inflater != null) {
+			inflater.reset();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return extensionName;
+	}
+
+	/**
+	 * Check whether compressed data ends with the bytes appended by a sync flush.
+	 *
+	 * @param data compressed data
+	 * @return true if data ends with sync flush tail
+	 */
+	private static boolean endsWithTail(@NonNull byte[] data) {
+		if (data.length < tail.length) {
+			return false;
+		}
+		for (int i = 0; i < tail.length; i++) {
+			if (data[data.length - tail.length + i] != tail[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compression statistics.
+	 */
+	public static class Stats {
+
+		/**
+		 * Number of messages compressed.
+		 */
+		private final LongAdder messagesDeflated = new LongAdder();
+
+		/**
+		 * Number of messages sent as is because compressing didn't make them smaller.
+		 */
+		private final LongAdder messagesSkipped = new LongAdder();
+
+		/**
+		 * Size of messages compressed, before compression.
+		 */
+		private final LongAdder bytesBeforeDeflate = new LongAdder();
+
+		/**
+		 * Size of messages compressed, after compression.
+		 */
+		private final LongAdder bytesAfterDeflate = new LongAdder();
+
+		/**
+		 * Time spent compressing, including messages sent as is.
+		 */
+		private final LongAdder deflateNanos = new LongAdder();
+
+		/**
+		 * Number of messages decompressed.
+		 */
+		private final LongAdder messagesInflated = new LongAdder();
+
+		/**
+		 * Time spent decompressing.
+		 */
+		private final LongAdder inflateNanos = new LongAdder();
+
+		/**
+		 * Get number of messages compressed.
+		 *
+		 * @return number of messages
+		 */
+		public long getMessagesDeflated() {
+			return messagesDeflated.sum();
+		}
+
+		/**
+		 * Get number of messages sent as is because compressing didn't make them smaller.
+		 *
+		 * @return number of messages
+		 */
+		public long getMessagesSkipped() {
+			return messagesSkipped.sum();
+		}
+
+		/**
+		 * Get number of bytes saved by compression.
+		 *
+		 * @return number of bytes
+		 */
+		public long getBytesSaved() {
+			return bytesBeforeDeflate.sum() - bytesAfterDeflate.sum();
+		}
+
+		/**
+		 * Get time spent compressing.
+		 *
+		 * @return time in nanoseconds
+		 */
+		public long getDeflateNanos() {
+			return deflateNanos.sum();
+		}
+
+		/**
+		 * Get number of messages decompressed.
+		 *
+		 * @return number of messages
+		 */
+		public long getMessagesInflated() {
+			return messagesInflated.sum();
+		}
+
+		/**
+		 * Get time spent decompressing.
+		 *
+		 * @return time in nanoseconds
+		 */
+		public long getInflateNanos() {
+			return inflateNanos.sum();
+		}
+
+		/**
+		 * Register statistics as metrics.
+		 *
+		 * @param metrics registry
+		 */
+		public void registerMetrics(@NonNull MetricsRegistry metrics) {
+			metrics.counter("roveros_compression_messages_total", "Json messages sent compressed",
+					this::getMessagesDeflated, "result", "deflated");
+			metrics.counter("roveros_compression_messages_total", "Json messages sent compressed",
+					this::getMessagesSkipped, "result", "skipped");
+			metrics.counter("roveros_compression_bytes_saved_total", "Bytes saved by compression",
+					this::getBytesSaved);
+			metrics.counter("roveros_compression_seconds_total", "Time spent compressing",
+					() -> getDeflateNanos() / 1e9);
+			metrics.counter("roveros_decompression_messages_total", "Messages decompressed",
+					this::getMessagesInflated);
+			metrics.counter("roveros_decompression_seconds_total", "Time spent decompressing",
+					() -> getInflateNanos() / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			long before = bytesBeforeDeflate.sum();
+			long after = bytesAfterDeflate.sum();
+			return String.format(
+					"%d messages compressed %d -> %d bytes (%.1f%% saved), %d sent as is, %.1f ms compressing; "
+							+ "%d messages decompressed, %.1f ms decompressing",
+					getMessagesDeflated(),
+					before,
+					after,
+					before == 0 ? 0.0 : 100.0 * (before - after) / before,
+					getMessagesSkipped(),
+					getDeflateNanos() / 1e6,
+					getMessagesInflated(),
+					getInflateNanos() / 1e6);
+		}
+
+	}
+
+}
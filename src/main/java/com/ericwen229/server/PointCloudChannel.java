@@ -0,0 +1,153 @@
+package com.ericwen229.server;
+
+import com.ericwen229.node.RoverOSNode;
+import com.ericwen229.util.LogSite;
+import com.ericwen229.util.VoxelGrid;
+import lombok.NonNull;
+import org.ros.namespace.GraphName;
+import org.ros.node.topic.Subscriber;
+import sensor_msgs.PointCloud2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.logging.Level;
+
+/**
+ * This class implements a channel used to broadcast
+ * downsampled point clouds from Turtlebot depth camera.
+ *
+ * <p>Each cloud is downsampled on a voxel grid and the voxel centroids are broadcast
+ * as little endian binary frames. Clouds arriving faster than the maximum rate are
+ * dropped, and clouds with more voxels than the point budget are decimated.
+ */
+public class PointCloudChannel extends Channel {
+
+	/**
+	 * Name of channel.
+	 */
+	public static final String channelName = "pointcloud";
+
+	/**
+	 * Length of binary frame header in bytes.
+	 */
+	private static final int headerLength = 16;
+
+	/**
+	 * Log of clouds that can't be downsampled.
+	 */
+	private static final LogSite droppedCloudLog = LogSite.of(
+			"pointcloud.droppedCloud", Level.WARNING, "RoverOS point cloud channel dropping cloud: %s");
+
+	/**
+	 * Filter used to downsample clouds.
+	 */
+	private final VoxelGrid voxelGrid;
+
+	/**
+	 * Maximum number of points in a frame.
+	 */
+	private volatile int pointBudget;
+
+	/**
+	 * Minimum interval between two adjacent frames.
+	 */
+	private volatile long minIntervalNanos;
+
+	/**
+	 * Time at which the last frame was broadcast.
+	 */
+	private long lastBroadcastNanos;
+
+	/**
+	 * Construct channel with given ROS node.
+	 *
+	 * @param node ROS node used by RoverOS
+	 * @param leafSize edge length of a voxel
+	 * @param maxRate maximum number of frames broadcast per second
+	 * @param pointBudget maximum number of points in a frame
+	 */
+	public PointCloudChannel(@NonNull RoverOSNode node, float leafSize, double maxRate, int pointBudget) {
+		super(qualifiedName(node, channelName));
+		this.voxelGrid = new VoxelGrid(leafSize);
+		setMaxRate(maxRate);
+		setPointBudget(pointBudget);
+		this.lastBroadcastNanos = System.nanoTime() - minIntervalNanos;
+
+		Subscriber<PointCloud2> handler =
+				node.subscribeToTopic(
+						GraphName.of("/camera/depth/points"),
+						PointCloud2.class);
+		handler.addMessageListener(this::pointCloudMessageHandler);
+	}
+
+	/**
+	 * Set maximum number of frames broadcast per second.
+	 *
+	 * @param maxRate maximum rate
+	 */
+	public void setMaxRate(double maxRate) {
+		if (!(maxRate > 0.0)) {
+			throw new RuntimeException(String.format("Invalid point cloud rate %f", maxRate));
+		}
+		minIntervalNanos = (long) (1e9 / maxRate);
+	}
+
+	/**
+	 * Set maximum number of points in a frame.
+	 *
+	 * @param pointBudget maximum number of points
+	 */
+	public void setPointBudget(int pointBudget) {
+		if (pointBudget <= 0) {
+			throw new RuntimeException(String.format("Invalid point cloud budget %d", pointBudget));
+		}
+		this.pointBudget = pointBudget;
+	}
+
+	/**
+	 * Callback invoked when point cloud message received.
+	 *
+	 * @param cloudMsg received point cloud message
+	 */
+	private void pointCloudMessageHandler(PointCloud2 cloudMsg) {
+		long now = System.nanoTime();
+		if (!hasSubscribers() || now - lastBroadcastNanos < minIntervalNanos) {
+			return;
+		}
+		lastBroadcastNanos = now;
+
+		float[] points;
+		try {
+			points = VoxelGrid.decimate(voxelGrid.downsample(cloudMsg), pointBudget);
+		}
+		catch (RuntimeException e) {
+			droppedCloudLog.log(e.getMessage());
+			return;
+		}
+
+		broadcast(encodeFrame(points, cloudMsg.getHeader().getStamp().toSeconds()));
+	}
+
+	/**
+	 * Encode points into a binary frame.
+	 *
+	 * <p>Frame layout (little endian): float64 capture time in seconds, int32 point count,
+	 * float32 voxel leaf size, followed by float32 x, y, z of each point.
+	 *
+	 * @param points points packed as x0, y0, z0, x1, y1, z1, ...
+	 * @param stamp capture time in seconds
+	 * @return encoded frame
+	 */
+	private ByteBuffer encodeFrame(@NonNull float[] points, double stamp) {
+		ByteBuffer frame = ByteBuffer
+				.allocate(headerLength + points.length * 4)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		frame.putDouble(stamp);
+		frame.putInt(points.length / 3);
+		frame.putFloat(voxelGrid.getLeafSize());
+		frame.asFloatBuffer().put(points);
+		frame.rewind();
+		return frame;
+	}
+
+}
@@ -0,0 +1,234 @@
+package com.ericwen229.server;
+
+import com.ericwen229.server.message.request.ControlMsgModel;
+import com.ericwen229.server.message.request.NavigationGoalMsgModel;
+import com.ericwen229.server.message.request.PoseEstimateMsgModel;
+import com.ericwen229.server.message.request.PoseHistoryQueryMsgModel;
+import com.ericwen229.server.message.request.RequestMsgModel;
+import com.ericwen229.server.message.request.TopicPublishMsgModel;
+import com.ericwen229.server.message.request.WaypointMissionMsgModel;
+import com.ericwen229.server.message.response.PoseHistoryMsgModel;
+import com.ericwen229.server.message.response.ResponseMsgModel;
+import lombok.NonNull;
+import org.java_websocket.WebSocket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements a channel relaying a channel of an upstream RoverOS instance (see
+ * {@link RelayClient}), under the same name.
+ *
+ * <p>The relay subscribes upstream while the channel has at least one subscriber, so that
+ * the upstream link carries a single copy of each message, whatever the number of clients.
+ * The latest message of each type is kept and sent to clients as they subscribe, so they
+ * don't wait for the next frame or pose. Requests are forwarded upstream; pose history
+ * queries are forwarded with an identifier of the relay, so that their answers go back to
+ * the client which asked, with the identifier it chose.
+ */
+public class RelayChannel extends Channel {
+
+	/**
+	 * Time after which a pose history query forwarded upstream is no longer waited for.
+	 */
+	private static final long queryTimeoutNanos = TimeUnit.SECONDS.toNanos(30);
+
+	/**
+	 * Identifier of the last pose history query forwarded upstream, shared by all channels.
+	 */
+	private static final AtomicLong lastQueryId = new AtomicLong();
+
+	/**
+	 * Relay client receiving messages of channel.
+	 */
+	private final RelayClient client;
+
+	/**
+	 * Latest message of each type, keyed by value of type field.
+	 */
+	private final Map<String, ResponseMsgModel> latestMessages = new ConcurrentHashMap<>();
+
+	/**
+	 * Latest raw binary data, or null.
+	 */
+	private volatile ByteBuffer latestData = null;
+
+	/**
+	 * Pose history queries waiting for an answer, keyed by identifier forwarded upstream.
+	 */
+	private final Map<Long, PendingQuery> pendingQueries = new ConcurrentHashMap<>();
+
+	/**
+	 * True while channel is subscribed upstream.
+	 */
+	private boolean upstreamSubscribed = false;
+
+	/**
+	 * Create channel relaying an upstream channel.
+	 *
+	 * @param client relay client receiving messages of channel
+	 * @param name name of upstream channel
+	 */
+	RelayChannel(@NonNull RelayClient client, @NonNull String name) {
+		super(name);
+		this.client = client;
+		// request types of upstream channel are unknown, so all of them are forwarded
+		registerRequestType(ControlMsgModel.typeFieldValue, ControlMsgModel.class);
+		registerRequestType(PoseEstimateMsgModel.typeFieldValue, PoseEstimateMsgModel.class);
+		registerRequestType(NavigationGoalMsgModel.typeFieldValue, NavigationGoalMsgModel.class);
+		registerRequestType(WaypointMissionMsgModel.typeFieldValue, WaypointMissionMsgModel.class);
+		registerRequestType(PoseHistoryQueryMsgModel.typeFieldValue, PoseHistoryQueryMsgModel.class);
+		registerRequestType(TopicPublishMsgModel.typeFieldValue, TopicPublishMsgModel.class);
+	}
+
+	@Override
+	public void handleRequest(@NonNull WebSocket webSocket, @NonNull RequestMsgModel request) {
+		if (request.getClass().equals(PoseHistoryQueryMsgModel.class)) {
+			PoseHistoryQueryMsgModel query = (PoseHistoryQueryMsgModel) request;
+			long now = System.nanoTime();
+			pendingQueries.values().removeIf(pending -> now - pending.sentNanos > queryTimeoutNanos);
+
+			// forward a copy, as the request may be reused by the decoder
+			PoseHistoryQueryMsgModel forwarded = new PoseHistoryQueryMsgModel();
+			forwarded.from = query.from;
+			forwarded.to = query.to;
+			forwarded.maxPoints = query.maxPoints;
+			forwarded.id = lastQueryId.incrementAndGet();
+			pendingQueries.put(forwarded.id, new PendingQuery(webSocket, query.id, now));
+			try {
+				client.forward(this, forwarded);
+			}
+			catch (RuntimeException e) {
+				pendingQueries.remove(forwarded.id);
+				throw e;
+			}
+		}
+		else {
+			client.forward(this, request);
+		}
+	}
+
+	@Override
+	public void handleBatch(@NonNull WebSocket webSocket, @NonNull List<RequestMsgModel> requests) {
+		// only the last speeds and pose estimate of a batch are worth sending upstream
+		super.handleBatch(webSocket, keepLast(keepLast(requests, ControlMsgModel.class), PoseEstimateMsgModel.class));
+	}
+
+	/**
+	 * Relay a message received from upstream to subscribers.
+	 *
+	 * @param message message
+	 */
+	void relay(@NonNull ResponseMsgModel message) {
+		if (message instanceof PoseHistoryMsgModel) {
+			PoseHistoryMsgModel answer = (PoseHistoryMsgModel) message;
+			PendingQuery pending = pendingQueries.remove(answer.id);
+			if (pending != null) {
+				answer.id = pending.clientId;
+				send(pending.webSocket, answer);
+			}
+			return;
+		}
+		latestMessages.put(message.type, message);
+		broadcast(message);
+	}
+
+	/**
+	 * Relay raw binary data received from upstream to subscribers.
+	 *
+	 * @param data raw data
+	 */
+	void relay(@NonNull ByteBuffer data) {
+		latestData = data;
+		broadcast(data);
+	}
+
+	/**
+	 * Subscribe upstream again if channel has subscribers, once connected to upstream.
+	 */
+	synchronized void resubscribe() {
+		if (upstreamSubscribed) {
+			client.subscribe(this);
+		}
+	}
+
+	/**
+	 * Forget state tied to upstream connection, once it is lost: messages kept are stale,
+	 * and pending queries will never be answered.
+	 */
+	void disconnected() {
+		latestMessages.clear();
+		latestData = null;
+		pendingQueries.clear();
+	}
+
+	@Override
+	protected void onSubscribe(@NonNull WebSocket webSocket) {
+		synchronized (this) {
+			if (!upstreamSubscribed) {
+				upstreamSubscribed = true;
+				client.subscribe(this);
+			}
+		}
+		for (ResponseMsgModel message : new ArrayList<>(latestMessages.values())) {
+			send(webSocket, message);
+		}
+		ByteBuffer data = latestData;
+		if (data != null) {
+			send(webSocket, data);
+		}
+	}
+
+	@Override
+	protected void onUnsubscribe(@NonNull WebSocket webSocket) {
+		synchronized (this) {
+			if (upstreamSubscribed && !hasSubscribers()) {
+				upstreamSubscribed = false;
+				client.unsubscribe(this);
+				latestMessages.clear();
+				latestData = null;
+			}
+		}
+	}
+
+	/**
+	 * Pose history query forwarded upstream, waiting for an answer.
+	 */
+	private static class PendingQuery {
+
+		/**
+		 * Connection to client which asked.
+		 */
+		private final WebSocket webSocket;
+
+		/**
+		 * Identifier of query chosen by client.
+		 */
+		private final long clientId;
+
+		/**
+		 * Time query was forwarded, from {@link System#nanoTime()}.
+		 */
+		private final long sentNanos;
+
+		/**
+		 * Create pending query.
+		 *
+		 * @param webSocket connection to client which asked
+		 * @param clientId identifier of query chosen by client
+		 * @param sentNanos time query was forwarded
+		 */
+		private PendingQuery(@NonNull WebSocket webSocket, long clientId, long sentNanos) {
+			this.webSocket = webSocket;
+			this.clientId = clientId;
+			this.sentNanos = sentNanos;
+		}
+
+	}
+
+}
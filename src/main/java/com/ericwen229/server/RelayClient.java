@@ -0,0 +1,569 @@
+package com.ericwen229.server;
+
+import com.ericwen229.metrics.Counter;
+import com.ericwen229.metrics.MetricsRegistry;
+import com.ericwen229.server.message.BinaryCodec;
+import com.ericwen229.server.message.request.RequestMsgModel;
+import com.ericwen229.server.message.request.SubscribeMsgModel;
+import com.ericwen229.server.message.request.UnsubscribeMsgModel;
+import com.ericwen229.server.message.response.ChannelListMsgModel;
+import com.ericwen229.server.message.response.ImageMsgModel;
+import com.ericwen229.server.message.response.MissionProgressMsgModel;
+import com.ericwen229.server.message.response.NavigationStatusMsgModel;
+import com.ericwen229.server.message.response.PoseHistoryMsgModel;
+import com.ericwen229.server.message.response.PoseMsgModel;
+import com.ericwen229.server.message.response.ResponseMsgModel;
+import com.ericwen229.server.message.response.TopicMsgModel;
+import com.ericwen229.util.LogSite;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonParseException;
+import lombok.NonNull;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Client of the multiplex server of an upstream RoverOS instance, relaying its channels
+ * (see {@link RelayChannel}) so that they can be served again to clients of this instance.
+ * Relays can be chained, forming a fan-out tree whose root is the instance next to the
+ * robot.
+ *
+ * <p>The client asks upstream for the binary protocol (see {@link BinaryCodec}), so that
+ * images come without Base64 and messages are decoded without parsing json, and falls
+ * back to json with upstream instances not offering it. Requests are forwarded in json,
+ * which upstream accepts either way. Channels are created from the first channel list
+ * received, and kept afterwards. When the connection is lost, the client connects again with backoff
+ * from 1 s up to 30 s, and subscribes again to channels that have subscribers.
+ */
+public class RelayClient {
+
+	/**
+	 * Delay before first attempt to connect again, doubled after each failed attempt.
+	 */
+	private static final long minReconnectBackoffMillis = 1000;
+
+	/**
+	 * Maximum delay between two attempts to connect again.
+	 */
+	private static final long maxReconnectBackoffMillis = 30000;
+
+	/**
+	 * Gson object used for message serialize and deserialize.
+	 */
+	private static final Gson gson = new Gson();
+
+	/**
+	 * Message types relayed, keyed by value of type field.
+	 */
+	private static final Map<String, Class<? extends ResponseMsgModel>> responseTypes = new HashMap<>();
+
+	static {
+		responseTypes.put(PoseMsgModel.typeFieldValue, PoseMsgModel.class);
+		responseTypes.put(ImageMsgModel.typeFieldValue, ImageMsgModel.class);
+		responseTypes.put(MissionProgressMsgModel.typeFieldValue, MissionProgressMsgModel.class);
+		responseTypes.put(NavigationStatusMsgModel.typeFieldValue, NavigationStatusMsgModel.class);
+		responseTypes.put(PoseHistoryMsgModel.typeFieldValue, PoseHistoryMsgModel.class);
+		responseTypes.put(TopicMsgModel.typeFieldValue, TopicMsgModel.class);
+	}
+
+	/**
+	 * Log of messages from upstream that can't be relayed.
+	 */
+	private static final LogSite invalidMessageLog = LogSite.of(
+			"relay.invalidMessage",
+			Level.WARNING,
+			"RoverOS relay invalid message from %s: %s. Dropping message.");
+
+	/**
+	 * Log of errors of connection to upstream.
+	 */
+	private static final LogSite connectionErrorLog = LogSite.of(
+			"relay.connectionError", Level.WARNING, "RoverOS relay upstream %s error: %s");
+
+	/**
+	 * Log of attempts to connect again, repeated while upstream is away.
+	 */
+	private static final LogSite reconnectLog = LogSite.of(
+			"relay.reconnect",
+			Level.INFO,
+			"RoverOS relay connecting again to %s (next attempt in %d ms)");
+
+	/**
+	 * URI of upstream multiplex server.
+	 */
+	private final URI upstream;
+
+	/**
+	 * Names of channels relayed, or empty to relay all channels.
+	 */
+	private final Set<String> channelNames;
+
+	/**
+	 * Channels relayed, keyed by name, created from the first channel list.
+	 */
+	private final Map<String, RelayChannel> channels = Collections.synchronizedMap(new LinkedHashMap<>());
+
+	/**
+	 * Future completed once channels are created.
+	 */
+	private final CompletableFuture<Void> channelsFuture = new CompletableFuture<>();
+
+	/**
+	 * Thread connecting to upstream.
+	 */
+	private final ScheduledExecutorService connector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "roveros-relay-connector");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Number of messages received from upstream.
+	 */
+	private final Counter messagesReceived;
+
+	/**
+	 * Number of requests forwarded upstream.
+	 */
+	private final Counter requestsForwarded;
+
+	/**
+	 * Current connection, or null while disconnected.
+	 */
+	private volatile Connection connection = null;
+
+	/**
+	 * Delay before next attempt to connect again. Only used by connector thread.
+	 */
+	private long reconnectBackoffMillis = minReconnectBackoffMillis;
+
+	/**
+	 * Create client, not connected yet.
+	 *
+	 * @param upstream URI of upstream multiplex server, such as {@code ws://robot:2330}
+	 * @param channelNames names of channels relayed, or empty to relay all channels
+	 */
+	public RelayClient(@NonNull URI upstream, @NonNull Set<String> channelNames) {
+		this.upstream = upstream;
+		this.channelNames = channelNames;
+		MetricsRegistry metrics = MetricsRegistry.getGlobal();
+		this.messagesReceived = metrics.counter(
+				"roveros_relay_messages_received_total", "Messages received from upstream RoverOS instance");
+		this.requestsForwarded = metrics.counter(
+				"roveros_relay_requests_forwarded_total", "Requests forwarded to upstream RoverOS instance");
+		metrics.gauge("roveros_relay_upstream_connected",
+				"Whether relay is connected to upstream RoverOS instance (1) or not (0)",
+				() -> isConnected() ? 1 : 0);
+	}
+
+	/**
+	 * Start connecting to upstream.
+	 */
+	public void start() {
+		connector.execute(this::connect);
+	}
+
+	/**
+	 * Stop relaying, closing connection to upstream, such as when startup fails.
+	 */
+	public void stop() {
+		connector.shutdownNow();
+		Connection current = connection;
+		if (current != null) {
+			current.close();
+		}
+	}
+
+	/**
+	 * Get a future completed once channels are created from the first channel list of
+	 * upstream.
+	 *
+	 * @return future of channels
+	 */
+	public CompletableFuture<Void> whenChannelsReady() {
+		return channelsFuture.thenApply(v -> v);
+	}
+
+	/**
+	 * Get channels relayed, once ready.
+	 *
+	 * @return channels in order of upstream channel list
+	 */
+	public List<Channel> getChannels() {
+		synchronized (channels) {
+			return new ArrayList<>(channels.values());
+		}
+	}
+
+	/**
+	 * Check whether client is connected to upstream.
+	 *
+	 * @return true if connected
+	 */
+	public boolean isConnected() {
+		Connection current = connection;
+		return current != null && current.isOpen();
+	}
+
+	/**
+	 * Subscribe to channel upstream. Does nothing while disconnected, channels with
+	 * subscribers being subscribed again once connected.
+	 *
+	 * @param channel channel
+	 */
+	void subscribe(@NonNull RelayChannel channel) {
+		SubscribeMsgModel request = new SubscribeMsgModel();
+		request.type = SubscribeMsgModel.typeFieldValue;
+		request.channels = Collections.singletonList(channel.getName());
+		sendIfConnected(gson.toJson(request));
+	}
+
+	/**
+	 * Unsubscribe from channel upstream. Does nothing while disconnected.
+	 *
+	 * @param channel channel
+	 */
+	void unsubscribe(@NonNull RelayChannel channel) {
+		UnsubscribeMsgModel request = new UnsubscribeMsgModel();
+		request.type = UnsubscribeMsgModel.typeFieldValue;
+		request.channels = Collections.singletonList(channel.getName());
+		sendIfConnected(gson.toJson(request));
+	}
+
+	/**
+	 * Forward a request to channel upstream.
+	 *
+	 * @param channel channel request is sent to
+	 * @param request request
+	 * @throws RuntimeException if not connected to upstream
+	 */
+	void forward(@NonNull RelayChannel channel, @NonNull RequestMsgModel request) {
+		request.type = typeOf(channel, request);
+		request.channel = channel.getName();
+		if (!sendIfConnected(gson.toJson(request))) {
+			throw new RuntimeException(
+					String.format("Upstream %s unavailable, not forwarding %s request", upstream, request.type));
+		}
+		requestsForwarded.increment();
+	}
+
+	/**
+	 * Send text message upstream, unless disconnected.
+	 *
+	 * @param text message
+	 * @return true if sent
+	 */
+	private boolean sendIfConnected(@NonNull String text) {
+		Connection current = connection;
+		if (current == null || !current.isOpen()) {
+			return false;
+		}
+		try {
+			current.send(text);
+			return true;
+		}
+		catch (RuntimeException e) {
+			// connection closed in between
+			return false;
+		}
+	}
+
+	/**
+	 * Connect to upstream, scheduling another attempt on failure. Runs on connector thread.
+	 */
+	private void connect() {
+		Connection attempt = new Connection();
+		try {
+			if (attempt.connectBlocking(maxReconnectBackoffMillis, TimeUnit.MILLISECONDS)) {
+				return;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		scheduleReconnect();
+	}
+
+	/**
+	 * Schedule another attempt to connect, with backoff. Runs on connector thread.
+	 */
+	private void scheduleReconnect() {
+		reconnectLog.log(upstream, reconnectBackoffMillis);
+		connector.schedule(this::connect, reconnectBackoffMillis, TimeUnit.MILLISECONDS);
+		reconnectBackoffMillis = Math.min(reconnectBackoffMillis * 2, maxReconnectBackoffMillis);
+	}
+
+	/**
+	 * Handle channel list of upstream, creating channels the first time and subscribing
+	 * again to channels with subscribers.
+	 *
+	 * @param connection connection list was received on
+	 * @param names names of upstream channels
+	 */
+	private void onChannelList(@NonNull Connection connection, @NonNull String[] names) {
+		connection.upstreamChannels = names;
+		synchronized (channels) {
+			if (!channelsFuture.isDone()) {
+				for (String name : names) {
+					if (channelNames.isEmpty() || channelNames.contains(name)) {
+						channels.put(name, new RelayChannel(this, name));
+					}
+				}
+				for (String name : channelNames) {
+					if (!channels.containsKey(name)) {
+						Logger.getGlobal().warning(
+								String.format("RoverOS relay: upstream %s has no channel %s", upstream, name));
+					}
+				}
+			}
+		}
+		channelsFuture.complete(null);
+		for (RelayChannel channel : getRelayChannels()) {
+			channel.resubscribe();
+		}
+	}
+
+	/**
+	 * Handle text message from upstream.
+	 *
+	 * @param connection connection message was received on
+	 * @param text message
+	 */
+	private void onText(@NonNull Connection connection, @NonNull String text) {
+		messagesReceived.increment();
+		JsonObject object;
+		String type;
+		try {
+			object = new JsonParser().parse(text).getAsJsonObject();
+			type = object.get(ResponseMsgModel.typeFieldName).getAsString();
+		}
+		catch (RuntimeException e) {
+			invalidMessageLog.log(upstream, e.getMessage());
+			return;
+		}
+
+		if (type.equals(ChannelListMsgModel.typeFieldValue)) {
+			onChannelList(connection, gson.fromJson(object, ChannelListMsgModel.class).channels);
+			return;
+		}
+		JsonElement channelName = object.remove("channel");
+		RelayChannel channel = channelName == null ? null : channels.get(channelName.getAsString());
+		Class<? extends ResponseMsgModel> responseType = responseTypes.get(type);
+		if (channel == null || responseType == null) {
+			// not relayed, such as results of batches which are never forwarded
+			return;
+		}
+		ResponseMsgModel message;
+		try {
+			message = gson.fromJson(object, responseType);
+			if (message instanceof ImageMsgModel) {
+				ImageMsgModel image = (ImageMsgModel) message;
+				image.imageBytes = Base64.getDecoder().decode(image.base64EncodedImageStr);
+			}
+		}
+		catch (JsonParseException | IllegalArgumentException e) {
+			invalidMessageLog.log(upstream, e.getMessage());
+			return;
+		}
+		channel.relay(message);
+	}
+
+	/**
+	 * Handle binary message from upstream, prefixed with channel index: a message in the
+	 * binary protocol, or raw data (only raw data if connection speaks json).
+	 *
+	 * @param connection connection message was received on
+	 * @param data message
+	 */
+	private void onBinary(@NonNull Connection connection, @NonNull ByteBuffer data) {
+		messagesReceived.increment();
+		if (!data.hasRemaining()) {
+			return;
+		}
+		int index = data.get() & 0xff;
+		if (connection.isBinary) {
+			if (!data.hasRemaining()) {
+				return;
+			}
+			if (data.get(data.position()) != BinaryCodec.rawTypeId) {
+				onBinaryResponse(connection, index, data);
+				return;
+			}
+			data.get();
+		}
+		RelayChannel channel = getChannel(connection, index);
+		if (channel != null) {
+			channel.relay(data.slice());
+		}
+	}
+
+	/**
+	 * Handle message in the binary protocol from upstream.
+	 *
+	 * @param connection connection message was received on
+	 * @param index index of channel message belongs to
+	 * @param data message, from the type ID on
+	 */
+	private void onBinaryResponse(@NonNull Connection connection, int index, @NonNull ByteBuffer data) {
+		ResponseMsgModel message;
+		try {
+			message = BinaryCodec.decodeResponse(data);
+		}
+		catch (RuntimeException e) {
+			invalidMessageLog.log(upstream, e.getMessage());
+			return;
+		}
+
+		if (message instanceof ChannelListMsgModel) {
+			onChannelList(connection, ((ChannelListMsgModel) message).channels);
+			return;
+		}
+		RelayChannel channel = getChannel(connection, index);
+		if (channel == null || !responseTypes.containsValue(message.getClass())) {
+			// not relayed, such as results of batches which are never forwarded
+			return;
+		}
+		channel.relay(message);
+	}
+
+	/**
+	 * Get channel relayed by index in channel list of upstream.
+	 *
+	 * @param connection connection channel list was received on
+	 * @param index index of channel
+	 * @return channel, or null if channel isn't relayed or list wasn't received yet
+	 */
+	private RelayChannel getChannel(@NonNull Connection connection, int index) {
+		String[] names = connection.upstreamChannels;
+		return names != null && index < names.length ? channels.get(names[index]) : null;
+	}
+
+	/**
+	 * Handle loss of connection, scheduling an attempt to connect again if it was the
+	 * current one.
+	 *
+	 * @param connection connection lost
+	 * @param reason reason connection was lost
+	 */
+	private void onDisconnect(@NonNull Connection connection, @NonNull String reason) {
+		if (this.connection != connection) {
+			return;
+		}
+		this.connection = null;
+		Logger.getGlobal().warning(String.format("RoverOS relay lost upstream %s: %s", upstream, reason));
+		for (RelayChannel channel : getRelayChannels()) {
+			channel.disconnected();
+		}
+		connector.execute(this::scheduleReconnect);
+	}
+
+	/**
+	 * Get channels relayed.
+	 *
+	 * @return channels
+	 */
+	private Collection<RelayChannel> getRelayChannels() {
+		synchronized (channels) {
+			return new ArrayList<>(channels.values());
+		}
+	}
+
+	/**
+	 * Get value of type field of a request, as registered by channel.
+	 *
+	 * @param channel channel request is sent to
+	 * @param request request
+	 * @return value of type field
+	 */
+	private static String typeOf(@NonNull Channel channel, @NonNull RequestMsgModel request) {
+		for (Map.Entry<String, Class<? extends RequestMsgModel>> entry : channel.getRequestTypes().entrySet()) {
+			if (entry.getValue().equals(request.getClass())) {
+				return entry.getKey();
+			}
+		}
+		throw new RuntimeException("Request type not relayed: " + request.getClass());
+	}
+
+	/**
+	 * Connection to upstream. A new one is created for each attempt to connect.
+	 */
+	private class Connection extends WebSocketClient {
+
+		/**
+		 * Names of upstream channels, by index, once channel list is received.
+		 */
+		private volatile String[] upstreamChannels = null;
+
+		/**
+		 * True if upstream agreed to the binary protocol, false if connection speaks json.
+		 */
+		private volatile boolean isBinary = false;
+
+		/**
+		 * Create connection, not connected yet, offering the binary protocol.
+		 */
+		private Connection() {
+			super(upstream, new Draft_6455(
+					Collections.<IExtension>emptyList(),
+					Arrays.<IProtocol>asList(
+							new Protocol(ChannelWebSocketServer.binaryProtocol), new Protocol(""))));
+		}
+
+		@Override
+		public void onOpen(ServerHandshake handshake) {
+			isBinary = ChannelWebSocketServer.isBinary(this);
+			Logger.getGlobal().info(String.format(
+					"RoverOS relay connected to upstream %s (%s)", upstream, isBinary ? "binary" : "json"));
+			connection = this;
+			connector.execute(() -> reconnectBackoffMillis = minReconnectBackoffMillis);
+		}
+
+		@Override
+		public void onMessage(String text) {
+			onText(this, text);
+		}
+
+		@Override
+		public void onMessage(ByteBuffer data) {
+			onBinary(this, data);
+		}
+
+		@Override
+		public void onClose(int code, String reason, boolean remote) {
+			onDisconnect(this, String.format("closed (%d %s)", code, reason));
+		}
+
+		@Override
+		public void onError(Exception e) {
+			connectionErrorLog.log(upstream, e);
+		}
+
+	}
+
+}
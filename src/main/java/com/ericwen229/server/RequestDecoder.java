@@ -0,0 +1,425 @@
+package com.ericwen229.server;
+
+import com.ericwen229.server.message.request.ControlMsgModel;
+import com.ericwen229.server.message.request.NavigationGoalMsgModel;
+import com.ericwen229.server.message.request.PoseEstimateMsgModel;
+import com.ericwen229.server.message.request.PoseHistoryQueryMsgModel;
+import com.ericwen229.server.message.request.RequestMsgModel;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.typeadapters.RuntimeTypeAdapterFactory;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * This class decodes requests into message models of the registered types.
+ *
+ * <p>Requests made only of a type, a channel and numeric fields are read in a single
+ * streaming pass into request objects reused per thread, with the same result as gson:
+ * integral fields are parsed exactly, and fields left out keep the defaults of the model.
+ * A request decoded this way is only valid until the next request is decoded on the same
+ * thread, so handlers must not keep it. Every other request, including malformed ones,
+ * ones of unknown types and ones whose numbers don't fit their fields, is decoded by
+ * gson, which reports errors.
+ *
+ * <p>A batch of requests is a json array of requests. Its requests are always decoded by
+ * gson into new objects, since several of them are alive at once.
+ */
+public class RequestDecoder {
+
+	/**
+	 * Maximum number of numeric fields in a request read in a single pass.
+	 */
+	private static final int maxFlatFields = 8;
+
+	/**
+	 * Request types that can be read in a single pass, with their fields.
+	 */
+	private static final Map<Class<? extends RequestMsgModel>, FlatType<?>> flatTypes = new HashMap<>();
+
+	/**
+	 * Numeric fields read from the request being decoded, per thread.
+	 */
+	private static final ThreadLocal<FlatFields> flatFields = ThreadLocal.withInitial(FlatFields::new);
+
+	/**
+	 * Gson object used for message deserialize.
+	 */
+	private final Gson gson;
+
+	/**
+	 * Registered request types that can be read in a single pass, keyed by value of type field.
+	 */
+	private final Map<String, FlatType<?>> registeredFlatTypes = new HashMap<>();
+
+	static {
+		flatType(ControlMsgModel.class, ControlMsgModel::new)
+				.doubleField("linear", r -> r.linear, (r, v) -> r.linear = v)
+				.doubleField("angular", r -> r.angular, (r, v) -> r.angular = v);
+		flatType(PoseEstimateMsgModel.class, PoseEstimateMsgModel::new)
+				.doubleField("x", r -> r.x, (r, v) -> r.x = v)
+				.doubleField("y", r -> r.y, (r, v) -> r.y = v)
+				.doubleField("angle", r -> r.angle, (r, v) -> r.angle = v);
+		flatType(NavigationGoalMsgModel.class, NavigationGoalMsgModel::new)
+				.doubleField("x", r -> r.x, (r, v) -> r.x = v)
+				.doubleField("y", r -> r.y, (r, v) -> r.y = v)
+				.doubleField("angle", r -> r.angle, (r, v) -> r.angle = v);
+		flatType(PoseHistoryQueryMsgModel.class, PoseHistoryQueryMsgModel::new)
+				.doubleField("from", r -> r.from, (r, v) -> r.from = v)
+				.doubleField("to", r -> r.to, (r, v) -> r.to = v)
+				.intField("maxPoints", r -> r.maxPoints, (r, v) -> r.maxPoints = v)
+				.longField("id", r -> r.id, (r, v) -> r.id = v);
+	}
+
+	/**
+	 * Create decoder for given request types.
+	 *
+	 * @param requestTypes request types keyed by value of type field
+	 */
+	public RequestDecoder(@NonNull Map<String, Class<? extends RequestMsgModel>> requestTypes) {
+		// make gson deserialize request to different types by checking out the specified field.
+		RuntimeTypeAdapterFactory<RequestMsgModel> requestRuntimeTypeAdapterFactory
+				= RuntimeTypeAdapterFactory.of(RequestMsgModel.class, RequestMsgModel.typeFieldName);
+		for (Map.Entry<String, Class<? extends RequestMsgModel>> entry : requestTypes.entrySet()) {
+			requestRuntimeTypeAdapterFactory.registerSubtype(entry.getValue(), entry.getKey());
+			FlatType<?> flatType = flatTypes.get(entry.getValue());
+			if (flatType != null) {
+				registeredFlatTypes.put(entry.getKey(), flatType);
+			}
+		}
+		gson = new GsonBuilder()
+				.registerTypeAdapterFactory(requestRuntimeTypeAdapterFactory)
+				.create();
+	}
+
+	/**
+	 * Decode request.
+	 *
+	 * @param text request in json
+	 * @return decoded request
+	 * @throws JsonParseException if request is malformed or of unknown type
+	 */
+	public RequestMsgModel decode(@NonNull String text) {
+		FlatFields fields = flatFields.get();
+		fields.count = 0;
+		String type = null;
+		String channel = null;
+		try {
+			JsonReader reader = new JsonReader(new StringReader(text));
+			if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+				return decodeWithGson(text);
+			}
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				JsonToken token = reader.peek();
+				if (token == JsonToken.NUMBER && fields.count < maxFlatFields) {
+					fields.names[fields.count] = name;
+					// kept as written, and parsed once the type of the field is known
+					fields.values[fields.count] = reader.nextString();
+					fields.count++;
+				}
+				else if (token == JsonToken.STRING && name.equals(RequestMsgModel.typeFieldName)) {
+					type = reader.nextString();
+					if (!registeredFlatTypes.containsKey(type)) {
+						return decodeWithGson(text);
+					}
+				}
+				else if (token == JsonToken.STRING && name.equals("channel")) {
+					channel = reader.nextString();
+				}
+				else {
+					return decodeWithGson(text);
+				}
+			}
+			reader.endObject();
+			if (reader.peek() != JsonToken.END_DOCUMENT) {
+				return decodeWithGson(text);
+			}
+		}
+		catch (IOException | IllegalStateException | NumberFormatException e) {
+			return decodeWithGson(text);
+		}
+
+		if (type == null) {
+			return decodeWithGson(text);
+		}
+		RequestMsgModel request;
+		try {
+			request = registeredFlatTypes.get(type).read(fields);
+		}
+		catch (NumberFormatException e) {
+			// say, a fractional or out of range integer: left to gson to reject or convert
+			return decodeWithGson(text);
+		}
+		request.channel = channel;
+		return request;
+	}
+
+	/**
+	 * Check whether json message is a batch of requests.
+	 *
+	 * @param text message in json
+	 * @return true if message is a batch
+	 */
+	public static boolean isBatch(@NonNull String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (!Character.isWhitespace(c)) {
+				return c == '[';
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Split batch of requests.
+	 *
+	 * @param text batch in json
+	 * @return requests, still in json
+	 * @throws JsonParseException if batch is malformed
+	 */
+	public static List<JsonElement> splitBatch(@NonNull String text) {
+		JsonElement batch = new JsonParser().parse(text);
+		if (!batch.isJsonArray()) {
+			throw new JsonParseException("Batch is not an array");
+		}
+		List<JsonElement> requests = new ArrayList<>(batch.getAsJsonArray().size());
+		for (JsonElement request : batch.getAsJsonArray()) {
+			requests.add(request);
+		}
+		return requests;
+	}
+
+	/**
+	 * Decode request of a batch into a new object.
+	 *
+	 * @param element request in json
+	 * @return decoded request
+	 * @throws JsonParseException if request is malformed or of unknown type
+	 */
+	public RequestMsgModel decode(@NonNull JsonElement element) {
+		RequestMsgModel request = gson.fromJson(element, RequestMsgModel.class);
+		if (request == null) {
+			throw new JsonParseException("Empty request");
+		}
+		return request;
+	}
+
+	/**
+	 * Decode request with gson, which the single pass must agree with.
+	 *
+	 * @param text request in json
+	 * @return decoded request
+	 * @throws JsonParseException if request is malformed or of unknown type
+	 */
+	RequestMsgModel decodeWithGson(@NonNull String text) {
+		RequestMsgModel request = gson.fromJson(text, RequestMsgModel.class);
+		if (request == null) {
+			throw new JsonParseException("Empty request");
+		}
+		return request;
+	}
+
+	/**
+	 * Register a request type that can be read in a single pass.
+	 *
+	 * @param requestType class of request
+	 * @param constructor constructor of request
+	 * @param <T> type of request
+	 * @return description of request type, to which fields are added
+	 */
+	private static <T extends RequestMsgModel> FlatType<T> flatType(@NonNull Class<T> requestType,
+																	@NonNull Supplier<T> constructor) {
+		FlatType<T> flatType = new FlatType<>(constructor);
+		flatTypes.put(requestType, flatType);
+		return flatType;
+	}
+
+	/**
+	 * Request type made only of numeric fields.
+	 *
+	 * @param <T> type of request
+	 */
+	private static class FlatType<T extends RequestMsgModel> {
+
+		/**
+		 * Request object reused per thread.
+		 */
+		private final ThreadLocal<T> instances;
+
+		/**
+		 * Request object holding the defaults of fields, never handed out.
+		 */
+		private final T defaults;
+
+		/**
+		 * Names of fields.
+		 */
+		private final List<String> fieldNames = new ArrayList<>();
+
+		/**
+		 * Setters of fields from numbers as written, in the same order as their names.
+		 *
+		 * <p>Setters throw {@link NumberFormatException} on numbers the field can't hold.
+		 */
+		private final List<BiConsumer<T, String>> fieldSetters = new ArrayList<>();
+
+		/**
+		 * Resetters of fields to their defaults, in the same order as their names.
+		 */
+		private final List<Consumer<T>> fieldResetters = new ArrayList<>();
+
+		/**
+		 * Create request type.
+		 *
+		 * @param constructor constructor of request
+		 */
+		private FlatType(@NonNull Supplier<T> constructor) {
+			this.instances = ThreadLocal.withInitial(constructor);
+			this.defaults = constructor.get();
+		}
+
+		/**
+		 * Add a floating-point field.
+		 *
+		 * @param name name of field
+		 * @param getter getter of field, reading its default
+		 * @param setter setter of field
+		 * @return this request type
+		 */
+		private FlatType<T> doubleField(@NonNull String name, @NonNull ToDoubleFunction<T> getter,
+										@NonNull ObjDoubleConsumer<T> setter) {
+			double defaultValue = getter.applyAsDouble(defaults);
+			return field(name, (r, v) -> setter.accept(r, parseFiniteDouble(v)),
+					r -> setter.accept(r, defaultValue));
+		}
+
+		/**
+		 * Parse floating-point number, rejecting infinities as gson does.
+		 *
+		 * @param value number as written
+		 * @return number
+		 * @throws NumberFormatException if number is malformed or out of range
+		 */
+		private static double parseFiniteDouble(@NonNull String value) {
+			double parsed = Double.parseDouble(value);
+			if (Double.isInfinite(parsed)) {
+				throw new NumberFormatException("Number out of range: " + value);
+			}
+			return parsed;
+		}
+
+		/**
+		 * Add a 32-bit integer field.
+		 *
+		 * @param name name of field
+		 * @param getter getter of field, reading its default
+		 * @param setter setter of field
+		 * @return this request type
+		 */
+		private FlatType<T> intField(@NonNull String name, @NonNull ToIntFunction<T> getter,
+									 @NonNull ObjIntConsumer<T> setter) {
+			int defaultValue = getter.applyAsInt(defaults);
+			return field(name, (r, v) -> setter.accept(r, Integer.parseInt(v)),
+					r -> setter.accept(r, defaultValue));
+		}
+
+		/**
+		 * Add a 64-bit integer field.
+		 *
+		 * @param name name of field
+		 * @param getter getter of field, reading its default
+		 * @param setter setter of field
+		 * @return this request type
+		 */
+		private FlatType<T> longField(@NonNull String name, @NonNull ToLongFunction<T> getter,
+									  @NonNull ObjLongConsumer<T> setter) {
+			long defaultValue = getter.applyAsLong(defaults);
+			return field(name, (r, v) -> setter.accept(r, Long.parseLong(v)),
+					r -> setter.accept(r, defaultValue));
+		}
+
+		/**
+		 * Add a field.
+		 *
+		 * @param name name of field
+		 * @param setter setter of field from number as written
+		 * @param resetter resetter of field to its default
+		 * @return this request type
+		 */
+		private FlatType<T> field(@NonNull String name, @NonNull BiConsumer<T, String> setter,
+								  @NonNull Consumer<T> resetter) {
+			fieldNames.add(name);
+			fieldSetters.add(setter);
+			fieldResetters.add(resetter);
+			return this;
+		}
+
+		/**
+		 * Fill request object of current thread with fields read. Missing fields keep
+		 * their defaults, and unknown fields are ignored.
+		 *
+		 * @param fields fields read
+		 * @return request
+		 * @throws NumberFormatException if a number doesn't fit its field
+		 */
+		private T read(@NonNull FlatFields fields) {
+			T request = instances.get();
+			for (Consumer<T> resetter : fieldResetters) {
+				resetter.accept(request);
+			}
+			for (int i = 0; i < fields.count; i++) {
+				int index = fieldNames.indexOf(fields.names[i]);
+				if (index >= 0) {
+					fieldSetters.get(index).accept(request, fields.values[i]);
+				}
+			}
+			return request;
+		}
+
+	}
+
+	/**
+	 * Numeric fields read from a request.
+	 */
+	private static class FlatFields {
+
+		/**
+		 * Names of fields.
+		 */
+		private final String[] names = new String[maxFlatFields];
+
+		/**
+		 * Values of fields, as written.
+		 */
+		private final String[] values = new String[maxFlatFields];
+
+		/**
+		 * Number of fields read.
+		 */
+		private int count = 0;
+
+	}
+
+}
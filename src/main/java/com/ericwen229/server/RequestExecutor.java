@@ -0,0 +1,492 @@
+package com.ericwen229.server;
+
+import com.ericwen229.metrics.MetricsRegistry;
+import com.ericwen229.util.LogSite;
+import lombok.NonNull;
+import org.java_websocket.WebSocket;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class runs request handling off websocket threads, so that a slow request (say,
+ * a blocking ROS publish) doesn't stall reads of other clients.
+ *
+ * <p>Tasks of a connection run one at a time in submission order, while tasks of
+ * different connections run in parallel. Each connection gets a lane, a queue of tasks
+ * either drained by one task of an underlying executor at a time, or by a thread of its
+ * own living as long as the connection, such as a virtual thread. A thread per connection
+ * keeps the objects it reuses across requests, such as those of {@link RequestDecoder}.
+ */
+public class RequestExecutor {
+
+	/**
+	 * Maximum number of tasks a lane runs before yielding its thread to other lanes.
+	 */
+	private static final int maxTasksPerRun = 64;
+
+	/**
+	 * Log of exceptions thrown by tasks.
+	 */
+	private static final LogSite taskExceptionLog = LogSite.of(
+			"executor.taskException", Level.SEVERE, "RoverOS request executor exception: %s");
+
+	/**
+	 * Marks the end of the tasks of a lane running on a thread of its own.
+	 */
+	private static final Task endOfLane = new Task(() -> {});
+
+	/**
+	 * Executor running lanes, or null if each lane runs on a thread of its own.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Factory of the thread of each lane, or null if lanes run on executor.
+	 */
+	private final ThreadFactory laneThreads;
+
+	/**
+	 * Description of executor used in logs.
+	 */
+	private final String description;
+
+	/**
+	 * Lane of each connection.
+	 */
+	private final Map<WebSocket, Lane> lanes = new ConcurrentHashMap<>();
+
+	/**
+	 * Connections whose last task was submitted. Tasks of a connection submitted after its
+	 * last one, say by a worker still decoding a message when the connection closed, are
+	 * dropped. Held weakly, so that closed connections are forgotten once collected.
+	 */
+	private final Set<WebSocket> closedConnections = Collections.newSetFromMap(
+			Collections.synchronizedMap(new WeakHashMap<>()));
+
+	/**
+	 * Number of tasks submitted and not yet finished.
+	 */
+	private final AtomicInteger queueDepth = new AtomicInteger();
+
+	/**
+	 * Largest number of tasks submitted and not yet finished.
+	 */
+	private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Number of tasks finished.
+	 */
+	private final LongAdder tasksHandled = new LongAdder();
+
+	/**
+	 * Time tasks spent waiting in their lane.
+	 */
+	private final LongAdder waitNanos = new LongAdder();
+
+	/**
+	 * Time spent running tasks.
+	 */
+	private final LongAdder handleNanos = new LongAdder();
+
+	/**
+	 * Longest time spent running a task.
+	 */
+	private final LongAccumulator maxHandleNanos = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Create executor running lanes on given executor.
+	 *
+	 * @param executor executor running lanes
+	 * @param description description of executor used in logs
+	 */
+	public RequestExecutor(@NonNull ExecutorService executor, @NonNull String description) {
+		this.executor = executor;
+		this.laneThreads = null;
+		this.description = description;
+	}
+
+	/**
+	 * Create executor running each lane on a thread of its own.
+	 *
+	 * @param laneThreads factory of the thread of each lane
+	 * @param description description of executor used in logs
+	 */
+	public RequestExecutor(@NonNull ThreadFactory laneThreads, @NonNull String description) {
+		this.executor = null;
+		this.laneThreads = laneThreads;
+		this.description = description;
+	}
+
+	/**
+	 * Create executor running each lane on a virtual thread of its own, living as long as
+	 * the connection, if the JDK supports them, or on a pool of threads otherwise.
+	 *
+	 * @param threads number of threads of pool, if virtual threads aren't supported
+	 * @return executor
+	 */
+	public static RequestExecutor newVirtualThreadExecutor(int threads) {
+		try {
+			// looked up at runtime: virtual threads don't exist in the JDK we build against
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "roveros-request-", 1L);
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			return new RequestExecutor(factory, "a virtual thread per connection");
+		}
+		catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+				| InvocationTargetException e) {
+			Logger.getGlobal().info("RoverOS request executor: virtual threads not supported, using a thread pool");
+			return newPoolExecutor(threads);
+		}
+	}
+
+	/**
+	 * Create executor running lanes on a pool of threads.
+	 *
+	 * @param threads number of threads of pool
+	 * @return executor
+	 */
+	public static RequestExecutor newPoolExecutor(int threads) {
+		if (threads < 1) {
+			throw new RuntimeException("Invalid number of request threads: " + threads);
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "roveros-request-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		return new RequestExecutor(executor, threads + " threads");
+	}
+
+	/**
+	 * Run task after previous tasks of the same connection. Task is dropped if the last
+	 * task of the connection was already submitted.
+	 *
+	 * @param webSocket connection task belongs to
+	 * @param task task
+	 */
+	public void execute(@NonNull WebSocket webSocket, @NonNull Runnable task) {
+		// submitted under the lock of the entry, so that it can't land after the last task
+		lanes.compute(webSocket, (k, lane) -> {
+			if (lane == null) {
+				if (closedConnections.contains(k)) {
+					return null;
+				}
+				lane = new Lane();
+			}
+			submit(lane, task);
+			return lane;
+		});
+	}
+
+	/**
+	 * Run last task of a connection, after its previous tasks, and forget the connection.
+	 *
+	 * @param webSocket connection task belongs to
+	 * @param task task
+	 */
+	public void executeLast(@NonNull WebSocket webSocket, @NonNull Runnable task) {
+		lanes.compute(webSocket, (k, lane) -> {
+			closedConnections.add(k);
+			if (lane == null) {
+				lane = new Lane();
+			}
+			submit(lane, task);
+			lane.end();
+			return null;
+		});
+	}
+
+	/**
+	 * Get number of tasks submitted and not yet finished.
+	 *
+	 * @return number of tasks
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * Get largest number of tasks submitted and not yet finished.
+	 *
+	 * @return number of tasks
+	 */
+	public long getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	/**
+	 * Get number of tasks finished.
+	 *
+	 * @return number of tasks
+	 */
+	public long getTasksHandled() {
+		return tasksHandled.sum();
+	}
+
+	/**
+	 * Get time tasks spent waiting in their lane.
+	 *
+	 * @return time in nanoseconds
+	 */
+	public long getWaitNanos() {
+		return waitNanos.sum();
+	}
+
+	/**
+	 * Get time spent running tasks.
+	 *
+	 * @return time in nanoseconds
+	 */
+	public long getHandleNanos() {
+		return handleNanos.sum();
+	}
+
+	/**
+	 * Get longest time spent running a task.
+	 *
+	 * @return time in nanoseconds
+	 */
+	public long getMaxHandleNanos() {
+		return maxHandleNanos.get();
+	}
+
+	/**
+	 * Get number of tasks waiting per connection.
+	 *
+	 * @return number of tasks keyed by address of client
+	 */
+	public Map<String, Integer> getConnectionQueueDepths() {
+		Map<String, Integer> depths = new TreeMap<>();
+		for (Map.Entry<WebSocket, Lane> entry : lanes.entrySet()) {
+			depths.put(String.valueOf(entry.getKey().getRemoteSocketAddress()), entry.getValue().getDepth());
+		}
+		return depths;
+	}
+
+	/**
+	 * Register statistics as metrics.
+	 *
+	 * @param metrics registry
+	 */
+	public void registerMetrics(@NonNull MetricsRegistry metrics) {
+		metrics.gauge("roveros_request_queue_depth", "Requests submitted and not yet handled",
+				this::getQueueDepth);
+		metrics.gauge("roveros_request_queue_depth_max", "Largest number of requests submitted and not yet handled",
+				this::getMaxQueueDepth);
+		metrics.gauges("roveros_request_connection_queue_depth", "Requests waiting per connection",
+				"connection", this::getConnectionQueueDepths);
+		metrics.counter("roveros_requests_handled_total", "Requests handled",
+				this::getTasksHandled);
+		metrics.counter("roveros_request_wait_seconds_total", "Time requests spent waiting",
+				() -> getWaitNanos() / 1e9);
+		metrics.counter("roveros_request_handle_seconds_total", "Time spent handling requests",
+				() -> getHandleNanos() / 1e9);
+		metrics.gauge("roveros_request_handle_seconds_max", "Longest time spent handling a request",
+				() -> getMaxHandleNanos() / 1e9);
+	}
+
+	@Override
+	public String toString() {
+		long handled = getTasksHandled();
+		return String.format(
+				"%s, %d requests queued (max %d), %d handled, %.3f ms average wait, "
+						+ "%.3f ms average handling (max %.3f ms)",
+				description,
+				getQueueDepth(),
+				getMaxQueueDepth(),
+				handled,
+				handled == 0 ? 0.0 : getWaitNanos() / 1e6 / handled,
+				handled == 0 ? 0.0 : getHandleNanos() / 1e6 / handled,
+				getMaxHandleNanos() / 1e6);
+	}
+
+	/**
+	 * Queue task in lane.
+	 *
+	 * @param lane lane
+	 * @param task task
+	 */
+	private void submit(@NonNull Lane lane, @NonNull Runnable task) {
+		maxQueueDepth.accumulate(queueDepth.incrementAndGet());
+		lane.tasks.add(new Task(task));
+		lane.schedule();
+	}
+
+	/**
+	 * Task waiting in a lane.
+	 */
+	private static class Task {
+
+		/**
+		 * Task to run.
+		 */
+		private final Runnable runnable;
+
+		/**
+		 * Time task was submitted.
+		 */
+		private final long submitNanos = System.nanoTime();
+
+		/**
+		 * Create task.
+		 *
+		 * @param runnable task to run
+		 */
+		private Task(@NonNull Runnable runnable) {
+			this.runnable = runnable;
+		}
+
+	}
+
+	/**
+	 * Queue of tasks of a connection, run one at a time.
+	 */
+	private class Lane implements Runnable {
+
+		/**
+		 * Tasks waiting.
+		 */
+		private final BlockingQueue<Task> tasks = new LinkedBlockingQueue<>();
+
+		/**
+		 * True while lane is queued or running on executor, or while its thread runs.
+		 */
+		private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+
+		/**
+		 * Queue lane on executor unless it already is, or start the thread of lane unless
+		 * it already runs.
+		 */
+		private void schedule() {
+			if (laneThreads != null) {
+				if (isScheduled.compareAndSet(false, true)) {
+					laneThreads.newThread(this::runOnThread).start();
+				}
+			}
+			else if (!tasks.isEmpty() && isScheduled.compareAndSet(false, true)) {
+				executor.execute(this);
+			}
+		}
+
+		/**
+		 * Get number of tasks waiting, not counting the end of lane.
+		 *
+		 * @return number of tasks
+		 */
+		private int getDepth() {
+			int depth = 0;
+			for (Task task : tasks) {
+				if (task != endOfLane) {
+					depth++;
+				}
+			}
+			return depth;
+		}
+
+		/**
+		 * Let the thread of lane end once it ran the tasks submitted so far.
+		 */
+		private void end() {
+			if (laneThreads != null) {
+				tasks.add(endOfLane);
+			}
+		}
+
+		/**
+		 * Run tasks as they are submitted until the end of lane. Runs on the thread of lane.
+		 */
+		private void runOnThread() {
+			boolean ended = false;
+			try {
+				while (!ended) {
+					Task task = tasks.take();
+					if (task == endOfLane) {
+						ended = true;
+					}
+					else {
+						runTask(task);
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				ended = true;
+				// tasks left won't run: stop counting them as queued
+				int dropped = 0;
+				Task task;
+				while ((task = tasks.poll()) != null) {
+					if (task != endOfLane) {
+						dropped++;
+					}
+				}
+				queueDepth.addAndGet(-dropped);
+			}
+			finally {
+				if (!ended) {
+					// an error ended the thread: carry on with another one
+					isScheduled.set(false);
+					schedule();
+				}
+			}
+		}
+
+		/**
+		 * Run a task, accounting for it.
+		 *
+		 * @param task task
+		 */
+		private void runTask(@NonNull Task task) {
+			long start = System.nanoTime();
+			waitNanos.add(start - task.submitNanos);
+			try {
+				task.runnable.run();
+			}
+			catch (RuntimeException e) {
+				taskExceptionLog.log(e);
+			}
+			finally {
+				// errors are left to the thread, but must not leave the lane stuck
+				long elapsed = System.nanoTime() - start;
+				handleNanos.add(elapsed);
+				maxHandleNanos.accumulate(elapsed);
+				tasksHandled.increment();
+				queueDepth.decrementAndGet();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				Task task;
+				for (int i = 0; i < maxTasksPerRun && (task = tasks.poll()) != null; i++) {
+					runTask(task);
+				}
+			}
+			finally {
+				isScheduled.set(false);
+				// pick up tasks queued while finishing, or left over by the limit or an error
+				schedule();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,227 @@
+package com.ericwen229.server;
+
+import com.ericwen229.metrics.Counter;
+import com.ericwen229.metrics.MetricsRegistry;
+import com.ericwen229.server.message.BinaryCodec;
+import com.ericwen229.server.message.response.ResponseMsgModel;
+import com.ericwen229.util.LogSite;
+import com.ericwen229.util.MemoryFences;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ring of the latest messages of a channel in a memory-mapped file, read by consumers on
+ * the same machine without going through a WebSocket (see {@link Channel#addSink}).
+ *
+ * <p>File layout (little endian): a header of 64 bytes, holding int32 magic, int32 slot
+ * count, int32 slot length, int64 sequence number of the latest message written (0
+ * before the first one) and int64 time at which a reader last polled the ring, in
+ * milliseconds since the epoch (0 before the first poll), followed by the slots. A slot
+ * is an int64 sequence number, an int32 message length and 4 unused bytes, followed by
+ * the message encoded as in the binary protocol (see {@link BinaryCodec}), from its type
+ * ID on. Message {@code n}, counting from 1, is written in slot {@code (n - 1) % slotCount}.
+ *
+ * <p>Readers take no lock. The writer sets the sequence number of a slot to minus the
+ * number of the message being written, writes the message, then sets the sequence number
+ * of the slot and of the header to the number of the message, with a store fence after
+ * the first step and before the last. A reader reads the header, then copies the message
+ * out of its slot, and keeps the copy only if the sequence number of the slot was that
+ * number both before and after copying, with load fences in between (see
+ * {@link SharedMemoryRingReader}). Since the writer may overwrite the slot at any time, a
+ * message must be copied, not parsed in place, before it is known to be whole. A reader
+ * falling more than a slot count behind lost messages.
+ *
+ * <p>Messages are only encoded and written while readers poll the ring, which they
+ * show by updating the time of their last poll, unless the ring is told to always write.
+ */
+public class SharedMemoryRing {
+
+	/**
+	 * Identifies a ring file.
+	 */
+	public static final int magic = 0x52534d31;
+
+	/**
+	 * Length of file header in bytes.
+	 */
+	public static final int headerLength = 64;
+
+	/**
+	 * Length of slot header in bytes.
+	 */
+	public static final int slotHeaderLength = 16;
+
+	/**
+	 * Position in header of sequence number of latest message.
+	 */
+	public static final int headerSequenceOffset = 12;
+
+	/**
+	 * Position in header of time a reader last polled the ring.
+	 */
+	public static final int headerReaderPollOffset = 20;
+
+	/**
+	 * Time after the last poll of a reader during which the ring is written.
+	 */
+	private static final long readerTimeoutMillis = 5000;
+
+	/**
+	 * Log of messages too long for a slot.
+	 */
+	private static final LogSite tooLongLog = LogSite.of(
+			"sharedMemory.tooLong",
+			Level.WARNING,
+			"RoverOS shared memory ring %s message of %d bytes exceeds slot length %d. Dropping message.");
+
+	/**
+	 * Path of ring file.
+	 */
+	private final Path path;
+
+	/**
+	 * Number of slots.
+	 */
+	private final int slotCount;
+
+	/**
+	 * Length of message a slot holds, in bytes.
+	 */
+	private final int slotLength;
+
+	/**
+	 * Ring file mapped whole.
+	 */
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * True if messages are written whether or not readers poll the ring.
+	 */
+	private final boolean alwaysWrite;
+
+	/**
+	 * Sequence number of latest message written.
+	 */
+	private long sequence = 0;
+
+	/**
+	 * Number of messages written.
+	 */
+	private final Counter written;
+
+	/**
+	 * Number of messages dropped for being too long.
+	 */
+	private final Counter dropped;
+
+	/**
+	 * Create ring file of a channel, replacing any existing file.
+	 *
+	 * @param path path of ring file
+	 * @param channelName name of channel, for metrics and logs
+	 * @param slotCount number of slots
+	 * @param slotLength length of message a slot holds, in bytes
+	 * @param alwaysWrite true to write messages whether or not readers poll the ring
+	 */
+	public SharedMemoryRing(@NonNull Path path, @NonNull String channelName, int slotCount, int slotLength,
+							boolean alwaysWrite) {
+		if (slotCount <= 0 || slotLength <= 0
+				|| headerLength + (long) slotCount * (slotHeaderLength + slotLength) > Integer.MAX_VALUE) {
+			throw new RuntimeException(
+					String.format("Invalid shared memory ring of %d slots of %d bytes", slotCount, slotLength));
+		}
+		this.path = path;
+		this.slotCount = slotCount;
+		this.slotLength = slotLength;
+		this.alwaysWrite = alwaysWrite;
+		int length = headerLength + slotCount * (slotHeaderLength + slotLength);
+		try {
+			if (path.getParent() != null) {
+				Files.createDirectories(path.getParent());
+			}
+			try (FileChannel channel = FileChannel.open(path,
+					StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+			}
+		}
+		catch (IOException e) {
+			throw new RuntimeException(String.format("Cannot map shared memory ring %s: %s", path, e));
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(0, magic);
+		buffer.putInt(4, slotCount);
+		buffer.putInt(8, slotLength);
+		buffer.putLong(headerSequenceOffset, 0);
+		buffer.putLong(headerReaderPollOffset, 0);
+		written = MetricsRegistry.getGlobal().counter(
+				"roveros_shared_memory_messages_total",
+				"Messages written to shared memory rings",
+				"channel", channelName);
+		dropped = MetricsRegistry.getGlobal().counter(
+				"roveros_shared_memory_dropped_total",
+				"Messages dropped for exceeding the slot length of shared memory rings",
+				"channel", channelName);
+		Logger.getGlobal().info(String.format(
+				"RoverOS sharing %s channel in %s (%d slots of %d bytes)", channelName, path, slotCount, slotLength));
+	}
+
+	/**
+	 * Check whether messages should be written: a reader polled the ring lately, or the ring
+	 * always writes.
+	 *
+	 * @return true if messages should be written
+	 */
+	public boolean hasReaders() {
+		if (alwaysWrite) {
+			return true;
+		}
+		long lastPollMillis = buffer.getLong(headerReaderPollOffset);
+		return System.currentTimeMillis() - lastPollMillis < readerTimeoutMillis;
+	}
+
+	/**
+	 * Write a message into the next slot. Called by the broadcasting thread of channel.
+	 *
+	 * @param message message
+	 */
+	public void write(@NonNull ResponseMsgModel message) {
+		ByteBuffer encoded = BinaryCodec.encodeResponse(message);
+		int length = encoded.remaining();
+		if (length > slotLength) {
+			dropped.increment();
+			tooLongLog.log(path, length, slotLength);
+			return;
+		}
+		synchronized (this) {
+			long next = sequence + 1;
+			int slot = headerLength + (int) ((next - 1) % slotCount) * (slotHeaderLength + slotLength);
+			buffer.putLong(slot, -next);
+			// readers must see the slot marked before any byte of the new message
+			MemoryFences.storeFence();
+			buffer.putInt(slot + 8, length);
+			ByteBuffer payload = buffer.duplicate();
+			payload.position(slot + slotHeaderLength);
+			payload.put(encoded);
+			// and the whole message before the slot and header name it
+			MemoryFences.storeFence();
+			buffer.putLong(slot, next);
+			buffer.putLong(headerSequenceOffset, next);
+			sequence = next;
+		}
+		written.increment();
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.ericwen229.server;
+
+import com.ericwen229.util.MemoryFences;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reference reader of a ring file written by {@link SharedMemoryRing}, following its
+ * protocol: load fences order the reads of sequence numbers with the reads of messages,
+ * matching the store fences of the writer. Messages are copied out of their slot, and the
+ * copy is handed out only once the sequence number of the slot, read again, shows that
+ * the writer didn't touch the slot meanwhile.
+ *
+ * <p>A reader is used by a single thread. Each poll tells the writer that the ring has a
+ * reader, so poll at least every few seconds to keep messages coming.
+ */
+public class SharedMemoryRingReader {
+
+	/**
+	 * Ring file mapped whole.
+	 */
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * Number of slots.
+	 */
+	private final int slotCount;
+
+	/**
+	 * Length of message a slot holds, in bytes.
+	 */
+	private final int slotLength;
+
+	/**
+	 * Open ring file.
+	 *
+	 * @param path path of ring file
+	 * @throws RuntimeException if file can't be mapped or isn't a ring file
+	 */
+	public SharedMemoryRingReader(@NonNull Path path) {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+		}
+		catch (IOException e) {
+			throw new RuntimeException(String.format("Cannot map shared memory ring %s: %s", path, e));
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() < SharedMemoryRing.headerLength || buffer.getInt(0) != SharedMemoryRing.magic) {
+			throw new RuntimeException(String.format("Not a shared memory ring: %s", path));
+		}
+		slotCount = buffer.getInt(4);
+		slotLength = buffer.getInt(8);
+		if (slotCount <= 0 || slotLength <= 0 || buffer.capacity()
+				< SharedMemoryRing.headerLength + (long) slotCount * (SharedMemoryRing.slotHeaderLength + slotLength)) {
+			throw new RuntimeException(String.format("Truncated shared memory ring: %s", path));
+		}
+	}
+
+	/**
+	 * Poll ring for the sequence number of the latest message, recording the time of the
+	 * poll so that the writer keeps writing.
+	 *
+	 * @return sequence number of the latest message, 0 if none was written yet
+	 */
+	public long poll() {
+		buffer.putLong(SharedMemoryRing.headerReaderPollOffset, System.currentTimeMillis());
+		long sequence = buffer.getLong(SharedMemoryRing.headerSequenceOffset);
+		MemoryFences.loadFence();
+		return sequence;
+	}
+
+	/**
+	 * Read a message.
+	 *
+	 * @param sequence sequence number of message, counting from 1
+	 * @return copy of message from its type ID on, or null if message isn't in the ring:
+	 * not written yet, being written or overwritten by a later one
+	 */
+	public ByteBuffer read(long sequence) {
+		if (sequence <= 0) {
+			return null;
+		}
+		int slot = SharedMemoryRing.headerLength
+				+ (int) ((sequence - 1) % slotCount) * (SharedMemoryRing.slotHeaderLength + slotLength);
+		long before = buffer.getLong(slot);
+		MemoryFences.loadFence();
+		if (before != sequence) {
+			return null;
+		}
+		int length = buffer.getInt(slot + 8);
+		if (length < 0 || length > slotLength) {
+			return null;
+		}
+		byte[] message = new byte[length];
+		ByteBuffer payload = buffer.duplicate();
+		payload.position(slot + SharedMemoryRing.slotHeaderLength);
+		payload.get(message);
+		MemoryFences.loadFence();
+		long after = buffer.getLong(slot);
+		return after == sequence ? ByteBuffer.wrap(message).order(ByteOrder.LITTLE_ENDIAN) : null;
+	}
+
+	/**
+	 * Poll ring and read the latest message.
+	 *
+	 * @return copy of message from its type ID on, or null if none was written yet or it
+	 * was overwritten while being read
+	 */
+	public ByteBuffer readLatest() {
+		return read(poll());
+	}
+
+	/**
+	 * Get number of slots of ring.
+	 *
+	 * @return number of slots
+	 */
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+}
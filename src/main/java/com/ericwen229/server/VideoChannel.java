@@ -0,0 +1,216 @@
+package com.ericwen229.server;
+
+import com.ericwen229.metrics.Histogram;
+import com.ericwen229.metrics.MetricsRegistry;
+import com.ericwen229.node.RoverOSNode;
+import com.ericwen229.server.message.response.ImageMsgModel;
+import com.ericwen229.util.Image;
+import lombok.NonNull;
+import org.ros.namespace.GraphName;
+import org.ros.node.topic.Subscriber;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class implements a channel used to broadcast
+ * images from Turtlebot camera.
+ *
+ * <p>The channel broadcasts jpeg images, Base64 encoded for json subscribers only. Images
+ * are only encoded while the channel has at least one subscriber, and images arriving
+ * faster than the maximum rate, if any, are dropped.
+ *
+ * <p>Images are encoded by threads shared among video channels, so that the number of
+ * encoding threads doesn't grow with the number of robots. A channel has at most one
+ * image waiting to be encoded: an image arriving before the previous one is encoded
+ * supersedes it.
+ */
+public class VideoChannel extends Channel {
+
+	/**
+	 * Name of channel.
+	 */
+	public static final String channelName = "video";
+
+	/**
+	 * Number of threads created to encode images.
+	 */
+	private static final AtomicInteger encoderThreadCount = new AtomicInteger();
+
+	/**
+	 * Threads encoding images of all video channels. Holds at most one task per channel.
+	 */
+	private static final ExecutorService encoder = Executors.newFixedThreadPool(
+			Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+			runnable -> {
+				Thread thread = new Thread(runnable, "roveros-video-encoder-" + encoderThreadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	/**
+	 * Time from receiving an image message to broadcasting it.
+	 */
+	private final Histogram broadcastLatency = MetricsRegistry.getGlobal().histogram(
+			"roveros_callback_to_broadcast_seconds",
+			"Time from receiving a ROS message to broadcasting it to clients",
+			Histogram.latencyBuckets,
+			"channel", getName());
+
+	/**
+	 * JPEG compression quality, from 0 (smallest) to 1 (best).
+	 */
+	private volatile float jpegQuality = 0.75f;
+
+	/**
+	 * Minimum interval between two adjacent images, 0 for no limit.
+	 */
+	private volatile long minIntervalNanos = 0;
+
+	/**
+	 * Time at which the last image was broadcast.
+	 */
+	private long lastBroadcastNanos = System.nanoTime();
+
+	/**
+	 * Image waiting to be encoded, or null if there is none.
+	 */
+	private final AtomicReference<Frame> pendingFrame = new AtomicReference<>();
+
+	/**
+	 * True if a task encoding images of channel is scheduled, so that images are encoded
+	 * one at a time and broadcast in order.
+	 */
+	private final AtomicBoolean isEncoderScheduled = new AtomicBoolean(false);
+
+	/**
+	 * Construct channel with given ROS node.
+	 *
+	 * @param node ROS node used by RoverOS
+	 */
+	public VideoChannel(@NonNull RoverOSNode node) {
+		super(qualifiedName(node, channelName));
+		Subscriber<sensor_msgs.Image> handler =
+				node.subscribeToTopic(
+						GraphName.of("/camera/rgb/image_color"),
+						sensor_msgs.Image.class);
+		handler.addMessageListener(this::imageMessageHandler);
+	}
+
+	/**
+	 * Callback invoked when image message received. Hands image over to encoder threads.
+	 *
+	 * @param imageMsg received image message
+	 */
+	private void imageMessageHandler(sensor_msgs.Image imageMsg) {
+		long start = System.nanoTime();
+		if (!hasSubscribers() || start - lastBroadcastNanos < minIntervalNanos) {
+			return;
+		}
+		lastBroadcastNanos = start;
+
+		pendingFrame.set(new Frame(imageMsg, start));
+		scheduleEncoder();
+	}
+
+	/**
+	 * Schedule a task encoding the image waiting to be encoded, unless one is scheduled.
+	 */
+	private void scheduleEncoder() {
+		if (pendingFrame.get() != null && isEncoderScheduled.compareAndSet(false, true)) {
+			encoder.execute(this::encodePendingFrame);
+		}
+	}
+
+	/**
+	 * Encode image waiting to be encoded, if any, then schedule encoding of the next one.
+	 * Runs on encoder threads.
+	 */
+	private void encodePendingFrame() {
+		try {
+			Frame frame = pendingFrame.getAndSet(null);
+			if (frame != null) {
+				encode(frame.message, frame.receivedNanos);
+			}
+		}
+		finally {
+			isEncoderScheduled.set(false);
+			scheduleEncoder();
+		}
+	}
+
+	/**
+	 * Encode and broadcast image.
+	 *
+	 * @param imageMsg image message
+	 * @param start time at which message was received
+	 */
+	private void encode(@NonNull sensor_msgs.Image imageMsg, long start) {
+		BufferedImage image = Image.imageMessageToBufferdImage(imageMsg);
+		byte[] imageBytes = Image.bufferedImageToJpeg(image, jpegQuality);
+
+		// Base64 string is left to json subscribers, if any
+		ImageMsgModel msg = new ImageMsgModel();
+		msg.imageBytes = imageBytes;
+		msg.stamp = imageMsg.getHeader().getStamp().toSeconds();
+		broadcast(msg, start);
+		broadcastLatency.observeSince(start);
+	}
+
+	/**
+	 * Set JPEG compression quality of images, from the next one on.
+	 *
+	 * @param quality quality, from 0 (smallest) to 1 (best)
+	 */
+	public void setJpegQuality(double quality) {
+		if (!(quality >= 0.0 && quality <= 1.0)) {
+			throw new RuntimeException(String.format("Invalid JPEG quality %f", quality));
+		}
+		jpegQuality = (float) quality;
+	}
+
+	/**
+	 * Set maximum number of images broadcast per second.
+	 *
+	 * @param maxRate maximum rate, or 0 for no limit
+	 */
+	public void setMaxRate(double maxRate) {
+		if (maxRate < 0.0) {
+			throw new RuntimeException(String.format("Invalid video rate %f", maxRate));
+		}
+		minIntervalNanos = maxRate > 0.0 ? (long) (1e9 / maxRate) : 0;
+	}
+
+	/**
+	 * Image message together with the time it was received.
+	 */
+	private static class Frame {
+
+		/**
+		 * Image message.
+		 */
+		private final sensor_msgs.Image message;
+
+		/**
+		 * Time at which message was received.
+		 */
+		private final long receivedNanos;
+
+		/**
+		 * Create frame.
+		 *
+		 * @param message image message
+		 * @param receivedNanos time at which message was received
+		 */
+		private Frame(@NonNull sensor_msgs.Image message, long receivedNanos) {
+			this.message = message;
+			this.receivedNanos = receivedNanos;
+		}
+
+	}
+
+}
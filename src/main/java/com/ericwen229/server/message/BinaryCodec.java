@@ -0,0 +1,514 @@
+package com.ericwen229.server.message;
+
+import com.ericwen229.server.message.request.ControlMsgModel;
+import com.ericwen229.server.message.request.NavigationGoalMsgModel;
+import com.ericwen229.server.message.request.PoseEstimateMsgModel;
+import com.ericwen229.server.message.request.PoseHistoryQueryMsgModel;
+import com.ericwen229.server.message.request.RequestMsgModel;
+import com.ericwen229.server.message.request.SubscribeMsgModel;
+import com.ericwen229.server.message.request.TopicPublishMsgModel;
+import com.ericwen229.server.message.request.UnsubscribeMsgModel;
+import com.ericwen229.server.message.request.WaypointMissionMsgModel;
+import com.ericwen229.server.message.response.BatchResultMsgModel;
+import com.ericwen229.server.message.response.ChannelListMsgModel;
+import com.ericwen229.server.message.response.ImageMsgModel;
+import com.ericwen229.server.message.response.MissionProgressMsgModel;
+import com.ericwen229.server.message.response.NavigationStatusMsgModel;
+import com.ericwen229.server.message.response.PoseHistoryMsgModel;
+import com.ericwen229.server.message.response.PoseMsgModel;
+import com.ericwen229.server.message.response.ResponseMsgModel;
+import com.ericwen229.server.message.response.StampedMsgModel;
+import com.ericwen229.server.message.response.TopicMsgModel;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import lombok.NonNull;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class encodes and decodes message models in the binary protocol.
+ *
+ * <p>A message is a uint8 type ID (the binaryTypeId of its model) followed by the fields
+ * of the model in declaration order, little endian: doubles as float64, ints as int32,
+ * longs as int64, strings as uint16 byte length followed by UTF-8 bytes, and arrays and
+ * lists as uint32 element count followed by the elements. Images are sent as uint32 byte
+ * length followed by the encoded image rather than a Base64 string. Messages of bridged
+ * ROS topics are kept in json, sent as uint32 byte length followed by UTF-8 bytes. Stamps
+ * of messages relaying a ROS message (see {@link StampedMsgModel}) follow the fields of
+ * the model. Raw binary data of a channel is sent with type ID 0.
+ *
+ * <p>A batch of requests is type ID 127 followed by a uint32 request count, then each
+ * request as uint32 byte length followed by the request, framed as if sent on its own.
+ *
+ * <p>Responses are decoded as well, for relays receiving the channels of an upstream
+ * instance in the binary protocol.
+ */
+public class BinaryCodec {
+
+	/**
+	 * Type ID of raw binary data.
+	 */
+	public static final byte rawTypeId = 0;
+
+	/**
+	 * Type ID of a batch of requests.
+	 */
+	public static final byte batchTypeId = 127;
+
+	/**
+	 * Decode request.
+	 *
+	 * @param data request, from the type ID on
+	 * @return decoded request
+	 * @throws RuntimeException if request is truncated or of unknown type
+	 */
+	public static RequestMsgModel decodeRequest(@NonNull ByteBuffer data) {
+		ByteBuffer buffer = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			byte typeId = buffer.get();
+			switch (typeId) {
+				case ControlMsgModel.binaryTypeId: {
+					ControlMsgModel request = new ControlMsgModel();
+					request.linear = buffer.getDouble();
+					request.angular = buffer.getDouble();
+					return request;
+				}
+				case PoseEstimateMsgModel.binaryTypeId: {
+					PoseEstimateMsgModel request = new PoseEstimateMsgModel();
+					request.x = buffer.getDouble();
+					request.y = buffer.getDouble();
+					request.angle = buffer.getDouble();
+					return request;
+				}
+				case NavigationGoalMsgModel.binaryTypeId: {
+					NavigationGoalMsgModel request = new NavigationGoalMsgModel();
+					request.x = buffer.getDouble();
+					request.y = buffer.getDouble();
+					request.angle = buffer.getDouble();
+					return request;
+				}
+				case WaypointMissionMsgModel.binaryTypeId: {
+					WaypointMissionMsgModel request = new WaypointMissionMsgModel();
+					int count = getCount(buffer, 24);
+					request.waypoints = new ArrayList<>(count);
+					for (int i = 0; i < count; i++) {
+						WaypointMissionMsgModel.Waypoint waypoint = new WaypointMissionMsgModel.Waypoint();
+						waypoint.x = buffer.getDouble();
+						waypoint.y = buffer.getDouble();
+						waypoint.angle = buffer.getDouble();
+						request.waypoints.add(waypoint);
+					}
+					return request;
+				}
+				case PoseHistoryQueryMsgModel.binaryTypeId: {
+					PoseHistoryQueryMsgModel request = new PoseHistoryQueryMsgModel();
+					request.from = buffer.getDouble();
+					request.to = buffer.getDouble();
+					request.maxPoints = buffer.getInt();
+					// identifier is optional, for clients which never query several times at once
+					request.id = buffer.remaining() >= 8 ? buffer.getLong() : 0;
+					return request;
+				}
+				case SubscribeMsgModel.binaryTypeId: {
+					SubscribeMsgModel request = new SubscribeMsgModel();
+					request.channels = getStrings(buffer);
+					return request;
+				}
+				case UnsubscribeMsgModel.binaryTypeId: {
+					UnsubscribeMsgModel request = new UnsubscribeMsgModel();
+					request.channels = getStrings(buffer);
+					return request;
+				}
+				case TopicPublishMsgModel.binaryTypeId: {
+					TopicPublishMsgModel request = new TopicPublishMsgModel();
+					byte[] bytes = new byte[getCount(buffer, 1)];
+					buffer.get(bytes);
+					JsonElement message = new JsonParser().parse(new String(bytes, StandardCharsets.UTF_8));
+					if (!message.isJsonObject()) {
+						throw new RuntimeException("Topic message is not an object");
+					}
+					request.message = message.getAsJsonObject();
+					return request;
+				}
+				default:
+					throw new RuntimeException("Unknown binary request type: " + typeId);
+			}
+		}
+		catch (BufferUnderflowException e) {
+			throw new RuntimeException("Truncated binary request");
+		}
+		catch (JsonParseException e) {
+			throw new RuntimeException("Invalid json in binary request");
+		}
+	}
+
+	/**
+	 * Check whether binary message is a batch of requests.
+	 *
+	 * @param data message, from the type ID on
+	 * @return true if message is a batch
+	 */
+	public static boolean isBatch(@NonNull ByteBuffer data) {
+		return data.hasRemaining() && data.get(data.position()) == batchTypeId;
+	}
+
+	/**
+	 * Split batch of requests.
+	 *
+	 * @param data batch, from the type ID on
+	 * @return requests, each framed as if sent on its own
+	 * @throws RuntimeException if batch is truncated
+	 */
+	public static List<ByteBuffer> splitBatch(@NonNull ByteBuffer data) {
+		ByteBuffer buffer = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			buffer.get();
+			int count = getCount(buffer, 4);
+			List<ByteBuffer> requests = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				int length = getCount(buffer, 1);
+				ByteBuffer request = buffer.slice();
+				request.limit(length);
+				requests.add(request);
+				buffer.position(buffer.position() + length);
+			}
+			return requests;
+		}
+		catch (BufferUnderflowException e) {
+			throw new RuntimeException("Truncated binary batch");
+		}
+	}
+
+	/**
+	 * Encode response.
+	 *
+	 * @param response response
+	 * @return encoded response, from the type ID on
+	 * @throws RuntimeException if response is of unknown type
+	 */
+	public static ByteBuffer encodeResponse(@NonNull ResponseMsgModel response) {
+		if (response instanceof PoseMsgModel) {
+			PoseMsgModel msg = (PoseMsgModel) response;
+			ByteBuffer buffer = allocate(PoseMsgModel.binaryTypeId, 24 + 16);
+			buffer.putDouble(msg.x);
+			buffer.putDouble(msg.y);
+			buffer.putDouble(msg.angle);
+			putStamps(buffer, msg);
+			return finish(buffer);
+		}
+		else if (response instanceof ImageMsgModel) {
+			ImageMsgModel msg = (ImageMsgModel) response;
+			ByteBuffer buffer = allocate(ImageMsgModel.binaryTypeId, 4 + msg.imageBytes.length + 16);
+			buffer.putInt(msg.imageBytes.length);
+			buffer.put(msg.imageBytes);
+			putStamps(buffer, msg);
+			return finish(buffer);
+		}
+		else if (response instanceof MissionProgressMsgModel) {
+			MissionProgressMsgModel msg = (MissionProgressMsgModel) response;
+			byte[] state = getBytes(msg.state);
+			ByteBuffer buffer = allocate(MissionProgressMsgModel.binaryTypeId, 16 + 2 + state.length);
+			buffer.putLong(msg.missionId);
+			buffer.putInt(msg.waypointIndex);
+			buffer.putInt(msg.waypointCount);
+			putBytes(buffer, state);
+			return finish(buffer);
+		}
+		else if (response instanceof NavigationStatusMsgModel) {
+			NavigationStatusMsgModel msg = (NavigationStatusMsgModel) response;
+			byte[] goalId = getBytes(msg.goalId);
+			byte[] status = getBytes(msg.status);
+			byte[] text = getBytes(msg.text);
+			ByteBuffer buffer = allocate(
+					NavigationStatusMsgModel.binaryTypeId,
+					6 + goalId.length + status.length + text.length);
+			putBytes(buffer, goalId);
+			putBytes(buffer, status);
+			putBytes(buffer, text);
+			return finish(buffer);
+		}
+		else if (response instanceof PoseHistoryMsgModel) {
+			PoseHistoryMsgModel msg = (PoseHistoryMsgModel) response;
+			int count = msg.stamp.length;
+			ByteBuffer buffer = allocate(PoseHistoryMsgModel.binaryTypeId, 4 + count * 32 + 8);
+			buffer.putInt(count);
+			for (double[] column : new double[][] {msg.stamp, msg.x, msg.y, msg.angle}) {
+				buffer.asDoubleBuffer().put(column, 0, count);
+				buffer.position(buffer.position() + count * 8);
+			}
+			buffer.putLong(msg.id);
+			return finish(buffer);
+		}
+		else if (response instanceof ChannelListMsgModel) {
+			ChannelListMsgModel msg = (ChannelListMsgModel) response;
+			List<byte[]> channels = new ArrayList<>();
+			int length = 4;
+			for (String channel : msg.channels) {
+				byte[] bytes = getBytes(channel);
+				channels.add(bytes);
+				length += 2 + bytes.length;
+			}
+			ByteBuffer buffer = allocate(ChannelListMsgModel.binaryTypeId, length);
+			buffer.putInt(channels.size());
+			for (byte[] bytes : channels) {
+				putBytes(buffer, bytes);
+			}
+			return finish(buffer);
+		}
+		else if (response instanceof BatchResultMsgModel) {
+			BatchResultMsgModel msg = (BatchResultMsgModel) response;
+			List<byte[]> errors = new ArrayList<>();
+			int length = 8;
+			for (BatchResultMsgModel.RequestError error : msg.errors) {
+				byte[] bytes = getBytes(error.error);
+				errors.add(bytes);
+				length += 6 + bytes.length;
+			}
+			ByteBuffer buffer = allocate(BatchResultMsgModel.binaryTypeId, length);
+			buffer.putInt(msg.requestCount);
+			buffer.putInt(errors.size());
+			for (int i = 0; i < errors.size(); i++) {
+				buffer.putInt(msg.errors.get(i).index);
+				putBytes(buffer, errors.get(i));
+			}
+			return finish(buffer);
+		}
+		else if (response instanceof TopicMsgModel) {
+			TopicMsgModel msg = (TopicMsgModel) response;
+			byte[] topic = getBytes(msg.topic);
+			byte[] message = msg.message.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer buffer = allocate(TopicMsgModel.binaryTypeId, 2 + topic.length + 4 + message.length);
+			putBytes(buffer, topic);
+			buffer.putInt(message.length);
+			buffer.put(message);
+			return finish(buffer);
+		}
+		throw new RuntimeException("Unknown response type: " + response.getClass());
+	}
+
+	/**
+	 * Decode response.
+	 *
+	 * @param data response, from the type ID on
+	 * @return decoded response
+	 * @throws RuntimeException if response is truncated or of unknown type
+	 */
+	public static ResponseMsgModel decodeResponse(@NonNull ByteBuffer data) {
+		ByteBuffer buffer = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			byte typeId = buffer.get();
+			switch (typeId) {
+				case PoseMsgModel.binaryTypeId: {
+					PoseMsgModel response = new PoseMsgModel();
+					response.x = buffer.getDouble();
+					response.y = buffer.getDouble();
+					response.angle = buffer.getDouble();
+					getStamps(buffer, response);
+					return response;
+				}
+				case ImageMsgModel.binaryTypeId: {
+					ImageMsgModel response = new ImageMsgModel();
+					response.imageBytes = new byte[getCount(buffer, 1)];
+					buffer.get(response.imageBytes);
+					getStamps(buffer, response);
+					return response;
+				}
+				case MissionProgressMsgModel.binaryTypeId: {
+					MissionProgressMsgModel response = new MissionProgressMsgModel();
+					response.missionId = buffer.getLong();
+					response.waypointIndex = buffer.getInt();
+					response.waypointCount = buffer.getInt();
+					response.state = getString(buffer);
+					return response;
+				}
+				case NavigationStatusMsgModel.binaryTypeId: {
+					NavigationStatusMsgModel response = new NavigationStatusMsgModel();
+					response.goalId = getString(buffer);
+					response.status = getString(buffer);
+					response.text = getString(buffer);
+					return response;
+				}
+				case PoseHistoryMsgModel.binaryTypeId: {
+					PoseHistoryMsgModel response = new PoseHistoryMsgModel();
+					int count = getCount(buffer, 32);
+					double[][] columns = new double[4][count];
+					for (double[] column : columns) {
+						buffer.asDoubleBuffer().get(column);
+						buffer.position(buffer.position() + count * 8);
+					}
+					response.stamp = columns[0];
+					response.x = columns[1];
+					response.y = columns[2];
+					response.angle = columns[3];
+					response.id = buffer.getLong();
+					return response;
+				}
+				case ChannelListMsgModel.binaryTypeId: {
+					ChannelListMsgModel response = new ChannelListMsgModel();
+					response.channels = getStrings(buffer).toArray(new String[0]);
+					return response;
+				}
+				case BatchResultMsgModel.binaryTypeId: {
+					BatchResultMsgModel response = new BatchResultMsgModel();
+					response.requestCount = buffer.getInt();
+					int count = getCount(buffer, 6);
+					for (int i = 0; i < count; i++) {
+						int index = buffer.getInt();
+						response.addError(index, getString(buffer));
+					}
+					return response;
+				}
+				case TopicMsgModel.binaryTypeId: {
+					TopicMsgModel response = new TopicMsgModel();
+					response.topic = getString(buffer);
+					byte[] message = new byte[getCount(buffer, 1)];
+					buffer.get(message);
+					response.message = new String(message, StandardCharsets.UTF_8);
+					return response;
+				}
+				default:
+					throw new RuntimeException("Unknown binary response type: " + typeId);
+			}
+		}
+		catch (BufferUnderflowException e) {
+			throw new RuntimeException("Truncated binary response");
+		}
+	}
+
+	/**
+	 * Encode raw binary data of a channel.
+	 *
+	 * @param data raw data
+	 * @return encoded data, from the type ID on
+	 */
+	public static ByteBuffer encodeRaw(@NonNull ByteBuffer data) {
+		ByteBuffer buffer = allocate(rawTypeId, data.remaining());
+		buffer.put(data.duplicate());
+		return finish(buffer);
+	}
+
+	/**
+	 * Allocate buffer for a message and write its type ID.
+	 *
+	 * @param typeId type ID of message
+	 * @param length length of message after type ID in bytes
+	 * @return buffer positioned after type ID
+	 */
+	private static ByteBuffer allocate(byte typeId, int length) {
+		ByteBuffer buffer = ByteBuffer.allocate(1 + length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put(typeId);
+		return buffer;
+	}
+
+	/**
+	 * Make a fully written buffer ready to be sent.
+	 *
+	 * @param buffer buffer
+	 * @return same buffer flipped
+	 */
+	private static ByteBuffer finish(@NonNull ByteBuffer buffer) {
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Read element count and check that enough bytes remain for the elements.
+	 *
+	 * @param buffer buffer
+	 * @param elementLength minimum length of an element in bytes
+	 * @return element count
+	 */
+	private static int getCount(@NonNull ByteBuffer buffer, int elementLength) {
+		long count = buffer.getInt() & 0xffffffffL;
+		if (count * elementLength > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		return (int) count;
+	}
+
+	/**
+	 * Read list of strings.
+	 *
+	 * @param buffer buffer
+	 * @return strings
+	 */
+	private static List<String> getStrings(@NonNull ByteBuffer buffer) {
+		int count = getCount(buffer, 2);
+		List<String> strings = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			strings.add(getString(buffer));
+		}
+		return strings;
+	}
+
+	/**
+	 * Read string prefixed with its length.
+	 *
+	 * @param buffer buffer
+	 * @return string
+	 */
+	private static String getString(@NonNull ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xffff];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Get UTF-8 bytes of a string, truncated to the maximum string length.
+	 *
+	 * @param string string, or null for an empty one
+	 * @return bytes
+	 */
+	private static byte[] getBytes(String string) {
+		if (string == null) {
+			return new byte[0];
+		}
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xffff) {
+			byte[] truncated = new byte[0xffff];
+			System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+			return truncated;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Write capture stamp and send time of a message.
+	 *
+	 * @param buffer buffer
+	 * @param message message
+	 */
+	private static void putStamps(@NonNull ByteBuffer buffer, @NonNull StampedMsgModel message) {
+		buffer.putDouble(message.stamp);
+		buffer.putDouble(message.sent);
+	}
+
+	/**
+	 * Read capture stamp and send time of a message.
+	 *
+	 * @param buffer buffer
+	 * @param message message
+	 */
+	private static void getStamps(@NonNull ByteBuffer buffer, @NonNull StampedMsgModel message) {
+		message.stamp = buffer.getDouble();
+		message.sent = buffer.getDouble();
+	}
+
+	/**
+	 * Write string bytes prefixed with their length.
+	 *
+	 * @param buffer buffer
+	 * @param bytes string bytes
+	 */
+	private static void putBytes(@NonNull ByteBuffer buffer, @NonNull byte[] bytes) {
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+}
@@ -11,6 +11,11 @@ public class ControlMsgModel extends RequestMsgModel {
      */
     public static final String typeFieldValue = "control";
 
+    /**
+     * Used by binary protocol to perform dynamic dispatch.
+     */
+    public static final byte binaryTypeId = 1;
+
     /**
      * Linear speed of Turtlebot.
      */
@@ -11,6 +11,11 @@ public class NavigationGoalMsgModel extends RequestMsgModel {
 	 */
 	public static final String typeFieldValue = "navigation_goal";
 
+	/**
+	 * Used by binary protocol to perform dynamic dispatch.
+	 */
+	public static final byte binaryTypeId = 3;
+
 	/**
 	 * Coordinate X on the map.
 	 */
@@ -11,6 +11,11 @@ public class PoseEstimateMsgModel extends RequestMsgModel {
 	 */
 	public static final String typeFieldValue = "pose_estimate";
 
+	/**
+	 * Used by binary protocol to perform dynamic dispatch.
+	 */
+	public static final byte binaryTypeId = 2;
+
 	/**
 	 * Coordinate X on the map.
 	 */
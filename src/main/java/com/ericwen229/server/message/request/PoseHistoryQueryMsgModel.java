@@ -0,0 +1,45 @@
+package com.ericwen229.server.message.request;
+
+/**
+ * This class describes the model of pose history query message, which is used
+ * to retrieve Turtlebot's poses within a time range.
+ */
+public class PoseHistoryQueryMsgModel extends RequestMsgModel {
+
+	/**
+	 * Used by gson to perform dynamic dispatch.
+	 */
+	public static final String typeFieldValue = "pose_history_query";
+
+	/**
+	 * Used by binary protocol to perform dynamic dispatch.
+	 */
+	public static final byte binaryTypeId = 5;
+
+	/**
+	 * Maximum number of poses returned when not set by client.
+	 */
+	public static final int defaultMaxPoints = 1000;
+
+	/**
+	 * Start of time range in seconds. Non-positive values are relative to the newest pose.
+	 */
+	public double from;
+
+	/**
+	 * End of time range in seconds. Non-positive values are relative to the newest pose.
+	 */
+	public double to;
+
+	/**
+	 * Maximum number of poses returned, {@link #defaultMaxPoints} if left out. Non-positive
+	 * values, such as the zero binary clients send to leave it unset, also stand for it.
+	 */
+	public int maxPoints = defaultMaxPoints;
+
+	/**
+	 * Identifier of query chosen by client, echoed in the answer, or 0.
+	 */
+	public long id;
+
+}
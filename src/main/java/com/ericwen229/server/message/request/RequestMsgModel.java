@@ -15,4 +15,9 @@ public abstract class RequestMsgModel {
 	 */
 	public String type;
 
+	/**
+	 * Channel request is sent to. Only used by multiplexed endpoints.
+	 */
+	public String channel;
+
 }
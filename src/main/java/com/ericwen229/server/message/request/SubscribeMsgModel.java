@@ -0,0 +1,26 @@
+package com.ericwen229.server.message.request;
+
+import java.util.List;
+
+/**
+ * This class describes the model of subscribe message, which is used
+ * to start receiving messages of channels on a multiplexed connection.
+ */
+public class SubscribeMsgModel extends RequestMsgModel {
+
+	/**
+	 * Used by gson to perform dynamic dispatch.
+	 */
+	public static final String typeFieldValue = "subscribe";
+
+	/**
+	 * Used by binary protocol to perform dynamic dispatch.
+	 */
+	public static final byte binaryTypeId = 6;
+
+	/**
+	 * Names of channels to subscribe to.
+	 */
+	public List<String> channels;
+
+}
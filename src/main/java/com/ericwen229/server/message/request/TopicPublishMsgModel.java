@@ -0,0 +1,26 @@
+package com.ericwen229.server.message.request;
+
+import com.google.gson.JsonObject;
+
+/**
+ * This class describes the model of topic publish message, which is used
+ * to publish a message on a bridged ROS topic.
+ */
+public class TopicPublishMsgModel extends RequestMsgModel {
+
+	/**
+	 * Used by gson to perform dynamic dispatch.
+	 */
+	public static final String typeFieldValue = "publish";
+
+	/**
+	 * Used by binary protocol to perform dynamic dispatch.
+	 */
+	public static final byte binaryTypeId = 8;
+
+	/**
+	 * ROS message in json, with fields named as in ROS.
+	 */
+	public JsonObject message;
+
+}
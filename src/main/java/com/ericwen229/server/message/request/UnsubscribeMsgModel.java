@@ -0,0 +1,26 @@
+package com.ericwen229.server.message.request;
+
+import java.util.List;
+
+/**
+ * This class describes the model of unsubscribe message, which is used
+ * to stop receiving messages of channels on a multiplexed connection.
+ */
+public class UnsubscribeMsgModel extends RequestMsgModel {
+
+	/**
+	 * Used by gson to perform dynamic dispatch.
+	 */
+	public static final String typeFieldValue = "unsubscribe";
+
+	/**
+	 * Used by binary protocol to perform dynamic dispatch.
+	 */
+	public static final byte binaryTypeId = 7;
+
+	/**
+	 * Names of channels to unsubscribe from.
+	 */
+	public List<String> channels;
+
+}
@@ -0,0 +1,48 @@
+package com.ericwen229.server.message.request;
+
+import java.util.List;
+
+/**
+ * This class describes the model of waypoint mission message, which is used
+ * to navigate Turtlebot through an ordered list of waypoints on the map.
+ */
+public class WaypointMissionMsgModel extends RequestMsgModel {
+
+	/**
+	 * Used by gson to perform dynamic dispatch.
+	 */
+	public static final String typeFieldValue = "waypoint_mission";
+
+	/**
+	 * Used by binary protocol to perform dynamic dispatch.
+	 */
+	public static final byte binaryTypeId = 4;
+
+	/**
+	 * Waypoints to visit in order.
+	 */
+	public List<Waypoint> waypoints;
+
+	/**
+	 * This class describes a single waypoint of a mission.
+	 */
+	public static class Waypoint {
+
+		/**
+		 * Coordinate X on the map.
+		 */
+		public double x;
+
+		/**
+		 * Coordinate Y on the map.
+		 */
+		public double y;
+
+		/**
+		 * Orientation angle.
+		 */
+		public double angle;
+
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.ericwen229.server.message.response;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class describes the model of batch result message, which is used
+ * to tell a client which requests of a batch were dropped, and why.
+ */
+public class BatchResultMsgModel extends ResponseMsgModel {
+
+    /**
+     * Used by clients to perform dynamic dispatch.
+     */
+    public static final String typeFieldValue = "batch_result";
+
+    /**
+     * Used by binary protocol to perform dynamic dispatch.
+     */
+    public static final byte binaryTypeId = 7;
+
+    /**
+     * Number of requests in batch.
+     */
+    public int requestCount;
+
+    /**
+     * Requests of batch dropped.
+     */
+    public List<RequestError> errors = new ArrayList<>();
+
+    public BatchResultMsgModel() {
+        super(typeFieldValue);
+    }
+
+    /**
+     * Record a dropped request.
+     *
+     * @param index index of request in batch
+     * @param error reason request was dropped
+     */
+    public void addError(int index, String error) {
+        RequestError requestError = new RequestError();
+        requestError.index = index;
+        requestError.error = error;
+        errors.add(requestError);
+    }
+
+    /**
+     * This class describes a request of a batch dropped.
+     */
+    public static class RequestError {
+
+        /**
+         * Index of request in batch.
+         */
+        public int index;
+
+        /**
+         * Reason request was dropped.
+         */
+        public String error;
+
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.ericwen229.server.message.response;
+
+/**
+ * This class describes the model of channel list message, which is used
+ * to tell a client connected to a multiplexed endpoint which channels exist.
+ */
+public class ChannelListMsgModel extends ResponseMsgModel {
+
+    /**
+     * Used by clients to perform dynamic dispatch.
+     */
+    public static final String typeFieldValue = "channels";
+
+    /**
+     * Used by binary protocol to perform dynamic dispatch.
+     */
+    public static final byte binaryTypeId = 6;
+
+    /**
+     * Names of channels. The index of a channel tags its binary messages.
+     */
+    public String[] channels;
+
+    public ChannelListMsgModel() {
+        super(typeFieldValue);
+    }
+
+}
@@ -1,14 +1,45 @@
 package com.ericwen229.server.message.response;
 
+import java.util.Base64;
+
 /**
  * This class describes the model of image message, which is used
  * to transfer the image captured by the Kinect camera on Turtlebot.
  */
-public class ImageMsgModel {
+public class ImageMsgModel extends StampedMsgModel {
+
+    /**
+     * Used by clients to perform dynamic dispatch.
+     */
+    public static final String typeFieldValue = "image";
+
+    /**
+     * Used by binary protocol to perform dynamic dispatch.
+     */
+    public static final byte binaryTypeId = 2;
 
     /**
-     * String representation of Base64 encoded image.
+     * String representation of Base64 encoded image. Only filled when message is sent in
+     * json (see {@link #fillBase64}).
      */
     public String base64EncodedImageStr;
 
+    /**
+     * Encoded image. Sent as is by binary protocol instead of the Base64 string.
+     */
+    public transient byte[] imageBytes;
+
+    public ImageMsgModel() {
+        super(typeFieldValue);
+    }
+
+    /**
+     * Fill Base64 string from encoded image, unless already filled.
+     */
+    public void fillBase64() {
+        if (base64EncodedImageStr == null && imageBytes != null) {
+            base64EncodedImageStr = Base64.getEncoder().encodeToString(imageBytes);
+        }
+    }
+
 }
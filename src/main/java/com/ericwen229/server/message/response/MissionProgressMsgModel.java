@@ -0,0 +1,68 @@
+package com.ericwen229.server.message.response;
+
+/**
+ * This class describes the model of mission progress message, which is used to
+ * report how Turtlebot proceeds through a waypoint mission.
+ */
+public class MissionProgressMsgModel extends ResponseMsgModel {
+
+    /**
+     * Used by clients to perform dynamic dispatch.
+     */
+    public static final String typeFieldValue = "mission_progress";
+
+    /**
+     * Used by binary protocol to perform dynamic dispatch.
+     */
+    public static final byte binaryTypeId = 3;
+
+    /**
+     * Waypoint has been sent to navigation modules.
+     */
+    public static final String stateDispatched = "dispatched";
+
+    /**
+     * Waypoint has been reached.
+     */
+    public static final String stateReached = "reached";
+
+    /**
+     * All waypoints have been reached.
+     */
+    public static final String stateCompleted = "completed";
+
+    /**
+     * Navigation modules gave up on waypoint.
+     */
+    public static final String stateAborted = "aborted";
+
+    /**
+     * Mission has been replaced by another goal or mission.
+     */
+    public static final String stateCancelled = "cancelled";
+
+    /**
+     * Identifier of mission.
+     */
+    public long missionId;
+
+    /**
+     * Index of waypoint the state refers to.
+     */
+    public int waypointIndex;
+
+    /**
+     * Number of waypoints in mission.
+     */
+    public int waypointCount;
+
+    /**
+     * State of mission.
+     */
+    public String state;
+
+    public MissionProgressMsgModel() {
+        super(typeFieldValue);
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.ericwen229.server.message.response;
+
+/**
+ * This class describes the model of navigation status message, which is used to
+ * report state transitions of navigation goals.
+ */
+public class NavigationStatusMsgModel extends ResponseMsgModel {
+
+    /**
+     * Used by clients to perform dynamic dispatch.
+     */
+    public static final String typeFieldValue = "navigation_status";
+
+    /**
+     * Used by binary protocol to perform dynamic dispatch.
+     */
+    public static final byte binaryTypeId = 4;
+
+    /**
+     * Identifier of goal assigned by navigation modules.
+     */
+    public String goalId;
+
+    /**
+     * State of goal.
+     */
+    public String status;
+
+    /**
+     * Description of state given by navigation modules.
+     */
+    public String text;
+
+    public NavigationStatusMsgModel() {
+        super(typeFieldValue);
+    }
+
+}
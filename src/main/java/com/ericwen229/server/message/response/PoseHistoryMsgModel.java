@@ -0,0 +1,48 @@
+package com.ericwen229.server.message.response;
+
+/**
+ * This class describes the model of pose history message, which is used to
+ * retrieve Turtlebot's poses within a time range.
+ */
+public class PoseHistoryMsgModel extends ResponseMsgModel {
+
+    /**
+     * Used by clients to perform dynamic dispatch.
+     */
+    public static final String typeFieldValue = "pose_history";
+
+    /**
+     * Used by binary protocol to perform dynamic dispatch.
+     */
+    public static final byte binaryTypeId = 5;
+
+    /**
+     * Timestamps in seconds.
+     */
+    public double[] stamp;
+
+    /**
+     * Coordinates X on the map.
+     */
+    public double[] x;
+
+    /**
+     * Coordinates Y on the map.
+     */
+    public double[] y;
+
+    /**
+     * Orientation angles.
+     */
+    public double[] angle;
+
+    /**
+     * Identifier of the query answered, or 0.
+     */
+    public long id;
+
+    public PoseHistoryMsgModel() {
+        super(typeFieldValue);
+    }
+
+}
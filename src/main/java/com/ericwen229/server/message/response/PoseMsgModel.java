@@ -4,7 +4,17 @@ package com.ericwen229.server.message.response;
  * This class describes the model of pose message, which is used to
  * retrieve Turtlebot's pose estimation on the map.
  */
-public class PoseMsgModel {
+public class PoseMsgModel extends StampedMsgModel {
+
+    /**
+     * Used by clients to perform dynamic dispatch.
+     */
+    public static final String typeFieldValue = "pose";
+
+    /**
+     * Used by binary protocol to perform dynamic dispatch.
+     */
+    public static final byte binaryTypeId = 1;
 
     /**
      * Coordinate X on the map.
@@ -21,4 +31,8 @@ public class PoseMsgModel {
      */
     public double angle;
 
+    public PoseMsgModel() {
+        super(typeFieldValue);
+    }
+
 }
@@ -0,0 +1,27 @@
+package com.ericwen229.server.message.response;
+
+/**
+ * Abstract message model used for message serialization.
+ */
+public abstract class ResponseMsgModel {
+
+    /**
+     * Used by clients to perform dynamic dispatch.
+     */
+    public static final String typeFieldName = "type";
+
+    /**
+     * Used by clients to perform dynamic dispatch.
+     */
+    public final String type;
+
+    /**
+     * Construct message with given type.
+     *
+     * @param type value of type field
+     */
+    protected ResponseMsgModel(String type) {
+        this.type = type;
+    }
+
+}
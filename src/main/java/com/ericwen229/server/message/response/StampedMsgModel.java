@@ -0,0 +1,28 @@
+package com.ericwen229.server.message.response;
+
+/**
+ * Abstract model of messages relaying a ROS message, carrying the time it was captured
+ * and the time RoverOS sent it, so that clients can tell where latency comes from.
+ */
+public abstract class StampedMsgModel extends ResponseMsgModel {
+
+    /**
+     * Capture stamp of the ROS message relayed, in seconds since epoch (0 if unknown).
+     */
+    public double stamp;
+
+    /**
+     * Time RoverOS sent message, in seconds since epoch.
+     */
+    public double sent;
+
+    /**
+     * Construct message with given type.
+     *
+     * @param type value of type field
+     */
+    protected StampedMsgModel(String type) {
+        super(type);
+    }
+
+}
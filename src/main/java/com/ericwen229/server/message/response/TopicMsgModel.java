@@ -0,0 +1,60 @@
+package com.ericwen229.server.message.response;
+
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * This class describes the model of topic message, which is used
+ * to forward a message of a bridged ROS topic to clients.
+ */
+public class TopicMsgModel extends ResponseMsgModel {
+
+    /**
+     * Used by clients to perform dynamic dispatch.
+     */
+    public static final String typeFieldValue = "topic";
+
+    /**
+     * Used by binary protocol to perform dynamic dispatch.
+     */
+    public static final byte binaryTypeId = 8;
+
+    /**
+     * Name of ROS topic.
+     */
+    public String topic;
+
+    /**
+     * ROS message, already in json.
+     */
+    @JsonAdapter(RawJsonAdapter.class)
+    public String message;
+
+    public TopicMsgModel() {
+        super(typeFieldValue);
+    }
+
+    /**
+     * Type adapter writing a string holding json as is.
+     */
+    public static class RawJsonAdapter extends TypeAdapter<String> {
+
+        @Override
+        public void write(JsonWriter out, String value) throws IOException {
+            out.jsonValue(value);
+        }
+
+        @Override
+        public String read(JsonReader in) throws IOException {
+            // read by relays, which forward the message as is
+            return new JsonParser().parse(in).toString();
+        }
+
+    }
+
+}
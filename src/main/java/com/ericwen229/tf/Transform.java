@@ -0,0 +1,263 @@
+package com.ericwen229.tf;
+
+import lombok.NonNull;
+
+/**
+ * Immutable rigid transform made of a translation and a rotation quaternion.
+ *
+ * <p>Like ROS transforms, a transform from a child frame to a parent frame maps points
+ * expressed in the child frame into the parent frame.
+ */
+public class Transform {
+
+	/**
+	 * Transform that maps every point to itself.
+	 */
+	public static final Transform identity = new Transform(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 1.0);
+
+	/**
+	 * Translation along axis X.
+	 */
+	public final double tx;
+
+	/**
+	 * Translation along axis Y.
+	 */
+	public final double ty;
+
+	/**
+	 * Translation along axis Z.
+	 */
+	public final double tz;
+
+	/**
+	 * Component X of rotation quaternion.
+	 */
+	public final double qx;
+
+	/**
+	 * Component Y of rotation quaternion.
+	 */
+	public final double qy;
+
+	/**
+	 * Component Z of rotation quaternion.
+	 */
+	public final double qz;
+
+	/**
+	 * Component W of rotation quaternion.
+	 */
+	public final double qw;
+
+	/**
+	 * Create transform. The rotation quaternion is normalized.
+	 *
+	 * @param tx translation along axis X
+	 * @param ty translation along axis Y
+	 * @param tz translation along axis Z
+	 * @param qx component X of rotation quaternion
+	 * @param qy component Y of rotation quaternion
+	 * @param qz component Z of rotation quaternion
+	 * @param qw component W of rotation quaternion
+	 */
+	public Transform(double tx, double ty, double tz, double qx, double qy, double qz, double qw) {
+		double norm = Math.sqrt(qx * qx + qy * qy + qz * qz + qw * qw);
+		if (!(norm > 0.0)) {
+			throw new RuntimeException("Invalid rotation quaternion");
+		}
+		this.tx = tx;
+		this.ty = ty;
+		this.tz = tz;
+		this.qx = qx / norm;
+		this.qy = qy / norm;
+		this.qz = qz / norm;
+		this.qw = qw / norm;
+	}
+
+	/**
+	 * Create transform from ROS transform message.
+	 *
+	 * @param message ROS transform message
+	 * @return transform
+	 */
+	public static Transform fromMessage(@NonNull geometry_msgs.Transform message) {
+		return new Transform(
+				message.getTranslation().getX(),
+				message.getTranslation().getY(),
+				message.getTranslation().getZ(),
+				message.getRotation().getX(),
+				message.getRotation().getY(),
+				message.getRotation().getZ(),
+				message.getRotation().getW());
+	}
+
+	/**
+	 * Create transform from ROS pose message (the transform from the frame of the pose to
+	 * the frame the pose is expressed in).
+	 *
+	 * @param message ROS pose message
+	 * @return transform
+	 */
+	public static Transform fromPose(@NonNull geometry_msgs.Pose message) {
+		return new Transform(
+				message.getPosition().getX(),
+				message.getPosition().getY(),
+				message.getPosition().getZ(),
+				message.getOrientation().getX(),
+				message.getOrientation().getY(),
+				message.getOrientation().getZ(),
+				message.getOrientation().getW());
+	}
+
+	/**
+	 * Compose with another transform. If this transform maps frame B into frame A and the
+	 * other maps frame C into frame B, the result maps frame C into frame A.
+	 *
+	 * @param other transform applied first
+	 * @return composed transform
+	 */
+	public Transform compose(@NonNull Transform other) {
+		double x = other.tx;
+		double y = other.ty;
+		double z = other.tz;
+		return new Transform(
+				tx + rotateX(x, y, z),
+				ty + rotateY(x, y, z),
+				tz + rotateZ(x, y, z),
+				qw * other.qx + qx * other.qw + qy * other.qz - qz * other.qy,
+				qw * other.qy - qx * other.qz + qy * other.qw + qz * other.qx,
+				qw * other.qz + qx * other.qy - qy * other.qx + qz * other.qw,
+				qw * other.qw - qx * other.qx - qy * other.qy - qz * other.qz);
+	}
+
+	/**
+	 * Invert transform.
+	 *
+	 * @return transform mapping points the other way
+	 */
+	public Transform inverse() {
+		Transform rotation = new Transform(0.0, 0.0, 0.0, -qx, -qy, -qz, qw);
+		return new Transform(
+				-rotation.rotateX(tx, ty, tz),
+				-rotation.rotateY(tx, ty, tz),
+				-rotation.rotateZ(tx, ty, tz),
+				rotation.qx,
+				rotation.qy,
+				rotation.qz,
+				rotation.qw);
+	}
+
+	/**
+	 * Interpolate between this transform and another one. Translation is interpolated
+	 * linearly and rotation spherically.
+	 *
+	 * @param other transform at ratio 1.0
+	 * @param ratio position between the two transforms (0.0 to 1.0)
+	 * @return interpolated transform
+	 */
+	public Transform interpolate(@NonNull Transform other, double ratio) {
+		double dot = qx * other.qx + qy * other.qy + qz * other.qz + qw * other.qw;
+		// take the shorter arc
+		double sign = dot < 0.0 ? -1.0 : 1.0;
+		dot *= sign;
+
+		double weightThis;
+		double weightOther;
+		if (dot > 0.9995) {
+			weightThis = 1.0 - ratio;
+			weightOther = ratio;
+		}
+		else {
+			double theta = Math.acos(dot);
+			double sinTheta = Math.sin(theta);
+			weightThis = Math.sin((1.0 - ratio) * theta) / sinTheta;
+			weightOther = Math.sin(ratio * theta) / sinTheta;
+		}
+		weightOther *= sign;
+
+		return new Transform(
+				tx + (other.tx - tx) * ratio,
+				ty + (other.ty - ty) * ratio,
+				tz + (other.tz - tz) * ratio,
+				qx * weightThis + other.qx * weightOther,
+				qy * weightThis + other.qy * weightOther,
+				qz * weightThis + other.qz * weightOther,
+				qw * weightThis + other.qw * weightOther);
+	}
+
+	/**
+	 * Apply transform to a point.
+	 *
+	 * @param x coordinate X of point
+	 * @param y coordinate Y of point
+	 * @param z coordinate Z of point
+	 * @return transformed point as x, y, z
+	 */
+	public double[] apply(double x, double y, double z) {
+		return new double[] {
+				tx + rotateX(x, y, z),
+				ty + rotateY(x, y, z),
+				tz + rotateZ(x, y, z),
+		};
+	}
+
+	/**
+	 * Get rotation around axis Z.
+	 *
+	 * @return yaw angle in radians (-pi to pi)
+	 */
+	public double yaw() {
+		return Math.atan2(2.0 * (qw * qz + qx * qy), 1.0 - 2.0 * (qy * qy + qz * qz));
+	}
+
+	// ====================================================
+	// rotation of vector v: v + 2w(q x v) + 2q x (q x v)
+	// ====================================================
+
+	/**
+	 * Get coordinate X of rotated vector.
+	 *
+	 * @param x coordinate X of vector
+	 * @param y coordinate Y of vector
+	 * @param z coordinate Z of vector
+	 * @return coordinate X of rotated vector
+	 */
+	private double rotateX(double x, double y, double z) {
+		double cx = qy * z - qz * y;
+		double cy = qz * x - qx * z;
+		double cz = qx * y - qy * x;
+		return x + 2.0 * (qw * cx + qy * cz - qz * cy);
+	}
+
+	/**
+	 * Get coordinate Y of rotated vector.
+	 *
+	 * @param x coordinate X of vector
+	 * @param y coordinate Y of vector
+	 * @param z coordinate Z of vector
+	 * @return coordinate Y of rotated vector
+	 */
+	private double rotateY(double x, double y, double z) {
+		double cx = qy * z - qz * y;
+		double cy = qz * x - qx * z;
+		double cz = qx * y - qy * x;
+		return y + 2.0 * (qw * cy + qz * cx - qx * cz);
+	}
+
+	/**
+	 * Get coordinate Z of rotated vector.
+	 *
+	 * @param x coordinate X of vector
+	 * @param y coordinate Y of vector
+	 * @param z coordinate Z of vector
+	 * @return coordinate Z of rotated vector
+	 */
+	private double rotateZ(double x, double y, double z) {
+		double cx = qy * z - qz * y;
+		double cy = qz * x - qx * z;
+		double cz = qx * y - qy * x;
+		return z + 2.0 * (qw * cz + qx * cy - qy * cx);
+	}
+
+}
@@ -0,0 +1,383 @@
+package com.ericwen229.tf;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Time-indexed cache of the transform tree.
+ *
+ * <p>Each frame has at most one parent, and the transforms from a frame to its parent are
+ * kept in a bounded history ordered by time. Transforms between arbitrary frames are found
+ * by composing the transforms along the tree. The latest transform between each pair of
+ * frames looked up is cached and recomposed only after a transform along its chain changes,
+ * and serves lookups at any time no earlier than the transforms it was composed from.
+ */
+public class TransformCache {
+
+	/**
+	 * Maximum number of transforms kept per frame.
+	 */
+	private final int historySize;
+
+	/**
+	 * Edge from each frame to its parent, keyed by frame.
+	 */
+	private final Map<String, Edge> edges = new ConcurrentHashMap<>();
+
+	/**
+	 * Latest composed transforms, keyed by target and source frame.
+	 */
+	private final Map<String, Chain> chains = new ConcurrentHashMap<>();
+
+	/**
+	 * Create cache.
+	 *
+	 * @param historySize maximum number of transforms kept per frame
+	 */
+	public TransformCache(int historySize) {
+		if (historySize <= 0) {
+			throw new RuntimeException("Transform history size must be positive: " + historySize);
+		}
+		this.historySize = historySize;
+	}
+
+	/**
+	 * Record transform from a frame to its parent.
+	 *
+	 * @param parentFrame parent frame
+	 * @param childFrame child frame
+	 * @param stampNanos time of transform in nanoseconds
+	 * @param transform transform mapping child frame into parent frame
+	 * @param isStatic true if transform never changes
+	 */
+	public void update(@NonNull String parentFrame, @NonNull String childFrame,
+					   long stampNanos, @NonNull Transform transform, boolean isStatic) {
+		String parent = normalize(parentFrame);
+		String child = normalize(childFrame);
+		Edge edge = edges.get(child);
+		if (edge == null || !edge.parent.equals(parent) || edge.isStatic != isStatic) {
+			// first transform of frame, or frame moved to another parent
+			if (edge != null) {
+				edge.isReplaced = true;
+			}
+			edge = new Edge(parent, isStatic ? 1 : historySize, isStatic);
+			edges.put(child, edge);
+		}
+		edge.add(stampNanos, transform);
+	}
+
+	/**
+	 * Look up the latest transform between two frames.
+	 *
+	 * @param targetFrame frame to map points into
+	 * @param sourceFrame frame to map points from
+	 * @return transform, or null if frames are not connected
+	 */
+	public Transform lookupLatest(@NonNull String targetFrame, @NonNull String sourceFrame) {
+		return lookup(targetFrame, sourceFrame, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Look up transform between two frames at given time. Transforms are interpolated
+	 * between recorded ones. Times later than the latest recorded transform use the latest
+	 * one, and static transforms apply at any time.
+	 *
+	 * @param targetFrame frame to map points into
+	 * @param sourceFrame frame to map points from
+	 * @param stampNanos time in nanoseconds
+	 * @return transform, or null if frames are not connected or time is too old
+	 */
+	public Transform lookup(@NonNull String targetFrame, @NonNull String sourceFrame, long stampNanos) {
+		String target = normalize(targetFrame);
+		String source = normalize(sourceFrame);
+		String key = target + '\n' + source;
+		Chain chain = chains.get(key);
+		if (chain != null && stampNanos >= chain.latestStamp && chain.isValid()) {
+			return chain.transform;
+		}
+		chain = compose(target, source, stampNanos);
+		if (chain == null) {
+			return null;
+		}
+		if (stampNanos >= chain.latestStamp) {
+			// composed from the latest transforms, good for any later lookup until they change
+			chains.put(key, chain);
+		}
+		return chain.transform;
+	}
+
+	/**
+	 * Get all frames known to the cache.
+	 *
+	 * @return frames
+	 */
+	public Set<String> getFrames() {
+		Set<String> frames = ConcurrentHashMap.newKeySet();
+		for (Map.Entry<String, Edge> entry : edges.entrySet()) {
+			frames.add(entry.getKey());
+			frames.add(entry.getValue().parent);
+		}
+		return frames;
+	}
+
+	/**
+	 * Compose transform between two frames through their closest common ancestor.
+	 *
+	 * @param target frame to map points into
+	 * @param source frame to map points from
+	 * @param stampNanos time in nanoseconds, or Long.MAX_VALUE for the latest transform
+	 * @return composed chain, or null if not available
+	 */
+	private Chain compose(@NonNull String target, @NonNull String source, long stampNanos) {
+		List<Edge> usedEdges = new ArrayList<>();
+		List<Long> usedVersions = new ArrayList<>();
+		long latestStamp = Long.MIN_VALUE;
+
+		// transforms from each ancestor of source (source included) to source
+		Map<String, Transform> sourceAncestors = new HashMap<>();
+		String frame = source;
+		Transform toAncestor = Transform.identity;
+		sourceAncestors.put(frame, toAncestor);
+		for (Edge edge = edges.get(frame); edge != null; edge = edges.get(frame)) {
+			long version = edge.version;
+			Transform step = edge.at(stampNanos);
+			if (step == null) {
+				break;
+			}
+			usedEdges.add(edge);
+			usedVersions.add(version);
+			latestStamp = Math.max(latestStamp, edge.latestStamp());
+			toAncestor = step.compose(toAncestor);
+			frame = edge.parent;
+			if (sourceAncestors.containsKey(frame)) {
+				// loop in the tree
+				return null;
+			}
+			sourceAncestors.put(frame, toAncestor);
+		}
+
+		// walk up from target until reaching an ancestor of source
+		frame = target;
+		Transform targetToAncestor = Transform.identity;
+		int depth = 0;
+		while (!sourceAncestors.containsKey(frame)) {
+			Edge edge = edges.get(frame);
+			long version = edge == null ? 0 : edge.version;
+			Transform step = edge == null ? null : edge.at(stampNanos);
+			if (step == null || ++depth > edges.size()) {
+				return null;
+			}
+			usedEdges.add(edge);
+			usedVersions.add(version);
+			latestStamp = Math.max(latestStamp, edge.latestStamp());
+			targetToAncestor = step.compose(targetToAncestor);
+			frame = edge.parent;
+		}
+
+		Transform transform = targetToAncestor.inverse().compose(sourceAncestors.get(frame));
+		return new Chain(transform, usedEdges, usedVersions, latestStamp);
+	}
+
+	/**
+	 * Normalize frame name by removing the leading slash (frame names in tf2 have none).
+	 *
+	 * @param frame frame name
+	 * @return normalized frame name
+	 */
+	private static String normalize(@NonNull String frame) {
+		return frame.startsWith("/") ? frame.substring(1) : frame;
+	}
+
+	/**
+	 * Transforms from a frame to its parent, kept in a ring ordered by time.
+	 */
+	private static class Edge {
+
+		/**
+		 * Parent frame.
+		 */
+		private final String parent;
+
+		/**
+		 * True if transform never changes.
+		 */
+		private final boolean isStatic;
+
+		/**
+		 * Times of transforms in nanoseconds.
+		 */
+		private final long[] stamps;
+
+		/**
+		 * Transforms.
+		 */
+		private final Transform[] transforms;
+
+		/**
+		 * Number of transforms ever recorded. Changes whenever a transform is recorded.
+		 */
+		private volatile long version = 0;
+
+		/**
+		 * True if frame has moved to another parent.
+		 */
+		private volatile boolean isReplaced = false;
+
+		/**
+		 * Create edge.
+		 *
+		 * @param parent parent frame
+		 * @param capacity maximum number of transforms kept
+		 * @param isStatic true if transform never changes
+		 */
+		private Edge(@NonNull String parent, int capacity, boolean isStatic) {
+			this.parent = parent;
+			this.isStatic = isStatic;
+			this.stamps = new long[capacity];
+			this.transforms = new Transform[capacity];
+		}
+
+		/**
+		 * Record transform. Transforms older than the latest recorded one are dropped.
+		 *
+		 * @param stampNanos time of transform in nanoseconds
+		 * @param transform transform
+		 */
+		private synchronized void add(long stampNanos, @NonNull Transform transform) {
+			if (version > 0 && !isStatic && stampNanos < stamps[slot(version - 1)]) {
+				return;
+			}
+			int slot = slot(version);
+			stamps[slot] = stampNanos;
+			transforms[slot] = transform;
+			version++;
+		}
+
+		/**
+		 * Get transform at given time.
+		 *
+		 * @param stampNanos time in nanoseconds
+		 * @return transform, or null if time is older than all recorded transforms
+		 */
+		private synchronized Transform at(long stampNanos) {
+			if (version == 0) {
+				return null;
+			}
+			int size = (int) Math.min(version, stamps.length);
+			int newest = slot(version - 1);
+			if (isStatic || stampNanos >= stamps[newest]) {
+				return transforms[newest];
+			}
+
+			// binary search for the newest transform no later than given time
+			int low = 0;
+			int high = size - 1;
+			long first = version - size;
+			if (stampNanos < stamps[slot(first)]) {
+				return null;
+			}
+			while (low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if (stamps[slot(first + middle)] <= stampNanos) {
+					low = middle;
+				}
+				else {
+					high = middle - 1;
+				}
+			}
+			int before = slot(first + low);
+			int after = slot(first + low + 1);
+			long span = stamps[after] - stamps[before];
+			double ratio = span == 0 ? 0.0 : (double) (stampNanos - stamps[before]) / span;
+			return transforms[before].interpolate(transforms[after], ratio);
+		}
+
+		/**
+		 * Get time of the latest recorded transform. Static transforms apply at any time.
+		 *
+		 * @return time in nanoseconds, or Long.MIN_VALUE if transform applies at any time
+		 */
+		private synchronized long latestStamp() {
+			return isStatic || version == 0 ? Long.MIN_VALUE : stamps[slot(version - 1)];
+		}
+
+		/**
+		 * Get slot in arrays of n-th recorded transform.
+		 *
+		 * @param n index of transform among all ever recorded
+		 * @return slot in arrays
+		 */
+		private int slot(long n) {
+			return (int) (n % stamps.length);
+		}
+
+	}
+
+	/**
+	 * Composed transform together with the versions of the edges it was composed from.
+	 */
+	private static class Chain {
+
+		/**
+		 * Composed transform.
+		 */
+		private final Transform transform;
+
+		/**
+		 * Edges transform was composed from.
+		 */
+		private final Edge[] usedEdges;
+
+		/**
+		 * Versions of edges at the time of composition.
+		 */
+		private final long[] versions;
+
+		/**
+		 * Time of the latest transform chain was composed from, in nanoseconds. Chain holds
+		 * the transform at any time no earlier than this one.
+		 */
+		private final long latestStamp;
+
+		/**
+		 * Create chain.
+		 *
+		 * @param transform composed transform
+		 * @param usedEdges edges transform was composed from
+		 * @param usedVersions versions of edges read before composition
+		 * @param latestStamp time of the latest transform chain was composed from
+		 */
+		private Chain(@NonNull Transform transform, @NonNull List<Edge> usedEdges, @NonNull List<Long> usedVersions,
+					  long latestStamp) {
+			this.transform = transform;
+			this.latestStamp = latestStamp;
+			this.usedEdges = usedEdges.toArray(new Edge[0]);
+			this.versions = new long[this.usedEdges.length];
+			for (int i = 0; i < versions.length; i++) {
+				versions[i] = usedVersions.get(i);
+			}
+		}
+
+		/**
+		 * Check whether no edge along the chain changed since composition.
+		 *
+		 * @return true if chain is still valid
+		 */
+		private boolean isValid() {
+			for (int i = 0; i < usedEdges.length; i++) {
+				if (usedEdges[i].version != versions[i] || usedEdges[i].isReplaced) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+}
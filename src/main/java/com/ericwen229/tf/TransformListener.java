@@ -0,0 +1,51 @@
+package com.ericwen229.tf;
+
+import com.ericwen229.node.RoverOSNode;
+import geometry_msgs.TransformStamped;
+import lombok.NonNull;
+import org.ros.namespace.GraphName;
+import org.ros.node.topic.Subscriber;
+import tf2_msgs.TFMessage;
+
+/**
+ * This class feeds transforms published on /tf and /tf_static into a transform cache.
+ */
+public class TransformListener {
+
+	/**
+	 * Cache receiving transforms.
+	 */
+	private final TransformCache cache;
+
+	/**
+	 * Create listener subscribing to transform topics.
+	 *
+	 * @param node ROS node used by RoverOS
+	 * @param cache cache receiving transforms
+	 */
+	public TransformListener(@NonNull RoverOSNode node, @NonNull TransformCache cache) {
+		this.cache = cache;
+		Subscriber<TFMessage> tfSubscriber = node.subscribeToTopic(GraphName.of("/tf"), TFMessage.class);
+		Subscriber<TFMessage> tfStaticSubscriber = node.subscribeToTopic(GraphName.of("/tf_static"), TFMessage.class);
+		tfSubscriber.addMessageListener(message -> handleTransforms(message, false));
+		tfStaticSubscriber.addMessageListener(message -> handleTransforms(message, true));
+	}
+
+	/**
+	 * Callback invoked when transforms are received.
+	 *
+	 * @param message received transforms
+	 * @param isStatic true if transforms never change
+	 */
+	private void handleTransforms(@NonNull TFMessage message, boolean isStatic) {
+		for (TransformStamped transform : message.getTransforms()) {
+			cache.update(
+					transform.getHeader().getFrameId(),
+					transform.getChildFrameId(),
+					transform.getHeader().getStamp().totalNsecs(),
+					Transform.fromMessage(transform.getTransform()),
+					isStatic);
+		}
+	}
+
+}
@@ -0,0 +1,485 @@
+package com.ericwen229.util;
+
+import lombok.NonNull;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Configuration of RoverOS, read from a properties file, with typed access to its values.
+ *
+ * <p>Some settings, such as rates, scales and image quality, are tunable: they can be
+ * changed while RoverOS runs, either by editing the file, which is watched for changes,
+ * or through the admin endpoint (see {@link ConfigAdmin}). A tunable is applied when it is
+ * registered, then again each time its value changes. Values changed in the file override
+ * values set through the admin endpoint, and a value removed from the file goes back to
+ * its default. Other settings are only read at startup: changing them in the file is
+ * logged as needing a restart.
+ */
+public class Config {
+
+	/**
+	 * Delay before reading the file once it changed, letting editors finish writing it.
+	 */
+	private static final long reloadDelayMillis = 200;
+
+	/**
+	 * Path of properties file.
+	 */
+	private final Path path;
+
+	/**
+	 * Properties last read from file.
+	 */
+	private volatile Properties properties;
+
+	/**
+	 * Tunable settings, keyed by name.
+	 */
+	private final Map<String, Tunable> tunables = new LinkedHashMap<>();
+
+	/**
+	 * Read configuration from properties file.
+	 *
+	 * @param filePath path of properties file
+	 */
+	public Config(@NonNull String filePath) {
+		this.path = Paths.get(filePath).toAbsolutePath();
+		this.properties = load(path);
+	}
+
+	/**
+	 * Get a required value.
+	 *
+	 * @param key name of setting
+	 * @return value
+	 * @throws RuntimeException if setting is missing
+	 */
+	public String getStringChecked(@NonNull String key) {
+		String value = properties.getProperty(key);
+		if (value == null) {
+			throw new RuntimeException(String.format("No properties associated with %s are found.", key));
+		}
+		return value;
+	}
+
+	/**
+	 * Get a value.
+	 *
+	 * @param key name of setting
+	 * @param defaultValue value if setting is missing
+	 * @return value
+	 */
+	public String getString(@NonNull String key, @NonNull String defaultValue) {
+		return properties.getProperty(key, defaultValue);
+	}
+
+	/**
+	 * Get a required integer value.
+	 *
+	 * @param key name of setting
+	 * @return value
+	 * @throws RuntimeException if setting is missing or not an integer
+	 */
+	public int getIntChecked(@NonNull String key) {
+		return parseInt(key, getStringChecked(key));
+	}
+
+	/**
+	 * Get an integer value.
+	 *
+	 * @param key name of setting
+	 * @param defaultValue value if setting is missing
+	 * @return value
+	 * @throws RuntimeException if setting is not an integer
+	 */
+	public int getInt(@NonNull String key, int defaultValue) {
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : parseInt(key, value);
+	}
+
+	/**
+	 * Get a long integer value.
+	 *
+	 * @param key name of setting
+	 * @param defaultValue value if setting is missing
+	 * @return value
+	 * @throws RuntimeException if setting is not an integer
+	 */
+	public long getLong(@NonNull String key, long defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		}
+		catch (NumberFormatException e) {
+			throw new RuntimeException(String.format("Invalid value %s of %s: expected an integer", value, key));
+		}
+	}
+
+	/**
+	 * Get a number value.
+	 *
+	 * @param key name of setting
+	 * @param defaultValue value if setting is missing
+	 * @return value
+	 * @throws RuntimeException if setting is not a number
+	 */
+	public double getDouble(@NonNull String key, double defaultValue) {
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : parseDouble(key, value);
+	}
+
+	/**
+	 * Get a boolean value, true if it reads {@code true} ignoring case.
+	 *
+	 * @param key name of setting
+	 * @param defaultValue value if setting is missing
+	 * @return value
+	 */
+	public boolean getBoolean(@NonNull String key, boolean defaultValue) {
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
+
+	/**
+	 * Register a tunable number setting and apply its current value.
+	 *
+	 * @param key name of setting
+	 * @param defaultValue value if setting is missing
+	 * @param min minimum value
+	 * @param max maximum value
+	 * @param apply action applying a value
+	 * @throws RuntimeException if current value is invalid
+	 */
+	public void tunable(@NonNull String key, double defaultValue, double min, double max,
+						@NonNull DoubleConsumer apply) {
+		register(new Tunable(key, defaultValue, min, max, false, apply));
+	}
+
+	/**
+	 * Register a tunable integer setting and apply its current value.
+	 *
+	 * @param key name of setting
+	 * @param defaultValue value if setting is missing
+	 * @param min minimum value
+	 * @param max maximum value
+	 * @param apply action applying a value
+	 * @throws RuntimeException if current value is invalid
+	 */
+	public void tunableInt(@NonNull String key, int defaultValue, int min, int max, @NonNull IntConsumer apply) {
+		register(new Tunable(key, defaultValue, min, max, true, value -> apply.accept((int) value)));
+	}
+
+	/**
+	 * Get current values of tunable settings.
+	 *
+	 * @return values formatted as in properties file, keyed by name of setting
+	 */
+	public synchronized Map<String, String> getTunables() {
+		Map<String, String> values = new LinkedHashMap<>();
+		for (Tunable tunable : tunables.values()) {
+			values.put(tunable.key, tunable.format(tunable.value));
+		}
+		return values;
+	}
+
+	/**
+	 * Set tunable settings. Values are all checked before any is applied.
+	 *
+	 * @param values values, keyed by name of setting
+	 * @throws RuntimeException if a setting isn't tunable or a value is invalid
+	 */
+	public synchronized void set(@NonNull Map<String, String> values) {
+		Map<Tunable, Double> parsed = new LinkedHashMap<>();
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			Tunable tunable = tunables.get(entry.getKey());
+			if (tunable == null) {
+				throw new RuntimeException(String.format("%s is not tunable", entry.getKey()));
+			}
+			parsed.put(tunable, tunable.parse(entry.getValue()));
+		}
+		for (Map.Entry<Tunable, Double> entry : parsed.entrySet()) {
+			entry.getKey().apply(entry.getValue());
+		}
+	}
+
+	/**
+	 * Start watching properties file from a daemon thread, applying tunable settings changed.
+	 */
+	public void watch() {
+		WatchService watcher;
+		try {
+			watcher = FileSystems.getDefault().newWatchService();
+			path.getParent().register(watcher,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(String.format("Cannot watch %s: %s", path, e));
+		}
+		Thread thread = new Thread(() -> watch(watcher), "roveros-config");
+		thread.setDaemon(true);
+		thread.start();
+		Logger.getGlobal().info(String.format("RoverOS watching %s for tunable settings", path));
+	}
+
+	/**
+	 * Wait for changes of properties file and reload it. Runs on the watcher thread.
+	 *
+	 * @param watcher watcher of directory of file
+	 */
+	private void watch(@NonNull WatchService watcher) {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				WatchKey key = watcher.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					changed |= path.getFileName().equals(event.context());
+				}
+				key.reset();
+				if (changed) {
+					Thread.sleep(reloadDelayMillis);
+					// events of the same write
+					WatchKey pending;
+					while ((pending = watcher.poll()) != null) {
+						pending.pollEvents();
+						pending.reset();
+					}
+					reload();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Read properties file again, applying tunable settings whose value changed in file.
+	 */
+	synchronized void reload() {
+		Properties loaded;
+		try {
+			loaded = load(path);
+		}
+		catch (RuntimeException e) {
+			Logger.getGlobal().warning(String.format("RoverOS cannot reload configuration: %s", e.getMessage()));
+			return;
+		}
+		Set<String> keys = new TreeSet<>(properties.stringPropertyNames());
+		keys.addAll(loaded.stringPropertyNames());
+		for (String key : keys) {
+			String value = loaded.getProperty(key);
+			if (Objects.equals(properties.getProperty(key), value)) {
+				continue;
+			}
+			Tunable tunable = tunables.get(key);
+			if (tunable == null) {
+				Logger.getGlobal().warning(String.format("RoverOS configuration %s changed, restart to apply", key));
+				continue;
+			}
+			try {
+				tunable.apply(value == null ? tunable.defaultValue : tunable.parse(value));
+			}
+			catch (RuntimeException e) {
+				Logger.getGlobal().warning(
+						String.format(
+								"RoverOS configuration %s. Keeping %s.",
+								e.getMessage(),
+								tunable.format(tunable.value)));
+			}
+		}
+		properties = loaded;
+	}
+
+	/**
+	 * Register a tunable setting and apply its current value.
+	 *
+	 * @param tunable tunable setting
+	 */
+	private synchronized void register(@NonNull Tunable tunable) {
+		if (tunables.containsKey(tunable.key)) {
+			throw new RuntimeException("Duplicate tunable setting: " + tunable.key);
+		}
+		String value = properties.getProperty(tunable.key);
+		tunable.value = value == null ? tunable.defaultValue : tunable.parse(value);
+		tunable.apply.accept(tunable.value);
+		tunables.put(tunable.key, tunable);
+	}
+
+	/**
+	 * Read properties file.
+	 *
+	 * @param path path of file
+	 * @return properties
+	 */
+	private static Properties load(@NonNull Path path) {
+		try (FileInputStream fStream = new FileInputStream(path.toFile())) {
+			Properties properties = new Properties();
+			properties.load(fStream);
+			return properties;
+		}
+		catch (FileNotFoundException e) {
+			throw new RuntimeException(
+					String.format("Properties file not found at %s.", path));
+		}
+		catch (IOException e) {
+			throw new RuntimeException(
+					String.format("Error reading properties from %s.", path));
+		}
+	}
+
+	/**
+	 * Parse an integer value.
+	 *
+	 * @param key name of setting
+	 * @param value value
+	 * @return integer
+	 */
+	private static int parseInt(@NonNull String key, @NonNull String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e) {
+			throw new RuntimeException(String.format("Invalid value %s of %s: expected an integer", value, key));
+		}
+	}
+
+	/**
+	 * Parse a number value.
+	 *
+	 * @param key name of setting
+	 * @param value value
+	 * @return number
+	 */
+	private static double parseDouble(@NonNull String key, @NonNull String value) {
+		try {
+			return Double.parseDouble(value.trim());
+		}
+		catch (NumberFormatException e) {
+			throw new RuntimeException(String.format("Invalid value %s of %s: expected a number", value, key));
+		}
+	}
+
+	/**
+	 * Tunable setting.
+	 */
+	private static class Tunable {
+
+		/**
+		 * Name of setting.
+		 */
+		private final String key;
+
+		/**
+		 * Value if setting is missing.
+		 */
+		private final double defaultValue;
+
+		/**
+		 * Minimum value.
+		 */
+		private final double min;
+
+		/**
+		 * Maximum value.
+		 */
+		private final double max;
+
+		/**
+		 * True if values are integers.
+		 */
+		private final boolean integer;
+
+		/**
+		 * Action applying a value.
+		 */
+		private final DoubleConsumer apply;
+
+		/**
+		 * Value applied.
+		 */
+		private double value;
+
+		/**
+		 * Create tunable setting.
+		 *
+		 * @param key name of setting
+		 * @param defaultValue value if setting is missing
+		 * @param min minimum value
+		 * @param max maximum value
+		 * @param integer true if values are integers
+		 * @param apply action applying a value
+		 */
+		private Tunable(@NonNull String key, double defaultValue, double min, double max, boolean integer,
+						@NonNull DoubleConsumer apply) {
+			this.key = key;
+			this.defaultValue = defaultValue;
+			this.min = min;
+			this.max = max;
+			this.integer = integer;
+			this.apply = apply;
+		}
+
+		/**
+		 * Parse and check a value.
+		 *
+		 * @param text value
+		 * @return value
+		 * @throws RuntimeException if value is invalid
+		 */
+		private double parse(@NonNull String text) {
+			double parsed = integer ? parseInt(key, text) : parseDouble(key, text);
+			if (!(parsed >= min && parsed <= max)) {
+				throw new RuntimeException(
+						String.format("Invalid value %s of %s: expected %s to %s", text, key, format(min), format(max)));
+			}
+			return parsed;
+		}
+
+		/**
+		 * Apply a value, logging it if it changed.
+		 *
+		 * @param newValue value checked
+		 */
+		private void apply(double newValue) {
+			apply.accept(newValue);
+			if (newValue != value) {
+				Logger.getGlobal().info(
+						String.format("RoverOS configuration %s set to %s (was %s)", key, format(newValue), format(value)));
+			}
+			value = newValue;
+		}
+
+		/**
+		 * Format a value as in properties file.
+		 *
+		 * @param number value
+		 * @return value formatted
+		 */
+		private String format(double number) {
+			return integer ? Long.toString((long) number) : Double.toString(number);
+		}
+
+	}
+
+}
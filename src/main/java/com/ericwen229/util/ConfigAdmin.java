@@ -0,0 +1,181 @@
+package com.ericwen229.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import lombok.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * HTTP endpoint tuning settings of a running RoverOS (see {@link Config}), authenticated
+ * by a bearer token ({@code Authorization: Bearer <token>}).
+ *
+ * <p>{@code GET} answers the current value of each tunable setting, one {@code key = value}
+ * line each. {@code POST} sets the settings given in the body in the same format, all of
+ * them or none if any is invalid, and answers the values then.
+ */
+public class ConfigAdmin implements HttpHandler {
+
+	/**
+	 * Maximum length of request body in bytes.
+	 */
+	private static final int maxBodyLength = 64 * 1024;
+
+	/**
+	 * Content type of responses.
+	 */
+	private static final String contentType = "text/plain; charset=utf-8";
+
+	/**
+	 * Log of unauthorized requests, which anyone reaching the endpoint can send.
+	 */
+	private static final LogSite unauthorizedLog = LogSite.of(
+			"admin.unauthorized", Level.WARNING, "RoverOS admin unauthorized request from %s");
+
+	/**
+	 * Configuration tuned.
+	 */
+	private final Config config;
+
+	/**
+	 * Token expected in requests.
+	 */
+	private final byte[] token;
+
+	/**
+	 * Create endpoint.
+	 *
+	 * @param config configuration tuned
+	 * @param token token expected in requests, not empty
+	 */
+	public ConfigAdmin(@NonNull Config config, @NonNull String token) {
+		if (token.isEmpty()) {
+			throw new RuntimeException("Empty admin token");
+		}
+		this.config = config;
+		this.token = token.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!isAuthorized(exchange)) {
+				unauthorizedLog.log(exchange.getRemoteAddress());
+				exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+				respond(exchange, 401, "Unauthorized\n");
+				return;
+			}
+			String method = exchange.getRequestMethod();
+			if (method.equals("GET")) {
+				respond(exchange, 200, format(config.getTunables()));
+			}
+			else if (method.equals("POST")) {
+				Map<String, String> values;
+				try {
+					values = parse(exchange.getRequestBody());
+					config.set(values);
+				}
+				catch (RuntimeException e) {
+					respond(exchange, 400, e.getMessage() + "\n");
+					return;
+				}
+				Logger.getGlobal().info(
+						String.format("RoverOS admin %s set %s", exchange.getRemoteAddress(), values));
+				respond(exchange, 200, format(config.getTunables()));
+			}
+			else {
+				exchange.getResponseHeaders().set("Allow", "GET, POST");
+				exchange.sendResponseHeaders(405, -1);
+			}
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Check bearer token of a request, in constant time.
+	 *
+	 * @param exchange request
+	 * @return true if token matches
+	 */
+	private boolean isAuthorized(@NonNull HttpExchange exchange) {
+		String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+		if (authorization == null || !authorization.startsWith("Bearer ")) {
+			return false;
+		}
+		byte[] given = authorization.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8);
+		return MessageDigest.isEqual(given, token);
+	}
+
+	/**
+	 * Parse settings of request body, in properties format.
+	 *
+	 * @param body request body
+	 * @return values keyed by name of setting
+	 * @throws IOException if body can't be read
+	 */
+	private static Map<String, String> parse(@NonNull InputStream body) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int n; (n = body.read(buffer)) > 0; ) {
+			bytes.write(buffer, 0, n);
+			if (bytes.size() > maxBodyLength) {
+				throw new RuntimeException("Request body too large");
+			}
+		}
+		Properties properties = new Properties();
+		properties.load(new StringReader(new String(bytes.toByteArray(), StandardCharsets.UTF_8)));
+		Map<String, String> values = new TreeMap<>();
+		for (String key : properties.stringPropertyNames()) {
+			values.put(key, properties.getProperty(key));
+		}
+		if (values.isEmpty()) {
+			throw new RuntimeException("No setting given");
+		}
+		return values;
+	}
+
+	/**
+	 * Format settings, one {@code key = value} line each.
+	 *
+	 * @param values values keyed by name of setting
+	 * @return settings formatted
+	 */
+	private static String format(@NonNull Map<String, String> values) {
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			builder.append(entry.getKey()).append(" = ").append(entry.getValue()).append('\n');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Send a text response.
+	 *
+	 * @param exchange request and response
+	 * @param status HTTP status
+	 * @param text body
+	 * @throws IOException if response can't be sent
+	 */
+	private static void respond(@NonNull HttpExchange exchange, int status, @NonNull String text) throws IOException {
+		byte[] body = text.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+}
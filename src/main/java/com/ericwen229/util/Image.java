@@ -3,7 +3,11 @@ package com.ericwen229.util;
 import lombok.NonNull;
 import org.jboss.netty.buffer.ChannelBuffer;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -63,6 +67,30 @@ public class Image {
 		return outputStream.toByteArray();
 	}
 
+	/**
+	 * Encode buffered image in JPEG with given quality.
+	 *
+	 * @param bufferedImage image
+	 * @param quality compression quality, from 0 (smallest) to 1 (best)
+	 * @return byte array of encoded image
+	 */
+	public static byte[] bufferedImageToJpeg(@NonNull BufferedImage bufferedImage, float quality) {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		param.setCompressionQuality(quality);
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try (ImageOutputStream imageStream = ImageIO.createImageOutputStream(outputStream)) {
+			writer.setOutput(imageStream);
+			writer.write(null, new IIOImage(bufferedImage, null, null), param);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			writer.dispose();
+		}
+		return outputStream.toByteArray();
+	}
+
 	/**
 	 * Create RGB value from given BGR component values
 	 *
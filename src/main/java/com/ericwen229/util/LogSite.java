@@ -0,0 +1,371 @@
+package com.ericwen229.util;
+
+import com.ericwen229.metrics.Counter;
+import com.ericwen229.metrics.MetricsRegistry;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Call site of a log message on a hot path, such as a dropped request or message.
+ *
+ * <p>Messages are rate limited per call site: at most a few are logged per time window,
+ * the others being counted and reported as a single line once the window ends. Messages
+ * logged are queued to a daemon thread which formats them and passes them to the global
+ * logger, so that the calling thread neither formats nor waits for I/O. Each record keeps
+ * the time and thread of the call, and names the call site as its source. Long arguments
+ * are cut when formatted. When the queue is full, messages are dropped and counted.
+ */
+public class LogSite {
+
+	/**
+	 * Maximum number of messages waiting to be written.
+	 */
+	private static final int queueCapacity = 4096;
+
+	/**
+	 * Maximum length of an argument formatted, longer ones being cut.
+	 */
+	private static final int maxArgumentLength = 256;
+
+	/**
+	 * Interval between two checks of windows ended, by the writer thread.
+	 */
+	private static final long checkIntervalMillis = 1000;
+
+	/**
+	 * Maximum number of messages logged per call site and window.
+	 */
+	private static volatile int maxPerWindow = 5;
+
+	/**
+	 * Length of window in nanoseconds.
+	 */
+	private static volatile long windowNanos = TimeUnit.SECONDS.toNanos(10);
+
+	/**
+	 * Messages waiting to be written.
+	 */
+	private static final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+	/**
+	 * Call sites created.
+	 */
+	private static final List<LogSite> sites = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Number of messages dropped because the queue was full.
+	 */
+	private static final Counter dropped = MetricsRegistry.getGlobal().counter(
+			"roveros_log_dropped_total", "Log messages dropped because the log queue was full");
+
+	/**
+	 * Number of dropped messages already reported.
+	 */
+	private static long droppedReported = 0;
+
+	static {
+		Thread writer = new Thread(LogSite::write, "roveros-log");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(LogSite::drain));
+	}
+
+	/**
+	 * Name of call site.
+	 */
+	private final String name;
+
+	/**
+	 * Level of messages.
+	 */
+	private final Level level;
+
+	/**
+	 * Format of messages, as of {@link String#format(String, Object...)}.
+	 */
+	private final String format;
+
+	/**
+	 * Number of messages suppressed by rate limiting.
+	 */
+	private final Counter suppressedTotal;
+
+	/**
+	 * Start of current window, from {@link System#nanoTime()}.
+	 */
+	private long windowStart;
+
+	/**
+	 * Number of messages logged in current window.
+	 */
+	private int windowCount = 0;
+
+	/**
+	 * Number of messages suppressed in current window.
+	 */
+	private int windowSuppressed = 0;
+
+	/**
+	 * Create call site.
+	 *
+	 * @param name name of call site
+	 * @param level level of messages
+	 * @param format format of messages
+	 */
+	private LogSite(@NonNull String name, @NonNull Level level, @NonNull String format) {
+		this.name = name;
+		this.level = level;
+		this.format = format;
+		this.suppressedTotal = MetricsRegistry.getGlobal().counter(
+				"roveros_log_suppressed_total", "Log messages suppressed by rate limiting", "site", name);
+		this.windowStart = System.nanoTime();
+	}
+
+	/**
+	 * Create call site, normally kept in a static field.
+	 *
+	 * @param name name of call site, such as {@code navigation.mapNotReady}
+	 * @param level level of messages
+	 * @param format format of messages, as of {@link String#format(String, Object...)}
+	 * @return call site
+	 */
+	public static LogSite of(@NonNull String name, @NonNull Level level, @NonNull String format) {
+		LogSite site = new LogSite(name, level, format);
+		sites.add(site);
+		return site;
+	}
+
+	/**
+	 * Set maximum number of messages logged per call site and window, for all call sites.
+	 *
+	 * @param maxMessages maximum number of messages
+	 */
+	public static void setMaxPerWindow(int maxMessages) {
+		if (maxMessages <= 0) {
+			throw new RuntimeException("Invalid log rate limit: " + maxMessages);
+		}
+		maxPerWindow = maxMessages;
+	}
+
+	/**
+	 * Set length of rate limiting window, for all call sites. Takes effect from the next
+	 * window on.
+	 *
+	 * @param windowMillis length of window in milliseconds
+	 */
+	public static void setWindowMillis(long windowMillis) {
+		if (windowMillis <= 0) {
+			throw new RuntimeException("Invalid log rate window: " + windowMillis);
+		}
+		windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+	}
+
+	/**
+	 * Log a message, unless rate limited. Arguments are formatted later, on the writer
+	 * thread, so they should not be changed afterwards.
+	 *
+	 * @param args arguments of format
+	 */
+	public void log(Object... args) {
+		if (!Logger.getGlobal().isLoggable(level)) {
+			return;
+		}
+		long now = System.nanoTime();
+		synchronized (this) {
+			endWindow(now);
+			if (windowCount >= maxPerWindow) {
+				windowSuppressed++;
+				suppressedTotal.increment();
+				return;
+			}
+			windowCount++;
+		}
+		enqueue(new Entry(this, level, null, args));
+	}
+
+	/**
+	 * Start a new window if current one ended, reporting messages it suppressed.
+	 *
+	 * @param now current time, from {@link System#nanoTime()}
+	 */
+	private synchronized void endWindow(long now) {
+		if (now - windowStart < windowNanos) {
+			return;
+		}
+		if (windowSuppressed > 0) {
+			enqueue(new Entry(this, level, String.format(
+					"RoverOS suppressed %d messages like \"%s\" in %d s",
+					windowSuppressed,
+					format,
+					TimeUnit.NANOSECONDS.toSeconds(now - windowStart)), null));
+		}
+		windowStart = now;
+		windowCount = 0;
+		windowSuppressed = 0;
+	}
+
+	/**
+	 * Queue entry to writer thread, dropping it if queue is full.
+	 *
+	 * @param entry entry
+	 */
+	private static void enqueue(@NonNull Entry entry) {
+		if (!queue.offer(entry)) {
+			dropped.increment();
+		}
+	}
+
+	/**
+	 * Write entries queued, checking windows ended once in a while. Runs on the writer
+	 * thread.
+	 */
+	private static void write() {
+		long lastCheck = System.nanoTime();
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				Entry entry = queue.poll(checkIntervalMillis, TimeUnit.MILLISECONDS);
+				if (entry != null) {
+					entry.write();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				continue;
+			} catch (RuntimeException e) {
+				Logger.getGlobal().warning(String.format("RoverOS log writer exception: %s", e));
+			}
+
+			long now = System.nanoTime();
+			if (now - lastCheck >= TimeUnit.MILLISECONDS.toNanos(checkIntervalMillis)) {
+				lastCheck = now;
+				for (LogSite site : sites) {
+					site.endWindow(now);
+				}
+				reportDropped();
+			}
+		}
+	}
+
+	/**
+	 * Write entries left, at exit.
+	 */
+	private static void drain() {
+		List<Entry> entries = new ArrayList<>();
+		queue.drainTo(entries);
+		for (Entry entry : entries) {
+			entry.write();
+		}
+		reportDropped();
+	}
+
+	/**
+	 * Log number of messages dropped since last report, if any.
+	 */
+	private static synchronized void reportDropped() {
+		long total = dropped.get();
+		if (total > droppedReported) {
+			Logger.getGlobal().warning(
+					String.format("RoverOS log queue full, dropped %d messages", total - droppedReported));
+			droppedReported = total;
+		}
+	}
+
+	/**
+	 * Cut an argument too long to be logged whole.
+	 *
+	 * @param arg argument
+	 * @return argument, or its beginning as a string
+	 */
+	private static Object cut(Object arg) {
+		if (!(arg instanceof CharSequence)) {
+			return arg;
+		}
+		CharSequence text = (CharSequence) arg;
+		if (text.length() <= maxArgumentLength) {
+			return arg;
+		}
+		return String.format("%s... (%d chars)", text.subSequence(0, maxArgumentLength), text.length());
+	}
+
+	/**
+	 * Message waiting to be written.
+	 */
+	private static class Entry {
+
+		/**
+		 * Call site of message.
+		 */
+		private final LogSite site;
+
+		/**
+		 * Level of message.
+		 */
+		private final Level level;
+
+		/**
+		 * Message already formatted, or null to format arguments with format of call site.
+		 */
+		private final String message;
+
+		/**
+		 * Arguments of format.
+		 */
+		private final Object[] args;
+
+		/**
+		 * Time of call.
+		 */
+		private final long millis = System.currentTimeMillis();
+
+		/**
+		 * ID of calling thread.
+		 */
+		private final long threadId = Thread.currentThread().getId();
+
+		/**
+		 * Create entry.
+		 *
+		 * @param site call site of message
+		 * @param level level of message
+		 * @param message message already formatted, or null
+		 * @param args arguments of format, if message isn't formatted
+		 */
+		private Entry(@NonNull LogSite site, @NonNull Level level, String message, Object[] args) {
+			this.site = site;
+			this.level = level;
+			this.message = message;
+			this.args = args;
+		}
+
+		/**
+		 * Format message and pass it to the global logger.
+		 */
+		private void write() {
+			String text = message;
+			if (text == null) {
+				Object[] formatArgs = new Object[args.length];
+				for (int i = 0; i < args.length; i++) {
+					formatArgs[i] = cut(args[i]);
+				}
+				text = String.format(site.format, formatArgs);
+			}
+			LogRecord record = new LogRecord(level, text);
+			record.setMillis(millis);
+			record.setThreadID((int) threadId);
+			record.setLoggerName(Logger.GLOBAL_LOGGER_NAME);
+			record.setSourceClassName(site.name);
+			record.setSourceMethodName("");
+			Logger.getGlobal().log(record);
+		}
+
+	}
+
+}
@@ -0,0 +1,87 @@
+package com.ericwen229.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.logging.Logger;
+
+/**
+ * Memory fences ordering plain loads and stores, such as those to memory-mapped files
+ * shared with other processes, which volatile fields of Java objects don't cover.
+ *
+ * <p>Fences are those of {@code sun.misc.Unsafe}, looked up once through method handles so
+ * that calls are inlined by the JIT. On runtimes without it, fences fall back to a write
+ * or read of a volatile field, which orders loads and stores the same way on common
+ * hardware but is not guaranteed to by the Java memory model.
+ */
+public class MemoryFences {
+
+	/**
+	 * Unsafe.storeFence bound to the Unsafe instance, or null if not available.
+	 */
+	private static final MethodHandle storeFence;
+
+	/**
+	 * Unsafe.loadFence bound to the Unsafe instance, or null if not available.
+	 */
+	private static final MethodHandle loadFence;
+
+	/**
+	 * Written and read by fallback fences.
+	 */
+	private static volatile int fallback;
+
+	static {
+		MethodHandle store = null;
+		MethodHandle load = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object unsafe = field.get(null);
+			MethodType fenceType = MethodType.methodType(void.class);
+			store = MethodHandles.lookup().findVirtual(unsafeClass, "storeFence", fenceType).bindTo(unsafe);
+			load = MethodHandles.lookup().findVirtual(unsafeClass, "loadFence", fenceType).bindTo(unsafe);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			Logger.getGlobal().warning(String.format(
+					"RoverOS memory fences unavailable (%s), falling back to volatile accesses", e));
+		}
+		storeFence = store;
+		loadFence = load;
+	}
+
+	/**
+	 * Keep loads and stores before the fence from being reordered with stores after it.
+	 */
+	public static void storeFence() {
+		if (storeFence == null) {
+			fallback = 0;
+			return;
+		}
+		try {
+			storeFence.invokeExact();
+		}
+		catch (Throwable e) {
+			throw new RuntimeException("Store fence failed", e);
+		}
+	}
+
+	/**
+	 * Keep loads before the fence from being reordered with loads and stores after it.
+	 */
+	public static void loadFence() {
+		if (loadFence == null) {
+			int ignored = fallback;
+			return;
+		}
+		try {
+			loadFence.invokeExact();
+		}
+		catch (Throwable e) {
+			throw new RuntimeException("Load fence failed", e);
+		}
+	}
+
+}
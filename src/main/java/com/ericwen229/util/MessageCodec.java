@@ -0,0 +1,754 @@
+package com.ericwen229.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import lombok.NonNull;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.ros.internal.message.Message;
+import org.ros.message.Duration;
+import org.ros.message.Time;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * This class converts rosjava messages of a given type to and from json.
+ *
+ * <p>A codec is built once per message interface, by finding its getter and setter pairs
+ * and binding them to method handles, so converting a message involves no reflection.
+ * Fields are named after the ROS field (getFrameId becomes frame_id). Numbers, booleans
+ * and strings map to their json counterparts, times and durations to objects with secs
+ * and nsecs, uint8 and int8 arrays to base64 strings, other arrays to json arrays and
+ * nested messages to json objects. Fields of other types are left out.
+ */
+public class MessageCodec {
+
+	/**
+	 * Codecs built, keyed by message interface.
+	 */
+	private static final Map<Class<?>, MessageCodec> codecs = new ConcurrentHashMap<>();
+
+	/**
+	 * Lookup used to bind getters and setters.
+	 */
+	private static final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+	/**
+	 * Message interface.
+	 */
+	private final Class<?> messageType;
+
+	/**
+	 * Fields of message, in name order.
+	 */
+	private final List<Field> fields = new ArrayList<>();
+
+	/**
+	 * Build codec of message interface.
+	 *
+	 * @param messageType message interface
+	 */
+	private MessageCodec(@NonNull Class<?> messageType) {
+		this.messageType = messageType;
+		Method[] methods = messageType.getMethods();
+		Arrays.sort(methods, Comparator.comparing(Method::getName));
+		for (Method getter : methods) {
+			if (!getter.getName().startsWith("get")
+					|| getter.getName().length() == 3
+					|| getter.getParameterCount() != 0
+					|| Modifier.isStatic(getter.getModifiers())) {
+				continue;
+			}
+			Method setter;
+			try {
+				setter = messageType.getMethod("set" + getter.getName().substring(3), getter.getReturnType());
+			}
+			catch (NoSuchMethodException e) {
+				continue;
+			}
+			try {
+				Field field = Field.of(fieldName(getter.getName().substring(3)), getter, setter);
+				if (field != null) {
+					fields.add(field);
+				}
+				else {
+					Logger.getGlobal().warning(
+							String.format(
+									"RoverOS message codec leaving out field %s of %s: unsupported type %s",
+									getter.getName(),
+									messageType.getName(),
+									getter.getGenericReturnType()));
+				}
+			}
+			catch (IllegalAccessException e) {
+				throw new RuntimeException(
+						String.format("Cannot access field %s of %s", getter.getName(), messageType.getName()));
+			}
+		}
+	}
+
+	/**
+	 * Get codec of message interface, building it on first use.
+	 *
+	 * @param messageType message interface
+	 * @return codec
+	 */
+	public static MessageCodec of(@NonNull Class<?> messageType) {
+		MessageCodec codec = codecs.get(messageType);
+		if (codec == null) {
+			// nested types are built while building this one: no computeIfAbsent
+			codec = new MessageCodec(messageType);
+			MessageCodec existing = codecs.putIfAbsent(messageType, codec);
+			if (existing != null) {
+				codec = existing;
+			}
+		}
+		return codec;
+	}
+
+	/**
+	 * Get message interface of a ROS type name, such as sensor_msgs/BatteryState.
+	 *
+	 * @param typeName ROS type name
+	 * @return message interface
+	 */
+	public static Class<? extends Message> messageTypeOf(@NonNull String typeName) {
+		Class<?> messageType;
+		try {
+			messageType = Class.forName(typeName.replace('/', '.'));
+		}
+		catch (ClassNotFoundException e) {
+			throw new RuntimeException("Unknown message type: " + typeName);
+		}
+		if (!messageType.isInterface() || !Message.class.isAssignableFrom(messageType)) {
+			throw new RuntimeException("Not a message type: " + typeName);
+		}
+		return messageType.asSubclass(Message.class);
+	}
+
+	/**
+	 * Convert message to json.
+	 *
+	 * @param message message
+	 * @return message in json
+	 */
+	public String toJson(@NonNull Object message) {
+		StringWriter writer = new StringWriter();
+		try {
+			JsonWriter out = new JsonWriter(writer);
+			write(out, message);
+			out.flush();
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Write message as json object.
+	 *
+	 * @param out json writer
+	 * @param message message
+	 * @throws IOException if writing fails
+	 */
+	public void write(@NonNull JsonWriter out, @NonNull Object message) throws IOException {
+		out.beginObject();
+		for (Field field : fields) {
+			out.name(field.name);
+			try {
+				field.writer.write(out, message);
+			}
+			catch (IOException | RuntimeException | Error e) {
+				throw e;
+			}
+			catch (Throwable e) {
+				throw new RuntimeException(e);
+			}
+		}
+		out.endObject();
+	}
+
+	/**
+	 * Set fields of message from json. Fields missing from json are left as they are.
+	 *
+	 * @param json message in json
+	 * @param message message
+	 * @param messageFactory factory of messages, used for arrays of messages
+	 * @throws RuntimeException if a field has an invalid value
+	 */
+	public void read(@NonNull JsonObject json, @NonNull Object message,
+					 @NonNull Function<Class<?>, Object> messageFactory) {
+		for (Field field : fields) {
+			JsonElement value = json.get(field.name);
+			if (value == null || value.isJsonNull()) {
+				continue;
+			}
+			try {
+				field.reader.read(value, message, messageFactory);
+			}
+			catch (RuntimeException e) {
+				throw new RuntimeException(
+						String.format("Invalid field %s of %s: %s", field.name, messageType.getName(), e.getMessage()));
+			}
+			catch (Throwable e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Convert camel case name of getter to ROS field name.
+	 *
+	 * @param name name of getter without get
+	 * @return ROS field name
+	 */
+	private static String fieldName(@NonNull String name) {
+		StringBuilder builder = new StringBuilder(name.length() + 4);
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (Character.isUpperCase(c)) {
+				if (i > 0) {
+					builder.append('_');
+				}
+				builder.append(Character.toLowerCase(c));
+			}
+			else {
+				builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Write a double, as null if not finite.
+	 *
+	 * @param out json writer
+	 * @param value value
+	 * @throws IOException if writing fails
+	 */
+	private static void writeDouble(@NonNull JsonWriter out, double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			out.nullValue();
+		}
+		else {
+			out.value(value);
+		}
+	}
+
+	/**
+	 * Write a float with its shortest decimal representation, as null if not finite.
+	 *
+	 * @param out json writer
+	 * @param value value
+	 * @throws IOException if writing fails
+	 */
+	private static void writeFloat(@NonNull JsonWriter out, float value) throws IOException {
+		if (Float.isNaN(value) || Float.isInfinite(value)) {
+			out.nullValue();
+		}
+		else {
+			out.value(Float.valueOf(value));
+		}
+	}
+
+	/**
+	 * Get codec of values of a type, used for elements of lists.
+	 *
+	 * @param type type of values
+	 * @return codec, or null if type is unsupported
+	 */
+	private static ValueCodec valueCodecOf(@NonNull Type type) {
+		if (type == String.class) {
+			return new ValueCodec(
+					(out, value) -> out.value((String) value),
+					(json, factory) -> json.getAsString());
+		}
+		else if (type == Time.class) {
+			return new ValueCodec(
+					(out, value) -> writeStamp(out, ((Time) value).secs, ((Time) value).nsecs),
+					(json, factory) -> {
+						int[] stamp = readStamp(json);
+						return new Time(stamp[0], stamp[1]);
+					});
+		}
+		else if (type == Duration.class) {
+			return new ValueCodec(
+					(out, value) -> writeStamp(out, ((Duration) value).secs, ((Duration) value).nsecs),
+					(json, factory) -> {
+						int[] stamp = readStamp(json);
+						return new Duration(stamp[0], stamp[1]);
+					});
+		}
+		else if (type instanceof Class && ((Class<?>) type).isInterface()
+				&& Message.class.isAssignableFrom((Class<?>) type)) {
+			final Class<?> nestedType = (Class<?>) type;
+			final MessageCodec codec = of(nestedType);
+			return new ValueCodec(
+					(out, value) -> codec.write(out, value),
+					(json, factory) -> {
+						Object nested = factory.apply(nestedType);
+						codec.read(json.getAsJsonObject(), nested, factory);
+						return nested;
+					});
+		}
+		return null;
+	}
+
+	/**
+	 * Write time or duration.
+	 *
+	 * @param out json writer
+	 * @param secs seconds
+	 * @param nsecs nanoseconds
+	 * @throws IOException if writing fails
+	 */
+	private static void writeStamp(@NonNull JsonWriter out, int secs, int nsecs) throws IOException {
+		out.beginObject();
+		out.name("secs").value(secs);
+		out.name("nsecs").value(nsecs);
+		out.endObject();
+	}
+
+	/**
+	 * Read time or duration, either as an object with secs and nsecs or as seconds.
+	 *
+	 * @param json time or duration in json
+	 * @return seconds and nanoseconds
+	 */
+	private static int[] readStamp(@NonNull JsonElement json) {
+		if (json.isJsonObject()) {
+			JsonObject object = json.getAsJsonObject();
+			return new int[] {
+					object.has("secs") ? object.get("secs").getAsInt() : 0,
+					object.has("nsecs") ? object.get("nsecs").getAsInt() : 0};
+		}
+		double seconds = json.getAsDouble();
+		int secs = (int) Math.floor(seconds);
+		return new int[] {secs, (int) Math.round((seconds - secs) * 1e9)};
+	}
+
+	/**
+	 * Writes a field of a message.
+	 */
+	@FunctionalInterface
+	private interface FieldWriter {
+
+		/**
+		 * Write field.
+		 *
+		 * @param out json writer
+		 * @param message message
+		 * @throws Throwable if writing fails
+		 */
+		void write(JsonWriter out, Object message) throws Throwable;
+
+	}
+
+	/**
+	 * Reads a field of a message.
+	 */
+	@FunctionalInterface
+	private interface FieldReader {
+
+		/**
+		 * Read field.
+		 *
+		 * @param json value of field in json
+		 * @param message message
+		 * @param factory factory of messages
+		 * @throws Throwable if reading fails
+		 */
+		void read(JsonElement json, Object message, Function<Class<?>, Object> factory) throws Throwable;
+
+	}
+
+	/**
+	 * Writes a value.
+	 */
+	@FunctionalInterface
+	private interface ValueWriter {
+
+		/**
+		 * Write value.
+		 *
+		 * @param out json writer
+		 * @param value value
+		 * @throws IOException if writing fails
+		 */
+		void write(JsonWriter out, Object value) throws IOException;
+
+	}
+
+	/**
+	 * Reads a value.
+	 */
+	@FunctionalInterface
+	private interface ValueReader {
+
+		/**
+		 * Read value.
+		 *
+		 * @param json value in json
+		 * @param factory factory of messages
+		 * @return value
+		 */
+		Object read(JsonElement json, Function<Class<?>, Object> factory);
+
+	}
+
+	/**
+	 * Codec of values of a type.
+	 */
+	private static class ValueCodec {
+
+		/**
+		 * Writer of values.
+		 */
+		private final ValueWriter writer;
+
+		/**
+		 * Reader of values.
+		 */
+		private final ValueReader reader;
+
+		/**
+		 * Create codec.
+		 *
+		 * @param writer writer of values
+		 * @param reader reader of values
+		 */
+		private ValueCodec(@NonNull ValueWriter writer, @NonNull ValueReader reader) {
+			this.writer = writer;
+			this.reader = reader;
+		}
+
+	}
+
+	/**
+	 * Field of a message, bound to its getter and setter.
+	 */
+	private static class Field {
+
+		/**
+		 * ROS name of field.
+		 */
+		private final String name;
+
+		/**
+		 * Writer of field.
+		 */
+		private final FieldWriter writer;
+
+		/**
+		 * Reader of field.
+		 */
+		private final FieldReader reader;
+
+		/**
+		 * Create field.
+		 *
+		 * @param name ROS name of field
+		 * @param writer writer of field
+		 * @param reader reader of field
+		 */
+		private Field(@NonNull String name, @NonNull FieldWriter writer, @NonNull FieldReader reader) {
+			this.name = name;
+			this.writer = writer;
+			this.reader = reader;
+		}
+
+		/**
+		 * Bind field to its getter and setter.
+		 *
+		 * @param name ROS name of field
+		 * @param getter getter of field
+		 * @param setter setter of field
+		 * @return field, or null if type of field is unsupported
+		 * @throws IllegalAccessException if getter or setter is inaccessible
+		 */
+		private static Field of(@NonNull String name, @NonNull Method getter, @NonNull Method setter)
+				throws IllegalAccessException {
+			Class<?> type = getter.getReturnType();
+			MethodHandle get = lookup.unreflect(getter);
+			MethodHandle set = lookup.unreflect(setter);
+
+			if (type == boolean.class) {
+				MethodHandle g = get.asType(MethodType.methodType(boolean.class, Object.class));
+				MethodHandle s = set.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+				return new Field(
+						name,
+						(out, message) -> out.value((boolean) g.invokeExact(message)),
+						(json, message, factory) -> {
+							s.invokeExact(message, json.getAsBoolean());
+						});
+			}
+			else if (type == byte.class || type == short.class || type == int.class
+					|| type == long.class || type == char.class) {
+				MethodHandle g = MethodHandles.explicitCastArguments(get, MethodType.methodType(long.class, Object.class));
+				MethodHandle s = MethodHandles.explicitCastArguments(
+						set,
+						MethodType.methodType(void.class, Object.class, long.class));
+				return new Field(
+						name,
+						(out, message) -> out.value((long) g.invokeExact(message)),
+						(json, message, factory) -> {
+							s.invokeExact(message, json.getAsLong());
+						});
+			}
+			else if (type == float.class) {
+				MethodHandle g = get.asType(MethodType.methodType(float.class, Object.class));
+				MethodHandle s = set.asType(MethodType.methodType(void.class, Object.class, float.class));
+				return new Field(
+						name,
+						(out, message) -> writeFloat(out, (float) g.invokeExact(message)),
+						(json, message, factory) -> {
+							s.invokeExact(message, json.getAsFloat());
+						});
+			}
+			else if (type == double.class) {
+				MethodHandle g = get.asType(MethodType.methodType(double.class, Object.class));
+				MethodHandle s = set.asType(MethodType.methodType(void.class, Object.class, double.class));
+				return new Field(
+						name,
+						(out, message) -> writeDouble(out, (double) g.invokeExact(message)),
+						(json, message, factory) -> {
+							s.invokeExact(message, json.getAsDouble());
+						});
+			}
+			else if (type == ChannelBuffer.class) {
+				MethodHandle g = get.asType(MethodType.methodType(ChannelBuffer.class, Object.class));
+				MethodHandle s = set.asType(MethodType.methodType(void.class, Object.class, ChannelBuffer.class));
+				return new Field(
+						name,
+						(out, message) -> {
+							ChannelBuffer buffer = (ChannelBuffer) g.invokeExact(message);
+							byte[] bytes = new byte[buffer.readableBytes()];
+							buffer.getBytes(buffer.readerIndex(), bytes);
+							out.value(Base64.getEncoder().encodeToString(bytes));
+						},
+						(json, message, factory) -> {
+							byte[] bytes = Base64.getDecoder().decode(json.getAsString());
+							s.invokeExact(message, ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN, bytes));
+						});
+			}
+			else if (type.isArray() && type.getComponentType().isPrimitive()) {
+				return arrayField(name, type, get, set);
+			}
+			else if (type == List.class && getter.getGenericReturnType() instanceof ParameterizedType) {
+				Type elementType = ((ParameterizedType) getter.getGenericReturnType()).getActualTypeArguments()[0];
+				ValueCodec codec = valueCodecOf(elementType);
+				if (codec == null) {
+					return null;
+				}
+				MethodHandle g = get.asType(MethodType.methodType(List.class, Object.class));
+				MethodHandle s = set.asType(MethodType.methodType(void.class, Object.class, List.class));
+				return new Field(
+						name,
+						(out, message) -> {
+							out.beginArray();
+							for (Object element : (List<?>) g.invokeExact(message)) {
+								codec.writer.write(out, element);
+							}
+							out.endArray();
+						},
+						(json, message, factory) -> {
+							JsonArray array = json.getAsJsonArray();
+							List<Object> list = new ArrayList<>(array.size());
+							for (JsonElement element : array) {
+								list.add(codec.reader.read(element, factory));
+							}
+							s.invokeExact(message, list);
+						});
+			}
+			else if (type.isInterface() && Message.class.isAssignableFrom(type)) {
+				// nested messages are mutable: fill the one held by message
+				MessageCodec codec = MessageCodec.of(type);
+				MethodHandle g = get.asType(MethodType.methodType(Object.class, Object.class));
+				return new Field(
+						name,
+						(out, message) -> codec.write(out, (Object) g.invokeExact(message)),
+						(json, message, factory) ->
+								codec.read(json.getAsJsonObject(), (Object) g.invokeExact(message), factory));
+			}
+			else {
+				ValueCodec codec = valueCodecOf(type);
+				if (codec == null) {
+					return null;
+				}
+				MethodHandle g = get.asType(MethodType.methodType(Object.class, Object.class));
+				MethodHandle s = set.asType(MethodType.methodType(void.class, Object.class, Object.class));
+				return new Field(
+						name,
+						(out, message) -> codec.writer.write(out, (Object) g.invokeExact(message)),
+						(json, message, factory) -> {
+							s.invokeExact(message, codec.reader.read(json, factory));
+						});
+			}
+		}
+
+		/**
+		 * Bind field holding an array of primitives.
+		 *
+		 * @param name ROS name of field
+		 * @param type array type
+		 * @param get getter of field
+		 * @param set setter of field
+		 * @return field, or null if type of field is unsupported
+		 */
+		private static Field arrayField(@NonNull String name, @NonNull Class<?> type,
+										@NonNull MethodHandle get, @NonNull MethodHandle set) {
+			MethodHandle g = get.asType(MethodType.methodType(Object.class, Object.class));
+			MethodHandle s = set.asType(MethodType.methodType(void.class, Object.class, Object.class));
+			if (type == double[].class) {
+				return new Field(
+						name,
+						(out, message) -> {
+							out.beginArray();
+							for (double value : (double[]) (Object) g.invokeExact(message)) {
+								writeDouble(out, value);
+							}
+							out.endArray();
+						},
+						(json, message, factory) -> {
+							JsonArray array = json.getAsJsonArray();
+							double[] values = new double[array.size()];
+							for (int i = 0; i < values.length; i++) {
+								values[i] = array.get(i).getAsDouble();
+							}
+							s.invokeExact(message, (Object) values);
+						});
+			}
+			else if (type == float[].class) {
+				return new Field(
+						name,
+						(out, message) -> {
+							out.beginArray();
+							for (float value : (float[]) (Object) g.invokeExact(message)) {
+								writeFloat(out, value);
+							}
+							out.endArray();
+						},
+						(json, message, factory) -> {
+							JsonArray array = json.getAsJsonArray();
+							float[] values = new float[array.size()];
+							for (int i = 0; i < values.length; i++) {
+								values[i] = array.get(i).getAsFloat();
+							}
+							s.invokeExact(message, (Object) values);
+						});
+			}
+			else if (type == long[].class) {
+				return new Field(
+						name,
+						(out, message) -> {
+							out.beginArray();
+							for (long value : (long[]) (Object) g.invokeExact(message)) {
+								out.value(value);
+							}
+							out.endArray();
+						},
+						(json, message, factory) -> {
+							JsonArray array = json.getAsJsonArray();
+							long[] values = new long[array.size()];
+							for (int i = 0; i < values.length; i++) {
+								values[i] = array.get(i).getAsLong();
+							}
+							s.invokeExact(message, (Object) values);
+						});
+			}
+			else if (type == int[].class) {
+				return new Field(
+						name,
+						(out, message) -> {
+							out.beginArray();
+							for (int value : (int[]) (Object) g.invokeExact(message)) {
+								out.value(value);
+							}
+							out.endArray();
+						},
+						(json, message, factory) -> {
+							JsonArray array = json.getAsJsonArray();
+							int[] values = new int[array.size()];
+							for (int i = 0; i < values.length; i++) {
+								values[i] = array.get(i).getAsInt();
+							}
+							s.invokeExact(message, (Object) values);
+						});
+			}
+			else if (type == short[].class) {
+				return new Field(
+						name,
+						(out, message) -> {
+							out.beginArray();
+							for (short value : (short[]) (Object) g.invokeExact(message)) {
+								out.value(value);
+							}
+							out.endArray();
+						},
+						(json, message, factory) -> {
+							JsonArray array = json.getAsJsonArray();
+							short[] values = new short[array.size()];
+							for (int i = 0; i < values.length; i++) {
+								values[i] = array.get(i).getAsShort();
+							}
+							s.invokeExact(message, (Object) values);
+						});
+			}
+			else if (type == boolean[].class) {
+				return new Field(
+						name,
+						(out, message) -> {
+							out.beginArray();
+							for (boolean value : (boolean[]) (Object) g.invokeExact(message)) {
+								out.value(value);
+							}
+							out.endArray();
+						},
+						(json, message, factory) -> {
+							JsonArray array = json.getAsJsonArray();
+							boolean[] values = new boolean[array.size()];
+							for (int i = 0; i < values.length; i++) {
+								values[i] = array.get(i).getAsBoolean();
+							}
+							s.invokeExact(message, (Object) values);
+						});
+			}
+			else if (type == byte[].class) {
+				return new Field(
+						name,
+						(out, message) -> {
+							byte[] bytes = (byte[]) (Object) g.invokeExact(message);
+							out.value(Base64.getEncoder().encodeToString(bytes));
+						},
+						(json, message, factory) -> {
+							byte[] bytes = Base64.getDecoder().decode(json.getAsString());
+							s.invokeExact(message, (Object) bytes);
+						});
+			}
+			return null;
+		}
+
+	}
+
+}
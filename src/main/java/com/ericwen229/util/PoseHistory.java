@@ -0,0 +1,505 @@
+package com.ericwen229.util;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Fixed-capacity history of timestamped poses.
+ *
+ * <p>Poses are kept in a ring of parallel primitive arrays. Optionally, poses overwritten
+ * in the ring are spilled into a larger ring in a memory-mapped file, which also survives
+ * restarts once poses still in memory are flushed to it (see {@link #flush()}). Queries
+ * look at both as one sequence ordered by time. Poses slightly older than the newest
+ * recorded one are dropped to keep the sequence ordered. Poses much older than it tell
+ * that the clock went back, such as when the robot restarts without a real time clock or
+ * with simulated time: the history is then cleared, spill file included, and starts again
+ * from them.
+ */
+public class PoseHistory {
+
+	/**
+	 * Minimum time a pose must be older than the newest recorded one to tell that the clock
+	 * went back, rather than that the pose arrived late.
+	 */
+	private static final long clockResetNanos = TimeUnit.SECONDS.toNanos(10);
+
+	/**
+	 * Maximum number of poses kept in memory.
+	 */
+	private final int capacity;
+
+	/**
+	 * Timestamps in nanoseconds.
+	 */
+	private final long[] stamps;
+
+	/**
+	 * Coordinates X.
+	 */
+	private final double[] xs;
+
+	/**
+	 * Coordinates Y.
+	 */
+	private final double[] ys;
+
+	/**
+	 * Orientation angles.
+	 */
+	private final double[] angles;
+
+	/**
+	 * Number of poses ever recorded in memory.
+	 */
+	private long count = 0;
+
+	/**
+	 * File receiving poses overwritten in memory, or null if spilling is disabled.
+	 */
+	private final SpillFile spillFile;
+
+	/**
+	 * Create history kept in memory only.
+	 *
+	 * @param capacity maximum number of poses kept
+	 */
+	public PoseHistory(int capacity) {
+		this(capacity, null, 0);
+	}
+
+	/**
+	 * Create history spilling to a memory-mapped file.
+	 *
+	 * @param capacity maximum number of poses kept in memory
+	 * @param spillPath path of spill file, or null to disable spilling
+	 * @param spillCapacity maximum number of poses kept in spill file
+	 */
+	public PoseHistory(int capacity, Path spillPath, int spillCapacity) {
+		if (capacity <= 0) {
+			throw new RuntimeException("Pose history capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.stamps = new long[capacity];
+		this.xs = new double[capacity];
+		this.ys = new double[capacity];
+		this.angles = new double[capacity];
+		this.spillFile = spillPath == null ? null : new SpillFile(spillPath, spillCapacity);
+	}
+
+	/**
+	 * Record a pose.
+	 *
+	 * @param stampNanos timestamp in nanoseconds
+	 * @param x coordinate X
+	 * @param y coordinate Y
+	 * @param angle orientation angle
+	 * @return true if recorded, false if slightly older than the newest recorded pose
+	 */
+	public synchronized boolean append(long stampNanos, double x, double y, double angle) {
+		int size = size();
+		if (size > 0 && stampNanos < stampAt(size - 1)) {
+			long newestStamp = stampAt(size - 1);
+			if (newestStamp - stampNanos < clockResetNanos) {
+				return false;
+			}
+			Logger.getGlobal().warning(String.format(
+					"RoverOS pose history clock went back from %.3f s to %.3f s. Clearing %d poses.",
+					newestStamp / 1e9, stampNanos / 1e9, size));
+			count = 0;
+			if (spillFile != null) {
+				spillFile.clear();
+			}
+		}
+		int slot = (int) (count % capacity);
+		if (count >= capacity && spillFile != null) {
+			spillFile.append(stamps[slot], xs[slot], ys[slot], angles[slot]);
+		}
+		stamps[slot] = stampNanos;
+		xs[slot] = x;
+		ys[slot] = y;
+		angles[slot] = angle;
+		count++;
+		return true;
+	}
+
+	/**
+	 * Move poses kept in memory to the spill file and write it to disk, so that they survive
+	 * a restart, such as on exit. The history stays usable. Does nothing if spilling is
+	 * disabled.
+	 */
+	public synchronized void flush() {
+		if (spillFile == null) {
+			return;
+		}
+		int memorySize = memorySize();
+		for (int i = 0; i < memorySize; i++) {
+			int slot = (int) ((count - memorySize + i) % capacity);
+			spillFile.append(stamps[slot], xs[slot], ys[slot], angles[slot]);
+		}
+		count = 0;
+		spillFile.force();
+	}
+
+	/**
+	 * Get timestamp of the newest recorded pose.
+	 *
+	 * @return timestamp in nanoseconds, or -1 if nothing is recorded
+	 */
+	public synchronized long getNewestStamp() {
+		int size = size();
+		return size == 0 ? -1 : stampAt(size - 1);
+	}
+
+	/**
+	 * Query poses recorded within a time range. If more poses than the budget match, evenly
+	 * spaced ones are picked, always including the newest one.
+	 *
+	 * @param fromNanos start of range in nanoseconds (inclusive)
+	 * @param toNanos end of range in nanoseconds (inclusive)
+	 * @param maxPoints maximum number of poses returned
+	 * @return matching poses, oldest first
+	 */
+	public synchronized Range query(long fromNanos, long toNanos, int maxPoints) {
+		int first = lowerBound(fromNanos);
+		int last = lowerBound(toNanos == Long.MAX_VALUE ? toNanos : toNanos + 1);
+		int matched = Math.max(0, last - first);
+		int resultSize = Math.max(0, Math.min(matched, maxPoints));
+
+		Range range = new Range(resultSize);
+		for (int i = 0; i < resultSize; i++) {
+			// pick from the end so that the newest pose is always included
+			int index = last - 1 - (int) ((long) (resultSize - 1 - i) * matched / resultSize);
+			range.stamps[i] = stampAt(index);
+			range.xs[i] = xAt(index);
+			range.ys[i] = yAt(index);
+			range.angles[i] = angleAt(index);
+		}
+		return range;
+	}
+
+	/**
+	 * Poses returned by a query, as parallel arrays.
+	 */
+	public static class Range {
+
+		/**
+		 * Timestamps in nanoseconds.
+		 */
+		public final long[] stamps;
+
+		/**
+		 * Coordinates X.
+		 */
+		public final double[] xs;
+
+		/**
+		 * Coordinates Y.
+		 */
+		public final double[] ys;
+
+		/**
+		 * Orientation angles.
+		 */
+		public final double[] angles;
+
+		/**
+		 * Create range of given size.
+		 *
+		 * @param size number of poses
+		 */
+		private Range(int size) {
+			stamps = new long[size];
+			xs = new double[size];
+			ys = new double[size];
+			angles = new double[size];
+		}
+
+	}
+
+	// =================================================
+	// poses in spill file followed by poses in memory,
+	// addressed by index (0 being the oldest)
+	// =================================================
+
+	/**
+	 * Get number of poses in spill file.
+	 *
+	 * @return number of poses
+	 */
+	private int spillSize() {
+		return spillFile == null ? 0 : spillFile.size();
+	}
+
+	/**
+	 * Get number of poses in memory.
+	 *
+	 * @return number of poses
+	 */
+	private int memorySize() {
+		return (int) Math.min(count, capacity);
+	}
+
+	/**
+	 * Get number of poses recorded.
+	 *
+	 * @return number of poses
+	 */
+	private int size() {
+		return spillSize() + memorySize();
+	}
+
+	/**
+	 * Get slot in arrays of a pose kept in memory.
+	 *
+	 * @param index index of pose
+	 * @return slot in arrays
+	 */
+	private int memorySlot(int index) {
+		return (int) ((count - memorySize() + index - spillSize()) % capacity);
+	}
+
+	/**
+	 * Get timestamp of a pose.
+	 *
+	 * @param index index of pose
+	 * @return timestamp in nanoseconds
+	 */
+	private long stampAt(int index) {
+		return index < spillSize() ? spillFile.stampAt(index) : stamps[memorySlot(index)];
+	}
+
+	/**
+	 * Get coordinate X of a pose.
+	 *
+	 * @param index index of pose
+	 * @return coordinate X
+	 */
+	private double xAt(int index) {
+		return index < spillSize() ? spillFile.xAt(index) : xs[memorySlot(index)];
+	}
+
+	/**
+	 * Get coordinate Y of a pose.
+	 *
+	 * @param index index of pose
+	 * @return coordinate Y
+	 */
+	private double yAt(int index) {
+		return index < spillSize() ? spillFile.yAt(index) : ys[memorySlot(index)];
+	}
+
+	/**
+	 * Get orientation angle of a pose.
+	 *
+	 * @param index index of pose
+	 * @return orientation angle
+	 */
+	private double angleAt(int index) {
+		return index < spillSize() ? spillFile.angleAt(index) : angles[memorySlot(index)];
+	}
+
+	/**
+	 * Find index of the oldest pose recorded no earlier than given time.
+	 *
+	 * @param stampNanos time in nanoseconds
+	 * @return index of pose, or number of poses if there's none
+	 */
+	private int lowerBound(long stampNanos) {
+		int low = 0;
+		int high = size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (stampAt(middle) < stampNanos) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Ring of poses in a memory-mapped file.
+	 *
+	 * <p>File layout (little endian): int32 magic, int32 capacity, int64 number of poses ever
+	 * written, followed by capacity records of int64 timestamp, float64 x, float64 y and
+	 * float64 angle.
+	 */
+	private static class SpillFile {
+
+		/**
+		 * Identifies a pose history spill file.
+		 */
+		private static final int magic = 0x52504831;
+
+		/**
+		 * Length of file header in bytes.
+		 */
+		private static final int headerLength = 16;
+
+		/**
+		 * Length of a record in bytes.
+		 */
+		private static final int recordLength = 32;
+
+		/**
+		 * Maximum number of poses kept.
+		 */
+		private final int capacity;
+
+		/**
+		 * Mapped content of file.
+		 */
+		private final MappedByteBuffer buffer;
+
+		/**
+		 * Number of poses ever written.
+		 */
+		private long count;
+
+		/**
+		 * Map spill file, resuming its content if it was created with the same capacity.
+		 *
+		 * @param path path of file
+		 * @param capacity maximum number of poses kept
+		 */
+		private SpillFile(@NonNull Path path, int capacity) {
+			if (capacity <= 0 || capacity > (Integer.MAX_VALUE - headerLength) / recordLength) {
+				throw new RuntimeException("Invalid pose history spill capacity: " + capacity);
+			}
+			this.capacity = capacity;
+			try (FileChannel channel = FileChannel.open(path,
+					StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerLength + (long) capacity * recordLength);
+			}
+			catch (IOException e) {
+				throw new RuntimeException(
+						String.format("Cannot map pose history spill file %s.", path));
+			}
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (buffer.getInt(0) == magic && buffer.getInt(4) == capacity) {
+				count = buffer.getLong(8);
+			}
+			else {
+				count = 0;
+				buffer.putInt(0, magic);
+				buffer.putInt(4, capacity);
+				buffer.putLong(8, count);
+			}
+		}
+
+		/**
+		 * Write content of file to disk.
+		 */
+		private void force() {
+			buffer.force();
+		}
+
+		/**
+		 * Forget all poses.
+		 */
+		private void clear() {
+			count = 0;
+			buffer.putLong(8, count);
+		}
+
+		/**
+		 * Get number of poses in file.
+		 *
+		 * @return number of poses
+		 */
+		private int size() {
+			return (int) Math.min(count, capacity);
+		}
+
+		/**
+		 * Write a pose, overwriting the oldest one if full.
+		 *
+		 * @param stampNanos timestamp in nanoseconds
+		 * @param x coordinate X
+		 * @param y coordinate Y
+		 * @param angle orientation angle
+		 */
+		private void append(long stampNanos, double x, double y, double angle) {
+			int position = recordPosition((int) (count % capacity));
+			buffer.putLong(position, stampNanos);
+			buffer.putDouble(position + 8, x);
+			buffer.putDouble(position + 16, y);
+			buffer.putDouble(position + 24, angle);
+			count++;
+			buffer.putLong(8, count);
+		}
+
+		/**
+		 * Get position of a record in file.
+		 *
+		 * @param slot slot of record
+		 * @return position of record
+		 */
+		private int recordPosition(int slot) {
+			return headerLength + slot * recordLength;
+		}
+
+		/**
+		 * Get position of a pose in file.
+		 *
+		 * @param index index of pose (0 being the oldest)
+		 * @return position of record
+		 */
+		private int indexPosition(int index) {
+			return recordPosition((int) ((count - size() + index) % capacity));
+		}
+
+		/**
+		 * Get timestamp of a pose.
+		 *
+		 * @param index index of pose (0 being the oldest)
+		 * @return timestamp in nanoseconds
+		 */
+		private long stampAt(int index) {
+			return buffer.getLong(indexPosition(index));
+		}
+
+		/**
+		 * Get coordinate X of a pose.
+		 *
+		 * @param index index of pose (0 being the oldest)
+		 * @return coordinate X
+		 */
+		private double xAt(int index) {
+			return buffer.getDouble(indexPosition(index) + 8);
+		}
+
+		/**
+		 * Get coordinate Y of a pose.
+		 *
+		 * @param index index of pose (0 being the oldest)
+		 * @return coordinate Y
+		 */
+		private double yAt(int index) {
+			return buffer.getDouble(indexPosition(index) + 16);
+		}
+
+		/**
+		 * Get orientation angle of a pose.
+		 *
+		 * @param index index of pose (0 being the oldest)
+		 * @return orientation angle
+		 */
+		private double angleAt(int index) {
+			return buffer.getDouble(indexPosition(index) + 24);
+		}
+
+	}
+
+}
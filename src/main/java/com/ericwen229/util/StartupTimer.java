@@ -0,0 +1,89 @@
+package com.ericwen229.util;
+
+import com.ericwen229.metrics.MetricsRegistry;
+import lombok.NonNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Timer of startup phases, logging how long each phase took and how long after launch of
+ * the JVM it ended.
+ */
+public class StartupTimer {
+
+	/**
+	 * Duration of each phase ended, in order.
+	 */
+	private final Map<String, Long> phaseMillis = new LinkedHashMap<>();
+
+	/**
+	 * Time current phase started.
+	 */
+	private long phaseStartNanos = System.nanoTime();
+
+	/**
+	 * End current phase and start the next one.
+	 *
+	 * @param phase name of phase ended
+	 */
+	public synchronized void endPhase(@NonNull String phase) {
+		long now = System.nanoTime();
+		long millis = (now - phaseStartNanos) / 1000000;
+		phaseStartNanos = now;
+		phaseMillis.put(phase, millis);
+		Logger.getGlobal().info(
+				String.format(
+						"RoverOS startup: %s took %d ms (%d ms since launch)",
+						phase,
+						millis,
+						getUptimeMillis()));
+	}
+
+	/**
+	 * Log an event happening after startup, such as the first client connecting.
+	 *
+	 * @param event description of event
+	 */
+	public void logEvent(@NonNull String event) {
+		Logger.getGlobal().info(
+				String.format("RoverOS startup: %s %d ms after launch", event, getUptimeMillis()));
+	}
+
+	/**
+	 * Get duration of each phase ended.
+	 *
+	 * @return durations in milliseconds keyed by phase, in order
+	 */
+	public synchronized Map<String, Long> getPhaseMillis() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(phaseMillis));
+	}
+
+	/**
+	 * Register durations of phases as metrics.
+	 *
+	 * @param metrics registry
+	 */
+	public void registerMetrics(@NonNull MetricsRegistry metrics) {
+		metrics.gauges("roveros_startup_phase_seconds", "Time taken by each startup phase", "phase", () -> {
+			Map<String, Double> seconds = new LinkedHashMap<>();
+			for (Map.Entry<String, Long> entry : getPhaseMillis().entrySet()) {
+				seconds.put(entry.getKey(), entry.getValue() / 1e3);
+			}
+			return seconds;
+		});
+	}
+
+	/**
+	 * Get time since launch of the JVM.
+	 *
+	 * @return time in milliseconds
+	 */
+	public static long getUptimeMillis() {
+		return ManagementFactory.getRuntimeMXBean().getUptime();
+	}
+
+}
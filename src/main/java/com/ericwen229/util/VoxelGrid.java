@@ -0,0 +1,517 @@
+package com.ericwen229.util;
+
+import lombok.NonNull;
+import org.jboss.netty.buffer.ChannelBuffer;
+import sensor_msgs.PointCloud2;
+import sensor_msgs.PointField;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Voxel grid filter that downsamples ROS point clouds.
+ *
+ * <p>Points are bucketed into cubic voxels of a given leaf size and each occupied voxel
+ * is replaced by the centroid of its points. Points are decoded straight from the message
+ * buffer into primitive accumulators, and large clouds are split across a fork/join pool.
+ */
+public class VoxelGrid {
+
+	/**
+	 * Number of points below which a cloud (or a part of it) is processed sequentially.
+	 */
+	private static final int sequentialThreshold = 1 << 14;
+
+	/**
+	 * Bits used by each axis of a packed voxel key.
+	 */
+	private static final int axisBits = 21;
+
+	/**
+	 * Mask of a single axis in a packed voxel key.
+	 */
+	private static final long axisMask = (1L << axisBits) - 1;
+
+	/**
+	 * Offset that maps signed voxel indices to non-negative ones.
+	 */
+	private static final int axisOffset = 1 << (axisBits - 1);
+
+	/**
+	 * Edge length of a voxel.
+	 */
+	private final float leafSize;
+
+	/**
+	 * Pool on which large clouds are processed.
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Create filter with given leaf size running on the common fork/join pool.
+	 *
+	 * @param leafSize edge length of a voxel
+	 */
+	public VoxelGrid(float leafSize) {
+		this(leafSize, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create filter with given leaf size running on given pool.
+	 *
+	 * @param leafSize edge length of a voxel
+	 * @param pool pool on which large clouds are processed
+	 */
+	public VoxelGrid(float leafSize, @NonNull ForkJoinPool pool) {
+		if (!(leafSize > 0.0f)) {
+			throw new RuntimeException("Voxel leaf size must be positive: " + leafSize);
+		}
+		this.leafSize = leafSize;
+		this.pool = pool;
+	}
+
+	/**
+	 * Get edge length of a voxel.
+	 *
+	 * @return edge length of a voxel
+	 */
+	public float getLeafSize() {
+		return leafSize;
+	}
+
+	/**
+	 * Downsample point cloud. Points with non-finite coordinates are skipped.
+	 *
+	 * @param cloud point cloud message with float32 x, y and z fields
+	 * @return voxel centroids packed as x0, y0, z0, x1, y1, z1, ...
+	 */
+	public float[] downsample(@NonNull PointCloud2 cloud) {
+		Layout layout = new Layout(cloud);
+		int pointCount = cloud.getWidth() * cloud.getHeight();
+		Accumulator accumulator = pointCount < sequentialThreshold
+				? new Task(layout, 0, pointCount).compute()
+				: pool.invoke(new Task(layout, 0, pointCount));
+		return accumulator.centroids();
+	}
+
+	/**
+	 * Keep at most given number of points by taking evenly strided samples.
+	 *
+	 * @param points points packed as x0, y0, z0, x1, y1, z1, ...
+	 * @param budget maximum number of points to keep
+	 * @return points within budget (the same array if already within budget)
+	 */
+	public static float[] decimate(@NonNull float[] points, int budget) {
+		int pointCount = points.length / 3;
+		if (pointCount <= budget) {
+			return points;
+		}
+		float[] result = new float[budget * 3];
+		for (int i = 0; i < budget; i++) {
+			int src = (int) ((long) i * pointCount / budget) * 3;
+			result[i * 3] = points[src];
+			result[i * 3 + 1] = points[src + 1];
+			result[i * 3 + 2] = points[src + 2];
+		}
+		return result;
+	}
+
+	/**
+	 * Byte layout of the coordinates in a point cloud message.
+	 */
+	private static class Layout {
+
+		/**
+		 * Backing array of point data.
+		 */
+		private final byte[] data;
+
+		/**
+		 * Position of the first point in backing array.
+		 */
+		private final int base;
+
+		/**
+		 * Number of points in a row.
+		 */
+		private final int width;
+
+		/**
+		 * Length of a point in bytes.
+		 */
+		private final int pointStep;
+
+		/**
+		 * Length of a row in bytes.
+		 */
+		private final int rowStep;
+
+		/**
+		 * Offset of coordinate X in a point.
+		 */
+		private final int xOffset;
+
+		/**
+		 * Offset of coordinate Y in a point.
+		 */
+		private final int yOffset;
+
+		/**
+		 * Offset of coordinate Z in a point.
+		 */
+		private final int zOffset;
+
+		/**
+		 * True if coordinates are big endian.
+		 */
+		private final boolean isBigEndian;
+
+		/**
+		 * Extract layout from point cloud message.
+		 *
+		 * @param cloud point cloud message
+		 */
+		private Layout(@NonNull PointCloud2 cloud) {
+			ChannelBuffer buffer = cloud.getData();
+			if (!buffer.hasArray()) {
+				throw new RuntimeException("Point cloud data not backed by array");
+			}
+			data = buffer.array();
+			base = buffer.arrayOffset() + buffer.readerIndex();
+			width = cloud.getWidth();
+			pointStep = cloud.getPointStep();
+			rowStep = cloud.getRowStep();
+			isBigEndian = cloud.getIsBigendian();
+
+			List<PointField> fields = cloud.getFields();
+			xOffset = floatFieldOffset(fields, "x");
+			yOffset = floatFieldOffset(fields, "y");
+			zOffset = floatFieldOffset(fields, "z");
+
+			long required = (long) rowStep * (cloud.getHeight() - 1) + (long) pointStep * width;
+			if (cloud.getHeight() > 0 && base + required > data.length) {
+				throw new RuntimeException("Point cloud data shorter than its declared size");
+			}
+		}
+
+		/**
+		 * Find offset of a float32 field.
+		 *
+		 * @param fields fields of point cloud
+		 * @param name name of field
+		 * @return offset of field in a point
+		 */
+		private static int floatFieldOffset(@NonNull List<PointField> fields, @NonNull String name) {
+			for (PointField field : fields) {
+				if (field.getName().equals(name)) {
+					if (field.getDatatype() != PointField.FLOAT32) {
+						throw new RuntimeException(
+								String.format("Unsupported datatype %d of point field %s", field.getDatatype(), name));
+					}
+					return field.getOffset();
+				}
+			}
+			throw new RuntimeException("Point field missing: " + name);
+		}
+
+		/**
+		 * Get position of a point in backing array.
+		 *
+		 * @param index index of point
+		 * @return position of point
+		 */
+		private int pointPosition(int index) {
+			return base + (index / width) * rowStep + (index % width) * pointStep;
+		}
+
+		/**
+		 * Decode float32 value at given position of backing array.
+		 *
+		 * @param position position of value
+		 * @return decoded value
+		 */
+		private float readFloat(int position) {
+			int bits;
+			if (isBigEndian) {
+				bits = (data[position] & 0xff) << 24
+						| (data[position + 1] & 0xff) << 16
+						| (data[position + 2] & 0xff) << 8
+						| (data[position + 3] & 0xff);
+			}
+			else {
+				bits = (data[position] & 0xff)
+						| (data[position + 1] & 0xff) << 8
+						| (data[position + 2] & 0xff) << 16
+						| (data[position + 3] & 0xff) << 24;
+			}
+			return Float.intBitsToFloat(bits);
+		}
+
+	}
+
+	/**
+	 * Fork/join task accumulating a range of points into voxels.
+	 */
+	private class Task extends RecursiveTask<Accumulator> {
+
+		/**
+		 * Layout of cloud being processed.
+		 */
+		private final Layout layout;
+
+		/**
+		 * Index of first point (inclusive).
+		 */
+		private final int from;
+
+		/**
+		 * Index of last point (exclusive).
+		 */
+		private final int to;
+
+		/**
+		 * Create task accumulating given range of points.
+		 *
+		 * @param layout layout of cloud
+		 * @param from index of first point (inclusive)
+		 * @param to index of last point (exclusive)
+		 */
+		private Task(@NonNull Layout layout, int from, int to) {
+			this.layout = layout;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Accumulator compute() {
+			if (to - from <= sequentialThreshold) {
+				return accumulate();
+			}
+			int middle = (from + to) >>> 1;
+			Task left = new Task(layout, from, middle);
+			left.fork();
+			Accumulator right = new Task(layout, middle, to).compute();
+			return left.join().mergeFrom(right);
+		}
+
+		/**
+		 * Accumulate the range of points sequentially.
+		 *
+		 * @return accumulated voxels
+		 */
+		private Accumulator accumulate() {
+			Accumulator accumulator = new Accumulator(Math.max(16, (to - from) / 8));
+			float inverseLeafSize = 1.0f / leafSize;
+			for (int i = from; i < to; i++) {
+				int position = layout.pointPosition(i);
+				float x = layout.readFloat(position + layout.xOffset);
+				float y = layout.readFloat(position + layout.yOffset);
+				float z = layout.readFloat(position + layout.zOffset);
+				if (!isFinite(x) || !isFinite(y) || !isFinite(z)) {
+					continue;
+				}
+				long key = packKey(
+						(int) Math.floor(x * inverseLeafSize),
+						(int) Math.floor(y * inverseLeafSize),
+						(int) Math.floor(z * inverseLeafSize));
+				accumulator.add(key, x, y, z, 1);
+			}
+			return accumulator;
+		}
+
+	}
+
+	/**
+	 * Open addressing hash table from packed voxel keys to coordinate sums, stored as parallel
+	 * primitive arrays.
+	 */
+	private static class Accumulator {
+
+		/**
+		 * Key marking an empty slot (packed keys are never negative).
+		 */
+		private static final long emptyKey = -1L;
+
+		/**
+		 * Packed voxel keys.
+		 */
+		private long[] keys;
+
+		/**
+		 * Sums of coordinate X.
+		 */
+		private double[] sumX;
+
+		/**
+		 * Sums of coordinate Y.
+		 */
+		private double[] sumY;
+
+		/**
+		 * Sums of coordinate Z.
+		 */
+		private double[] sumZ;
+
+		/**
+		 * Numbers of points.
+		 */
+		private int[] counts;
+
+		/**
+		 * Number of occupied voxels.
+		 */
+		private int size = 0;
+
+		/**
+		 * Create accumulator sized for given number of voxels.
+		 *
+		 * @param expectedSize expected number of voxels
+		 */
+		private Accumulator(int expectedSize) {
+			allocate(Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1);
+		}
+
+		/**
+		 * Replace the arrays with empty ones of given capacity.
+		 *
+		 * @param capacity number of slots, a power of two
+		 */
+		private void allocate(int capacity) {
+			keys = new long[capacity];
+			Arrays.fill(keys, emptyKey);
+			sumX = new double[capacity];
+			sumY = new double[capacity];
+			sumZ = new double[capacity];
+			counts = new int[capacity];
+		}
+
+		/**
+		 * Add coordinate sums and number of points to a voxel, occupying a slot if it's new.
+		 * When a new voxel fills more than half of the slots, its values are stored in its
+		 * slot before the table doubles, since rehashing moves them along with the others.
+		 *
+		 * @param key packed voxel key
+		 * @param x sum of coordinate X
+		 * @param y sum of coordinate Y
+		 * @param z sum of coordinate Z
+		 * @param count number of points
+		 */
+		private void add(long key, double x, double y, double z, int count) {
+			int mask = keys.length - 1;
+			int slot = hash(key) & mask;
+			while (keys[slot] != emptyKey && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			if (keys[slot] == emptyKey) {
+				keys[slot] = key;
+				if (++size * 2 > keys.length) {
+					sumX[slot] = x;
+					sumY[slot] = y;
+					sumZ[slot] = z;
+					counts[slot] = count;
+					rehash();
+					return;
+				}
+			}
+			sumX[slot] += x;
+			sumY[slot] += y;
+			sumZ[slot] += z;
+			counts[slot] += count;
+		}
+
+		/**
+		 * Double the number of slots, adding occupied voxels again.
+		 */
+		private void rehash() {
+			long[] oldKeys = keys;
+			double[] oldSumX = sumX;
+			double[] oldSumY = sumY;
+			double[] oldSumZ = sumZ;
+			int[] oldCounts = counts;
+			allocate(oldKeys.length * 2);
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != emptyKey) {
+					add(oldKeys[i], oldSumX[i], oldSumY[i], oldSumZ[i], oldCounts[i]);
+				}
+			}
+		}
+
+		/**
+		 * Merge voxels of another accumulator. The larger of the two is reused.
+		 *
+		 * @param other another accumulator
+		 * @return merged accumulator
+		 */
+		private Accumulator mergeFrom(@NonNull Accumulator other) {
+			if (other.size > size) {
+				return other.mergeFrom(this);
+			}
+			for (int i = 0; i < other.keys.length; i++) {
+				if (other.keys[i] != emptyKey) {
+					add(other.keys[i], other.sumX[i], other.sumY[i], other.sumZ[i], other.counts[i]);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Compute centroids of all occupied voxels.
+		 *
+		 * @return centroids packed as x0, y0, z0, x1, y1, z1, ...
+		 */
+		private float[] centroids() {
+			float[] result = new float[size * 3];
+			int j = 0;
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != emptyKey) {
+					int count = counts[i];
+					result[j++] = (float) (sumX[i] / count);
+					result[j++] = (float) (sumY[i] / count);
+					result[j++] = (float) (sumZ[i] / count);
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Hash packed voxel key, spreading neighbouring voxels over the table.
+		 *
+		 * @param key packed voxel key
+		 * @return hash, to be masked by the number of slots
+		 */
+		private static int hash(long key) {
+			key *= 0x9E3779B97F4A7C15L;
+			return (int) (key ^ (key >>> 32));
+		}
+
+	}
+
+	/**
+	 * Pack voxel indices into a non-negative key. Indices out of range wrap around, which only
+	 * happens for points about a million leaves away from the sensor.
+	 *
+	 * @param ix voxel index along axis X
+	 * @param iy voxel index along axis Y
+	 * @param iz voxel index along axis Z
+	 * @return packed key
+	 */
+	private static long packKey(int ix, int iy, int iz) {
+		return ((ix + axisOffset) & axisMask)
+				| ((iy + axisOffset) & axisMask) << axisBits
+				| ((iz + axisOffset) & axisMask) << (axisBits * 2);
+	}
+
+	/**
+	 * Check whether a coordinate is neither NaN nor infinite.
+	 *
+	 * @param value coordinate
+	 * @return true if coordinate is finite
+	 */
+	private static boolean isFinite(float value) {
+		return !Float.isNaN(value) && !Float.isInfinite(value);
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.ericwen229.server;
+
+import com.ericwen229.server.message.request.ControlMsgModel;
+import com.ericwen229.server.message.request.NavigationGoalMsgModel;
+import com.ericwen229.server.message.request.PoseHistoryQueryMsgModel;
+import com.ericwen229.server.message.request.RequestMsgModel;
+import com.google.gson.JsonParseException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link RequestDecoder}, checking that requests read in a single pass are decoded
+ * as gson decodes them.
+ */
+public class RequestDecoderTest {
+
+	/**
+	 * Decoder of a test.
+	 */
+	private RequestDecoder decoder;
+
+	@Before
+	public void createDecoder() {
+		Map<String, Class<? extends RequestMsgModel>> requestTypes = new HashMap<>();
+		requestTypes.put(ControlMsgModel.typeFieldValue, ControlMsgModel.class);
+		requestTypes.put(NavigationGoalMsgModel.typeFieldValue, NavigationGoalMsgModel.class);
+		requestTypes.put(PoseHistoryQueryMsgModel.typeFieldValue, PoseHistoryQueryMsgModel.class);
+		decoder = new RequestDecoder(requestTypes);
+	}
+
+	@Test
+	public void decodesFlatRequestsAsGson() {
+		assertDecodedAsGson("{\"type\":\"control\",\"linear\":0.5,\"angular\":-1}");
+		assertDecodedAsGson("{\"channel\":\"robot1\",\"x\":1e-3,\"y\":-0,\"angle\":3.14,\"type\":\"navigation_goal\"}");
+		assertDecodedAsGson("{\"type\":\"pose_history_query\",\"from\":-600,\"to\":0,\"maxPoints\":500,\"id\":7}");
+	}
+
+	@Test
+	public void missingFieldsKeepDefaults() {
+		String text = "{\"type\":\"pose_history_query\",\"from\":-600,\"to\":0}";
+		assertDecodedAsGson(text);
+		assertEquals(PoseHistoryQueryMsgModel.defaultMaxPoints, ((PoseHistoryQueryMsgModel) decoder.decode(text)).maxPoints);
+
+		// a request reused per thread doesn't carry fields over from the previous one
+		RequestMsgModel previous = decoder.decode("{\"type\":\"pose_history_query\",\"maxPoints\":5,\"id\":9}");
+		assertSame(previous, decoder.decode(text));
+		assertDecodedAsGson(text);
+	}
+
+	@Test
+	public void integersAreExact() {
+		// 2^53 + 1, which a double can't hold
+		String text = "{\"type\":\"pose_history_query\",\"from\":0,\"to\":0,\"id\":9007199254740993}";
+		assertDecodedAsGson(text);
+		assertEquals(9007199254740993L, ((PoseHistoryQueryMsgModel) decoder.decode(text)).id);
+		assertDecodedAsGson("{\"type\":\"pose_history_query\",\"id\":-9223372036854775808}");
+		assertDecodedAsGson("{\"type\":\"pose_history_query\",\"maxPoints\":2.0}");
+	}
+
+	@Test
+	public void numbersNotFittingFieldsAreLeftToGson() {
+		assertDecodedAsGson("{\"type\":\"pose_history_query\",\"maxPoints\":2.5}");
+		assertDecodedAsGson("{\"type\":\"pose_history_query\",\"maxPoints\":3000000000}");
+		assertDecodedAsGson("{\"type\":\"pose_history_query\",\"id\":9223372036854775808}");
+		assertDecodedAsGson("{\"type\":\"control\",\"linear\":1e400}");
+	}
+
+	/**
+	 * Check that a request is decoded in a single pass as gson decodes it, or rejected by
+	 * both if gson rejects it.
+	 *
+	 * @param text request in json
+	 */
+	private void assertDecodedAsGson(String text) {
+		RequestMsgModel expected;
+		try {
+			expected = decoder.decodeWithGson(text);
+		}
+		catch (JsonParseException e) {
+			expected = null;
+		}
+		if (expected == null) {
+			try {
+				decoder.decode(text);
+				fail("Decoder accepted " + text + ", which gson rejects");
+			}
+			catch (JsonParseException e) {
+				return;
+			}
+		}
+		RequestMsgModel actual = decoder.decode(text);
+		assertSame(expected.getClass(), actual.getClass());
+		for (Class<?> type = actual.getClass(); type != Object.class; type = type.getSuperclass()) {
+			for (Field field : type.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers())) {
+					continue;
+				}
+				try {
+					assertEquals(text + ": " + field.getName(), field.get(expected), field.get(actual));
+				}
+				catch (IllegalAccessException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+	}
+
+}
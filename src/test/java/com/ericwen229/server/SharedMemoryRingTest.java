@@ -0,0 +1,172 @@
+package com.ericwen229.server;
+
+import com.ericwen229.server.message.BinaryCodec;
+import com.ericwen229.server.message.response.ImageMsgModel;
+import com.ericwen229.server.message.response.PoseMsgModel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link SharedMemoryRing} read through {@link SharedMemoryRingReader}.
+ */
+public class SharedMemoryRingTest {
+
+	/**
+	 * Directory of ring files of a test.
+	 */
+	private Path directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("roveros-ring");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+			for (Path path : paths) {
+				Files.delete(path);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void readsLatestMessage() {
+		SharedMemoryRing ring = newRing("latest", 4, 1024, false);
+		SharedMemoryRingReader reader = new SharedMemoryRingReader(directory.resolve("latest.ring"));
+		assertNull(reader.readLatest());
+
+		ring.write(pose(1));
+		ring.write(pose(2));
+		assertEquals(2, reader.poll());
+		assertPose(2, reader.readLatest());
+		assertPose(1, reader.read(1));
+	}
+
+	@Test
+	public void overwrittenMessagesAreNotRead() {
+		SharedMemoryRing ring = newRing("overwritten", 2, 1024, true);
+		SharedMemoryRingReader reader = new SharedMemoryRingReader(directory.resolve("overwritten.ring"));
+		for (int i = 1; i <= 3; i++) {
+			ring.write(pose(i));
+		}
+		assertNull(reader.read(1));
+		assertPose(2, reader.read(2));
+		assertPose(3, reader.read(3));
+		assertNull(reader.read(4));
+	}
+
+	@Test
+	public void tooLongMessagesAreDropped() {
+		SharedMemoryRing ring = newRing("tooLong", 4, 64, true);
+		SharedMemoryRingReader reader = new SharedMemoryRingReader(directory.resolve("tooLong.ring"));
+		ImageMsgModel image = new ImageMsgModel();
+		image.imageBytes = new byte[128];
+		ring.write(image);
+		assertEquals(0, reader.poll());
+	}
+
+	@Test
+	public void writesOnlyWhileReadersPoll() {
+		SharedMemoryRing ring = newRing("readers", 4, 1024, false);
+		assertFalse(ring.hasReaders());
+		new SharedMemoryRingReader(directory.resolve("readers.ring")).poll();
+		assertTrue(ring.hasReaders());
+		assertTrue(newRing("always", 4, 1024, true).hasReaders());
+	}
+
+	@Test(timeout = 60000)
+	public void readersNeverSeePartialMessages() throws InterruptedException {
+		SharedMemoryRing ring = newRing("concurrent", 2, 1024, true);
+		SharedMemoryRingReader reader = new SharedMemoryRingReader(directory.resolve("concurrent.ring"));
+		int messageCount = 200000;
+		AtomicBoolean isWriting = new AtomicBoolean(true);
+		Thread writer = new Thread(() -> {
+			for (int i = 1; i <= messageCount; i++) {
+				ring.write(pose(i));
+			}
+			isWriting.set(false);
+		});
+		writer.start();
+
+		long lastSequence = 0;
+		int messagesRead = 0;
+		while (isWriting.get()) {
+			long sequence = reader.poll();
+			if (sequence < lastSequence) {
+				fail("Sequence number went back from " + lastSequence + " to " + sequence);
+			}
+			ByteBuffer message = reader.read(sequence);
+			if (message != null) {
+				// fields of a message written whole all hold its sequence number
+				assertPose(sequence, message);
+				messagesRead++;
+			}
+			lastSequence = sequence;
+		}
+		writer.join();
+		assertEquals(messageCount, reader.poll());
+		assertPose(messageCount, reader.readLatest());
+		assertTrue(messagesRead > 0);
+	}
+
+	/**
+	 * Create ring in directory of test.
+	 *
+	 * @param name name of channel, and of ring file
+	 * @param slotCount number of slots
+	 * @param slotLength length of message a slot holds, in bytes
+	 * @param alwaysWrite true to write messages whether or not readers poll the ring
+	 * @return ring
+	 */
+	private SharedMemoryRing newRing(String name, int slotCount, int slotLength, boolean alwaysWrite) {
+		return new SharedMemoryRing(directory.resolve(name + ".ring"), name, slotCount, slotLength, alwaysWrite);
+	}
+
+	/**
+	 * Create pose message whose fields all hold a number.
+	 *
+	 * @param n number
+	 * @return pose message
+	 */
+	private static PoseMsgModel pose(long n) {
+		PoseMsgModel pose = new PoseMsgModel();
+		pose.x = n;
+		pose.y = n;
+		pose.angle = n;
+		pose.stamp = n;
+		pose.sent = n;
+		return pose;
+	}
+
+	/**
+	 * Check that a message read is the pose message created for a number.
+	 *
+	 * @param n number
+	 * @param message message read
+	 */
+	private static void assertPose(long n, ByteBuffer message) {
+		assertNotNull(message);
+		PoseMsgModel pose = (PoseMsgModel) BinaryCodec.decodeResponse(message);
+		for (double value : new double[] {pose.x, pose.y, pose.angle, pose.stamp, pose.sent}) {
+			assertEquals(n, value, 0.0);
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+package com.ericwen229.tf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of {@link TransformCache}.
+ */
+public class TransformCacheTest {
+
+	/**
+	 * Tolerance of coordinates compared.
+	 */
+	private static final double delta = 1e-9;
+
+	@Test
+	public void composesAlongTree() {
+		TransformCache cache = new TransformCache(8);
+		double halfAngle = Math.PI / 4;
+		// odom turned a quarter turn around axis Z in map
+		cache.update("map", "odom", 10, new Transform(1, 0, 0, 0, 0, Math.sin(halfAngle), Math.cos(halfAngle)), false);
+		cache.update("odom", "base_link", 10, translation(2), false);
+
+		Transform mapToBase = cache.lookupLatest("/map", "base_link");
+		assertEquals(1, mapToBase.tx, delta);
+		assertEquals(2, mapToBase.ty, delta);
+		assertEquals(Math.PI / 2, mapToBase.yaw(), delta);
+
+		double[] origin = cache.lookupLatest("base_link", "map").apply(1, 2, 0);
+		assertEquals(0, origin[0], delta);
+		assertEquals(0, origin[1], delta);
+	}
+
+	@Test
+	public void cachedChainIsReusedUntilAnEdgeChanges() {
+		TransformCache cache = new TransformCache(8);
+		cache.update("map", "odom", 0, translation(1), true);
+		cache.update("odom", "base_link", 10, translation(2), false);
+
+		Transform latest = cache.lookupLatest("map", "base_link");
+		assertEquals(3, latest.tx, delta);
+		assertSame(latest, cache.lookupLatest("map", "base_link"));
+		assertSame(latest, cache.lookup("map", "base_link", 20));
+
+		// a new transform bumps the version of its edge
+		cache.update("odom", "base_link", 20, translation(5), false);
+		Transform moved = cache.lookupLatest("map", "base_link");
+		assertNotSame(latest, moved);
+		assertEquals(6, moved.tx, delta);
+
+		// so does a new static transform
+		cache.update("map", "odom", 0, translation(3), true);
+		assertEquals(8, cache.lookupLatest("map", "base_link").tx, delta);
+
+		// and moving a frame to another parent replaces its edge
+		cache.update("map", "base_link", 30, translation(7), false);
+		assertEquals(7, cache.lookupLatest("map", "base_link").tx, delta);
+	}
+
+	@Test
+	public void earlierLookupsAreNotServedByCachedChain() {
+		TransformCache cache = new TransformCache(8);
+		cache.update("map", "odom", 0, Transform.identity, true);
+		cache.update("odom", "base_link", 0, translation(0), false);
+		cache.update("odom", "base_link", 10, translation(10), false);
+
+		Transform latest = cache.lookupLatest("map", "base_link");
+		assertEquals(10, latest.tx, delta);
+		assertEquals(5, cache.lookup("map", "base_link", 5).tx, delta);
+		// an interpolated transform doesn't replace the cached latest one
+		assertSame(latest, cache.lookupLatest("map", "base_link"));
+	}
+
+	@Test
+	public void unavailableTransformsAreNull() {
+		TransformCache cache = new TransformCache(2);
+		cache.update("map", "odom", 10, translation(1), false);
+		cache.update("map", "odom", 20, translation(2), false);
+		cache.update("map", "odom", 30, translation(3), false);
+
+		assertNull(cache.lookupLatest("map", "camera"));
+		// older than the transforms kept
+		assertNull(cache.lookup("map", "odom", 15));
+		assertEquals(2.5, cache.lookup("map", "odom", 25).tx, delta);
+	}
+
+	/**
+	 * Create transform translating along axis X.
+	 *
+	 * @param x translation
+	 * @return transform
+	 */
+	private static Transform translation(double x) {
+		return new Transform(x, 0, 0, 0, 0, 0, 1);
+	}
+
+}
@@ -0,0 +1,137 @@
+package com.ericwen229.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link PoseHistory}.
+ */
+public class PoseHistoryTest {
+
+	/**
+	 * Spill file of a test.
+	 */
+	private Path spillPath;
+
+	@Before
+	public void createSpillPath() throws IOException {
+		spillPath = Files.createTempFile("roveros-poses", ".spill");
+	}
+
+	@After
+	public void deleteSpillPath() throws IOException {
+		Files.delete(spillPath);
+	}
+
+	@Test
+	public void keepsNewestPosesWhenWrappingAround() {
+		PoseHistory history = new PoseHistory(4);
+		appendSeconds(history, 1, 10);
+		assertStamps(history.query(0, Long.MAX_VALUE, 100), 7, 8, 9, 10);
+		assertEquals(seconds(10), history.getNewestStamp());
+
+		PoseHistory.Range range = history.query(seconds(8), seconds(9), 100);
+		assertStamps(range, 8, 9);
+		assertArrayEquals(new double[] {8, 9}, range.xs, 0.0);
+		assertArrayEquals(new double[] {-8, -9}, range.ys, 0.0);
+	}
+
+	@Test
+	public void spillsOverwrittenPoses() {
+		PoseHistory history = new PoseHistory(4, spillPath, 8);
+		appendSeconds(history, 1, 10);
+		assertStamps(history.query(0, Long.MAX_VALUE, 100), 1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+		// a range spanning spill file and memory
+		assertStamps(history.query(seconds(5), seconds(8), 100), 5, 6, 7, 8);
+
+		// the spill file wraps around too
+		appendSeconds(history, 11, 20);
+		assertStamps(history.query(0, Long.MAX_VALUE, 100), 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20);
+	}
+
+	@Test
+	public void flushedPosesSurviveRestart() {
+		PoseHistory history = new PoseHistory(4, spillPath, 8);
+		appendSeconds(history, 1, 6);
+		history.flush();
+
+		PoseHistory restarted = new PoseHistory(4, spillPath, 8);
+		assertStamps(restarted.query(0, Long.MAX_VALUE, 100), 1, 2, 3, 4, 5, 6);
+		appendSeconds(restarted, 7, 7);
+		assertStamps(restarted.query(0, Long.MAX_VALUE, 100), 1, 2, 3, 4, 5, 6, 7);
+	}
+
+	@Test
+	public void clockGoingBackStartsNewHistory() {
+		PoseHistory history = new PoseHistory(4, spillPath, 8);
+		appendSeconds(history, 100, 110);
+
+		// slightly late poses are dropped
+		assertFalse(history.append(seconds(105), 0, 0, 0));
+		assertStamps(history.query(0, Long.MAX_VALUE, 100), 100, 101, 102, 103, 104, 105, 106, 107, 108, 109, 110);
+
+		// much older ones clear memory and spill file alike
+		assertTrue(history.append(seconds(50), 0, 0, 0));
+		assertStamps(history.query(0, Long.MAX_VALUE, 100), 50);
+		appendSeconds(history, 51, 55);
+		assertStamps(history.query(0, Long.MAX_VALUE, 100), 50, 51, 52, 53, 54, 55);
+	}
+
+	@Test
+	public void samplesEvenlyIncludingNewest() {
+		PoseHistory history = new PoseHistory(16);
+		appendSeconds(history, 1, 10);
+		assertStamps(history.query(0, Long.MAX_VALUE, 2), 5, 10);
+		assertStamps(history.query(0, Long.MAX_VALUE, 5), 2, 4, 6, 8, 10);
+		assertStamps(history.query(0, Long.MAX_VALUE, 0));
+	}
+
+	/**
+	 * Append a pose per second, whose coordinates are the second and its opposite.
+	 *
+	 * @param history history
+	 * @param from first second (inclusive)
+	 * @param to last second (inclusive)
+	 */
+	private static void appendSeconds(PoseHistory history, int from, int to) {
+		for (int second = from; second <= to; second++) {
+			assertTrue(history.append(seconds(second), second, -second, 0));
+		}
+	}
+
+	/**
+	 * Check timestamps of poses returned by a query.
+	 *
+	 * @param range poses returned
+	 * @param expectedSeconds expected timestamps in seconds
+	 */
+	private static void assertStamps(PoseHistory.Range range, int... expectedSeconds) {
+		long[] expected = new long[expectedSeconds.length];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = seconds(expectedSeconds[i]);
+		}
+		assertArrayEquals(expected, range.stamps);
+	}
+
+	/**
+	 * Convert seconds to nanoseconds.
+	 *
+	 * @param seconds seconds
+	 * @return nanoseconds
+	 */
+	private static long seconds(long seconds) {
+		return TimeUnit.SECONDS.toNanos(seconds);
+	}
+
+}
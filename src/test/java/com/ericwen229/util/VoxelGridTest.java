@@ -0,0 +1,225 @@
+package com.ericwen229.util;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+import org.ros.message.MessageFactory;
+import org.ros.node.NodeConfiguration;
+import sensor_msgs.PointCloud2;
+import sensor_msgs.PointField;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of {@link VoxelGrid}.
+ */
+public class VoxelGridTest {
+
+	/**
+	 * Length of a point in test clouds: x, y, z and an unused intensity, as float32.
+	 */
+	private static final int pointStep = 16;
+
+	/**
+	 * Tolerance of centroid coordinates compared.
+	 */
+	private static final float delta = 1e-4f;
+
+	/**
+	 * Factory of messages.
+	 */
+	private final MessageFactory messageFactory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+
+	@Test
+	public void replacesVoxelsWithCentroids() {
+		float[] points = {
+				0.1f, 0.1f, 0.1f,
+				0.3f, 0.3f, 0.3f,
+				1.2f, 0.2f, 0.2f,
+				-0.2f, 0.2f, 0.2f,
+				Float.NaN, 0.0f, 0.0f,
+				0.0f, Float.POSITIVE_INFINITY, 0.0f,
+		};
+		for (boolean isBigEndian : new boolean[] {false, true}) {
+			float[] centroids = new VoxelGrid(0.5f).downsample(cloud(points, 1, isBigEndian));
+			assertCentroids(new float[] {
+					0.2f, 0.2f, 0.2f,
+					1.2f, 0.2f, 0.2f,
+					-0.2f, 0.2f, 0.2f,
+			}, centroids);
+		}
+	}
+
+	@Test
+	public void skipsRowPadding() {
+		float[] points = {
+				0.1f, 0.1f, 0.1f,
+				0.3f, 0.3f, 0.3f,
+				2.1f, 0.1f, 0.1f,
+				2.3f, 0.3f, 0.3f,
+		};
+		float[] centroids = new VoxelGrid(0.5f).downsample(cloud(points, 2, false));
+		assertCentroids(new float[] {0.2f, 0.2f, 0.2f, 2.2f, 0.2f, 0.2f}, centroids);
+	}
+
+	@Test
+	public void largeCloudsSplitAcrossPoolMatchSequentialResult() {
+		// above the sequential threshold of 16384 points, with voxels spanning all parts
+		int pointCount = 3 * (1 << 14) + 7;
+		float[] points = new float[pointCount * 3];
+		for (int i = 0; i < pointCount; i++) {
+			points[i * 3] = (i % 50) * 0.1f;
+			points[i * 3 + 1] = (i / 50 % 40) * 0.1f;
+			points[i * 3 + 2] = (i % 3) * 0.3f;
+		}
+		float[] expected = naiveDownsample(points, 0.5f);
+		for (int parallelism : new int[] {1, 4}) {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				assertCentroids(expected, new VoxelGrid(0.5f, pool).downsample(cloud(points, 1, false)));
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void decimatesToBudget() {
+		float[] points = new float[10 * 3];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = i / 3;
+		}
+		assertSame(points, VoxelGrid.decimate(points, 10));
+		assertArrayEquals(new float[] {0, 0, 0, 2, 2, 2, 5, 5, 5, 7, 7, 7}, VoxelGrid.decimate(points, 4), 0.0f);
+	}
+
+	/**
+	 * Create point cloud message with float32 x, y and z fields.
+	 *
+	 * @param points points packed as x0, y0, z0, x1, y1, z1, ...
+	 * @param height number of rows, each padded with an unused point
+	 * @param isBigEndian true to encode coordinates big endian
+	 * @return point cloud message
+	 */
+	private PointCloud2 cloud(float[] points, int height, boolean isBigEndian) {
+		int width = points.length / 3 / height;
+		int rowStep = (width + 1) * pointStep;
+		ByteBuffer data = ByteBuffer.allocate(rowStep * height)
+				.order(isBigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < width * height; i++) {
+			int position = (i / width) * rowStep + (i % width) * pointStep;
+			data.putFloat(position, points[i * 3]);
+			data.putFloat(position + 4, points[i * 3 + 1]);
+			data.putFloat(position + 8, points[i * 3 + 2]);
+			// garbage in the unused field
+			data.putFloat(position + 12, 100.0f);
+		}
+		for (int row = 0; row < height; row++) {
+			// and in the padding point
+			for (int k = 0; k < 4; k++) {
+				data.putFloat(row * rowStep + width * pointStep + k * 4, 100.0f);
+			}
+		}
+
+		PointCloud2 cloud = messageFactory.newFromType(PointCloud2._TYPE);
+		cloud.setHeight(height);
+		cloud.setWidth(width);
+		cloud.setPointStep(pointStep);
+		cloud.setRowStep(rowStep);
+		cloud.setIsBigendian(isBigEndian);
+		List<PointField> fields = new ArrayList<>();
+		for (String name : new String[] {"x", "y", "z", "intensity"}) {
+			PointField field = messageFactory.newFromType(PointField._TYPE);
+			field.setName(name);
+			field.setOffset(fields.size() * 4);
+			field.setDatatype(PointField.FLOAT32);
+			field.setCount(1);
+			fields.add(field);
+		}
+		cloud.setFields(fields);
+		cloud.setData(ChannelBuffers.wrappedBuffer(data.order(), data.array()));
+		return cloud;
+	}
+
+	/**
+	 * Downsample points the straightforward way.
+	 *
+	 * @param points points packed as x0, y0, z0, x1, y1, z1, ...
+	 * @param leafSize edge length of a voxel
+	 * @return voxel centroids packed as x0, y0, z0, x1, y1, z1, ...
+	 */
+	private static float[] naiveDownsample(float[] points, float leafSize) {
+		Map<List<Integer>, double[]> voxels = new HashMap<>();
+		float inverseLeafSize = 1.0f / leafSize;
+		for (int i = 0; i < points.length; i += 3) {
+			List<Integer> key = Arrays.asList(
+					(int) Math.floor(points[i] * inverseLeafSize),
+					(int) Math.floor(points[i + 1] * inverseLeafSize),
+					(int) Math.floor(points[i + 2] * inverseLeafSize));
+			double[] sums = voxels.computeIfAbsent(key, k -> new double[4]);
+			sums[0] += points[i];
+			sums[1] += points[i + 1];
+			sums[2] += points[i + 2];
+			sums[3]++;
+		}
+		float[] centroids = new float[voxels.size() * 3];
+		int j = 0;
+		for (double[] sums : voxels.values()) {
+			centroids[j++] = (float) (sums[0] / sums[3]);
+			centroids[j++] = (float) (sums[1] / sums[3]);
+			centroids[j++] = (float) (sums[2] / sums[3]);
+		}
+		return centroids;
+	}
+
+	/**
+	 * Check centroids, in any order.
+	 *
+	 * @param expected expected centroids packed as x0, y0, z0, x1, y1, z1, ...
+	 * @param actual actual centroids packed the same way
+	 */
+	private static void assertCentroids(float[] expected, float[] actual) {
+		assertEquals(expected.length, actual.length);
+		float[][] expectedPoints = sortedPoints(expected);
+		float[][] actualPoints = sortedPoints(actual);
+		for (int i = 0; i < expectedPoints.length; i++) {
+			assertArrayEquals(expectedPoints[i], actualPoints[i], delta);
+		}
+	}
+
+	/**
+	 * Unpack points and sort them by coordinates.
+	 *
+	 * @param points points packed as x0, y0, z0, x1, y1, z1, ...
+	 * @return points sorted by x, then y, then z
+	 */
+	private static float[][] sortedPoints(float[] points) {
+		float[][] sorted = new float[points.length / 3][];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = Arrays.copyOfRange(points, i * 3, i * 3 + 3);
+		}
+		Arrays.sort(sorted, (a, b) -> {
+			for (int k = 0; k < 3; k++) {
+				// centroids of distinct voxels are much further apart than rounding errors
+				int order = Integer.compare(Math.round(a[k] * 1000), Math.round(b[k] * 1000));
+				if (order != 0) {
+					return order;
+				}
+			}
+			return 0;
+		});
+		return sorted;
+	}
+
+}